@@ -17,6 +17,8 @@
  */
 package org.magnum.dataup;
 
+import java.io.IOException;
+
 import javax.servlet.MultipartConfigElement;
 
 import org.springframework.boot.SpringApplication;
@@ -62,4 +64,20 @@ public class Application {
 		return factory.createMultipartConfig();
 	}
 
+	// The in-memory store of Video objects that is injected into the
+	// VideoSvcController. It is shared by every request thread, so it
+	// must be thread-safe.
+	@Bean
+	public VideoStore videoStore() {
+		return new ConcurrentVideoStore();
+	}
+
+	// The single VideoFileManager that is shared by all requests. Creating
+	// it up front means that video data stored before a restart can be
+	// served before anything new is uploaded.
+	@Bean
+	public VideoFileManager videoFileManager() throws IOException {
+		return VideoFileManager.get();
+	}
+
 }
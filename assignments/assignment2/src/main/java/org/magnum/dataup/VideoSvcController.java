@@ -19,11 +19,7 @@ package org.magnum.dataup;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.http.HttpServletRequest;
@@ -32,6 +28,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.magnum.dataup.model.Video;
 import org.magnum.dataup.model.VideoStatus;
 import org.magnum.dataup.model.VideoStatus.VideoState;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.rest.webmvc.ResourceNotFoundException;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -49,8 +46,12 @@ import retrofit.http.Multipart;
 @Controller
 public class VideoSvcController {
 
-	private Map<Long, Video> videos = new HashMap<Long, Video>();
+	@Autowired
+	private VideoStore videos;
+
 	private static final AtomicLong currentId = new AtomicLong(0L);
+
+	@Autowired
 	private VideoFileManager videoDataMgr;
 
 	@RequestMapping(value = VideoSvcApi.VIDEO_SVC_PATH, method = RequestMethod.GET)
@@ -58,8 +59,7 @@ public class VideoSvcController {
 
 		System.out.println("GetVideoList");
 
-		List<Video> videoList = new ArrayList<Video>(videos.values());
-		return videoList;
+		return videos.findAll();
 	}
 
 	@RequestMapping(value = VideoSvcApi.VIDEO_SVC_PATH, method = RequestMethod.POST)
@@ -75,7 +75,7 @@ public class VideoSvcController {
 			video.setDataUrl(dataUrl);
 		}
 
-		videos.put(video.getId(), video);
+		videos.save(video);
 
 		return video;
 	}
@@ -89,10 +89,9 @@ public class VideoSvcController {
 
 		System.out.println("AddVideoData: videoId - " + videoId);
 
-		Video video = videos.get(videoId);
+		Video video = videos.findOne(videoId);
 
 		if (video != null) {
-			videoDataMgr = VideoFileManager.get();
 			videoDataMgr.saveVideoData(video, videoData.getInputStream());
 
 			VideoStatus status = new VideoStatus(VideoState.READY);
@@ -109,14 +108,13 @@ public class VideoSvcController {
 
 		System.out.println("GetVideoData: videoId - " + videoId);
 
-		Video video = videos.get(videoId);
+		Video video = videos.findOne(videoId);
 		if (video == null) {
 			throw new ResourceNotFoundException();
 		}
 
 		if (videoDataMgr.hasVideoData(video)) {
 			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-			videoDataMgr = VideoFileManager.get();
 			videoDataMgr.copyVideoData(video, outputStream);
 
 			response.getOutputStream().write(outputStream.toByteArray());
@@ -1,13 +1,17 @@
 package vandy.mooc.model.provider;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import retrofit.RestAdapter;
+import retrofit.RetrofitError;
 import retrofit.client.Response;
-import retrofit.mime.TypedFile;
+import retrofit.mime.TypedByteArray;
 import vandy.mooc.common.Utils;
 import vandy.mooc.model.provider.VideoStatus.VideoState;
 import vandy.mooc.model.webdata.VideoServiceProxy;
@@ -15,6 +19,7 @@ import vandy.mooc.utils.Constants;
 import vandy.mooc.utils.VideoGalleryUtils;
 import android.content.Context;
 import android.net.Uri;
+import android.os.SystemClock;
 
 /**
  * Mediates communication between the Video Service and the local storage on the
@@ -37,6 +42,11 @@ public class VideoController {
 	 */
 	private VideoServiceProxy mVideoServiceProxy;
 
+	/**
+	 * Content type of the chunks of a resumable Video upload.
+	 */
+	private static final String UPLOAD_CONTENT_TYPE = "application/octet-stream";
+
 	/**
 	 * Constructor that initializes the VideoController.
 	 * 
@@ -96,16 +106,19 @@ public class VideoController {
 				// video that can be uploaded to the server.
 				if (size < Constants.MAX_SIZE) {
 					// Finally, upload the Video data to the server
-					// and get the status of the uploaded video data.
-					VideoStatus status = mVideoServiceProxy.setVideoData(
-							receivedVideo.getId(),
-							new TypedFile(receivedVideo.getContentType(),
-									videoFile));
-
-					// Check if the Status of the Video or not.
-					if (status.getState() == VideoState.READY) {
-						// Video successfully uploaded.
-						return true;
+					// in resumable chunks and get the status of the
+					// uploaded video data.
+					try {
+						VideoStatus status = uploadVideoData(receivedVideo,
+								videoFile);
+
+						// Check if the Status of the Video or not.
+						if (status.getState() == VideoState.READY) {
+							// Video successfully uploaded.
+							return true;
+						}
+					} catch (IOException e) {
+						return false;
 					}
 				} /* else */
 				// @@ Show a toast indicating the video was too
@@ -120,6 +133,67 @@ public class VideoController {
 		return false;
 	}
 
+	/**
+	 * Uploads the data of the given Video file to the Server in chunks of
+	 * Constants.UPLOAD_CHUNK_SIZE bytes. If a chunk fails, e.g. because the
+	 * connection dropped, the Server is asked how many bytes it has committed
+	 * and the upload resumes from there instead of starting over.
+	 * 
+	 * @param video
+	 *            Video metadata returned by the Server.
+	 * @param videoFile
+	 *            File containing the Video data.
+	 * 
+	 * @return the status of the uploaded Video data.
+	 */
+	private VideoStatus uploadVideoData(Video video, File videoFile)
+			throws IOException {
+		VideoUpload upload = mVideoServiceProxy.startVideoUpload(video.getId());
+		String uploadId = upload.getUploadId();
+
+		RandomAccessFile file = new RandomAccessFile(videoFile, "r");
+		try {
+			long length = file.length();
+			byte[] buffer = new byte[Constants.UPLOAD_CHUNK_SIZE];
+			long offset = upload.getOffset();
+			int failures = 0;
+
+			while (offset < length) {
+				try {
+					if (failures > 0) {
+						// Find out where the Server wants us to resume.
+						offset = mVideoServiceProxy.getVideoUpload(
+								video.getId(), uploadId).getOffset();
+						if (offset >= length) {
+							break;
+						}
+					}
+
+					int size = (int) Math.min(buffer.length, length - offset);
+					file.seek(offset);
+					file.readFully(buffer, 0, size);
+
+					offset = mVideoServiceProxy.putVideoChunk(
+							video.getId(),
+							uploadId,
+							offset,
+							new TypedByteArray(UPLOAD_CONTENT_TYPE, Arrays
+									.copyOf(buffer, size))).getOffset();
+					failures = 0;
+				} catch (RetrofitError e) {
+					if (++failures > Constants.MAX_UPLOAD_RETRIES) {
+						throw e;
+					}
+					SystemClock.sleep(Constants.UPLOAD_RETRY_DELAY * failures);
+				}
+			}
+		} finally {
+			file.close();
+		}
+
+		return mVideoServiceProxy.completeVideoUpload(video.getId(), uploadId);
+	}
+
 	/**
 	 * Get the List of Videos from Server
 	 * 
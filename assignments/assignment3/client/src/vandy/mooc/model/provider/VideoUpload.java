@@ -0,0 +1,70 @@
+package vandy.mooc.model.provider;
+
+/**
+ * This "Plain Ol' Java Object" (POJO) class represents the state of a
+ * resumable, chunked upload of Video data, downloaded in Json from the
+ * Video Service via the VideoServiceProxy.
+ */
+public class VideoUpload {
+    /**
+     * Id of the upload, generated by the Video Service.
+     */
+    private String uploadId;
+
+    /**
+     * Id of the Video on the Video Service that the data belongs to.
+     */
+    private long videoId;
+
+    /**
+     * Number of bytes the Video Service has committed so far.  The
+     * next chunk of an interrupted upload starts at this offset.
+     */
+    private long offset;
+
+    /**
+     * Default constructor used by the Json converter.
+     */
+    public VideoUpload() {
+    }
+
+    /**
+     * Constructor that initializes all the fields of interest.
+     */
+    public VideoUpload(String uploadId,
+                       long videoId,
+                       long offset) {
+        super();
+        this.uploadId = uploadId;
+        this.videoId = videoId;
+        this.offset = offset;
+    }
+
+    /*
+     * Getters and setters to access VideoUpload.
+     */
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    public long getVideoId() {
+        return videoId;
+    }
+
+    public void setVideoId(long videoId) {
+        this.videoId = videoId;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+}
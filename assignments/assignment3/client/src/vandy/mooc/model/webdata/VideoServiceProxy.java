@@ -7,15 +7,20 @@ import java.util.Collection;
 
 import retrofit.client.Response;
 import retrofit.http.Body;
+import retrofit.http.DELETE;
 import retrofit.http.GET;
 import retrofit.http.Multipart;
 import retrofit.http.POST;
+import retrofit.http.PUT;
 import retrofit.http.Part;
 import retrofit.http.Path;
+import retrofit.http.Query;
 import retrofit.http.Streaming;
 import retrofit.mime.TypedFile;
+import retrofit.mime.TypedOutput;
 import vandy.mooc.model.provider.Video;
 import vandy.mooc.model.provider.VideoStatus;
+import vandy.mooc.model.provider.VideoUpload;
 
 /**
  * This interface defines an API for a Video Service web service. The
@@ -51,6 +56,34 @@ public interface VideoServiceProxy {
 	public static final String VIDEO_RATING_PATH = VIDEO_SVC_PATH + "/{id}/rating";
 
 	public static final String VIDEO_DOWNLOAD_PATH = VIDEO_SVC_PATH + "/{id}/download";
+
+    /**
+     * Used as Request Parameter for the Id of a resumable upload.
+     */
+    public static final String UPLOAD_ID_PARAMETER = "uploadId";
+
+    /**
+     * Used as Query Parameter for the offset of an upload chunk.
+     */
+    public static final String OFFSET_PARAMETER = "offset";
+
+    /**
+     * The path where resumable uploads of Video data are started.
+     */
+    public static final String VIDEO_UPLOAD_PATH =
+        VIDEO_SVC_PATH + "/{id}/upload";
+
+    /**
+     * The path of a single resumable upload.
+     */
+    public static final String VIDEO_UPLOAD_SESSION_PATH =
+        VIDEO_UPLOAD_PATH + "/{uploadId}";
+
+    /**
+     * The path used to finish a resumable upload.
+     */
+    public static final String VIDEO_UPLOAD_COMPLETE_PATH =
+        VIDEO_UPLOAD_SESSION_PATH + "/complete";
 		
 	
     /**
@@ -100,4 +133,47 @@ public interface VideoServiceProxy {
     @Streaming
 	@GET(VIDEO_DOWNLOAD_PATH)
 	public Response downloadVideo(@Path(ID_PARAMETER) long videoId);
+
+    /**
+     * Sends a POST request to start a resumable upload of the Video
+     * data using a two-way Retrofit RPC call.
+     */
+    @POST(VIDEO_UPLOAD_PATH)
+    public VideoUpload startVideoUpload(@Path(ID_PARAMETER) long id);
+
+    /**
+     * Sends a PUT request with one chunk of the Video data, starting
+     * at the given offset, using a two-way Retrofit RPC call.  The
+     * returned VideoUpload contains the offset of the next chunk.
+     */
+    @PUT(VIDEO_UPLOAD_SESSION_PATH)
+    public VideoUpload putVideoChunk(@Path(ID_PARAMETER) long id,
+                                     @Path(UPLOAD_ID_PARAMETER) String uploadId,
+                                     @Query(OFFSET_PARAMETER) long offset,
+                                     @Body TypedOutput chunk);
+
+    /**
+     * Sends a GET request to find out how much of a resumable upload
+     * the Video Service has committed, using a two-way Retrofit RPC
+     * call.
+     */
+    @GET(VIDEO_UPLOAD_SESSION_PATH)
+    public VideoUpload getVideoUpload(@Path(ID_PARAMETER) long id,
+                                      @Path(UPLOAD_ID_PARAMETER) String uploadId);
+
+    /**
+     * Sends a POST request to finish a resumable upload using a
+     * two-way Retrofit RPC call.
+     */
+    @POST(VIDEO_UPLOAD_COMPLETE_PATH)
+    public VideoStatus completeVideoUpload(@Path(ID_PARAMETER) long id,
+                                           @Path(UPLOAD_ID_PARAMETER) String uploadId);
+
+    /**
+     * Sends a DELETE request to abandon a resumable upload using a
+     * two-way Retrofit RPC call.
+     */
+    @DELETE(VIDEO_UPLOAD_SESSION_PATH)
+    public Response cancelVideoUpload(@Path(ID_PARAMETER) long id,
+                                      @Path(UPLOAD_ID_PARAMETER) String uploadId);
 }
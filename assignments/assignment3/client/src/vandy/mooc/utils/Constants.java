@@ -21,5 +21,22 @@ public class Constants {
      * Define a constant for 1 MB.
      */
     public static final long MEGA_BYTE = 1024 * 1024;
+
+    /**
+     * Size of each chunk of a resumable Video upload.
+     */
+    public static final int UPLOAD_CHUNK_SIZE = (int) MEGA_BYTE;
+
+    /**
+     * Number of times in a row a chunk upload may fail before the
+     * whole upload is given up.
+     */
+    public static final int MAX_UPLOAD_RETRIES = 5;
+
+    /**
+     * Delay, in milliseconds, before the first retry of a failed
+     * chunk upload.  It grows with each consecutive failure.
+     */
+    public static final long UPLOAD_RETRY_DELAY = 1000;
     
 }
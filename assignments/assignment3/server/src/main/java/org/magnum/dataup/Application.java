@@ -17,14 +17,33 @@
  */
 package org.magnum.dataup;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import javax.servlet.MultipartConfigElement;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.endpoint.VanillaPublicMetrics;
+import org.springframework.boot.actuate.metrics.reader.MetricReader;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.context.embedded.MultiPartConfigFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
 
 // This annotation tells Spring to auto-wire your application
 @EnableAutoConfiguration
@@ -62,4 +81,161 @@ public class Application {
 		return factory.createMultipartConfig();
 	}
 
+	// The in-memory store of Video objects that is injected into the
+	// VideoSvcController. It is shared by every request thread, so it
+	// must be thread-safe.
+	@Bean
+	public VideoStore videoStore() {
+		return new ConcurrentVideoStore();
+	}
+
+	// The ratings that users have given the videos, which are aggregated
+	// without locks so that a popular video can be rated by many users at
+	// once, starting from the totals that were persisted by earlier runs
+	@Bean
+	public VideoRatings videoRatings(VideoRatingWriter writer) {
+		VideoRatings ratings = new VideoRatings(writer);
+		writer.restore(ratings);
+		return ratings;
+	}
+
+	// Persists the ratings (the totals of each video and the rating of each
+	// user) to the database in periodic batches, journaling them on disk in
+	// the meantime so that a crash doesn't lose them. The database is an H2
+	// file in the journal's folder (see application.properties), so the
+	// ratings survive a restart.
+	@Bean(destroyMethod = "close")
+	public VideoRatingWriter videoRatingWriter(
+			VideoRatingTotalRepository totals,
+			VideoUserRatingRepository userRatings,
+			PlatformTransactionManager transactionManager,
+			@Value("${videos.ratings.journalDir:ratings}") String journalDir,
+			@Value("${videos.ratings.flushInterval:1000}") long flushInterval,
+			@Value("${videos.ratings.flushSize:1000}") int flushSize)
+			throws IOException {
+		VideoRatingWriter writer = new VideoRatingWriter(totals, userRatings,
+				transactionManager, new VideoRatingJournal(Paths.get(journalDir)),
+				flushInterval, flushSize);
+		writer.open();
+		return writer;
+	}
+
+	// The bounded pool of threads that write uploaded video data to disk,
+	// so that a slow disk ties up these threads rather than the container's
+	// request threads. Its size and the number of uploads that may wait for
+	// it are set with the videos.ingestion.threads and
+	// videos.ingestion.queueSize properties.
+	@Bean(destroyMethod = "shutdown")
+	public ExecutorService videoIngestionExecutor(
+			@Value("${videos.ingestion.threads:4}") int threads,
+			@Value("${videos.ingestion.queueSize:64}") int queueSize) {
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize),
+				new CustomizableThreadFactory("video-ingestion-"));
+	}
+
+	// The memory mappings of the most downloaded video blobs, which the
+	// mapped and tiered blob stores serve them from. How many bytes of
+	// mappings it keeps is set with the videos.mappedCache.capacity property.
+	@Bean
+	public MappedRegionCache mappedRegionCache(
+			@Value("${videos.mappedCache.capacity:268435456}") long capacity) {
+		return new MappedRegionCache(capacity);
+	}
+
+	// Tell the actuator to report how well the MappedRegionCache is doing
+	// in /metrics, along with the metrics that it reports by default (see
+	// VideoBlobCacheMetrics)
+	@Bean
+	public PublicMetrics publicMetrics(MetricReader metricReader,
+			MappedRegionCache mappedRegionCache) {
+		return new VideoBlobCacheMetrics(new VanillaPublicMetrics(metricReader),
+				mappedRegionCache);
+	}
+
+	// Where the content-addressed blobs of the videos are kept, which is set
+	// with the videos.blobStore property:
+	//
+	// local  - files in the "blobs" folder of videos.dir (the default)
+	// mapped - the same files, read through cached memory mappings
+	// s3     - objects in the videos.s3.bucket bucket, under videos.s3.prefix
+	//          ("blobs/" by default), which must not be used by anything else
+	// tiered - the videos.tiered.hotCapacity bytes of recently read blobs
+	//          in mapped files, and all of the others in S3
+	//
+	// S3 is reached with the default AWS credentials unless videos.s3.accessKey
+	// and videos.s3.secretKey are set. Setting videos.s3.endpoint points the
+	// client at another S3-compatible store (e.g., MinIO).
+	@Bean
+	public VideoBlobStore videoBlobStore(
+			@Value("${videos.dir:videos}") String videosDir,
+			@Value("${videos.blobStore:local}") String type,
+			@Value("${videos.s3.endpoint:}") String endpoint,
+			@Value("${videos.s3.bucket:videos}") String bucket,
+			@Value("${videos.s3.prefix:blobs/}") String prefix,
+			@Value("${videos.s3.accessKey:}") String accessKey,
+			@Value("${videos.s3.secretKey:}") String secretKey,
+			@Value("${videos.tiered.hotCapacity:1073741824}") long hotCapacity,
+			MappedRegionCache mappedRegionCache) throws IOException {
+		Path blobDir = Paths.get(videosDir).resolve("blobs");
+		if ("local".equals(type)) {
+			return new LocalVideoBlobStore(blobDir);
+		} else if ("mapped".equals(type)) {
+			return new MappedVideoBlobStore(blobDir, mappedRegionCache);
+		}
+
+		AmazonS3Client s3 = accessKey.isEmpty() ? new AmazonS3Client()
+				: new AmazonS3Client(new BasicAWSCredentials(accessKey, secretKey));
+		if (!endpoint.isEmpty()) {
+			s3.setEndpoint(endpoint);
+			s3.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
+		}
+		S3VideoBlobStore objects = new S3VideoBlobStore(s3, bucket, prefix);
+		if ("s3".equals(type)) {
+			return objects;
+		} else if ("tiered".equals(type)) {
+			// A blob is only dropped from the hot tier once it has been
+			// copied to S3, so the thread that moves blobs there can simply
+			// be abandoned when the application stops
+			CustomizableThreadFactory demotions = new CustomizableThreadFactory("video-blob-demotion-");
+			demotions.setDaemon(true);
+			return new TieredVideoBlobStore(new MappedVideoBlobStore(blobDir, mappedRegionCache),
+					objects, hotCapacity, Paths.get(videosDir).resolve("uploads"),
+					Executors.newSingleThreadExecutor(demotions));
+		}
+		throw new IllegalArgumentException("Unknown videos.blobStore: " + type);
+	}
+
+	// The single VideoFileManager that is shared by all requests. It keeps
+	// an index of the stored video files that is built when the application
+	// starts, so it must not be recreated per request.
+	//
+	// The folder and the number of levels of hash-prefixed sub folders that
+	// videos are spread over can be set with the videos.dir and
+	// videos.shardDepth properties (e.g., --videos.shardDepth=0 on the
+	// command line for a single flat folder). Setting videos.deduplicate
+	// to true stores video data in content-addressed blobs, so identical
+	// uploads share one copy. Only blobs can be kept outside of the local
+	// "blobs" folder, so any videos.blobStore other than local turns
+	// deduplication on.
+	//
+	// Resumable uploads that haven't been written to for
+	// videos.uploads.expireAfter milliseconds (a day by default) are deleted
+	// when the application starts and then every
+	// videos.uploads.expiryInterval milliseconds (an hour by default).
+	@Bean(destroyMethod = "close")
+	public VideoFileManager videoFileManager(
+			@Value("${videos.dir:videos}") String videosDir,
+			@Value("${videos.shardDepth:1}") int shardDepth,
+			@Value("${videos.deduplicate:false}") boolean deduplicate,
+			@Value("${videos.blobStore:local}") String blobStoreType,
+			@Value("${videos.uploads.expireAfter:86400000}") long uploadExpireAfter,
+			@Value("${videos.uploads.expiryInterval:3600000}") long uploadExpiryInterval,
+			VideoBlobStore videoBlobStore) throws IOException {
+		VideoFileManager manager = VideoFileManager.get(Paths.get(videosDir), shardDepth,
+				deduplicate || !"local".equals(blobStoreType), videoBlobStore);
+		manager.startUploadExpiry(uploadExpireAfter, uploadExpiryInterval);
+		return manager;
+	}
+
 }
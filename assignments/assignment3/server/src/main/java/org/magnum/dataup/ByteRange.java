@@ -0,0 +1,139 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents a single byte range requested through an HTTP
+ * Range header (RFC 7233). The first and last positions are inclusive and
+ * have already been resolved against the length of the video, so suffix
+ * ranges such as "bytes=-500" and open ranges such as "bytes=100-" are
+ * turned into absolute positions by the parse method.
+ * 
+ * @author jules
+ *
+ */
+public class ByteRange {
+
+	public static final String BYTES_UNIT = "bytes";
+
+	// Clients asking for more ranges than this are served the whole video
+	// rather than a large multipart response
+	private static final int MAX_RANGES = 16;
+
+	/**
+	 * This method parses the value of a Range header for a resource of the
+	 * given length. It returns null if the header is missing, malformed, or
+	 * uses a unit other than bytes, in which case the Range header must be
+	 * ignored and the full resource sent. It returns an empty list if the
+	 * header is well formed but none of the ranges can be satisfied, in
+	 * which case a 416 should be sent.
+	 * 
+	 * @param header
+	 * @param length
+	 * @return
+	 */
+	public static List<ByteRange> parse(String header, long length) {
+		if (header == null || !header.startsWith(BYTES_UNIT + "=")) {
+			return null;
+		}
+
+		String[] specs = header.substring(BYTES_UNIT.length() + 1).split(",", -1);
+		if (specs.length > MAX_RANGES) {
+			return null;
+		}
+
+		List<ByteRange> ranges = new ArrayList<ByteRange>(specs.length);
+		for (String spec : specs) {
+			spec = spec.trim();
+			int dash = spec.indexOf('-');
+			if (dash < 0) {
+				return null;
+			}
+
+			String firstStr = spec.substring(0, dash).trim();
+			String lastStr = spec.substring(dash + 1).trim();
+			try {
+				long first;
+				long last;
+				if (firstStr.isEmpty()) {
+					// A suffix range: the final N bytes of the video
+					long suffix = Long.parseLong(lastStr);
+					if (suffix < 0) {
+						return null;
+					}
+					if (suffix == 0 || length == 0) {
+						continue;
+					}
+					first = Math.max(0, length - suffix);
+					last = length - 1;
+				} else {
+					first = Long.parseLong(firstStr);
+					last = lastStr.isEmpty() ? Long.MAX_VALUE : Long
+							.parseLong(lastStr);
+					if (first < 0 || last < first) {
+						return null;
+					}
+					if (first >= length) {
+						continue;
+					}
+					last = Math.min(last, length - 1);
+				}
+				ranges.add(new ByteRange(first, last));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		return Collections.unmodifiableList(ranges);
+	}
+
+	private final long first;
+	private final long last;
+
+	public ByteRange(long first, long last) {
+		this.first = first;
+		this.last = last;
+	}
+
+	public long getFirst() {
+		return first;
+	}
+
+	public long getLast() {
+		return last;
+	}
+
+	public long getLength() {
+		return last - first + 1;
+	}
+
+	/**
+	 * Returns the value of the Content-Range header that describes this
+	 * range of a resource with the given total length.
+	 * 
+	 * @param total
+	 * @return
+	 */
+	public String toContentRange(long total) {
+		return BYTES_UNIT + " " + first + "-" + last + "/" + total;
+	}
+
+}
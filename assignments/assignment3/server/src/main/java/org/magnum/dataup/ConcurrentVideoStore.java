@@ -0,0 +1,167 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.magnum.dataup.model.Video;
+
+/**
+ * A thread-safe VideoStore that is optimized for the read-mostly traffic of
+ * the video service.
+ * 
+ * Lookups by id go straight to a ConcurrentHashMap and never take a lock.
+ * Writes are serialized per video through a fixed array of lock stripes, so
+ * writers to different videos rarely contend while read-modify-write
+ * updates of the same video can never be lost.
+ * 
+ * Every write bumps a version number. The list returned by findAll() is an
+ * immutable snapshot that is tagged with the list version it was built from
+ * and is only rebuilt when a later list version is observed, so repeated
+ * list calls against an unchanged store cost the same no matter how many
+ * videos are stored. Only save() bumps the list version: update() changes
+ * a video that the snapshot already holds without adding, replacing or
+ * reordering any, so a stream of ratings doesn't force a rebuild.
+ * 
+ * @author jules
+ *
+ */
+public class ConcurrentVideoStore implements VideoStore {
+
+	private static final int DEFAULT_STRIPES = 64;
+
+	private static final Comparator<Video> BY_ID = new Comparator<Video>() {
+		@Override
+		public int compare(Video a, Video b) {
+			return Long.compare(a.getId(), b.getId());
+		}
+	};
+
+	// An immutable list of videos along with the store version that it
+	// reflects
+	private static class Snapshot {
+		private final long version;
+		private final Collection<Video> videos;
+
+		private Snapshot(long version, Collection<Video> videos) {
+			this.version = version;
+			this.videos = videos;
+		}
+	}
+
+	private final ConcurrentMap<Long, Video> videos;
+
+	private final Object[] stripes;
+
+	private final AtomicLong version = new AtomicLong();
+
+	// Bumped by the writes that change which Video objects are stored
+	private final AtomicLong listVersion = new AtomicLong();
+
+	private volatile Snapshot snapshot = new Snapshot(0,
+			Collections.<Video> emptyList());
+
+	public ConcurrentVideoStore() {
+		this(DEFAULT_STRIPES);
+	}
+
+	public ConcurrentVideoStore(int stripeCount) {
+		if (stripeCount < 1) {
+			throw new IllegalArgumentException("stripeCount must be positive");
+		}
+		videos = new ConcurrentHashMap<Long, Video>(16, 0.75f, stripeCount);
+		stripes = new Object[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Object();
+		}
+	}
+
+	@Override
+	public Video save(Video v) {
+		synchronized (stripeFor(v.getId())) {
+			videos.put(v.getId(), v);
+			listVersion.incrementAndGet();
+			version.incrementAndGet();
+		}
+		return v;
+	}
+
+	@Override
+	public Video findOne(long id) {
+		return videos.get(id);
+	}
+
+	@Override
+	public Video update(long id, VideoUpdate update) {
+		synchronized (stripeFor(id)) {
+			Video v = videos.get(id);
+			if (v != null) {
+				update.apply(v);
+				version.incrementAndGet();
+			}
+			return v;
+		}
+	}
+
+	@Override
+	public Collection<Video> findAll() {
+		Snapshot current = snapshot;
+		long latest = listVersion.get();
+		if (current.version == latest) {
+			return current.videos;
+		}
+
+		// The list version is read before the map is copied, so a write that
+		// races with the copy leaves the snapshot tagged with an older
+		// list version and the next call rebuilds it
+		List<Video> copy = new ArrayList<Video>(videos.values());
+		Collections.sort(copy, BY_ID);
+		Snapshot rebuilt = new Snapshot(latest,
+				Collections.unmodifiableList(copy));
+
+		if (snapshot.version < latest) {
+			snapshot = rebuilt;
+		}
+		return rebuilt.videos;
+	}
+
+	@Override
+	public int count() {
+		return videos.size();
+	}
+
+	@Override
+	public long getVersion() {
+		return version.get();
+	}
+
+	private Object stripeFor(long id) {
+		int hash = (int) (id ^ (id >>> 32));
+		// Spread the bits so that sequential ids land on different stripes
+		hash ^= (hash >>> 16);
+		return stripes[(hash & 0x7fffffff) % stripes.length];
+	}
+
+}
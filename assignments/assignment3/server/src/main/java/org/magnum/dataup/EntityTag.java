@@ -0,0 +1,159 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+/**
+ * This class represents an HTTP entity tag (RFC 7232), the opaque validator
+ * that the server sends in an ETag header and that clients send back in
+ * If-None-Match and If-Range headers to make a request conditional on the
+ * resource being unchanged. A strong tag changes whenever the bytes of the
+ * representation change, while a weak tag (W/"...") only promises that the
+ * representation is equivalent.
+ * 
+ * @author jules
+ *
+ */
+public class EntityTag {
+
+	private static final String WEAK_PREFIX = "W/";
+
+	/**
+	 * Returns a strong entity tag with the given value, which must not
+	 * contain double quotes.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static EntityTag strong(String value) {
+		return new EntityTag(value, false);
+	}
+
+	/**
+	 * Returns a weak entity tag with the given value, which must not contain
+	 * double quotes.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public static EntityTag weak(String value) {
+		return new EntityTag(value, true);
+	}
+
+	/**
+	 * This method parses a single entity tag, such as the value of an
+	 * If-Range header. It returns null if the header is missing or is not an
+	 * entity tag (e.g., an If-Range header holding an HTTP date).
+	 * 
+	 * @param header
+	 * @return
+	 */
+	public static EntityTag parse(String header) {
+		if (header == null) {
+			return null;
+		}
+		String tag = header.trim();
+		boolean weak = tag.startsWith(WEAK_PREFIX);
+		if (weak) {
+			tag = tag.substring(WEAK_PREFIX.length());
+		}
+		if (tag.length() < 2 || tag.charAt(0) != '"'
+				|| tag.indexOf('"', 1) != tag.length() - 1) {
+			return null;
+		}
+		return new EntityTag(tag.substring(1, tag.length() - 1), weak);
+	}
+
+	private final String value;
+	private final boolean weak;
+
+	private EntityTag(String value, boolean weak) {
+		this.value = value;
+		this.weak = weak;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	public boolean isWeak() {
+		return weak;
+	}
+
+	/**
+	 * Returns true if both tags are strong and have the same value. This is
+	 * the comparison that If-Range requires, since a range of one
+	 * representation must not be combined with bytes of another.
+	 * 
+	 * @param other
+	 * @return
+	 */
+	public boolean strongEquals(EntityTag other) {
+		return other != null && !weak && !other.weak
+				&& value.equals(other.value);
+	}
+
+	/**
+	 * This method returns true if the value of an If-None-Match header
+	 * matches this tag, meaning that the client's cached copy is current and
+	 * a 304 can be sent. The header matches if it is "*" or lists a tag with
+	 * the same value, ignoring weakness as RFC 7232 asks for If-None-Match.
+	 * A missing or malformed header never matches.
+	 * 
+	 * @param ifNoneMatch
+	 * @return
+	 */
+	public boolean matchesAny(String ifNoneMatch) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		if (ifNoneMatch.trim().equals("*")) {
+			return true;
+		}
+
+		// Tags may contain commas, so the list is scanned quote by quote
+		// rather than split
+		int pos = 0;
+		int length = ifNoneMatch.length();
+		while (pos < length) {
+			int open = ifNoneMatch.indexOf('"', pos);
+			if (open < 0) {
+				return false;
+			}
+			int close = ifNoneMatch.indexOf('"', open + 1);
+			if (close < 0) {
+				return false;
+			}
+			if (ifNoneMatch.regionMatches(open + 1, value, 0, value.length())
+					&& close - open - 1 == value.length()) {
+				return true;
+			}
+			pos = close + 1;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the tag as it is written in an ETag header, with its quotes
+	 * and, for a weak tag, the W/ prefix.
+	 */
+	@Override
+	public String toString() {
+		return (weak ? WEAK_PREFIX : "") + "\"" + value + "\"";
+	}
+
+}
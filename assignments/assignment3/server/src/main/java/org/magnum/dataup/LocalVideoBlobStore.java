@@ -0,0 +1,202 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A VideoBlobStore that keeps each blob in a plain file on the local file
+ * system, named after its key. The files are spread over two levels of
+ * folders named after the first hex digits of the key, which is already
+ * evenly distributed (e.g., blobs/3f/a2/3fa2...). This is the layout that
+ * the VideoFileManager has always used for its blobs, so existing "blobs"
+ * folders can be used as they are.
+ * 
+ * Blobs are read with positioned FileChannel.transferTo() calls in fixed-size
+ * chunks, so the memory used per download stays the same whatever the size
+ * of the blob, and serving a range never reads the bytes that precede it.
+ * 
+ * @author jules
+ *
+ */
+public class LocalVideoBlobStore implements VideoBlobStore {
+
+	// The maximum number of bytes handed to a single transferTo() call
+	private static final long TRANSFER_CHUNK_SIZE = 64 * 1024;
+
+	// The depth at which the blob files sit below the root folder
+	private static final int DEPTH = 3;
+
+	private final Path dir;
+
+	public LocalVideoBlobStore(Path dir) throws IOException {
+		this.dir = dir;
+		Files.createDirectories(dir);
+	}
+
+	public Path getDir() {
+		return dir;
+	}
+
+	/**
+	 * Returns the path of the file for the blob with the given key. Keys are
+	 * hex digests, so anything else is rejected to keep the file inside the
+	 * folder.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public Path resolve(String key) {
+		if (key == null || !key.matches(KEY_PATTERN)) {
+			throw new IllegalArgumentException("Not a blob key: " + key);
+		}
+		return dir.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+	}
+
+	@Override
+	public void put(String key, Path file) throws IOException {
+		Path target = resolve(key);
+		try {
+			move(file, target);
+		} catch (NoSuchFileException e) {
+			// The folders of the blob are only created when the first
+			// rename into them fails, which saves a directory walk per put
+			if (!Files.exists(file)) {
+				throw e;
+			}
+			Files.createDirectories(target.getParent());
+			move(file, target);
+		}
+	}
+
+	// Atomically renames a file into place. A file on another file system
+	// is copied next to the target first, so readers still never see a
+	// partially written blob.
+	private void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+			try {
+				Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+	@Override
+	public long read(String key, long offset, long length, OutputStream out)
+			throws IOException {
+		WritableByteChannel target = Channels.newChannel(out);
+		try (FileChannel channel = open(key)) {
+			long end = offset + Math.min(length, channel.size() - offset);
+			long position = offset;
+			while (position < end) {
+				long sent = channel.transferTo(position,
+						Math.min(TRANSFER_CHUNK_SIZE, end - position), target);
+				if (sent <= 0) {
+					// The file was truncated underneath us
+					break;
+				}
+				position += sent;
+			}
+			return position - offset;
+		}
+	}
+
+	/**
+	 * Opens the file of the blob with the given key for reading, or throws a
+	 * FileNotFoundException if there is no such blob.
+	 * 
+	 * @param key
+	 * @return
+	 * @throws IOException
+	 */
+	protected FileChannel open(String key) throws IOException {
+		try {
+			return FileChannel.open(resolve(key), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			throw new FileNotFoundException("Unable to find the referenced blob:" + key);
+		}
+	}
+
+	@Override
+	public void delete(String key) throws IOException {
+		Path file = resolve(key);
+		if (Files.deleteIfExists(file)) {
+			pruneEmptyDirectories(file.getParent());
+		}
+	}
+
+	// Deletes the folders that were emptied by deleting a blob
+	private void pruneEmptyDirectories(Path folder) throws IOException {
+		while (folder != null && !folder.equals(dir) && folder.startsWith(dir)) {
+			try {
+				Files.delete(folder);
+			} catch (DirectoryNotEmptyException | NoSuchFileException e) {
+				return;
+			}
+			folder = folder.getParent();
+		}
+	}
+
+	// Only the files at the depth of the blobs count, so other files that
+	// share the folder (e.g., the VideoFileManager's journal) and temporary
+	// files left behind by a crash are not mistaken for blobs
+	@Override
+	public Map<String, Long> list() throws IOException {
+		final Map<String, Long> blobs = new HashMap<String, Long>();
+		Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), DEPTH,
+				new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				String key = file.getFileName().toString();
+				if (attrs.isRegularFile() && dir.relativize(file).getNameCount() == DEPTH
+						&& key.matches(KEY_PATTERN)) {
+					blobs.put(key, attrs.size());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return blobs;
+	}
+
+}
@@ -0,0 +1,182 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded cache of the memory-mapped regions of video blobs, which
+ * lets the MappedVideoBlobStore serve the videos that are being downloaded
+ * the most without opening, or mapping, their files again for every
+ * request. Each region is a read-only mapping of up to
+ * MappedVideoBlobStore.MAP_REGION_SIZE bytes of a blob, keyed by the blob's
+ * key and the region's index in the blob.
+ * 
+ * Once the mapped regions add up to more than the capacity, the least
+ * recently read ones are dropped. The data of a region lives in the
+ * operating system's page cache rather than on the heap, so the capacity
+ * bounds the address space that the cache holds on to, not the heap. A
+ * dropped region is unmapped when it is garbage collected.
+ * 
+ * Blobs never change once they have been put, so the only time a region
+ * has to be dropped early is when its blob is replaced or deleted (see
+ * evict()).
+ * 
+ * @author jules
+ *
+ */
+public class MappedRegionCache {
+
+	private final long capacity;
+
+	// The cached regions, least recently read first. Guarded by this.
+	private final LinkedHashMap<Region, MappedByteBuffer> regions =
+			new LinkedHashMap<Region, MappedByteBuffer>(16, 0.75f, true);
+	private long residentBytes;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            the most bytes of mappings that are kept, or zero to not
+	 *            keep any
+	 */
+	public MappedRegionCache(long capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns a view of the cached region of the given blob, with its own
+	 * position and limit so that the caller can read it without affecting
+	 * other readers, or null if the region isn't cached.
+	 * 
+	 * @param key
+	 * @param index
+	 * @return
+	 */
+	public ByteBuffer get(String key, long index) {
+		MappedByteBuffer region;
+		synchronized (this) {
+			region = regions.get(new Region(key, index));
+		}
+		if (region == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return region.duplicate();
+	}
+
+	/**
+	 * Caches a region of the given blob that has just been mapped, and drops
+	 * the least recently read regions if the cache is now over capacity.
+	 * Regions that are larger than the whole capacity aren't cached.
+	 * 
+	 * @param key
+	 * @param index
+	 * @param region
+	 */
+	public synchronized void put(String key, long index, MappedByteBuffer region) {
+		if (region.capacity() > capacity) {
+			return;
+		}
+		MappedByteBuffer previous = regions.put(new Region(key, index), region);
+		residentBytes += region.capacity() - (previous != null ? previous.capacity() : 0);
+
+		Iterator<MappedByteBuffer> eldest = regions.values().iterator();
+		while (residentBytes > capacity) {
+			residentBytes -= eldest.next().capacity();
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Drops every cached region of the given blob.
+	 * 
+	 * @param key
+	 */
+	public synchronized void evict(String key) {
+		Iterator<Map.Entry<Region, MappedByteBuffer>> cached = regions.entrySet().iterator();
+		while (cached.hasNext()) {
+			Map.Entry<Region, MappedByteBuffer> region = cached.next();
+			if (region.getKey().key.equals(key)) {
+				residentBytes -= region.getValue().capacity();
+				cached.remove();
+			}
+		}
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	// The number of bytes of the regions that are cached
+	public synchronized long getResidentBytes() {
+		return residentBytes;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	// The fraction of the lookups of a region that found it cached, or zero
+	// if there haven't been any lookups yet
+	public double getHitRatio() {
+		long hitCount = hits.get();
+		long lookups = hitCount + misses.get();
+		return lookups > 0 ? (double) hitCount / lookups : 0;
+	}
+
+	private static final class Region {
+
+		private final String key;
+		private final long index;
+
+		private Region(String key, long index) {
+			this.key = key;
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Region)) {
+				return false;
+			}
+			Region other = (Region) obj;
+			return key.equals(other.key) && index == other.index;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(key, index);
+		}
+
+	}
+
+}
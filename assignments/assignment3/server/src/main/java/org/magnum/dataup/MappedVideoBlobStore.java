@@ -0,0 +1,159 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A LocalVideoBlobStore that reads the blob files through read-only memory
+ * mappings rather than with transferTo().
+ * 
+ * A mapping reads the file straight out of the operating system's page
+ * cache, so a blob that many clients are downloading is kept in memory once
+ * and shared by all of them, rather than being read into a buffer of its
+ * own for every download. The blobs are mapped a region at a time, so even
+ * a very large video only takes up MAP_REGION_SIZE bytes of address space
+ * per download.
+ * 
+ * The regions that have been mapped are kept in a MappedRegionCache, so
+ * the most downloaded videos are served from mappings that already exist,
+ * without their files being opened or mapped again. A blob's regions are
+ * dropped from the cache when the blob is replaced or deleted.
+ * 
+ * @author jules
+ *
+ */
+public class MappedVideoBlobStore extends LocalVideoBlobStore {
+
+	// The most bytes of a blob that are mapped at once
+	public static final long MAP_REGION_SIZE = 16 * 1024 * 1024;
+
+	// How many bytes of mappings are cached by default
+	public static final long DEFAULT_CACHE_CAPACITY = 256 * 1024 * 1024;
+
+	private final MappedRegionCache cache;
+
+	public MappedVideoBlobStore(Path dir) throws IOException {
+		this(dir, new MappedRegionCache(DEFAULT_CACHE_CAPACITY));
+	}
+
+	public MappedVideoBlobStore(Path dir, MappedRegionCache cache) throws IOException {
+		super(dir);
+		this.cache = cache;
+	}
+
+	public MappedRegionCache getCache() {
+		return cache;
+	}
+
+	@Override
+	public void put(String key, Path file) throws IOException {
+		super.put(key, file);
+		cache.evict(key);
+	}
+
+	@Override
+	public long read(String key, long offset, long length, OutputStream out)
+			throws IOException {
+		WritableByteChannel target = Channels.newChannel(out);
+		long end = (length > Long.MAX_VALUE - offset) ? Long.MAX_VALUE : offset + length;
+		List<ByteBuffer> cached = new ArrayList<ByteBuffer>();
+		FileChannel channel = null;
+		try {
+			// Take hold of the cached regions that the read starts with, and
+			// open the file if they don't cover the whole read, before
+			// anything is written. A missing blob then fails up front, and
+			// deleting the blob later on (e.g., when the TieredVideoBlobStore
+			// demotes it) doesn't cut the read short, since both mappings and
+			// open files outlive the file's name.
+			long position = offset;
+			while (position < end) {
+				long index = position / MAP_REGION_SIZE;
+				ByteBuffer region = cache.get(key, index);
+				if (region == null) {
+					channel = open(key);
+					break;
+				}
+				cached.add(region);
+				if (region.capacity() < MAP_REGION_SIZE) {
+					break;
+				}
+				position = (index + 1) * MAP_REGION_SIZE;
+			}
+
+			position = offset;
+			int next = 0;
+			while (position < end) {
+				long index = position / MAP_REGION_SIZE;
+				long start = index * MAP_REGION_SIZE;
+				ByteBuffer region;
+				if (next < cached.size()) {
+					region = cached.get(next++);
+				} else if (channel != null) {
+					long size = Math.min(MAP_REGION_SIZE, channel.size() - start);
+					if (size <= 0) {
+						break;
+					}
+					MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, start, size);
+					cache.put(key, index, mapped);
+					region = mapped.duplicate();
+				} else {
+					break;
+				}
+
+				int from = (int) (position - start);
+				if (from >= region.capacity()) {
+					break;
+				}
+				int to = (int) Math.min(region.capacity(), end - start);
+				region.limit(to);
+				region.position(from);
+				while (region.hasRemaining()) {
+					target.write(region);
+				}
+				position = start + to;
+				if (region.capacity() < MAP_REGION_SIZE) {
+					// This was the last region of the blob
+					break;
+				}
+			}
+			return position - offset;
+		} finally {
+			if (channel != null) {
+				channel.close();
+			}
+		}
+	}
+
+	@Override
+	public void delete(String key) throws IOException {
+		super.delete(key);
+		cache.evict(key);
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+/**
+ * A VideoBlobStore that keeps each blob as an object in a bucket of Amazon
+ * S3 or of any store that speaks the S3 protocol (e.g., MinIO or Ceph),
+ * named after its key under a prefix (e.g., "blobs/").
+ * 
+ * Reads of part of a blob are sent as ranged GET requests, so serving a
+ * range from the middle of a video never downloads the bytes that precede
+ * it. Errors from the client are turned into IOExceptions, so callers can
+ * treat this store like the local ones.
+ * 
+ * The VideoFileManager deletes the blobs that its journal doesn't refer to
+ * when it starts, so the prefix must belong to a single server. It can't be
+ * empty, and only the objects directly under it whose names are blob keys
+ * are listed, so other data in the bucket is never mistaken for a blob.
+ * 
+ * @author jules
+ *
+ */
+public class S3VideoBlobStore implements VideoBlobStore {
+
+	private final AmazonS3 s3;
+	private final String bucket;
+	private final String prefix;
+
+	public S3VideoBlobStore(AmazonS3 s3, String bucket, String prefix) {
+		this.s3 = s3;
+		this.bucket = bucket;
+		if (prefix == null || prefix.isEmpty()) {
+			throw new IllegalArgumentException("The blobs need a prefix of their own in " + bucket);
+		}
+		this.prefix = prefix;
+	}
+
+	@Override
+	public void put(String key, Path file) throws IOException {
+		try {
+			s3.putObject(bucket, prefix + key, file.toFile());
+		} catch (AmazonClientException e) {
+			throw new IOException("Unable to store the blob " + key, e);
+		}
+	}
+
+	@Override
+	public long read(String key, long offset, long length, OutputStream out)
+			throws IOException {
+		if (length <= 0) {
+			return 0;
+		}
+		GetObjectRequest request = new GetObjectRequest(bucket, prefix + key);
+		if (offset > 0 || length < Long.MAX_VALUE) {
+			// The end of a range is inclusive, and S3 stops at the end of
+			// the object if the range goes past it
+			long last = (length > Long.MAX_VALUE - offset) ? Long.MAX_VALUE - 1 : offset + length - 1;
+			request.setRange(offset, last);
+		}
+
+		S3Object object;
+		try {
+			object = s3.getObject(request);
+		} catch (AmazonS3Exception e) {
+			if (e.getStatusCode() == 404) {
+				throw new FileNotFoundException("Unable to find the referenced blob:" + key);
+			} else if (e.getStatusCode() == 416) {
+				// The range starts past the end of the blob
+				return 0;
+			}
+			throw new IOException("Unable to read the blob " + key, e);
+		} catch (AmazonClientException e) {
+			throw new IOException("Unable to read the blob " + key, e);
+		}
+		try (InputStream in = object.getObjectContent()) {
+			return IOUtils.copyLarge(in, out);
+		}
+	}
+
+	@Override
+	public void delete(String key) throws IOException {
+		try {
+			s3.deleteObject(bucket, prefix + key);
+		} catch (AmazonClientException e) {
+			throw new IOException("Unable to delete the blob " + key, e);
+		}
+	}
+
+	@Override
+	public Map<String, Long> list() throws IOException {
+		Map<String, Long> blobs = new HashMap<String, Long>();
+		try {
+			ObjectListing listing = s3.listObjects(new ListObjectsRequest()
+					.withBucketName(bucket).withPrefix(prefix));
+			while (true) {
+				for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+					String key = summary.getKey().substring(prefix.length());
+					if (key.matches(KEY_PATTERN)) {
+						blobs.put(key, summary.getSize());
+					}
+				}
+				if (!listing.isTruncated()) {
+					return blobs;
+				}
+				listing = s3.listNextBatchOfObjects(listing);
+			}
+		} catch (AmazonClientException e) {
+			throw new IOException("Unable to list the blobs", e);
+		}
+	}
+
+}
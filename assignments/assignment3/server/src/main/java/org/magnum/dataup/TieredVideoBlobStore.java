@@ -0,0 +1,349 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A VideoBlobStore that keeps the blobs that are being read in a fast "hot"
+ * store (e.g., a MappedVideoBlobStore on a local SSD) and all of the others
+ * in a slow, but larger and cheaper, "cold" store (e.g., an S3VideoBlobStore).
+ * 
+ * New blobs are put in the hot store. Once the blobs in the hot store take
+ * up more than hotCapacity bytes, the least recently read ones are copied
+ * to the cold store and removed from the hot one, in the background on the
+ * provided executor. Reading a blob that is only in the cold store first
+ * copies the whole blob back into the hot store, so the popular videos are
+ * always served from the fast store and the cold store only sees the first
+ * read of a video that hasn't been watched in a while.
+ * 
+ * A blob is always in at least one of the stores: it is only removed from
+ * the hot store once it has been copied to the cold one. A read that races
+ * with the demotion of its blob falls back to the cold store. If blobs can't
+ * be copied to the cold store (e.g., because it is down), the hot store
+ * keeps them and the next put or promotion tries again, after a delay that
+ * doubles with every failure in a row.
+ * 
+ * @author jules
+ *
+ */
+public class TieredVideoBlobStore implements VideoBlobStore {
+
+	private static final Logger log = LoggerFactory.getLogger(TieredVideoBlobStore.class);
+
+	// How long to wait before moving blobs to the cold store again after
+	// the first failure in a row, and after any number of failures
+	private static final long MIN_DEMOTION_BACKOFF = TimeUnit.SECONDS.toNanos(1);
+	private static final long MAX_DEMOTION_BACKOFF = TimeUnit.MINUTES.toNanos(1);
+
+	private final VideoBlobStore hot;
+	private final VideoBlobStore cold;
+	private final long hotCapacity;
+	private final Path spoolDir;
+	private final Executor demotions;
+
+	// The sizes of the blobs in the hot store, in the order that they were
+	// last read or put, least recently used first. Guarded by this.
+	private final LinkedHashMap<String, Long> hotBlobs = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long hotBytes;
+
+	// The sizes of the blobs in the cold store
+	private final ConcurrentMap<String, Long> coldBlobs = new ConcurrentHashMap<String, Long>();
+
+	private final AtomicBoolean demoting = new AtomicBoolean();
+
+	// When demotions may be tried again after a failure (in System.nanoTime()
+	// terms), and how long the next failure makes them wait. The backoff is
+	// only changed by the running demotion, which the demoting flag keeps
+	// to one at a time.
+	private volatile long demotionRetryAt;
+	private volatile boolean demotionFailed;
+	private long demotionBackoff = MIN_DEMOTION_BACKOFF;
+
+	private final AtomicLong promotionCount = new AtomicLong();
+	private final AtomicLong demotionCount = new AtomicLong();
+
+	/**
+	 * @param hot
+	 *            the store that the recently read blobs are served from
+	 * @param cold
+	 *            the store that every other blob is kept in
+	 * @param hotCapacity
+	 *            how many bytes of blobs the hot store may keep
+	 * @param spoolDir
+	 *            a local directory that blobs are copied through when they
+	 *            are moved from the cold store to the hot one
+	 * @param demotions
+	 *            the executor that moves blobs to the cold store
+	 * @throws IOException
+	 */
+	public TieredVideoBlobStore(VideoBlobStore hot, VideoBlobStore cold,
+			long hotCapacity, Path spoolDir, Executor demotions) throws IOException {
+		this.hot = hot;
+		this.cold = cold;
+		this.hotCapacity = hotCapacity;
+		this.spoolDir = spoolDir;
+		this.demotions = demotions;
+
+		Files.createDirectories(spoolDir);
+		coldBlobs.putAll(cold.list());
+		for (Map.Entry<String, Long> blob : hot.list().entrySet()) {
+			track(blob.getKey(), blob.getValue());
+		}
+		scheduleDemotion();
+	}
+
+	public long getHotCapacity() {
+		return hotCapacity;
+	}
+
+	public synchronized long getHotBytes() {
+		return hotBytes;
+	}
+
+	// How many blobs have been copied from the cold store to the hot one
+	public long getPromotionCount() {
+		return promotionCount.get();
+	}
+
+	// How many blobs have been moved from the hot store to the cold one
+	public long getDemotionCount() {
+		return demotionCount.get();
+	}
+
+	@Override
+	public void put(String key, Path file) throws IOException {
+		long size = Files.size(file);
+		hot.put(key, file);
+		track(key, size);
+		scheduleDemotion();
+	}
+
+	@Override
+	public long read(String key, long offset, long length, OutputStream out)
+			throws IOException {
+		if (!touch(key)) {
+			promote(key);
+		}
+		CountingOutputStream counted = new CountingOutputStream(out);
+		try {
+			return hot.read(key, offset, length, counted);
+		} catch (FileNotFoundException e) {
+			// The blob was moved to the cold store after it was touched.
+			// The hot store shouldn't have written anything before failing,
+			// but if it did, the read carries on where it stopped rather
+			// than sending those bytes again.
+			long written = counted.getByteCount();
+			return written + cold.read(key, offset + written, length - written, out);
+		}
+	}
+
+	@Override
+	public void delete(String key) throws IOException {
+		// The blob leaves the cold store's list first, so that a promotion
+		// that finishes after this point sees it is gone
+		boolean inCold = coldBlobs.remove(key) != null;
+		forget(key);
+		hot.delete(key);
+		if (inCold) {
+			cold.delete(key);
+		}
+	}
+
+	@Override
+	public Map<String, Long> list() throws IOException {
+		Map<String, Long> blobs = new HashMap<String, Long>(coldBlobs);
+		synchronized (this) {
+			blobs.putAll(hotBlobs);
+		}
+		return blobs;
+	}
+
+	// Marks the blob as the most recently used one, if it is in the hot store
+	private synchronized boolean touch(String key) {
+		return hotBlobs.get(key) != null;
+	}
+
+	private synchronized void forget(String key) {
+		Long size = hotBlobs.remove(key);
+		if (size != null) {
+			hotBytes -= size;
+		}
+	}
+
+	private synchronized void track(String key, long size) {
+		Long previous = hotBlobs.put(key, size);
+		hotBytes += size - (previous != null ? previous : 0);
+	}
+
+	// Copies a blob from the cold store into the hot one. Two reads of the
+	// same cold blob may both copy it, which only costs a second download,
+	// since both copies have the same content. A blob that is deleted while
+	// it is being copied is removed from the hot store again rather than
+	// being tracked there with no cold copy behind it.
+	private void promote(String key) throws IOException {
+		Long size = coldBlobs.get(key);
+		if (size == null) {
+			throw new FileNotFoundException("Unable to find the referenced blob:" + key);
+		}
+		Path spool = Files.createTempFile(spoolDir, key, ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(spool)) {
+				cold.read(key, 0, Long.MAX_VALUE, out);
+			}
+			hot.put(key, spool);
+		} finally {
+			Files.deleteIfExists(spool);
+		}
+		boolean deleted;
+		synchronized (this) {
+			deleted = !coldBlobs.containsKey(key);
+			if (!deleted) {
+				track(key, size);
+			} else if (hotBlobs.containsKey(key)) {
+				// It was deleted and then put again while it was copied
+				return;
+			}
+		}
+		if (deleted) {
+			hot.delete(key);
+			throw new FileNotFoundException("Unable to find the referenced blob:" + key);
+		}
+		promotionCount.incrementAndGet();
+		scheduleDemotion();
+	}
+
+	private void scheduleDemotion() {
+		if (demotionFailed && System.nanoTime() - demotionRetryAt < 0) {
+			return;
+		}
+		if (needsDemotion() && demoting.compareAndSet(false, true)) {
+			demotions.execute(new Runnable() {
+				@Override
+				public void run() {
+					boolean failed = false;
+					try {
+						demote();
+						demotionFailed = false;
+						demotionBackoff = MIN_DEMOTION_BACKOFF;
+					} catch (IOException e) {
+						// The next put or promotion after the backoff tries
+						// again, rather than this task spinning on a store
+						// that is down
+						log.error("Unable to move blobs to the cold store, retrying in "
+								+ TimeUnit.NANOSECONDS.toMillis(demotionBackoff) + "ms", e);
+						demotionRetryAt = System.nanoTime() + demotionBackoff;
+						demotionFailed = true;
+						demotionBackoff = Math.min(2 * demotionBackoff, MAX_DEMOTION_BACKOFF);
+						failed = true;
+					} finally {
+						demoting.set(false);
+					}
+					// Blobs may have been added after the last check in demote()
+					// but before the flag was cleared
+					if (!failed && needsDemotion()) {
+						scheduleDemotion();
+					}
+				}
+			});
+		}
+	}
+
+	// The blob that was read most recently stays in the hot store, even if it
+	// is larger than the capacity on its own, so that it can still be served
+	private synchronized boolean needsDemotion() {
+		return hotBytes > hotCapacity && hotBlobs.size() > 1;
+	}
+
+	private void demote() throws IOException {
+		while (needsDemotion()) {
+			Map.Entry<String, Long> eldest;
+			synchronized (this) {
+				eldest = hotBlobs.entrySet().iterator().next();
+			}
+			String key = eldest.getKey();
+			boolean copied = false;
+			if (!coldBlobs.containsKey(key)) {
+				try {
+					copyToCold(key);
+				} catch (FileNotFoundException e) {
+					// The blob was deleted before it could be copied
+					forget(key);
+					continue;
+				}
+				coldBlobs.put(key, eldest.getValue());
+				copied = true;
+			}
+
+			boolean deleted;
+			synchronized (this) {
+				deleted = !hotBlobs.containsKey(key);
+				if (!deleted) {
+					// Only drop the blob if it wasn't read while it was
+					// being copied
+					Iterator<Map.Entry<String, Long>> blobs = hotBlobs.entrySet().iterator();
+					if (!blobs.next().getKey().equals(key)) {
+						continue;
+					}
+					blobs.remove();
+					hotBytes -= eldest.getValue();
+				}
+			}
+			if (deleted) {
+				// The blob was deleted while it was being copied
+				if (copied && coldBlobs.remove(key) != null) {
+					cold.delete(key);
+				}
+				continue;
+			}
+			hot.delete(key);
+			demotionCount.incrementAndGet();
+		}
+	}
+
+	private void copyToCold(String key) throws IOException {
+		Path spool = Files.createTempFile(spoolDir, key, ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(spool)) {
+				hot.read(key, 0, Long.MAX_VALUE, out);
+			}
+			cold.put(key, spool);
+		} finally {
+			Files.deleteIfExists(spool);
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Adds how well the MappedRegionCache is doing to the metrics that the
+ * actuator sends back from /metrics, next to the memory, uptime, and
+ * request metrics that it already reports:
+ * 
+ * videos.blobs.cache.hitRatio      - the fraction of region lookups that hit
+ * videos.blobs.cache.hits          - region lookups that found the region mapped
+ * videos.blobs.cache.misses        - region lookups that had to map the region
+ * videos.blobs.cache.residentBytes - the bytes of the regions that are mapped
+ * videos.blobs.cache.capacity      - the most bytes that may be mapped
+ * 
+ * The cache is only used when videos.blobStore is mapped or tiered, so
+ * the counts stay at zero otherwise.
+ * 
+ * @author jules
+ *
+ */
+public class VideoBlobCacheMetrics implements PublicMetrics {
+
+	private final PublicMetrics defaults;
+
+	private final MappedRegionCache cache;
+
+	public VideoBlobCacheMetrics(PublicMetrics defaults, MappedRegionCache cache) {
+		this.defaults = defaults;
+		this.cache = cache;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>(defaults.metrics());
+		metrics.add(new Metric<Double>("videos.blobs.cache.hitRatio", cache.getHitRatio()));
+		metrics.add(new Metric<Long>("videos.blobs.cache.hits", cache.getHitCount()));
+		metrics.add(new Metric<Long>("videos.blobs.cache.misses", cache.getMissCount()));
+		metrics.add(new Metric<Long>("videos.blobs.cache.residentBytes", cache.getResidentBytes()));
+		metrics.add(new Metric<Long>("videos.blobs.cache.capacity", cache.getCapacity()));
+		return metrics;
+	}
+
+}
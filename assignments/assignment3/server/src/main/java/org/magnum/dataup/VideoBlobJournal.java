@@ -0,0 +1,231 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An append-only log that maps video ids to the content-addressed blobs
+ * holding their binary data. The VideoFileManager appends a line every time
+ * the data of a video is stored as a blob, or is stored as a plain file
+ * again, and rebuilds the mapping by replaying the log when it starts.
+ * 
+ * A line is either "put {id} {digest} {size} {savedAt}" or "del {id}". When
+ * the log has grown to more than twice the number of videos it maps, or it
+ * ends in a line that was torn by a crash, it is rewritten with just the
+ * current mapping when it is opened.
+ * 
+ * Every line is forced to disk before put() or remove() returns, since the
+ * blob that a put refers to may be the only copy of a video's data.
+ * 
+ * @author jules
+ *
+ */
+public class VideoBlobJournal {
+
+	/**
+	 * The blob that holds the data of one video, together with the size of
+	 * the data and the time at which it was saved for that video.
+	 */
+	public static class Entry {
+
+		private final String digest;
+		private final long size;
+		private final long savedAt;
+
+		public Entry(String digest, long size, long savedAt) {
+			this.digest = digest;
+			this.size = size;
+			this.savedAt = savedAt;
+		}
+
+		public String getDigest() {
+			return digest;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getSavedAt() {
+			return savedAt;
+		}
+
+	}
+
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+	private static final String PUT = "put";
+
+	private static final String DELETE = "del";
+
+	// Small logs are never compacted
+	private static final int MIN_COMPACTION_LINES = 1024;
+
+	private final Path file_;
+
+	private FileChannel channel_;
+
+	public VideoBlobJournal(Path file) {
+		file_ = file;
+	}
+
+	/**
+	 * Replays the log, compacting it if needed, and opens it for appending.
+	 * 
+	 * @return the current mapping from video ids to blobs
+	 * @throws IOException
+	 */
+	public synchronized Map<Long, Entry> open() throws IOException {
+		Map<Long, Entry> entries = new HashMap<>();
+		int lines = 0;
+		boolean torn = false;
+		if (Files.exists(file_)) {
+			try (BufferedReader reader = Files.newBufferedReader(file_, CHARSET)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					lines++;
+					torn = !replay(line, entries);
+				}
+			}
+		}
+
+		if (torn || (lines > MIN_COMPACTION_LINES && lines > 2 * entries.size())) {
+			compact(entries);
+		}
+		boolean created = !Files.exists(file_);
+		channel_ = FileChannel.open(file_, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		if (created) {
+			forceDirectory(file_.getParent());
+		}
+		return entries;
+	}
+
+	/**
+	 * Closes the log. It has to be opened again before anything else can be
+	 * recorded.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if (channel_ != null) {
+			channel_.close();
+			channel_ = null;
+		}
+	}
+
+	/**
+	 * Records that the data of the given video is now the blob with the given
+	 * digest.
+	 * 
+	 * @param id
+	 * @param entry
+	 * @throws IOException
+	 */
+	public synchronized void put(long id, Entry entry) throws IOException {
+		append(formatPut(id, entry));
+	}
+
+	/**
+	 * Records that the data of the given video is no longer stored as a blob.
+	 * 
+	 * @param id
+	 * @throws IOException
+	 */
+	public synchronized void remove(long id) throws IOException {
+		append(DELETE + " " + id);
+	}
+
+	private void append(String line) throws IOException {
+		if (channel_ == null) {
+			throw new IllegalStateException("The blob journal has not been opened");
+		}
+		ByteBuffer bytes = CHARSET.encode(line + "\n");
+		while (bytes.hasRemaining()) {
+			channel_.write(bytes);
+		}
+		channel_.force(false);
+	}
+
+	private static String formatPut(long id, Entry entry) {
+		return PUT + " " + id + " " + entry.getDigest() + " " + entry.getSize()
+				+ " " + entry.getSavedAt();
+	}
+
+	// Applies one line of the log to the mapping and returns false if the
+	// line is not well-formed
+	private static boolean replay(String line, Map<Long, Entry> entries) {
+		String[] fields = line.split(" ");
+		try {
+			if (fields.length == 5 && PUT.equals(fields[0])) {
+				entries.put(Long.parseLong(fields[1]), new Entry(fields[2],
+						Long.parseLong(fields[3]), Long.parseLong(fields[4])));
+				return true;
+			} else if (fields.length == 2 && DELETE.equals(fields[0])) {
+				entries.remove(Long.parseLong(fields[1]));
+				return true;
+			}
+		} catch (NumberFormatException e) {
+			// Fall through
+		}
+		return false;
+	}
+
+	// Rewrites the log with just the given mapping and atomically replaces
+	// the old log with it once the new one is on disk
+	private void compact(Map<Long, Entry> entries) throws IOException {
+		Path temp = file_.resolveSibling(file_.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, CHARSET)) {
+			for (Map.Entry<Long, Entry> e : entries.entrySet()) {
+				writer.write(formatPut(e.getKey(), e.getValue()));
+				writer.write('\n');
+			}
+		}
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+		Files.move(temp, file_, StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		forceDirectory(file_.getParent());
+	}
+
+	// Makes a rename in the given directory durable. Not every platform
+	// can open a directory, in which case the rename is left to the file
+	// system.
+	private static void forceDirectory(Path dir) {
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// Not supported here
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * A place to keep the content-addressed blobs of video data that the
+ * VideoFileManager stores when it deduplicates videos. Each blob is keyed by
+ * the hex encoded SHA-256 digest of its content, so a blob never changes
+ * once it has been put: it is only ever read, replaced by identical data, or
+ * deleted. That is what lets a blob live anywhere from the local disk to an
+ * object store such as S3.
+ * 
+ * The implementations are LocalVideoBlobStore (plain files),
+ * MappedVideoBlobStore (plain files that are read through memory mappings),
+ * S3VideoBlobStore (an S3-compatible object store) and TieredVideoBlobStore,
+ * which keeps the recently read blobs of a slow store in a fast one. The
+ * one that is used is picked in Application.videoBlobStore().
+ * 
+ * Implementations must be safe to use from many threads at once.
+ * 
+ * @author jules
+ *
+ */
+public interface VideoBlobStore {
+
+	/**
+	 * The pattern that every blob key matches. Keys are hex digests, so a
+	 * store that shares its space with other data (e.g., a bucket) can tell
+	 * its blobs apart from everything else.
+	 */
+	public static final String KEY_PATTERN = "[0-9a-fA-F]{4,}";
+
+	/**
+	 * Stores the content of a fully written local file as the blob with the
+	 * given key, replacing any blob that already has the key. The store may
+	 * take the file over (e.g., by renaming it into place). If the file still
+	 * exists when this method returns, the caller deletes it.
+	 * 
+	 * @param key
+	 * @param file
+	 * @throws IOException
+	 */
+	public void put(String key, Path file) throws IOException;
+
+	/**
+	 * Streams up to length bytes of the blob with the given key, starting at
+	 * the given offset, to the provided output stream. If there is no blob
+	 * with the key, this method will throw a FileNotFoundException before
+	 * anything is written.
+	 * 
+	 * @param key
+	 * @param offset
+	 * @param length
+	 * @param out
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	public long read(String key, long offset, long length, OutputStream out)
+			throws IOException;
+
+	/**
+	 * Deletes the blob with the given key, if there is one.
+	 * 
+	 * @param key
+	 * @throws IOException
+	 */
+	public void delete(String key) throws IOException;
+
+	/**
+	 * Returns the size of every blob in the store, keyed by blob key. Only
+	 * entries whose names match KEY_PATTERN are returned, since the
+	 * VideoFileManager calls this once, when it starts, to find the blobs
+	 * that its journal refers to and deletes the ones that it doesn't.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public Map<String, Long> list() throws IOException;
+
+}
@@ -0,0 +1,71 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.nio.file.Path;
+
+/**
+ * An immutable snapshot of the location and metadata of a stored video
+ * file, as kept in the in-memory index of the VideoFileManager. The checksum
+ * is the hex encoded SHA-256 digest of the file, or null if it has not been
+ * computed yet. The data of a video stored in content-addressed mode has no
+ * path: it is the blob in the VideoBlobStore keyed by its checksum.
+ * 
+ * @author jules
+ *
+ */
+public class VideoFileInfo {
+
+	private final Path path;
+	private final long size;
+	private final long lastModified;
+	private final String checksum;
+
+	public VideoFileInfo(Path path, long size, long lastModified,
+			String checksum) {
+		this.path = path;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.checksum = checksum;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public String getChecksum() {
+		return checksum;
+	}
+
+	public VideoFileInfo withChecksum(String checksum) {
+		return new VideoFileInfo(path, size, lastModified, checksum);
+	}
+
+	public VideoFileInfo withPath(Path path) {
+		return new VideoFileInfo(path, size, lastModified, checksum);
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.nio.file.Path;
+
+/**
+ * This class decides where the file for a video lives inside the "videos"
+ * folder.
+ * 
+ * A depth of zero gives the original flat layout, where every video is
+ * stored directly in the folder as video{id}.mpg. A positive depth spreads
+ * the files over that many levels of sub folders named after two hex digits
+ * of a hash of the video id (e.g., videos/3f/video42.mpg for a depth of
+ * one, or videos/3f/a2/video42.mpg for a depth of two). Each level has at
+ * most 256 sub folders, so with a depth of one a million videos end up
+ * roughly 4000 to a folder, which keeps directory listings, backups and
+ * file creation fast on file systems such as ext4 and xfs. Deeper layouts
+ * only pay off for far larger stores, since every extra level adds a
+ * folder to create and look up.
+ * 
+ * @author jules
+ *
+ */
+public class VideoFileLayout {
+
+	public static final int MAX_DEPTH = 4;
+
+	private static final String PREFIX = "video";
+
+	private static final String SUFFIX = ".mpg";
+
+	private final int depth;
+
+	public VideoFileLayout(int depth) {
+		if (depth < 0 || depth > MAX_DEPTH) {
+			throw new IllegalArgumentException("The shard depth must be between 0 and "
+					+ MAX_DEPTH + " but was " + depth);
+		}
+		this.depth = depth;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns the path of the file for the given video id inside the root
+	 * folder.
+	 * 
+	 * @param root
+	 * @param id
+	 * @return
+	 */
+	public Path resolve(Path root, long id) {
+		Path dir = root;
+		long hash = mix(id);
+		for (int level = 0; level < depth; level++) {
+			int bucket = (int) ((hash >>> (56 - 8 * level)) & 0xff);
+			dir = dir.resolve(String.format("%02x", bucket));
+		}
+		return dir.resolve(getFileName(id));
+	}
+
+	/**
+	 * Returns the name of the file for the given video id, which is the same
+	 * in every layout.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public static String getFileName(long id) {
+		return PREFIX + id + SUFFIX;
+	}
+
+	/**
+	 * Returns the video id encoded in the name of a video file, or -1 if the
+	 * file is not a video file.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public static long parseId(Path file) {
+		String name = file.getFileName().toString();
+		if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(name.substring(PREFIX.length(),
+					name.length() - SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	// The finalizer of MurmurHash3, which spreads sequential ids evenly
+	// across the hash bits so neighbouring videos land in different folders
+	private static long mix(long id) {
+		long h = id;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
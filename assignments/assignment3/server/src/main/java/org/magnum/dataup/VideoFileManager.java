@@ -20,51 +20,538 @@ package org.magnum.dataup;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.codec.binary.Hex;
 import org.magnum.dataup.model.Video;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
  * This class provides a simple implementation to store video binary
  * data on the file system in a "videos" folder. The class provides
  * methods for saving videos and retrieving their binary data.
  * 
+ * The size, modification time and checksum of every stored video file
+ * are kept in an in-memory index. The index is warmed by scanning the
+ * "videos" folder when the VideoFileManager is created and is updated
+ * whenever video data is written, so existence checks and Content-Length
+ * lookups never touch the file system. A single VideoFileManager should
+ * be shared by the whole application (see Application.videoFileManager()).
+ * 
+ * Video files are spread over hash-prefixed sub folders as described by
+ * VideoFileLayout. The index records where each file actually is, so files
+ * written under a different layout (e.g., the original flat one) can still
+ * be served while they are moved into place by migrateLayout().
+ * 
+ * In content-addressed (deduplicating) mode, video data is hashed while it
+ * is streamed in and stored once per distinct content as a blob in a
+ * VideoBlobStore, keyed by its SHA-256 digest. By default the blobs are
+ * files in a "blobs" folder, but they can just as well live in an object
+ * store such as S3 (see Application.videoBlobStore()). Videos map to blobs
+ * through the index, which is persisted in a VideoBlobJournal in the "blobs"
+ * folder, and every blob counts the videos that refer to it, so a blob is
+ * deleted with its last reference.
+ * Uploading a clip that is already stored only costs the temporary copy
+ * that was hashed. Videos stored before the mode was enabled keep their
+ * plain files until their data is saved again.
+ * 
  * @author jules
  *
  */
 public class VideoFileManager {
 
+	private static final Logger log = LoggerFactory.getLogger(VideoFileManager.class);
+
 	/**
 	 * This static factory method creates and returns a 
-	 * VideoFileManager object to the caller. Feel free to customize
-	 * this method to take parameters, etc. if you want.
+	 * VideoFileManager object to the caller. Creating a VideoFileManager
+	 * scans the "videos" folder, so this method should only be called
+	 * once, when the application starts.
 	 * 
 	 * @return
 	 * @throws IOException
 	 */
 	public static VideoFileManager get() throws IOException {
-		return new VideoFileManager();
+		return get(Paths.get("videos"), DEFAULT_SHARD_DEPTH, false);
 	}
 	
-	private Path targetDir_ = Paths.get("videos");
+	/**
+	 * This static factory method creates a VideoFileManager that stores
+	 * videos in the given folder using the given number of levels of
+	 * hash-prefixed sub folders (zero means a flat folder). If the folder
+	 * already contains video files that are not where the layout wants them,
+	 * they are migrated in a background thread while the VideoFileManager is
+	 * in use. If deduplicate is true, newly saved video data is stored in
+	 * content-addressed blobs that are shared by videos with the same data.
+	 * 
+	 * @param targetDir
+	 * @param shardDepth
+	 * @param deduplicate
+	 * @return
+	 * @throws IOException
+	 */
+	public static VideoFileManager get(Path targetDir, int shardDepth,
+			boolean deduplicate) throws IOException {
+		return get(targetDir, shardDepth, deduplicate,
+				new LocalVideoBlobStore(targetDir.resolve("blobs")));
+	}
+	
+	/**
+	 * This static factory method creates a VideoFileManager like the one
+	 * above, which keeps the content-addressed blobs of its videos in the
+	 * given VideoBlobStore rather than in the "blobs" folder. The store must
+	 * not be shared with another VideoFileManager, since blobs that none of
+	 * this manager's videos refer to are deleted when it starts.
+	 * 
+	 * @param targetDir
+	 * @param shardDepth
+	 * @param deduplicate
+	 * @param blobStore
+	 * @return
+	 * @throws IOException
+	 */
+	public static VideoFileManager get(Path targetDir, int shardDepth,
+			boolean deduplicate, VideoBlobStore blobStore) throws IOException {
+		final VideoFileManager manager = new VideoFileManager(targetDir,
+				new VideoFileLayout(shardDepth), deduplicate, blobStore);
+		if(manager.needsMigration()){
+			Thread migration = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						int moved = manager.migrateLayout();
+						log.info("Migrated {} video files", moved);
+					} catch (IOException e) {
+						log.error("Video layout migration failed", e);
+					}
+				}
+			}, "video-layout-migration");
+			migration.setDaemon(true);
+			migration.start();
+		}
+		return manager;
+	}
+	
+	// The maximum number of bytes handed to a single transferTo() call
+	// when streaming video data to a client
+	private static final long TRANSFER_CHUNK_SIZE = 64 * 1024;
+	
+	private static final String CHECKSUM_ALGORITHM = "SHA-256";
+	
+	private static final int DEFAULT_SHARD_DEPTH = 1;
+	
+	// Writes and moves of the file of a single video are serialized
+	// through one of these locks
+	private static final int LOCK_STRIPES = 64;
+
+	private final Path targetDir_;
+	
+	// Partially uploaded video data is kept here until the upload is
+	// completed. It lives inside the videos folder so that completing an
+	// upload is a rename on the same file system.
+	private final Path uploadDir_;
+	
+	private final VideoFileLayout layout_;
+	
+	// The journal that maps videos to their content-addressed blobs lives
+	// here, as do the blobs themselves when they are kept on the local disk
+	private final Path blobDir_;
+	
+	private final boolean deduplicate_;
+	
+	private final VideoBlobStore blobStore_;
+	
+	private final VideoBlobJournal journal_;
+	
+	// The number of videos whose data is each stored blob, keyed by digest.
+	// A count is changed while holding the lock that blobLockFor() returns
+	// for its digest.
+	private final ConcurrentMap<String, Integer> blobRefs_ = new ConcurrentHashMap<String, Integer>();
+	
+	// The puts and deletes of blobs that are running, keyed by digest. They
+	// run without holding any lock, so a slow blob store doesn't hold up the
+	// other videos; a thread that wants to change the count of a digest
+	// waits for the put or delete of that digest to finish first. Entries
+	// are added and removed while holding the lock for their digest.
+	private final ConcurrentMap<String, CountDownLatch> blobTransfers_ = new ConcurrentHashMap<String, CountDownLatch>();
+	
+	// The running digests of the uploads that are in progress, keyed by the
+	// path of their part file
+	private final ConcurrentMap<Path, UploadDigest> uploadDigests_ = new ConcurrentHashMap<Path, UploadDigest>();
+	
+	// Deletes the uploads that have been abandoned, once startUploadExpiry()
+	// has been called
+	private ScheduledExecutorService uploadExpiry_;
+	
+	// The location and metadata of every stored video file, keyed by video id
+	private final ConcurrentMap<Long, VideoFileInfo> index_ = new ConcurrentHashMap<Long, VideoFileInfo>();
+	
+	private final Object[] locks_ = new Object[LOCK_STRIPES];
+	
+	// Changes to the count of the blob with a given digest are serialized
+	// through one of these locks, which is never held while the blob store
+	// is called or while taking the lock on a video id.
+	private final Object[] blobLocks_ = new Object[LOCK_STRIPES];
 	
 	// The VideoFileManager.get() method should be used
 	// to obtain an instance
-	private VideoFileManager() throws IOException{
-		if(!Files.exists(targetDir_)){
-			Files.createDirectories(targetDir_);
+	private VideoFileManager(Path targetDir, VideoFileLayout layout,
+			boolean deduplicate, VideoBlobStore blobStore) throws IOException{
+		targetDir_ = targetDir;
+		uploadDir_ = targetDir.resolve("uploads");
+		layout_ = layout;
+		blobDir_ = targetDir.resolve("blobs");
+		deduplicate_ = deduplicate;
+		blobStore_ = blobStore;
+		journal_ = new VideoBlobJournal(blobDir_.resolve("journal"));
+		for(int i = 0; i < locks_.length; i++){
+			locks_[i] = new Object();
+			blobLocks_[i] = new Object();
+		}
+		
+		if(!Files.exists(uploadDir_)){
+			Files.createDirectories(uploadDir_);
+		}
+		scanVideoFiles();
+		
+		// Blobs stored in content-addressed mode are still served after the
+		// mode is switched off
+		if(deduplicate_ || Files.exists(blobDir_)){
+			Files.createDirectories(blobDir_);
+			loadBlobs();
+		}
+	}
+	
+	// Adds every video file that is already in the "videos" folder, at any
+	// shard depth, to the index. Checksums are not computed here, since that
+	// would mean reading every stored video at startup; they are filled in on
+	// first use.
+	private void scanVideoFiles() throws IOException {
+		Files.walkFileTree(targetDir_, EnumSet.noneOf(FileVisitOption.class),
+				VideoFileLayout.MAX_DEPTH + 1, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				return dir.equals(uploadDir_) || dir.equals(blobDir_)
+						? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				long id = VideoFileLayout.parseId(file);
+				if(id >= 0 && attrs.isRegularFile()){
+					// If a video is found in two places, the copy that is
+					// where the layout wants it wins
+					VideoFileInfo existing = index_.get(id);
+					if(existing == null || !existing.getPath().equals(layout_.resolve(targetDir_, id))){
+						index_.put(id, new VideoFileInfo(file, attrs.size(), attrs.lastModifiedTime().toMillis(), null));
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+	
+	// Replays the blob journal into the index and the reference counts, and
+	// deletes blobs that no video refers to, which are left behind when the
+	// server stops between storing a blob and journaling it
+	private void loadBlobs() throws IOException {
+		for(Map.Entry<Long, VideoBlobJournal.Entry> e : journal_.open().entrySet()){
+			long id = e.getKey();
+			VideoBlobJournal.Entry entry = e.getValue();
+			
+			// A plain file that was saved after the blob wins
+			VideoFileInfo file = index_.get(id);
+			if(file != null && file.getLastModified() > entry.getSavedAt()){
+				journal_.remove(id);
+				continue;
+			}
+			
+			index_.put(id, new VideoFileInfo(null, entry.getSize(), entry.getSavedAt(), entry.getDigest()));
+			Integer refs = blobRefs_.get(entry.getDigest());
+			blobRefs_.put(entry.getDigest(), refs == null ? 1 : refs + 1);
+			if(file != null){
+				Files.deleteIfExists(file.getPath());
+			}
+		}
+		
+		// The store only lists the keys that look like blobs, so nothing
+		// else that shares it is deleted
+		Set<String> found = new HashSet<String>();
+		for(String digest : blobStore_.list().keySet()){
+			if(blobRefs_.containsKey(digest)){
+				found.add(digest);
+			} else {
+				blobStore_.delete(digest);
+			}
+		}
+		
+		// A blob that isn't listed is reported but its videos are kept, since
+		// the listing of an object store can lag behind recent writes. If it
+		// really is gone, reading it fails with a FileNotFoundException.
+		for(Map.Entry<Long, VideoFileInfo> e : index_.entrySet()){
+			String digest = e.getValue().getChecksum();
+			if(isBlob(e.getValue()) && !found.contains(digest)){
+				log.warn("Missing blob {} for video {}", digest, e.getKey());
+			}
 		}
 	}
 	
-	// Private helper method for resolving video file paths
-	private Path getVideoPath(Video v){
+	// Records the location, current size and modification time of a video file
+	private void indexVideoFile(long id, Path file, String checksum) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+		index_.put(id, new VideoFileInfo(file, attrs.size(), attrs.lastModifiedTime().toMillis(), checksum));
+	}
+	
+	// Atomically moves a fully written file into place as the data of the
+	// given video and records it in the index
+	private void moveIntoPlace(long id, Path source, String checksum) throws IOException {
+		Path target = layout_.resolve(targetDir_, id);
+		VideoFileInfo previous;
+		synchronized (lockFor(id)) {
+			moveFile(source, target, true);
+			previous = index_.get(id);
+			indexVideoFile(id, target, checksum);
+			if(previous != null && isBlob(previous)){
+				journal_.remove(id);
+			}
+		}
+		releaseVideoFile(previous, target);
+	}
+	
+	// Makes the content-addressed blob with the given digest the data of the
+	// given video. A reference to the blob is reserved first; if no video
+	// referred to it yet, the fully written source file is put in the blob
+	// store, and the reservation is rolled back if that fails. Either way,
+	// whatever is left of the source file is for the caller to delete.
+	private void storeBlob(long id, Path source, String digest) throws IOException {
+		long size = Files.size(source);
+		CountDownLatch put = reserveBlob(digest);
+		if(put != null){
+			try {
+				blobStore_.put(digest, source);
+			} catch (IOException | RuntimeException e) {
+				synchronized (blobLockFor(digest)) {
+					blobRefs_.remove(digest);
+				}
+				throw e;
+			} finally {
+				finishBlobTransfer(digest, put);
+			}
+		}
+		
+		VideoFileInfo previous;
+		try {
+			synchronized (lockFor(id)) {
+				VideoBlobJournal.Entry entry = new VideoBlobJournal.Entry(digest, size, System.currentTimeMillis());
+				journal_.put(id, entry);
+				previous = index_.put(id, new VideoFileInfo(null, size, entry.getSavedAt(), digest));
+			}
+		} catch (IOException | RuntimeException e) {
+			releaseBlob(digest);
+			throw e;
+		}
+		releaseVideoFile(previous, null);
+	}
+	
+	// Takes a reference to the blob with the given digest. If no video
+	// referred to it, the blob has to be put in the blob store and a latch
+	// is returned, which the caller hands to finishBlobTransfer() once the
+	// put is over; otherwise null is returned.
+	private CountDownLatch reserveBlob(String digest) throws IOException {
+		while(true){
+			CountDownLatch running;
+			synchronized (blobLockFor(digest)) {
+				running = blobTransfers_.get(digest);
+				if(running == null){
+					Integer refs = blobRefs_.get(digest);
+					blobRefs_.put(digest, refs == null ? 1 : refs + 1);
+					if(refs != null){
+						return null;
+					}
+					CountDownLatch put = new CountDownLatch(1);
+					blobTransfers_.put(digest, put);
+					return put;
+				}
+			}
+			awaitBlobTransfer(running);
+		}
+	}
+	
+	// Drops a reference to the blob with the given digest, deleting the blob
+	// from the blob store along with its last reference
+	private void releaseBlob(String digest) throws IOException {
+		CountDownLatch delete = null;
+		while(delete == null){
+			CountDownLatch running;
+			synchronized (blobLockFor(digest)) {
+				running = blobTransfers_.get(digest);
+				if(running == null){
+					Integer refs = blobRefs_.get(digest);
+					if(refs != null && refs > 1){
+						blobRefs_.put(digest, refs - 1);
+						return;
+					}
+					blobRefs_.remove(digest);
+					delete = new CountDownLatch(1);
+					blobTransfers_.put(digest, delete);
+				}
+			}
+			if(running != null){
+				awaitBlobTransfer(running);
+			}
+		}
+		try {
+			blobStore_.delete(digest);
+		} finally {
+			finishBlobTransfer(digest, delete);
+		}
+	}
+	
+	private void finishBlobTransfer(String digest, CountDownLatch transfer) {
+		synchronized (blobLockFor(digest)) {
+			blobTransfers_.remove(digest);
+		}
+		transfer.countDown();
+	}
+	
+	private static void awaitBlobTransfer(CountDownLatch transfer) throws IOException {
+		try {
+			transfer.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the blob store");
+		}
+	}
+	
+	// Lets go of the data that a video had before it was replaced: a blob
+	// loses a reference and is deleted with its last one, while a plain file
+	// left behind under another path (e.g., an older layout) is deleted
+	private void releaseVideoFile(VideoFileInfo previous, Path current) throws IOException {
+		if(previous == null){
+			return;
+		}
+		if(isBlob(previous)){
+			releaseBlob(previous.getChecksum());
+		} else if(!previous.getPath().equals(current)){
+			Files.deleteIfExists(previous.getPath());
+			pruneEmptyDirectories(previous.getPath().getParent());
+		}
+	}
+	
+	// Blobs are found in the blob store by their digest, so they have no path
+	private boolean isBlob(VideoFileInfo info) {
+		return info.getPath() == null;
+	}
+	
+	// Renames a file, creating the shard folders of the target only when the
+	// first rename into them fails, which saves a directory walk per write
+	private void moveFile(Path source, Path target, boolean replace) throws IOException {
+		CopyOption[] options = replace
+				? new CopyOption[] { StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING }
+				: new CopyOption[] { StandardCopyOption.ATOMIC_MOVE };
+		try {
+			Files.move(source, target, options);
+		} catch (NoSuchFileException e) {
+			if(!Files.exists(source)){
+				throw e;
+			}
+			Files.createDirectories(target.getParent());
+			Files.move(source, target, options);
+		}
+	}
+	
+	// Opens the plain file of the given video for reading. If the file was
+	// moved by a layout migration after it was looked up, the index is
+	// consulted again.
+	private FileChannel openVideoFile(Video v, VideoFileInfo info) throws IOException {
+		try {
+			return FileChannel.open(info.getPath(), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			VideoFileInfo current = requireVideoFileInfo(v);
+			if(isBlob(current) || current.getPath().equals(info.getPath())){
+				throw new FileNotFoundException("Unable to find the referenced video file for videoId:"+v.getId());
+			}
+			return FileChannel.open(current.getPath(), StandardOpenOption.READ);
+		}
+	}
+	
+	// Deletes shard folders that were emptied by moving files out of them
+	private void pruneEmptyDirectories(Path dir) throws IOException {
+		while(dir != null && !dir.equals(targetDir_) && !dir.equals(blobDir_)
+				&& dir.startsWith(targetDir_)){
+			try {
+				Files.delete(dir);
+			} catch (DirectoryNotEmptyException | NoSuchFileException e) {
+				return;
+			}
+			dir = dir.getParent();
+		}
+	}
+	
+	private Object lockFor(long id) {
+		return locks_[(int) ((id & Long.MAX_VALUE) % locks_.length)];
+	}
+	
+	private Object blobLockFor(String digest) {
+		return blobLocks_[(digest.hashCode() & Integer.MAX_VALUE) % blobLocks_.length];
+	}
+	
+	// Returns the indexed metadata of the video's file, or throws a
+	// FileNotFoundException if the video has no binary data
+	private VideoFileInfo requireVideoFileInfo(Video v) throws FileNotFoundException {
+		VideoFileInfo info = index_.get(v.getId());
+		if(info == null){
+			throw new FileNotFoundException("Unable to find the referenced video file for videoId:"+v.getId());
+		}
+		return info;
+	}
+	
+	
+	// Private helper method for resolving the path of a partial upload. The
+	// upload id comes from the request URL, so anything other than the hex
+	// digits and dashes of a UUID is rejected to keep it inside uploadDir_.
+	private Path getUploadPath(Video v, String uploadId) throws FileNotFoundException{
 		assert(v != null);
 		
-		return targetDir_.resolve("video"+v.getId()+".mpg");
+		if(uploadId == null || !uploadId.matches("[0-9a-fA-F-]+")){
+			throw new FileNotFoundException("Unable to find the referenced upload:"+uploadId);
+		}
+		return uploadDir_.resolve("video"+v.getId()+"-"+uploadId+".part");
 	}
 	
 	/**
@@ -75,8 +562,7 @@ public class VideoFileManager {
 	 * @return
 	 */
 	public boolean hasVideoData(Video v){
-		Path source = getVideoPath(v);
-		return Files.exists(source);
+		return index_.containsKey(v.getId());
 	}
 	
 	/**
@@ -90,17 +576,130 @@ public class VideoFileManager {
 	 * @throws IOException 
 	 */
 	public void copyVideoData(Video v, OutputStream out) throws IOException {
-		Path source = getVideoPath(v);
-		if(!Files.exists(source)){
-			throw new FileNotFoundException("Unable to find the referenced video file for videoId:"+v.getId());
+		streamVideoData(v, out);
+	}
+	
+	/**
+	 * This method returns the size in bytes of the binary data stored for
+	 * the given video. The size comes from the in-memory index, so
+	 * neither the data nor the file system metadata is read. If the video
+	 * has no binary data, this method will throw a FileNotFoundException.
+	 * 
+	 * @param v
+	 * @return
+	 * @throws IOException
+	 */
+	public long getVideoDataSize(Video v) throws IOException {
+		return requireVideoFileInfo(v).getSize();
+	}
+	
+	/**
+	 * This method returns the time, in milliseconds since the epoch, at which
+	 * the binary data for the given video was last written. If the video has
+	 * no binary data, this method will throw a FileNotFoundException.
+	 * 
+	 * @param v
+	 * @return
+	 * @throws IOException
+	 */
+	public long getVideoDataLastModified(Video v) throws IOException {
+		return requireVideoFileInfo(v).getLastModified();
+	}
+	
+	/**
+	 * This method returns the hex encoded SHA-256 checksum of the binary
+	 * data for the given video. Checksums of data saved through
+	 * saveVideoData() are computed while the data is written; others are
+	 * computed the first time they are asked for and then kept in the
+	 * index. If the video has no binary data, this method will throw a
+	 * FileNotFoundException.
+	 * 
+	 * @param v
+	 * @return
+	 * @throws IOException
+	 */
+	public String getVideoDataChecksum(Video v) throws IOException {
+		VideoFileInfo info = requireVideoFileInfo(v);
+		if(info.getChecksum() != null){
+			return info.getChecksum();
+		}
+		
+		String checksum;
+		try (FileChannel channel = openVideoFile(v, info)) {
+			checksum = computeChecksum(channel);
+		}
+		
+		// Only cache the checksum if the file was not rewritten meanwhile
+		index_.replace(v.getId(), info, info.withChecksum(checksum));
+		return checksum;
+	}
+	
+	/**
+	 * This method streams the binary data for the given video to the
+	 * provided output stream without buffering the whole video in memory.
+	 * The data is moved with FileChannel.transferTo() in fixed-size chunks,
+	 * so the heap used per download stays constant regardless of the size
+	 * of the video. The caller is responsible for closing the output stream.
+	 * If the video has no binary data, this method will throw a
+	 * FileNotFoundException.
+	 * 
+	 * @param v
+	 * @param out
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	public long streamVideoData(Video v, OutputStream out) throws IOException {
+		return streamVideoData(v, 0, Long.MAX_VALUE, out);
+	}
+	
+	/**
+	 * This method streams up to length bytes of the binary data for the
+	 * given video, starting at the given offset, to the provided output
+	 * stream. The data is read with positioned FileChannel.transferTo()
+	 * calls, or ranged reads of its blob in content-addressed mode, so
+	 * serving a range from the middle of a video never reads the bytes that
+	 * precede it. If the video has no binary data, this method will throw a
+	 * FileNotFoundException.
+	 * 
+	 * @param v
+	 * @param offset
+	 * @param length
+	 * @param out
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	public long streamVideoData(Video v, long offset, long length,
+			OutputStream out) throws IOException {
+		VideoFileInfo info = requireVideoFileInfo(v);
+		if(isBlob(info)){
+			return blobStore_.read(info.getChecksum(), offset, length, out);
+		}
+		
+		WritableByteChannel target = Channels.newChannel(out);
+		try (FileChannel channel = openVideoFile(v, info)) {
+			long end = offset + Math.min(length, channel.size() - offset);
+			long position = offset;
+			while(position < end){
+				long sent = channel.transferTo(position,
+						Math.min(TRANSFER_CHUNK_SIZE, end - position), target);
+				if(sent <= 0){
+					// The file was truncated underneath us
+					break;
+				}
+				position += sent;
+			}
+			return position - offset;
 		}
-		Files.copy(source, out);
 	}
 	
 	/**
 	 * This method reads all of the data in the provided InputStream and stores
 	 * it on the file system. The data is associated with the Video object that
-	 * is provided by the caller.
+	 * is provided by the caller. The data is hashed while it is written to a
+	 * temporary file, which is forced to disk and then atomically moved into
+	 * place, so readers never see a partially written video and when this
+	 * method returns the data is durable. In content-addressed mode the
+	 * temporary file is discarded if the same data is already stored.
 	 * 
 	 * @param v
 	 * @param videoData
@@ -109,8 +708,387 @@ public class VideoFileManager {
 	public void saveVideoData(Video v, InputStream videoData) throws IOException{
 		assert(videoData != null);
 		
-		Path target = getVideoPath(v);
-		Files.copy(videoData, target, StandardCopyOption.REPLACE_EXISTING);
+		Path temp = Files.createTempFile(uploadDir_, "video"+v.getId()+"-", ".tmp");
+		try {
+			DigestInputStream in = new DigestInputStream(videoData, newDigest());
+			Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+			String checksum = Hex.encodeHexString(in.getMessageDigest().digest());
+			if(deduplicate_){
+				storeBlob(v.getId(), temp, checksum);
+			} else {
+				moveIntoPlace(v.getId(), temp, checksum);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	/**
+	 * This method starts a new resumable upload of binary data for the given
+	 * Video and returns the id that identifies the upload in later calls.
+	 * The data is assembled in a separate file and only replaces the stored
+	 * data of the Video when completeUpload() is called. An upload that is
+	 * left alone for long enough may be deleted (see expireUploads()).
+	 * 
+	 * @param v
+	 * @return
+	 * @throws IOException
+	 */
+	public String startUpload(Video v) throws IOException {
+		String uploadId = UUID.randomUUID().toString();
+		Path part = getUploadPath(v, uploadId);
+		Files.createFile(part);
+		uploadDigests_.put(part, new UploadDigest());
+		return uploadId;
+	}
+	
+	/**
+	 * This method returns true if the given upload has been started for the
+	 * Video and has not yet been completed or cancelled.
+	 * 
+	 * @param v
+	 * @param uploadId
+	 * @return
+	 */
+	public boolean hasUpload(Video v, String uploadId) {
+		try {
+			return Files.exists(getUploadPath(v, uploadId));
+		} catch (FileNotFoundException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * This method returns the number of bytes of the given upload that have
+	 * been committed to disk. A client resumes an interrupted upload by
+	 * sending the rest of the data starting at this offset. If the upload
+	 * does not exist, this method will throw a FileNotFoundException.
+	 * 
+	 * @param v
+	 * @param uploadId
+	 * @return
+	 * @throws IOException
+	 */
+	public long getUploadOffset(Video v, String uploadId) throws IOException {
+		Path part = getUploadPath(v, uploadId);
+		if(!Files.exists(part)){
+			throw new FileNotFoundException("Unable to find the referenced upload:"+uploadId);
+		}
+		return Files.size(part);
+	}
+	
+	/**
+	 * This method writes all of the data in the provided InputStream into the
+	 * given upload, starting at the given offset, using positioned
+	 * FileChannel writes. Chunks that overlap data that was already written
+	 * (e.g., a chunk that is retried after a dropped connection) simply
+	 * overwrite it. Data that extends the upload is hashed as it is written,
+	 * so completing an upload whose chunks arrived in order doesn't read the
+	 * data again. The caller is responsible for ensuring that the offset is
+	 * not past the end of the data written so far. If the upload does not
+	 * exist, this method will throw a FileNotFoundException.
+	 * 
+	 * @param v
+	 * @param uploadId
+	 * @param offset
+	 * @param chunk
+	 * @return the number of bytes committed to the upload after the write
+	 * @throws IOException
+	 */
+	public long writeUploadChunk(Video v, String uploadId, long offset,
+			InputStream chunk) throws IOException {
+		assert(chunk != null);
+		
+		Path part = getUploadPath(v, uploadId);
+		if(!Files.exists(part)){
+			throw new FileNotFoundException("Unable to find the referenced upload:"+uploadId);
+		}
+		
+		UploadDigest digest = uploadDigests_.get(part);
+		ReadableByteChannel source = Channels.newChannel(chunk);
+		ByteBuffer buffer = ByteBuffer.allocate((int) TRANSFER_CHUNK_SIZE);
+		try (FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE)) {
+			long position = offset;
+			while(source.read(buffer) != -1){
+				buffer.flip();
+				ByteBuffer written = buffer.duplicate();
+				long start = position;
+				while(buffer.hasRemaining()){
+					position += channel.write(buffer, position);
+				}
+				if(digest != null){
+					digest.update(start, written);
+				}
+				buffer.clear();
+			}
+			return channel.size();
+		}
+	}
+	
+	/**
+	 * This method completes the given upload. The assembled data is forced to
+	 * disk and then atomically moved into place as the binary data of the
+	 * Video, so readers either see the old data or the complete new data and
+	 * never a partially written file. The checksum of the data was computed
+	 * while its chunks were written, unless they overwrote each other or the
+	 * server was restarted in between, in which case the data is hashed now.
+	 * In content-addressed mode the assembled data is only kept if it is not
+	 * already stored. If the upload does not exist, this method will throw a
+	 * FileNotFoundException.
+	 * 
+	 * @param v
+	 * @param uploadId
+	 * @throws IOException
+	 */
+	public void completeUpload(Video v, String uploadId) throws IOException {
+		Path part = getUploadPath(v, uploadId);
+		if(!Files.exists(part)){
+			throw new FileNotFoundException("Unable to find the referenced upload:"+uploadId);
+		}
+		UploadDigest digest = uploadDigests_.remove(part);
+		saveVideoFile(v, part, digest != null ? digest.finish(Files.size(part)) : null);
+	}
+	
+	/**
+	 * This method stores a fully written file as the binary data of the
+	 * given video. The file is forced to disk, hashed, and then atomically
+	 * moved into place, so when this method returns the data is durable and
+	 * its checksum is known. In content-addressed mode the file is deleted
+	 * instead if its data is already stored. The caller must not use the
+	 * file afterwards. Data that is still being received is better stored
+	 * with saveVideoData(), which hashes it on the way in.
+	 * 
+	 * @param v
+	 * @param file
+	 * @throws IOException
+	 */
+	public void saveVideoFile(Video v, Path file) throws IOException {
+		saveVideoFile(v, file, null);
+	}
+	
+	// Stores a fully written file whose checksum is known, or is computed
+	// here if it is null
+	private void saveVideoFile(Video v, Path file, String checksum) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			channel.force(true);
+			if(checksum == null){
+				checksum = computeChecksum(channel);
+			}
+		}
+		
+		if(deduplicate_){
+			try {
+				storeBlob(v.getId(), file, checksum);
+			} finally {
+				Files.deleteIfExists(file);
+			}
+		} else {
+			moveIntoPlace(v.getId(), file, checksum);
+		}
+	}
+	
+	/**
+	 * This method discards the given upload and any data written to it.
+	 * 
+	 * @param v
+	 * @param uploadId
+	 * @throws IOException
+	 */
+	public void cancelUpload(Video v, String uploadId) throws IOException {
+		Path part = getUploadPath(v, uploadId);
+		uploadDigests_.remove(part);
+		Files.deleteIfExists(part);
+	}
+	
+	/**
+	 * This method returns true if any stored video file is not where the
+	 * current layout wants it, e.g. after switching from the flat layout to
+	 * a sharded one. Content-addressed blobs are never moved.
+	 * 
+	 * @return
+	 */
+	public boolean needsMigration() {
+		for(Map.Entry<Long, VideoFileInfo> entry : index_.entrySet()){
+			VideoFileInfo info = entry.getValue();
+			if(!isBlob(info) && !info.getPath().equals(layout_.resolve(targetDir_, entry.getKey()))){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * This method moves every stored video file that is not where the
+	 * current layout wants it into place. It is safe to call while the
+	 * VideoFileManager is serving requests: each file is moved with an
+	 * atomic rename under the same lock that guards writes of that video,
+	 * and readers find the file through the index, which is updated right
+	 * after the rename.
+	 * 
+	 * @return the number of files that were moved
+	 * @throws IOException
+	 */
+	public int migrateLayout() throws IOException {
+		int moved = 0;
+		for(Long id : index_.keySet()){
+			Path target = layout_.resolve(targetDir_, id);
+			synchronized (lockFor(id)) {
+				VideoFileInfo info = index_.get(id);
+				if(info == null || isBlob(info) || info.getPath().equals(target)){
+					continue;
+				}
+				moveFile(info.getPath(), target, false);
+				index_.put(id, info.withPath(target));
+				pruneEmptyDirectories(info.getPath().getParent());
+				moved++;
+			}
+		}
+		return moved;
+	}
+	
+	/**
+	 * This method deletes every upload that has not been written to for at
+	 * least maxIdleMillis, along with its running digest. Mobile clients
+	 * often start an upload and never come back to complete or cancel it,
+	 * which would otherwise leave its part file in the "uploads" folder for
+	 * good. An upload that is resumed after it expired gets a
+	 * FileNotFoundException, as if it had been cancelled.
+	 * 
+	 * @param maxIdleMillis
+	 * @return the number of uploads that were deleted
+	 * @throws IOException
+	 */
+	public int expireUploads(long maxIdleMillis) throws IOException {
+		long cutoff = System.currentTimeMillis() - maxIdleMillis;
+		int expired = 0;
+		try (DirectoryStream<Path> parts = Files.newDirectoryStream(uploadDir_, "*.part")) {
+			for(Path part : parts){
+				try {
+					if(Files.getLastModifiedTime(part).toMillis() < cutoff){
+						uploadDigests_.remove(part);
+						if(Files.deleteIfExists(part)){
+							expired++;
+						}
+					}
+				} catch (NoSuchFileException e) {
+					// Completed or cancelled while we looked at it
+				}
+			}
+		}
+		// Drop the digests of part files that are gone some other way
+		for(Path part : uploadDigests_.keySet()){
+			if(!Files.exists(part)){
+				uploadDigests_.remove(part);
+			}
+		}
+		return expired;
+	}
+	
+	/**
+	 * This method deletes the uploads that have not been written to for at
+	 * least maxIdleMillis now and then every intervalMillis in a background
+	 * thread, until close() is called (see expireUploads()).
+	 * 
+	 * @param maxIdleMillis
+	 * @param intervalMillis
+	 */
+	public synchronized void startUploadExpiry(final long maxIdleMillis, long intervalMillis) {
+		if(uploadExpiry_ != null){
+			throw new IllegalStateException("Uploads are already being expired");
+		}
+		CustomizableThreadFactory threads = new CustomizableThreadFactory("video-upload-expiry-");
+		threads.setDaemon(true);
+		uploadExpiry_ = Executors.newSingleThreadScheduledExecutor(threads);
+		uploadExpiry_.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					int expired = expireUploads(maxIdleMillis);
+					if(expired > 0){
+						log.info("Deleted {} abandoned uploads", expired);
+					}
+				} catch (IOException e) {
+					log.error("Unable to delete abandoned uploads", e);
+				}
+			}
+		}, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * This method stops expiring uploads and closes the blob journal. It is
+	 * called when the application shuts down, after which no more video data
+	 * can be saved.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		synchronized (this) {
+			if(uploadExpiry_ != null){
+				uploadExpiry_.shutdownNow();
+			}
+		}
+		journal_.close();
+	}
+	
+	// Hashes the whole content of a file
+	private static String computeChecksum(FileChannel channel) throws IOException {
+		MessageDigest digest = newDigest();
+		ByteBuffer buffer = ByteBuffer.allocate((int) TRANSFER_CHUNK_SIZE);
+		long position = 0;
+		int read;
+		while((read = channel.read(buffer, position)) != -1){
+			position += read;
+			buffer.flip();
+			digest.update(buffer);
+			buffer.clear();
+		}
+		return Hex.encodeHexString(digest.digest());
+	}
+	
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	// The digest of the data that an upload has received so far. Only data
+	// that extends the hashed prefix is added; a chunk that starts anywhere
+	// else (a retried chunk, or chunks sent in parallel) may have changed
+	// hashed data, so the digest is given up and the data is hashed again
+	// when the upload is completed.
+	private static class UploadDigest {
+		
+		private MessageDigest digest_ = newDigest();
+		
+		private long hashed_;
+		
+		synchronized void update(long position, ByteBuffer data) {
+			if(digest_ == null){
+				return;
+			}
+			if(position != hashed_){
+				digest_ = null;
+				return;
+			}
+			hashed_ += data.remaining();
+			digest_.update(data);
+		}
+		
+		// Returns the checksum of the upload, or null if the digest doesn't
+		// cover exactly the given size
+		synchronized String finish(long size) {
+			if(digest_ == null || hashed_ != size){
+				return null;
+			}
+			return Hex.encodeHexString(digest_.digest());
+		}
 	}
 	
 }
@@ -0,0 +1,250 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only log of the rating changes that the VideoRatingWriter has
+ * not yet written to the database. Each line is "{videoId} {count} {sum}
+ * {user} {rating}", the change to the count and sum of a video's ratings
+ * made by one vote and the rating that the user now has (the user being URL
+ * encoded so that it has no spaces). Lines without the user only change the
+ * totals.
+ * 
+ * The log is split into numbered generations, one file per generation.
+ * Starting a flush moves the writer on to a new generation, so the old file
+ * holds exactly the changes being flushed and is deleted once they are in
+ * the database. Any files found when the server starts hold changes that
+ * may not have been written, and are replayed in order.
+ * 
+ * @author jules
+ *
+ */
+public class VideoRatingJournal {
+
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+	private static final String PREFIX = "ratings-";
+
+	private static final String SUFFIX = ".log";
+
+	private final Path dir_;
+
+	private Writer writer_;
+
+	public VideoRatingJournal(Path dir) throws IOException {
+		dir_ = dir;
+		Files.createDirectories(dir_);
+	}
+
+	/**
+	 * Returns the generations that have a file in the journal, oldest first.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized List<Long> getGenerations() throws IOException {
+		List<Long> generations = new ArrayList<Long>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir_,
+				PREFIX + "*" + SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					generations.add(Long.parseLong(name.substring(
+							PREFIX.length(), name.length() - SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// Not one of ours
+				}
+			}
+		}
+		Collections.sort(generations);
+		return generations;
+	}
+
+	/**
+	 * Reads the changes in one generation, summed up per video. A last line
+	 * that was torn by a crash is ignored, since the vote it belonged to was
+	 * never acknowledged.
+	 * 
+	 * @return a map from video id to {count, sum}
+	 * @throws IOException
+	 */
+	public synchronized Map<Long, long[]> read(long generation)
+			throws IOException {
+		Map<Long, long[]> changes = new HashMap<Long, long[]>();
+		read(generation, changes, null);
+		return changes;
+	}
+
+	/**
+	 * Reads the ratings that users gave in one generation, the latest one
+	 * per user and video.
+	 * 
+	 * @return a map from video id to a map from user to rating
+	 * @throws IOException
+	 */
+	public synchronized Map<Long, Map<String, Integer>> readRatings(
+			long generation) throws IOException {
+		Map<Long, Map<String, Integer>> ratings = new HashMap<Long, Map<String, Integer>>();
+		read(generation, null, ratings);
+		return ratings;
+	}
+
+	private void read(long generation, Map<Long, long[]> changes,
+			Map<Long, Map<String, Integer>> ratings) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(
+				fileFor(generation), CHARSET)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(" ");
+				if (fields.length != 3 && fields.length != 5) {
+					continue;
+				}
+				try {
+					long videoId = Long.parseLong(fields[0]);
+					long count = Long.parseLong(fields[1]);
+					long sum = Long.parseLong(fields[2]);
+					int rating = (fields.length == 5) ? Integer.parseInt(fields[4]) : 0;
+					if (changes != null) {
+						add(changes, videoId, count, sum);
+					}
+					if (ratings != null && fields.length == 5) {
+						setRating(ratings, videoId,
+								URLDecoder.decode(fields[3], CHARSET.name()), rating);
+					}
+				} catch (IllegalArgumentException e) {
+					// A torn line, whose number or user is cut short
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes the current generation, if any, and starts appending to the
+	 * given one.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void start(long generation) throws IOException {
+		close();
+		writer_ = Files.newBufferedWriter(fileFor(generation), CHARSET,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Records a change to the ratings of a video in the current generation,
+	 * along with the rating that the user who made it now has. The line is
+	 * buffered until flush() is called, so that the changes made by many
+	 * votes can be written at once.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void append(long videoId, String user, int rating,
+			long count, long sum) throws IOException {
+		append(videoId, count, sum, " " + URLEncoder.encode(user, CHARSET.name())
+				+ " " + rating);
+	}
+
+	/**
+	 * Records a change to the totals of a video's ratings in the current
+	 * generation, which no single user's rating goes with.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void append(long videoId, long count, long sum)
+			throws IOException {
+		append(videoId, count, sum, "");
+	}
+
+	private void append(long videoId, long count, long sum, String rating)
+			throws IOException {
+		if (writer_ == null) {
+			throw new IllegalStateException("The rating journal has not been started");
+		}
+		writer_.write(videoId + " " + count + " " + sum + rating + "\n");
+	}
+
+	/**
+	 * Hands the changes appended so far to the operating system, so that
+	 * they survive a crash of the server (but not of the machine).
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		if (writer_ != null) {
+			writer_.flush();
+		}
+	}
+
+	/**
+	 * Deletes the file of a generation whose changes are in the database.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void delete(long generation) throws IOException {
+		Files.deleteIfExists(fileFor(generation));
+	}
+
+	public synchronized void close() throws IOException {
+		if (writer_ != null) {
+			writer_.close();
+			writer_ = null;
+		}
+	}
+
+	static void add(Map<Long, long[]> changes, long videoId, long count,
+			long sum) {
+		long[] totals = changes.get(videoId);
+		if (totals == null) {
+			totals = new long[2];
+			changes.put(videoId, totals);
+		}
+		totals[0] += count;
+		totals[1] += sum;
+	}
+
+	static void setRating(Map<Long, Map<String, Integer>> ratings,
+			long videoId, String user, int rating) {
+		Map<String, Integer> byUser = ratings.get(videoId);
+		if (byUser == null) {
+			byUser = new HashMap<String, Integer>();
+			ratings.put(videoId, byUser);
+		}
+		byUser.put(user, rating);
+	}
+
+	private Path fileFor(long generation) {
+		return dir_.resolve(PREFIX + generation + SUFFIX);
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import org.magnum.dataup.model.VideoRatingTotal;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * The JPA repository of the persistent rating totals of the videos, which
+ * the VideoRatingWriter adds batches of ratings to.
+ */
+public interface VideoRatingTotalRepository extends
+		CrudRepository<VideoRatingTotal, Long> {
+
+	/**
+	 * Adds to the totals of a video in a single UPDATE, without reading the
+	 * row first, unless the given journal generation has already been added.
+	 * 
+	 * @return the number of rows that were updated, which is 0 if the video
+	 *         has no totals yet or already has this generation's ratings
+	 */
+	@Modifying
+	@Query("update VideoRatingTotal t set t.ratingSum = t.ratingSum + :sum, "
+			+ "t.ratingCount = t.ratingCount + :count, "
+			+ "t.flushedGeneration = :generation "
+			+ "where t.videoId = :videoId and t.flushedGeneration < :generation")
+	public int addToTotals(@Param("videoId") long videoId,
+			@Param("sum") long sum, @Param("count") long count,
+			@Param("generation") long generation);
+
+	// The newest journal generation that has been written to any totals
+	@Query("select max(t.flushedGeneration) from VideoRatingTotal t")
+	public Long findLastFlushedGeneration();
+
+}
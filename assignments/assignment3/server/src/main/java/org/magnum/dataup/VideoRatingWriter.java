@@ -0,0 +1,474 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.magnum.dataup.model.VideoRatingTotal;
+import org.magnum.dataup.model.VideoUserRating;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Persists the ratings of videos to the database behind the backs of the
+ * raters (write-behind), so that a video that many users are rating at
+ * once doesn't turn its row into a lock that every rating waits for.
+ * 
+ * Each change to a video's ratings is handed to a single journal thread,
+ * which appends whatever changes have queued up since its last write to a
+ * VideoRatingJournal at once (group commit) and adds them to an in-memory
+ * total per video. The rating thread takes no lock; it waits until its
+ * change has been journaled and the vote is acknowledged without touching
+ * the database. A change that the journal thread hasn't taken within the
+ * journal timeout, or that arrives once the writer is closed, fails the
+ * rating instead of leaving its request waiting.
+ * 
+ * Every flush interval, or as soon as the flush size number of votes are
+ * waiting, the pending totals are written in one transaction that runs a
+ * single "UPDATE ... SET sum = sum + ?, count = count + ?" per video,
+ * however many votes the video received, along with the latest rating of
+ * each user who voted. The per-user ratings are what keep a user to one
+ * rating per video across restarts.
+ * 
+ * The votes that are waiting when the server crashes are replayed from the
+ * journal when it starts again. Every flush is tagged with its journal
+ * generation, which the update also records, so replaying a generation that
+ * made it to the database just before the crash doesn't count it twice.
+ * Writing a user's rating again is harmless, since it only sets the rating.
+ * 
+ * @author jules
+ *
+ */
+public class VideoRatingWriter implements VideoRatings.RatingListener {
+
+	private static final Logger log = LoggerFactory.getLogger(VideoRatingWriter.class);
+
+	// How long a rating waits for the journal thread to take its change
+	private static final long JOURNAL_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+	// A change to the ratings of a video that a rating thread is waiting to
+	// see journaled
+	private static final class Change {
+
+		final long videoId;
+
+		final String user;
+
+		final int rating;
+
+		final long count;
+
+		final long sum;
+
+		final CountDownLatch journaled = new CountDownLatch(1);
+
+		// Set by whichever comes first: the journal thread taking the change
+		// to write it, or the rating thread giving up on it
+		final AtomicBoolean taken = new AtomicBoolean();
+
+		volatile IOException failure;
+
+		Change(long videoId, String user, int rating, long count, long sum) {
+			this.videoId = videoId;
+			this.user = user;
+			this.rating = rating;
+			this.count = count;
+			this.sum = sum;
+		}
+	}
+
+	// Tells the journal thread to stop once it has written what precedes it
+	private static final Change STOP = new Change(0, null, 0, 0, 0);
+
+	private final VideoRatingTotalRepository totals_;
+
+	private final VideoUserRatingRepository userRatings_;
+
+	private final TransactionTemplate transactions_;
+
+	private final VideoRatingJournal journal_;
+
+	private final long flushInterval_;
+
+	private final int flushSize_;
+
+	// The changes waiting for the journal thread
+	private final BlockingQueue<Change> changes_ = new LinkedTransferQueue<Change>();
+
+	private volatile Thread journalThread_;
+
+	private volatile boolean closed_;
+
+	// The changes that have been journaled but not written, keyed by video
+	// id, which is also the lock for the journal generation and vote count.
+	// Only the journal thread and flushes take it.
+	private final Map<Long, long[]> pending_ = new HashMap<Long, long[]>();
+
+	// The latest journaled rating of each user who voted since the last
+	// flush, keyed by video id and user. Guarded by pending_.
+	private final Map<Long, Map<String, Integer>> pendingRatings_ = new HashMap<Long, Map<String, Integer>>();
+
+	private long generation_;
+
+	private int pendingVotes_;
+
+	// Serializes flushes, so that generations reach the database in order
+	private final Object flushLock_ = new Object();
+
+	private final AtomicBoolean flushQueued_ = new AtomicBoolean();
+
+	private ScheduledExecutorService flusher_;
+
+	public VideoRatingWriter(VideoRatingTotalRepository totals,
+			VideoUserRatingRepository userRatings,
+			PlatformTransactionManager transactionManager,
+			VideoRatingJournal journal, long flushInterval, int flushSize) {
+		totals_ = totals;
+		userRatings_ = userRatings;
+		transactions_ = new TransactionTemplate(transactionManager);
+		journal_ = journal;
+		flushInterval_ = flushInterval;
+		flushSize_ = flushSize;
+	}
+
+	/**
+	 * Writes any generations left in the journal by an earlier run to the
+	 * database, starts a new generation and starts journaling changes and
+	 * flushing periodically.
+	 * 
+	 * @throws IOException
+	 */
+	public void open() throws IOException {
+		long last = 0;
+		for (long generation : journal_.getGenerations()) {
+			log.info("Replaying rating journal generation {}", generation);
+			write(generation, journal_.read(generation),
+					journal_.readRatings(generation));
+			journal_.delete(generation);
+			last = generation;
+		}
+		Long flushed = totals_.findLastFlushedGeneration();
+		synchronized (pending_) {
+			generation_ = Math.max(last, (flushed != null) ? flushed : 0) + 1;
+			journal_.start(generation_);
+		}
+
+		flusher_ = Executors.newSingleThreadScheduledExecutor(
+				new CustomizableThreadFactory("rating-writer-"));
+		flusher_.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flushQuietly();
+			}
+		}, flushInterval_, flushInterval_, TimeUnit.MILLISECONDS);
+
+		journalThread_ = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				journalChanges();
+			}
+		}, "rating-journal");
+		journalThread_.setDaemon(true);
+		journalThread_.start();
+	}
+
+	/**
+	 * Loads the persistent totals of every video, and the rating that each
+	 * user gave it, into the ratings.
+	 */
+	public void restore(VideoRatings ratings) {
+		for (VideoRatingTotal total : totals_.findAll()) {
+			ratings.restore(total.getVideoId(), total.getRatingCount(),
+					total.getRatingSum());
+		}
+		for (VideoUserRating rating : userRatings_.findAll()) {
+			ratings.restoreRating(rating.getVideoId(), rating.getRater(),
+					rating.getRating());
+		}
+	}
+
+	@Override
+	public void ratingChanged(long videoId, String user, int rating,
+			long count, long sum) {
+		if (closed_) {
+			throw new IllegalStateException("The rating writer has been closed");
+		}
+		if (journalThread_ == null) {
+			throw new IllegalStateException("The rating writer has not been opened");
+		}
+		Change change = new Change(videoId, user, rating, count, sum);
+		changes_.add(change);
+
+		if (!awaitJournaled(change)) {
+			throw new IllegalStateException("Timed out journaling a rating of video " + videoId);
+		}
+		if (change.failure != null) {
+			throw new IllegalStateException(
+					"Unable to journal a rating of video " + videoId, change.failure);
+		}
+	}
+
+	// Waits for the journal thread to write a change. Returns false if the
+	// journal thread didn't take the change within the journal timeout, in
+	// which case it never will. A change that has been taken is waited for
+	// until it is written, so a rating never fails once its change may be
+	// in the journal.
+	private boolean awaitJournaled(Change change) {
+		boolean interrupted = false;
+		long deadline = System.nanoTime() + JOURNAL_TIMEOUT;
+		try {
+			while (true) {
+				try {
+					long remaining = deadline - System.nanoTime();
+					if (remaining > 0) {
+						if (change.journaled.await(remaining, TimeUnit.NANOSECONDS)) {
+							return true;
+						}
+					} else if (change.taken.compareAndSet(false, true)) {
+						return false;
+					} else {
+						change.journaled.await();
+						return true;
+					}
+				} catch (InterruptedException e) {
+					// The change is already queued, so it will be journaled
+					// or given up on
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void journalChanges() {
+		List<Change> batch = new ArrayList<Change>();
+		boolean stopped = false;
+		while (!stopped) {
+			try {
+				batch.add(changes_.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			changes_.drainTo(batch);
+			stopped = batch.remove(STOP);
+			// Leave out the changes whose raters have given up on them
+			for (Iterator<Change> changes = batch.iterator(); changes.hasNext();) {
+				if (!changes.next().taken.compareAndSet(false, true)) {
+					changes.remove();
+				}
+			}
+			if (!batch.isEmpty()) {
+				journal(batch);
+			}
+			batch.clear();
+		}
+	}
+
+	// Appends a batch of changes to the journal with a single write, adds
+	// them to the pending totals and releases the rating threads waiting for
+	// them
+	private void journal(List<Change> batch) {
+		IOException failure = null;
+		boolean full;
+		synchronized (pending_) {
+			try {
+				for (Change change : batch) {
+					journal_.append(change.videoId, change.user, change.rating,
+							change.count, change.sum);
+				}
+				journal_.flush();
+				for (Change change : batch) {
+					VideoRatingJournal.add(pending_, change.videoId,
+							change.count, change.sum);
+					VideoRatingJournal.setRating(pendingRatings_,
+							change.videoId, change.user, change.rating);
+				}
+				pendingVotes_ += batch.size();
+			} catch (IOException e) {
+				log.error("Unable to journal " + batch.size() + " ratings", e);
+				failure = e;
+			}
+			full = pendingVotes_ >= flushSize_;
+		}
+		for (Change change : batch) {
+			change.failure = failure;
+			change.journaled.countDown();
+		}
+
+		// Only one early flush is queued no matter how many votes arrive
+		// while it waits
+		if (full && flushQueued_.compareAndSet(false, true)) {
+			flusher_.execute(new Runnable() {
+				@Override
+				public void run() {
+					flushQueued_.set(false);
+					flushQuietly();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Writes the pending changes to the database in one transaction.
+	 * 
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		synchronized (flushLock_) {
+			long generation;
+			Map<Long, long[]> batch;
+			Map<Long, Map<String, Integer>> ratings;
+			synchronized (pending_) {
+				if (pending_.isEmpty()) {
+					return;
+				}
+				// Votes that arrive from here on go to the next generation
+				generation = generation_++;
+				journal_.start(generation_);
+				batch = new HashMap<Long, long[]>(pending_);
+				ratings = new HashMap<Long, Map<String, Integer>>(pendingRatings_);
+				pending_.clear();
+				pendingRatings_.clear();
+				pendingVotes_ = 0;
+			}
+
+			try {
+				write(generation, batch, ratings);
+			} catch (RuntimeException e) {
+				// Carry the batch over into the current generation, so that
+				// the next flush (or a replay) writes it
+				synchronized (pending_) {
+					for (Map.Entry<Long, long[]> change : batch.entrySet()) {
+						long[] totals = change.getValue();
+						journal_.append(change.getKey(), totals[0], totals[1]);
+						VideoRatingJournal.add(pending_, change.getKey(),
+								totals[0], totals[1]);
+					}
+					for (Map.Entry<Long, Map<String, Integer>> video : ratings.entrySet()) {
+						Map<String, Integer> newer = pendingRatings_.get(video.getKey());
+						for (Map.Entry<String, Integer> rating : video.getValue().entrySet()) {
+							// A rating made since the flush started is newer
+							if (newer != null && newer.containsKey(rating.getKey())) {
+								continue;
+							}
+							journal_.append(video.getKey(), rating.getKey(),
+									rating.getValue(), 0, 0);
+							VideoRatingJournal.setRating(pendingRatings_,
+									video.getKey(), rating.getKey(), rating.getValue());
+						}
+					}
+					journal_.flush();
+				}
+				journal_.delete(generation);
+				throw e;
+			}
+			journal_.delete(generation);
+		}
+	}
+
+	/**
+	 * Stops flushing periodically, journals the changes that are queued,
+	 * writes whatever is pending and closes the journal. Ratings that change
+	 * once it has been called fail.
+	 * 
+	 * @throws Exception
+	 */
+	public void close() throws Exception {
+		closed_ = true;
+		if (journalThread_ != null) {
+			changes_.add(STOP);
+			journalThread_.join();
+		}
+		// Fail the changes that were queued behind the STOP
+		List<Change> late = new ArrayList<Change>();
+		changes_.drainTo(late);
+		for (Change change : late) {
+			if (change != STOP && change.taken.compareAndSet(false, true)) {
+				change.failure = new IOException("The rating writer has been closed");
+				change.journaled.countDown();
+			}
+		}
+		if (flusher_ != null) {
+			flusher_.shutdown();
+			flusher_.awaitTermination(30, TimeUnit.SECONDS);
+		}
+		try {
+			flush();
+		} finally {
+			journal_.close();
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (Exception e) {
+			// The batch stays pending and is retried on the next flush
+			log.error("Unable to write ratings", e);
+		}
+	}
+
+	private void write(final long generation, final Map<Long, long[]> batch,
+			final Map<Long, Map<String, Integer>> ratings) {
+		transactions_.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				for (Map.Entry<Long, long[]> change : batch.entrySet()) {
+					long videoId = change.getKey();
+					long[] totals = change.getValue();
+					if (totals_.addToTotals(videoId, totals[1], totals[0],
+							generation) == 0 && !totals_.exists(videoId)) {
+						totals_.save(new VideoRatingTotal(videoId, totals[1],
+								totals[0], generation));
+					}
+				}
+				for (Map.Entry<Long, Map<String, Integer>> video : ratings.entrySet()) {
+					long videoId = video.getKey();
+					for (Map.Entry<String, Integer> rating : video.getValue().entrySet()) {
+						if (userRatings_.setRating(videoId, rating.getKey(),
+								rating.getValue()) == 0) {
+							userRatings_.save(new VideoUserRating(videoId,
+									rating.getKey(), rating.getValue()));
+						}
+					}
+				}
+			}
+		});
+	}
+
+}
@@ -0,0 +1,243 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.magnum.dataup.model.AverageVideoRating;
+
+/**
+ * Keeps the ratings that users have given to videos and a running average
+ * for each video, without taking any locks.
+ * 
+ * Each user has at most one rating per video. Rating a video again replaces
+ * the user's earlier rating instead of counting twice. The per-user ratings
+ * live in a ConcurrentHashMap, and swapping in a new rating tells us which
+ * rating it replaced.
+ * 
+ * The sum and count of a video's ratings are packed into a single
+ * AtomicLong. A new rating adds +1 to the count and its value to the sum. A
+ * replaced rating adds 0 to the count and the difference to the sum. Either
+ * way, both fields change in one atomic add, so thousands of raters of the
+ * same hot video never retry a CAS or wait for each other. A reader always
+ * sees a sum and count that belong together, so reading the average is a
+ * single volatile read and a division, no matter how many users have rated
+ * the video.
+ * 
+ * @author jules
+ *
+ */
+public class VideoRatings {
+
+	public static final float MIN_RATING = 1;
+
+	public static final float MAX_RATING = 5;
+
+	// Ratings are kept as whole hundredths of a star so that they can be
+	// summed exactly with integer arithmetic
+	private static final int SCALE = 100;
+
+	// The low bits of the packed state hold the sum and the high bits hold
+	// the count. The sum is stored as a signed, balanced field so that a
+	// transiently negative sum (two racing re-ratings by the same user that
+	// apply their differences out of order) can't borrow from the count.
+	private static final int SUM_BITS = 37;
+
+	private static final long SUM_HALF = 1L << (SUM_BITS - 1);
+
+	// Keeps the largest possible sum, MAX_COUNT * MAX_RATING * SCALE, within
+	// the SUM_BITS - 1 bits of a balanced field
+	static final long MAX_COUNT = (1L << (63 - SUM_BITS)) - 1;
+
+	/**
+	 * Is told about every change that a rating makes to the count and sum
+	 * of a video's ratings (the sum being in hundredths of a star), along
+	 * with the user's new rating (also in hundredths), after the change has
+	 * been made.
+	 */
+	public interface RatingListener {
+		public void ratingChanged(long videoId, String user, int rating,
+				long count, long sum);
+	}
+
+	static class Aggregate {
+
+		private final ConcurrentMap<String, Integer> byUser =
+				new ConcurrentHashMap<String, Integer>();
+
+		private final AtomicLong state = new AtomicLong();
+
+		// Records the user's rating, tells the listener about the change (if
+		// there is a listener) and returns the packed state that includes it.
+		// If the listener throws, the rating is taken back out before the
+		// exception is passed on, so a vote that couldn't be persisted doesn't
+		// linger in the average.
+		long rate(long videoId, String user, int scaled,
+				RatingListener listener) {
+			Integer previous = byUser.put(user, scaled);
+			long count = 1;
+			long sum = scaled;
+			if (previous != null) {
+				count = 0;
+				sum = scaled - previous;
+			} else if (count(state.get()) >= MAX_COUNT) {
+				byUser.remove(user, scaled);
+				throw new IllegalStateException("Too many ratings");
+			}
+			long delta = (count << SUM_BITS) + sum;
+			long current = state.addAndGet(delta);
+			if (listener != null) {
+				try {
+					listener.ratingChanged(videoId, user, scaled, count, sum);
+				} catch (RuntimeException e) {
+					undo(user, scaled, previous, delta);
+					throw e;
+				}
+			}
+			return current;
+		}
+
+		// Takes a rating back out. The user's earlier rating only comes back
+		// if nothing has replaced this one since; a later rating by the same
+		// user was counted against this one, so the state is still put back
+		// by this rating's change either way, which keeps it equal to the
+		// changes that the listener accepted.
+		private void undo(String user, int scaled, Integer previous, long delta) {
+			if (previous != null) {
+				byUser.replace(user, scaled, previous);
+			} else {
+				byUser.remove(user, scaled);
+			}
+			state.addAndGet(-delta);
+		}
+
+		void restore(long count, long sum) {
+			state.set((count << SUM_BITS) + sum);
+		}
+
+		void restore(String user, int scaled) {
+			byUser.put(user, scaled);
+		}
+
+		long get() {
+			return state.get();
+		}
+	}
+
+	private final ConcurrentMap<Long, Aggregate> ratings =
+			new ConcurrentHashMap<Long, Aggregate>();
+
+	private final RatingListener listener;
+
+	public VideoRatings() {
+		this(null);
+	}
+
+	public VideoRatings(RatingListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Records the user's rating of the video, replacing any earlier rating
+	 * by the same user, and returns the average that includes it.
+	 * 
+	 * @throws IllegalArgumentException if the rating isn't between
+	 *         MIN_RATING and MAX_RATING
+	 */
+	public AverageVideoRating rate(long videoId, String user, float rating) {
+		if (!(rating >= MIN_RATING && rating <= MAX_RATING)) {
+			throw new IllegalArgumentException("A rating must be between "
+					+ MIN_RATING + " and " + MAX_RATING);
+		}
+		int scaled = Math.round(rating * SCALE);
+		return average(videoId,
+				aggregateFor(videoId).rate(videoId, user, scaled, listener));
+	}
+
+	/**
+	 * Returns the current average rating of the video, which has a total
+	 * of zero ratings if nobody has rated it yet.
+	 */
+	public AverageVideoRating get(long videoId) {
+		Aggregate aggregate = ratings.get(videoId);
+		return average(videoId, (aggregate != null) ? aggregate.get() : 0);
+	}
+
+	/**
+	 * Sets the count and sum (in hundredths of a star) of the ratings of a
+	 * video that were made before the server started. The ratings that they
+	 * are made of are restored one user at a time with restoreRating().
+	 */
+	public void restore(long videoId, long count, long sum) {
+		if (count < 0 || count > MAX_COUNT) {
+			throw new IllegalArgumentException("Invalid rating count " + count);
+		}
+		aggregateFor(videoId).restore(count, sum);
+	}
+
+	/**
+	 * Sets the rating (in hundredths of a star) that a user gave a video
+	 * before the server started, without changing the video's totals, so
+	 * that the user rating the video again replaces it.
+	 */
+	public void restoreRating(long videoId, String user, int rating) {
+		aggregateFor(videoId).restore(user, rating);
+	}
+
+	/**
+	 * Forgets every rating of the video.
+	 */
+	public void remove(long videoId) {
+		ratings.remove(videoId);
+	}
+
+	private Aggregate aggregateFor(long videoId) {
+		Aggregate aggregate = ratings.get(videoId);
+		if (aggregate == null) {
+			Aggregate created = new Aggregate();
+			aggregate = ratings.putIfAbsent(videoId, created);
+			if (aggregate == null) {
+				aggregate = created;
+			}
+		}
+		return aggregate;
+	}
+
+	static long count(long state) {
+		return (state + SUM_HALF) >> SUM_BITS;
+	}
+
+	static long sum(long state) {
+		return state - (count(state) << SUM_BITS);
+	}
+
+	private static AverageVideoRating average(long videoId, long state) {
+		long count = count(state);
+		if (count <= 0) {
+			return new AverageVideoRating(0, videoId, 0);
+		}
+		double average = (double) sum(state) / SCALE / count;
+		// A read that races with a user's out-of-order re-ratings can see a
+		// sum that no single moment had, so keep it within the valid range
+		average = Math.max(MIN_RATING, Math.min(MAX_RATING, average));
+		return new AverageVideoRating(average, videoId, (int) count);
+	}
+
+}
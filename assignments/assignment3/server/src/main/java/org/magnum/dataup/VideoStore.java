@@ -0,0 +1,60 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.util.Collection;
+
+import org.magnum.dataup.model.Video;
+
+/**
+ * An interface for an in-memory store of Video objects that is shared by
+ * all of the request threads of the web container.
+ * 
+ * @author jules
+ *
+ */
+public interface VideoStore {
+
+	/**
+	 * A change that is applied to a single stored Video while no other
+	 * thread is writing to it.
+	 */
+	public interface VideoUpdate {
+		public void apply(Video v);
+	}
+
+	// Add a video or replace the video with the same id
+	public Video save(Video v);
+
+	// Get the video with the given id, or null if there is none
+	public Video findOne(long id);
+
+	// Atomically apply the update to the video with the given id and
+	// return it, or return null if there is no such video
+	public Video update(long id, VideoUpdate update);
+
+	// Get an immutable snapshot of all of the videos, ordered by id
+	public Collection<Video> findAll();
+
+	// Get the number of videos in the store
+	public int count();
+
+	// Get a number that changes every time the contents of the store change
+	public long getVersion();
+
+}
@@ -44,20 +44,26 @@ package org.magnum.dataup;
  */
 import java.util.Collection;
 
+import org.magnum.dataup.model.AverageVideoRating;
 import org.magnum.dataup.model.Video;
 import org.magnum.dataup.model.VideoStatus;
+import org.magnum.dataup.model.VideoUpload;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import retrofit.client.Response;
 import retrofit.http.Body;
+import retrofit.http.DELETE;
 import retrofit.http.GET;
 import retrofit.http.Multipart;
 import retrofit.http.POST;
+import retrofit.http.PUT;
 import retrofit.http.Part;
 import retrofit.http.Path;
+import retrofit.http.Query;
 import retrofit.http.Streaming;
 import retrofit.mime.TypedFile;
+import retrofit.mime.TypedOutput;
 
 /**
  * This interface defines an API for a VideoSvc. The interface is used to
@@ -130,9 +136,30 @@ public interface VideoSvcApi {
 	public static final String VIDEO_RATING_PATH = VIDEO_SVC_PATH
 			+ "/{id}/rating";
 
+	public static final String RATING_PARAMETER = "rating";
+
+	public static final String VIDEO_RATE_PATH = VIDEO_RATING_PATH
+			+ "/{rating}";
+
 	public static final String VIDEO_DOWNLOAD_PATH = VIDEO_SVC_PATH
 			+ "/{id}/download";
 
+	public static final String VIDEO_STATUS_PATH = VIDEO_SVC_PATH
+			+ "/{id}/status";
+
+	public static final String UPLOAD_ID_PARAMETER = "uploadId";
+
+	public static final String OFFSET_PARAMETER = "offset";
+
+	public static final String VIDEO_UPLOAD_PATH = VIDEO_SVC_PATH
+			+ "/{id}/upload";
+
+	public static final String VIDEO_UPLOAD_SESSION_PATH = VIDEO_UPLOAD_PATH
+			+ "/{uploadId}";
+
+	public static final String VIDEO_UPLOAD_COMPLETE_PATH = VIDEO_UPLOAD_SESSION_PATH
+			+ "/complete";
+
 	/**
 	 * This endpoint in the API returns a list of the videos that have been
 	 * added to the server. The Video objects should be returned as JSON.
@@ -163,6 +190,10 @@ public interface VideoSvcApi {
 	 * /video/{id}/data with a valid ID of a video, such as /video/1/data --
 	 * assuming that "1" is a valid ID of a video).
 	 * 
+	 * The returned status is READY once the data has been stored. If storing
+	 * it takes too long, the status is PROCESSING and the client can poll
+	 * getVideoStatus() until it becomes READY (or FAILED).
+	 * 
 	 * @return
 	 */
 	@Multipart
@@ -170,6 +201,16 @@ public interface VideoSvcApi {
 	public VideoStatus setVideoData(@Path(ID_PARAMETER) long id,
 			@Part(DATA_PARAMETER) TypedFile videoData);
 
+	/**
+	 * This endpoint returns the state of the video data that was sent for a
+	 * Video with setVideoData(), or a 404 if no video data has been set yet.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	@GET(VIDEO_STATUS_PATH)
+	public VideoStatus getVideoStatus(@Path(ID_PARAMETER) long id);
+
 	/**
 	 * This endpoint should return the video data that has been associated with
 	 * a Video object or a 404 if no video data has been set yet. The URL scheme
@@ -195,7 +236,97 @@ public interface VideoSvcApi {
 	@POST(VIDEO_RATING_PATH)
 	public Video setVideoRating(@Path(ID_PARAMETER) long id, @Body float rating);
 
+	/**
+	 * This endpoint records the caller's rating (from 1 to 5) of a Video and
+	 * returns the Video's new average rating. Each user has one rating per
+	 * Video, so rating the same Video again replaces the user's earlier
+	 * rating rather than being counted twice. Requests without an
+	 * authenticated user are told apart by the client's address.
+	 * 
+	 * @param id
+	 * @param rating
+	 * @return
+	 */
+	@POST(VIDEO_RATE_PATH)
+	public AverageVideoRating rateVideo(@Path(ID_PARAMETER) long id,
+			@Path(RATING_PARAMETER) float rating);
+
+	/**
+	 * This endpoint returns the average rating of a Video and the number of
+	 * users that have rated it.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	@GET(VIDEO_RATING_PATH)
+	public AverageVideoRating getVideoRating(@Path(ID_PARAMETER) long id);
+
 	@GET(VIDEO_DOWNLOAD_PATH)
 	public Response downloadVideo(@Path(ID_PARAMETER) long videoId);
 
+	/**
+	 * This endpoint starts a resumable upload of the mpeg video data for a
+	 * previously added Video. The returned VideoUpload carries the id that
+	 * the chunks of the upload are sent to and an offset of zero.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	@POST(VIDEO_UPLOAD_PATH)
+	public VideoUpload startVideoUpload(@Path(ID_PARAMETER) long id);
+
+	/**
+	 * This endpoint stores one chunk of a resumable upload, sent as a raw
+	 * application/octet-stream body, at the given offset of the video data.
+	 * The offset must not be past the offset returned by the server so far;
+	 * such chunks are rejected with a 409. The returned VideoUpload carries
+	 * the offset at which the next chunk should start.
+	 * 
+	 * @param id
+	 * @param uploadId
+	 * @param offset
+	 * @param chunk
+	 * @return
+	 */
+	@PUT(VIDEO_UPLOAD_SESSION_PATH)
+	public VideoUpload putVideoChunk(@Path(ID_PARAMETER) long id,
+			@Path(UPLOAD_ID_PARAMETER) String uploadId,
+			@Query(OFFSET_PARAMETER) long offset, @Body TypedOutput chunk);
+
+	/**
+	 * This endpoint returns the number of bytes of a resumable upload that
+	 * the server has committed. After a dropped connection, a client calls it
+	 * and resumes sending chunks from the returned offset.
+	 * 
+	 * @param id
+	 * @param uploadId
+	 * @return
+	 */
+	@GET(VIDEO_UPLOAD_SESSION_PATH)
+	public VideoUpload getVideoUpload(@Path(ID_PARAMETER) long id,
+			@Path(UPLOAD_ID_PARAMETER) String uploadId);
+
+	/**
+	 * This endpoint finishes a resumable upload. The assembled data replaces
+	 * any video data previously stored for the Video in a single atomic step.
+	 * 
+	 * @param id
+	 * @param uploadId
+	 * @return
+	 */
+	@POST(VIDEO_UPLOAD_COMPLETE_PATH)
+	public VideoStatus completeVideoUpload(@Path(ID_PARAMETER) long id,
+			@Path(UPLOAD_ID_PARAMETER) String uploadId);
+
+	/**
+	 * This endpoint abandons a resumable upload and discards its data.
+	 * 
+	 * @param id
+	 * @param uploadId
+	 * @return
+	 */
+	@DELETE(VIDEO_UPLOAD_SESSION_PATH)
+	public Response cancelVideoUpload(@Path(ID_PARAMETER) long id,
+			@Path(UPLOAD_ID_PARAMETER) String uploadId);
+
 }
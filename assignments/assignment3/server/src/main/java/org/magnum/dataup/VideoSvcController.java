@@ -17,33 +17,44 @@
  */
 package org.magnum.dataup;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.magnum.dataup.model.AverageVideoRating;
 import org.magnum.dataup.model.Video;
 import org.magnum.dataup.model.VideoStatus;
 import org.magnum.dataup.model.VideoStatus.VideoState;
+import org.magnum.dataup.model.VideoUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.rest.webmvc.ResourceNotFoundException;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
 
 import retrofit.http.Multipart;
@@ -51,17 +62,66 @@ import retrofit.http.Multipart;
 @Controller
 public class VideoSvcController {
 
-	private Map<Long, Video> videos = new HashMap<Long, Video>();
+	private static final Logger log = LoggerFactory.getLogger(VideoSvcController.class);
+
+	@Autowired
+	private VideoStore videos;
+
 	private static final AtomicLong currentId = new AtomicLong(0L);
+
+	@Autowired
 	private VideoFileManager videoDataMgr;
 
+	@Autowired
+	private VideoRatings ratings;
+
+	private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+	// The version of the VideoStore starts over when the server restarts, so
+	// list entity tags include the start time to tell the runs apart
+	private final String listEtagPrefix = Long.toHexString(System.currentTimeMillis()) + "-";
+
+	@Value("${videos.list.cacheControl:no-cache}")
+	private String listCacheControl;
+
+	@Value("${videos.data.cacheControl:no-cache}")
+	private String dataCacheControl;
+
+	// Seconds that a client should wait before retrying an upload that was
+	// turned away because the ingestion queue was full
+	private static final String INGESTION_RETRY_AFTER = "1";
+
+	@Autowired
+	private ExecutorService ingestionExecutor;
+
+	@Value("${videos.ingestion.responseTimeout:10000}")
+	private long ingestionResponseTimeout;
+
+	// The state of the uploads that the ingestion executor has not finished,
+	// or has failed to finish after their request was answered with a 202,
+	// keyed by video id. A failure is dropped once a client has read it.
+	private final ConcurrentMap<Long, VideoStatus> ingestions = new ConcurrentHashMap<Long, VideoStatus>();
+
+	// The list carries an entity tag derived from the version of the
+	// VideoStore, so a client polling for changes gets a 304 without the
+	// list being serialized as long as no video has been added or updated.
+	// The version is read before the list, so a tag never claims a newer
+	// list than the one it is sent with.
 	@RequestMapping(value = VideoSvcApi.VIDEO_SVC_PATH, method = RequestMethod.GET)
-	public @ResponseBody Collection<Video> GetVideoList() {
+	public @ResponseBody Collection<Video> GetVideoList(
+			HttpServletRequest request, HttpServletResponse response) {
 
 		System.out.println("GetVideoList");
 
-		List<Video> videoList = new ArrayList<Video>(videos.values());
-		return videoList;
+		EntityTag etag = EntityTag.strong(listEtagPrefix + videos.getVersion());
+		response.setHeader("ETag", etag.toString());
+		response.setHeader("Cache-Control", listCacheControl);
+		if (etag.matchesAny(request.getHeader("If-None-Match"))) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return null;
+		}
+
+		return videos.findAll();
 	}
 
 	@RequestMapping(value = VideoSvcApi.VIDEO_SVC_PATH, method = RequestMethod.POST)
@@ -77,51 +137,207 @@ public class VideoSvcController {
 			video.setDataUrl(dataUrl);
 		}
 
-		videos.put(video.getId(), video);
+		videos.save(video);
 
 		return video;
 	}
 
+	// The data is streamed from the container's copy of the upload to disk
+	// by the bounded ingestion executor, hashing it on the way, so the
+	// request thread goes back to the container instead of waiting for the
+	// disk and the data is only read once. The response is READY once the data is durable, or PROCESSING
+	// (with a 202) if that takes longer than the response timeout, in which
+	// case the client polls GetVideoStatus. When the executor's queue is full
+	// the upload is turned away with a 503.
 	@Multipart
 	@RequestMapping(value = VideoSvcApi.VIDEO_DATA_PATH, method = RequestMethod.POST)
-	public @ResponseBody VideoStatus AddVideoData(
+	public @ResponseBody DeferredResult<VideoStatus> AddVideoData(
 			@PathVariable(VideoSvcApi.ID_PARAMETER) long videoId,
 			@RequestPart(VideoSvcApi.DATA_PARAMETER) MultipartFile videoData,
-			HttpServletResponse response) throws IOException {
+			final HttpServletResponse response) throws IOException {
 
 		System.out.println("AddVideoData: videoId - " + videoId);
 
-		Video video = videos.get(videoId);
+		final Video video = videos.findOne(videoId);
+
+		if (video == null) {
+			throw new ResourceNotFoundException();
+		}
+
+		// The container deletes its copy of the upload once the response is
+		// sent, which may be before the executor gets to it, so the stream
+		// is opened here
+		final InputStream data = videoData.getInputStream();
+
+		final VideoStatus processing = new VideoStatus(VideoState.PROCESSING);
+		final DeferredResult<VideoStatus> result = new DeferredResult<VideoStatus>(
+				ingestionResponseTimeout, processing);
+		result.onTimeout(new Runnable() {
+			@Override
+			public void run() {
+				response.setStatus(HttpServletResponse.SC_ACCEPTED);
+			}
+		});
+
+		ingestions.put(videoId, processing);
+		try {
+			ingestionExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try (InputStream in = data) {
+						videoDataMgr.saveVideoData(video, in);
+						ingestions.remove(video.getId(), processing);
+						result.setResult(new VideoStatus(VideoState.READY));
+					} catch (Exception e) {
+						log.error("AddVideoData: videoId - " + video.getId() + " failed", e);
+						// Only a client that was told to poll needs to find out
+						// about the failure from GetVideoStatus
+						if (result.setErrorResult(e)) {
+							ingestions.remove(video.getId(), processing);
+						} else {
+							ingestions.replace(video.getId(), processing,
+									new VideoStatus(VideoState.FAILED));
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			ingestions.remove(videoId, processing);
+			data.close();
+			response.setHeader("Retry-After", INGESTION_RETRY_AFTER);
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			return null;
+		}
+		return result;
+	}
 
-		if (video != null) {
-			videoDataMgr = VideoFileManager.get();
-			videoDataMgr.saveVideoData(video, videoData.getInputStream());
+	// Reports whether the data of a video that was sent to AddVideoData is
+	// still being written, has been stored, or could not be stored
+	@RequestMapping(value = VideoSvcApi.VIDEO_STATUS_PATH, method = RequestMethod.GET)
+	public @ResponseBody VideoStatus GetVideoStatus(
+			@PathVariable(VideoSvcApi.ID_PARAMETER) long videoId) {
+
+		Video video = videos.findOne(videoId);
+		if (video == null) {
+			throw new ResourceNotFoundException();
+		}
 
-			VideoStatus status = new VideoStatus(VideoState.READY);
+		VideoStatus status = ingestions.get(videoId);
+		if (status != null) {
+			if (status.getState() == VideoState.FAILED) {
+				ingestions.remove(videoId, status);
+			}
 			return status;
+		} else if (videoDataMgr.hasVideoData(video)) {
+			return new VideoStatus(VideoState.READY);
 		} else {
 			throw new ResourceNotFoundException();
 		}
 	}
 
+	@RequestMapping(value = VideoSvcApi.VIDEO_UPLOAD_PATH, method = RequestMethod.POST)
+	public @ResponseBody VideoUpload StartVideoUpload(
+			@PathVariable(VideoSvcApi.ID_PARAMETER) long videoId)
+			throws IOException {
+
+		System.out.println("StartVideoUpload: videoId - " + videoId);
+
+		Video video = videos.findOne(videoId);
+		if (video == null) {
+			throw new ResourceNotFoundException();
+		}
+
+		String uploadId = videoDataMgr.startUpload(video);
+		return new VideoUpload(uploadId, videoId, 0);
+	}
+
+	@RequestMapping(value = VideoSvcApi.VIDEO_UPLOAD_SESSION_PATH, method = RequestMethod.PUT)
+	public @ResponseBody VideoUpload PutVideoChunk(
+			@PathVariable(VideoSvcApi.ID_PARAMETER) long videoId,
+			@PathVariable(VideoSvcApi.UPLOAD_ID_PARAMETER) String uploadId,
+			@RequestParam(VideoSvcApi.OFFSET_PARAMETER) long offset,
+			HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+
+		System.out.println("PutVideoChunk: videoId - " + videoId
+				+ " uploadId - " + uploadId + " offset - " + offset);
+
+		Video video = findUploadVideo(videoId, uploadId);
+
+		// Chunks may overlap data that was already committed, which happens
+		// when a client retries a chunk, but must not leave a gap
+		long committed = videoDataMgr.getUploadOffset(video, uploadId);
+		if (offset < 0 || offset > committed) {
+			response.setStatus(HttpServletResponse.SC_CONFLICT);
+			return new VideoUpload(uploadId, videoId, committed);
+		}
+
+		committed = videoDataMgr.writeUploadChunk(video, uploadId, offset,
+				request.getInputStream());
+		return new VideoUpload(uploadId, videoId, committed);
+	}
+
+	@RequestMapping(value = VideoSvcApi.VIDEO_UPLOAD_SESSION_PATH, method = RequestMethod.GET)
+	public @ResponseBody VideoUpload GetVideoUpload(
+			@PathVariable(VideoSvcApi.ID_PARAMETER) long videoId,
+			@PathVariable(VideoSvcApi.UPLOAD_ID_PARAMETER) String uploadId)
+			throws IOException {
+
+		System.out.println("GetVideoUpload: videoId - " + videoId
+				+ " uploadId - " + uploadId);
+
+		Video video = findUploadVideo(videoId, uploadId);
+		return new VideoUpload(uploadId, videoId,
+				videoDataMgr.getUploadOffset(video, uploadId));
+	}
+
+	@RequestMapping(value = VideoSvcApi.VIDEO_UPLOAD_COMPLETE_PATH, method = RequestMethod.POST)
+	public @ResponseBody VideoStatus CompleteVideoUpload(
+			@PathVariable(VideoSvcApi.ID_PARAMETER) long videoId,
+			@PathVariable(VideoSvcApi.UPLOAD_ID_PARAMETER) String uploadId)
+			throws IOException {
+
+		System.out.println("CompleteVideoUpload: videoId - " + videoId
+				+ " uploadId - " + uploadId);
+
+		Video video = findUploadVideo(videoId, uploadId);
+		videoDataMgr.completeUpload(video, uploadId);
+
+		return new VideoStatus(VideoState.READY);
+	}
+
+	@RequestMapping(value = VideoSvcApi.VIDEO_UPLOAD_SESSION_PATH, method = RequestMethod.DELETE)
+	public void CancelVideoUpload(
+			@PathVariable(VideoSvcApi.ID_PARAMETER) long videoId,
+			@PathVariable(VideoSvcApi.UPLOAD_ID_PARAMETER) String uploadId,
+			HttpServletResponse response) throws IOException {
+
+		System.out.println("CancelVideoUpload: videoId - " + videoId
+				+ " uploadId - " + uploadId);
+
+		Video video = findUploadVideo(videoId, uploadId);
+		videoDataMgr.cancelUpload(video, uploadId);
+
+		response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+	}
+
 	@RequestMapping(value = VideoSvcApi.VIDEO_DATA_PATH, method = RequestMethod.GET)
 	public @ResponseBody void GetVideoData(
 			@PathVariable(VideoSvcApi.ID_PARAMETER) long videoId,
-			HttpServletResponse response) throws IOException {
+			HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
 
 		System.out.println("GetVideoData: videoId - " + videoId);
 
-		Video video = videos.get(videoId);
+		Video video = videos.findOne(videoId);
 		if (video == null) {
 			throw new ResourceNotFoundException();
 		}
 
 		if (videoDataMgr.hasVideoData(video)) {
-			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-			videoDataMgr = VideoFileManager.get();
-			videoDataMgr.copyVideoData(video, outputStream);
-
-			response.getOutputStream().write(outputStream.toByteArray());
+			String contentType = video.getContentType() != null ? video
+					.getContentType() : DEFAULT_CONTENT_TYPE;
+			sendVideoData(video, contentType, request, response);
 		} else {
 			throw new ResourceNotFoundException();
 		}
@@ -136,53 +352,265 @@ public class VideoSvcController {
 		System.out.println("SetVideoRating: videoId - " + videoId
 				+ " rating - " + rating);
 
-		Video video = videos.get(videoId);
+		Video video = videos.findOne(videoId);
 		if (video == null) {
 			throw new ResourceNotFoundException();
 		}
 
 		if (videoDataMgr.hasVideoData(video)) {
-			video.setRating(rating);
-
-			return video;
+			if (rate(videoId, rating, response) == null) {
+				return null;
+			}
+			return videos.findOne(videoId);
 		} else {
 			throw new ResourceNotFoundException();
 		}
 	}
 
+	// The rating is matched with a regular expression because Spring would
+	// otherwise treat the ".5" of a rating such as 3.5 as a file extension
+	@RequestMapping(value = VideoSvcApi.VIDEO_RATING_PATH + "/{rating:.+}", method = RequestMethod.POST)
+	public @ResponseBody AverageVideoRating RateVideo(
+			@PathVariable(VideoSvcApi.ID_PARAMETER) long videoId,
+			@PathVariable(VideoSvcApi.RATING_PARAMETER) float rating,
+			HttpServletResponse response) throws IOException {
+
+		System.out.println("RateVideo: videoId - " + videoId + " rating - "
+				+ rating);
+
+		if (videos.findOne(videoId) == null) {
+			throw new ResourceNotFoundException();
+		}
+		return rate(videoId, rating, response);
+	}
+
+	@RequestMapping(value = VideoSvcApi.VIDEO_RATING_PATH, method = RequestMethod.GET)
+	public @ResponseBody AverageVideoRating GetVideoRating(
+			@PathVariable(VideoSvcApi.ID_PARAMETER) long videoId) {
+
+		System.out.println("GetVideoRating: videoId - " + videoId);
+
+		if (videos.findOne(videoId) == null) {
+			throw new ResourceNotFoundException();
+		}
+		return ratings.get(videoId);
+	}
+
 	@RequestMapping(value = VideoSvcApi.VIDEO_DOWNLOAD_PATH, method = RequestMethod.GET)
 	public @ResponseBody void DownloadVideo(
 			@PathVariable(VideoSvcApi.ID_PARAMETER) long videoId,
-			HttpServletResponse response) throws IOException {
+			HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
 		System.out.println("DownloadVideo: videoId - " + videoId);
 
-		Video video = videos.get(videoId);
+		Video video = videos.findOne(videoId);
 		if (video == null) {
 			throw new ResourceNotFoundException();
 		}
 
 		if (videoDataMgr.hasVideoData(video)) {
-
-			ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-			videoDataMgr.copyVideoData(video, byteArrayOutputStream);
-
-			response.setContentType("application/octet-stream");
-			response.setContentLength(byteArrayOutputStream.size());
 			response.setHeader(
 					"Content-Disposition",
 					String.format("attachment; filename=\"%s.mp4\"",
 							video.getTitle()));
 
-			OutputStream outStream = response.getOutputStream();
-			byteArrayOutputStream.writeTo(outStream);
+			sendVideoData(video, DEFAULT_CONTENT_TYPE, request, response);
 
-			outStream.close();
+			response.getOutputStream().close();
 		} else {
 			throw new ResourceNotFoundException();
 		}
 
 	}
 
+	// Looks up the video that an in-progress upload belongs to, failing
+	// with a 404 if either the video or the upload does not exist
+	private Video findUploadVideo(long videoId, String uploadId)
+			throws IOException {
+		Video video = videos.findOne(videoId);
+		if (video == null) {
+			throw new ResourceNotFoundException();
+		}
+
+		if (!videoDataMgr.hasUpload(video, uploadId)) {
+			throw new ResourceNotFoundException();
+		}
+		return video;
+	}
+
+	// Records the current user's rating of a video and copies the new
+	// average into the stored Video so that the video list shows it. The
+	// aggregate itself never locks; the copy reads whatever the aggregate
+	// holds while the video is locked, so a slower request can't overwrite
+	// a newer average with its older one. A rating that is out of range gets
+	// a 400 and null is returned.
+	private AverageVideoRating rate(long videoId, float rating,
+			HttpServletResponse response) throws IOException {
+		AverageVideoRating average;
+		try {
+			average = ratings.rate(videoId, getRater(), rating);
+		} catch (IllegalArgumentException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+					e.getMessage());
+			return null;
+		}
+
+		videos.update(videoId, new VideoStore.VideoUpdate() {
+			@Override
+			public void apply(Video v) {
+				AverageVideoRating current = ratings.get(v.getId());
+				v.setAverageRating((float) current.getRating());
+				v.setRatingCount(current.getTotalRatings());
+			}
+		});
+		return average;
+	}
+
+	// The name of the authenticated user making the current request or, if
+	// the request isn't authenticated, the address that it came from
+	private String getRater() {
+		HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder
+				.getRequestAttributes()).getRequest();
+		return (request.getUserPrincipal() != null) ? request
+				.getUserPrincipal().getName() : request.getRemoteAddr();
+	}
+
+	// Writes the binary data for a video to the response, honoring any
+	// conditional and Range headers sent by the client. The data is tagged
+	// with a strong entity tag made from its SHA-256 checksum, and a client
+	// whose If-None-Match (or, failing that, If-Modified-Since) header shows
+	// that its copy is current gets a 304 without a body. Otherwise a
+	// missing, malformed or stale range request gets the whole video with a
+	// 200, a single range gets a 206 with a Content-Range header, several
+	// ranges get a 206 with a multipart/byteranges body, and ranges that lie
+	// entirely past the end of the video get a 416.
+	private void sendVideoData(Video video, String contentType,
+			HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+
+		long length = videoDataMgr.getVideoDataSize(video);
+		long lastModified = videoDataMgr.getVideoDataLastModified(video);
+		EntityTag etag = EntityTag.strong(videoDataMgr.getVideoDataChecksum(video));
+
+		response.setHeader("Accept-Ranges", ByteRange.BYTES_UNIT);
+		response.setDateHeader("Last-Modified", lastModified);
+		response.setHeader("ETag", etag.toString());
+		response.setHeader("Cache-Control", dataCacheControl);
+
+		if (isNotModified(request, etag, lastModified)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		List<ByteRange> ranges = null;
+		if (isIfRangeSatisfied(request, etag, lastModified)) {
+			ranges = ByteRange.parse(request.getHeader("Range"), length);
+		}
+
+		if (ranges == null) {
+			response.setContentType(contentType);
+			setContentLength(response, length);
+			videoDataMgr.streamVideoData(video, response.getOutputStream());
+		} else if (ranges.isEmpty()) {
+			response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			response.setHeader("Content-Range", ByteRange.BYTES_UNIT + " */"
+					+ length);
+		} else if (ranges.size() == 1) {
+			ByteRange range = ranges.get(0);
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setContentType(contentType);
+			response.setHeader("Content-Range", range.toContentRange(length));
+			setContentLength(response, range.getLength());
+			videoDataMgr.streamVideoData(video, range.getFirst(),
+					range.getLength(), response.getOutputStream());
+		} else {
+			sendMultipartByteRanges(video, contentType, ranges, length,
+					response);
+		}
+	}
+
+	private void sendMultipartByteRanges(Video video, String contentType,
+			List<ByteRange> ranges, long length, HttpServletResponse response)
+			throws IOException {
+
+		String boundary = UUID.randomUUID().toString().replace("-", "");
+
+		// The part headers are built up front so that the exact
+		// Content-Length of the multipart body is known before any video
+		// data is written
+		List<byte[]> partHeaders = new ArrayList<byte[]>(ranges.size());
+		byte[] trailer = ("\r\n--" + boundary + "--\r\n")
+				.getBytes(StandardCharsets.ISO_8859_1);
+		long bodyLength = trailer.length;
+		for (int i = 0; i < ranges.size(); i++) {
+			ByteRange range = ranges.get(i);
+			String header = (i == 0 ? "" : "\r\n") + "--" + boundary
+					+ "\r\nContent-Type: " + contentType
+					+ "\r\nContent-Range: " + range.toContentRange(length)
+					+ "\r\n\r\n";
+			byte[] headerBytes = header.getBytes(StandardCharsets.ISO_8859_1);
+			partHeaders.add(headerBytes);
+			bodyLength += headerBytes.length + range.getLength();
+		}
+
+		response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+		response.setContentType("multipart/byteranges; boundary=" + boundary);
+		setContentLength(response, bodyLength);
+
+		OutputStream out = response.getOutputStream();
+		for (int i = 0; i < ranges.size(); i++) {
+			ByteRange range = ranges.get(i);
+			out.write(partHeaders.get(i));
+			videoDataMgr.streamVideoData(video, range.getFirst(),
+					range.getLength(), out);
+		}
+		out.write(trailer);
+	}
+
+	// If-None-Match takes precedence over If-Modified-Since, which is only
+	// looked at when the client sent no entity tags
+	private boolean isNotModified(HttpServletRequest request, EntityTag etag,
+			long lastModified) {
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			return etag.matchesAny(ifNoneMatch);
+		}
+		try {
+			long date = request.getDateHeader("If-Modified-Since");
+			// HTTP dates only have a resolution of one second
+			return date >= 0 && lastModified / 1000 <= date / 1000;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	// A Range header only applies if the If-Range validator sent with it
+	// still matches the stored video data: either the same strong entity tag
+	// or an HTTP date equal to the last modification time.
+	private boolean isIfRangeSatisfied(HttpServletRequest request,
+			EntityTag etag, long lastModified) {
+		String ifRange = request.getHeader("If-Range");
+		if (ifRange == null) {
+			return true;
+		}
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			return etag.strongEquals(EntityTag.parse(ifRange));
+		}
+		try {
+			long date = request.getDateHeader("If-Range");
+			// HTTP dates only have a resolution of one second
+			return date / 1000 == lastModified / 1000;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	// HttpServletResponse.setContentLength() only takes an int, which
+	// overflows for videos larger than 2GB
+	private void setContentLength(HttpServletResponse response, long length) {
+		response.setHeader("Content-Length", Long.toString(length));
+	}
+
 	private String getUrlBaseForLocalServer() {
 		HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder
 				.getRequestAttributes()).getRequest();
@@ -0,0 +1,46 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import org.magnum.dataup.model.VideoUserRating;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * The JPA repository of the persistent per-user ratings of the videos,
+ * which the VideoRatingWriter writes along with the totals.
+ */
+public interface VideoUserRatingRepository extends
+		CrudRepository<VideoUserRating, Long> {
+
+	/**
+	 * Replaces a user's rating of a video in a single UPDATE, without
+	 * reading the row first.
+	 * 
+	 * @return the number of rows that were updated, which is 0 if the user
+	 *         hasn't rated the video before
+	 */
+	@Modifying
+	@Query("update VideoUserRating r set r.rating = :rating "
+			+ "where r.videoId = :videoId and r.rater = :rater")
+	public int setRating(@Param("videoId") long videoId,
+			@Param("rater") String rater, @Param("rating") int rating);
+
+}
@@ -0,0 +1,64 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup.model;
+
+/**
+ * The average of the ratings that users have given a Video, along with how
+ * many users have rated it. Each user's latest rating counts exactly once.
+ */
+public class AverageVideoRating {
+
+	private double rating;
+	private long videoId;
+	private int totalRatings;
+
+	public AverageVideoRating() {
+	}
+
+	public AverageVideoRating(double rating, long videoId, int totalRatings) {
+		super();
+		this.rating = rating;
+		this.videoId = videoId;
+		this.totalRatings = totalRatings;
+	}
+
+	public double getRating() {
+		return rating;
+	}
+
+	public void setRating(double rating) {
+		this.rating = rating;
+	}
+
+	public long getVideoId() {
+		return videoId;
+	}
+
+	public void setVideoId(long videoId) {
+		this.videoId = videoId;
+	}
+
+	public int getTotalRatings() {
+		return totalRatings;
+	}
+
+	public void setTotalRatings(int totalRatings) {
+		this.totalRatings = totalRatings;
+	}
+
+}
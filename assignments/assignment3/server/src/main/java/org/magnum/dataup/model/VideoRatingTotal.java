@@ -0,0 +1,84 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * The persistent sum and count of the ratings of one Video. The sum is kept
+ * in hundredths of a star so that it can be added to exactly.
+ * 
+ * The flushed generation is the journal generation whose ratings were last
+ * added to this row. It lets a generation that was already written before a
+ * crash be replayed from the journal without being counted twice.
+ */
+@Entity
+public class VideoRatingTotal {
+
+	@Id
+	private long videoId;
+	private long ratingSum;
+	private long ratingCount;
+	private long flushedGeneration;
+
+	public VideoRatingTotal() {
+	}
+
+	public VideoRatingTotal(long videoId, long ratingSum, long ratingCount,
+			long flushedGeneration) {
+		super();
+		this.videoId = videoId;
+		this.ratingSum = ratingSum;
+		this.ratingCount = ratingCount;
+		this.flushedGeneration = flushedGeneration;
+	}
+
+	public long getVideoId() {
+		return videoId;
+	}
+
+	public void setVideoId(long videoId) {
+		this.videoId = videoId;
+	}
+
+	public long getRatingSum() {
+		return ratingSum;
+	}
+
+	public void setRatingSum(long ratingSum) {
+		this.ratingSum = ratingSum;
+	}
+
+	public long getRatingCount() {
+		return ratingCount;
+	}
+
+	public void setRatingCount(long ratingCount) {
+		this.ratingCount = ratingCount;
+	}
+
+	public long getFlushedGeneration() {
+		return flushedGeneration;
+	}
+
+	public void setFlushedGeneration(long flushedGeneration) {
+		this.flushedGeneration = flushedGeneration;
+	}
+
+}
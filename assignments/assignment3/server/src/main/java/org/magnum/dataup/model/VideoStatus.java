@@ -45,7 +45,7 @@ package org.magnum.dataup.model;
 public class VideoStatus {
 
 	public enum VideoState {
-		READY, PROCESSING
+		READY, PROCESSING, FAILED
 	}
 
 	private VideoState state;
@@ -0,0 +1,68 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup.model;
+
+/**
+ * The state of a resumable, chunked upload of the binary data for a Video.
+ * 
+ * The offset is the number of bytes that the server has committed to disk
+ * so far. A client that loses its connection asks the server for the upload
+ * and resumes sending chunks from this offset rather than from the
+ * beginning of the video.
+ */
+public class VideoUpload {
+
+	private String uploadId;
+	private long videoId;
+	private long offset;
+
+	public VideoUpload() {
+	}
+
+	public VideoUpload(String uploadId, long videoId, long offset) {
+		super();
+		this.uploadId = uploadId;
+		this.videoId = videoId;
+		this.offset = offset;
+	}
+
+	public String getUploadId() {
+		return uploadId;
+	}
+
+	public void setUploadId(String uploadId) {
+		this.uploadId = uploadId;
+	}
+
+	public long getVideoId() {
+		return videoId;
+	}
+
+	public void setVideoId(long videoId) {
+		this.videoId = videoId;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public void setOffset(long offset) {
+		this.offset = offset;
+	}
+
+}
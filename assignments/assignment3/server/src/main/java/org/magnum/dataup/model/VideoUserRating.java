@@ -0,0 +1,85 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup.model;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * The persistent rating that one user has given one Video, in hundredths of
+ * a star. These are what lets a user who rates a video again after a
+ * restart replace their earlier rating rather than add a second one.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = { "videoId", "rater" }))
+public class VideoUserRating {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	private long id;
+	private long videoId;
+	private String rater;
+	private int rating;
+
+	public VideoUserRating() {
+	}
+
+	public VideoUserRating(long videoId, String rater, int rating) {
+		super();
+		this.videoId = videoId;
+		this.rater = rater;
+		this.rating = rating;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	public long getVideoId() {
+		return videoId;
+	}
+
+	public void setVideoId(long videoId) {
+		this.videoId = videoId;
+	}
+
+	public String getRater() {
+		return rater;
+	}
+
+	public void setRater(String rater) {
+		this.rater = rater;
+	}
+
+	public int getRating() {
+		return rating;
+	}
+
+	public void setRating(int rating) {
+		this.rating = rating;
+	}
+
+}
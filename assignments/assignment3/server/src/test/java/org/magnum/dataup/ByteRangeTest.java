@@ -0,0 +1,78 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+	private static final long LENGTH = 1000;
+
+	@Test
+	public void testClosedRange() {
+		List<ByteRange> ranges = ByteRange.parse("bytes=0-499", LENGTH);
+		assertEquals(1, ranges.size());
+		assertEquals(0, ranges.get(0).getFirst());
+		assertEquals(499, ranges.get(0).getLast());
+		assertEquals(500, ranges.get(0).getLength());
+		assertEquals("bytes 0-499/1000", ranges.get(0).toContentRange(LENGTH));
+	}
+
+	@Test
+	public void testOpenAndSuffixRanges() {
+		List<ByteRange> ranges = ByteRange.parse("bytes=900-, -50", LENGTH);
+		assertEquals(2, ranges.size());
+		assertEquals(900, ranges.get(0).getFirst());
+		assertEquals(999, ranges.get(0).getLast());
+		assertEquals(950, ranges.get(1).getFirst());
+		assertEquals(999, ranges.get(1).getLast());
+	}
+
+	@Test
+	public void testRangesAreClampedToLength() {
+		List<ByteRange> ranges = ByteRange.parse("bytes=990-5000,-5000",
+				LENGTH);
+		assertEquals(990, ranges.get(0).getFirst());
+		assertEquals(999, ranges.get(0).getLast());
+		assertEquals(0, ranges.get(1).getFirst());
+		assertEquals(999, ranges.get(1).getLast());
+	}
+
+	@Test
+	public void testUnsatisfiableRanges() {
+		assertTrue(ByteRange.parse("bytes=1000-", LENGTH).isEmpty());
+		assertTrue(ByteRange.parse("bytes=-0", LENGTH).isEmpty());
+		assertTrue(ByteRange.parse("bytes=0-10", 0).isEmpty());
+	}
+
+	@Test
+	public void testMalformedRangesAreIgnored() {
+		assertNull(ByteRange.parse(null, LENGTH));
+		assertNull(ByteRange.parse("items=0-10", LENGTH));
+		assertNull(ByteRange.parse("bytes=10-5", LENGTH));
+		assertNull(ByteRange.parse("bytes=abc", LENGTH));
+		assertNull(ByteRange.parse("bytes=0-1,", LENGTH));
+	}
+
+}
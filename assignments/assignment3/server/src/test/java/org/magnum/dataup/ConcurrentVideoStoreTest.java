@@ -0,0 +1,199 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.dataup.model.Video;
+
+/**
+ * Multi-threaded stress tests for the ConcurrentVideoStore. These tests run
+ * directly against the store and do not need the server to be running.
+ */
+public class ConcurrentVideoStoreTest {
+
+	private static final int THREADS = 16;
+
+	private static final int LARGE_STORE_SIZE = 100000;
+
+	private ExecutorService executor;
+
+	private VideoStore store;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(THREADS);
+		store = new ConcurrentVideoStore();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testConcurrentSavesAreNotLost() throws Exception {
+		final int perThread = 5000;
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			results.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					for (int i = 0; i < perThread; i++) {
+						store.save(video(thread * perThread + i + 1));
+						// Interleave list calls with the writes
+						if (i % 500 == 0) {
+							store.findAll();
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<?> f : results) {
+			f.get();
+		}
+
+		assertEquals(THREADS * perThread, store.count());
+		Collection<Video> all = store.findAll();
+		assertEquals(THREADS * perThread, all.size());
+
+		// The snapshot is ordered by id
+		long expected = 1;
+		for (Video v : all) {
+			assertEquals(expected++, v.getId());
+		}
+	}
+
+	@Test
+	public void testConcurrentUpdatesToOneVideoAreNotLost() throws Exception {
+		final long id = 42;
+		final int perThread = 10000;
+		store.save(video(id));
+
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int t = 0; t < THREADS; t++) {
+			results.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					for (int i = 0; i < perThread; i++) {
+						store.update(id, new VideoStore.VideoUpdate() {
+							@Override
+							public void apply(Video v) {
+								v.setRatingCount(v.getRatingCount() + 1);
+							}
+						});
+					}
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<?> f : results) {
+			f.get();
+		}
+
+		assertEquals(THREADS * perThread, store.findOne(id).getRatingCount());
+	}
+
+	@Test
+	public void testSnapshotIsOnlyRebuiltAfterWrites() {
+		store.save(video(1));
+		Collection<Video> first = store.findAll();
+		assertSame(first, store.findAll());
+
+		store.save(video(2));
+		Collection<Video> second = store.findAll();
+		assertNotSame(first, second);
+		assertEquals(1, first.size());
+		assertEquals(2, second.size());
+	}
+
+	@Test
+	public void testUpdatesDoNotRebuildTheSnapshot() {
+		store.save(video(1));
+		Collection<Video> first = store.findAll();
+		long version = store.getVersion();
+
+		store.update(1, new VideoStore.VideoUpdate() {
+			@Override
+			public void apply(Video v) {
+				v.setRatingCount(1);
+			}
+		});
+		// The list tag still changes, and the cached list shows the update
+		assertTrue(store.getVersion() > version);
+		assertSame(first, store.findAll());
+		assertEquals(1, first.iterator().next().getRatingCount());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSnapshotIsImmutable() {
+		store.save(video(1));
+		Iterator<Video> it = store.findAll().iterator();
+		it.next();
+		it.remove();
+	}
+
+	@Test
+	public void testSnapshotIsReusedAtLargeSizes() {
+		for (int i = 1; i <= LARGE_STORE_SIZE; i++) {
+			store.save(video(i));
+		}
+		// The one rebuild that follows the writes
+		Collection<Video> rebuilt = store.findAll();
+		assertEquals(LARGE_STORE_SIZE, rebuilt.size());
+
+		// Every later call is served the same list instead of a copy
+		for (int i = 0; i < 10000; i++) {
+			assertSame(rebuilt, store.findAll());
+		}
+	}
+
+	private static Video video(long id) {
+		Video v = new Video();
+		v.setId(id);
+		v.setTitle("Video " + id);
+		return v;
+	}
+
+}
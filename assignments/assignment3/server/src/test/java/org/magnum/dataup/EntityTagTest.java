@@ -0,0 +1,71 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EntityTagTest {
+
+	private static final EntityTag TAG = EntityTag.strong("abc123");
+
+	@Test
+	public void testHeaderValues() {
+		assertEquals("\"abc123\"", TAG.toString());
+		assertEquals("W/\"abc123\"", EntityTag.weak("abc123").toString());
+	}
+
+	@Test
+	public void testParse() {
+		EntityTag weak = EntityTag.parse(" W/\"abc123\" ");
+		assertTrue(weak.isWeak());
+		assertEquals("abc123", weak.getValue());
+		assertFalse(EntityTag.parse("\"abc123\"").isWeak());
+
+		assertNull(EntityTag.parse(null));
+		assertNull(EntityTag.parse("Wed, 21 Oct 2015 07:28:00 GMT"));
+		assertNull(EntityTag.parse("\"abc"));
+		assertNull(EntityTag.parse("\"a\"b\""));
+	}
+
+	@Test
+	public void testIfNoneMatch() {
+		assertTrue(TAG.matchesAny("\"abc123\""));
+		assertTrue(TAG.matchesAny("*"));
+		assertTrue(TAG.matchesAny("\"x\", W/\"abc123\""));
+		assertTrue(TAG.matchesAny("\"a,b\", \"abc123\""));
+
+		assertFalse(TAG.matchesAny(null));
+		assertFalse(TAG.matchesAny("\"abc1234\""));
+		assertFalse(TAG.matchesAny("\"abc12\""));
+		assertFalse(TAG.matchesAny("\"abc123"));
+	}
+
+	@Test
+	public void testIfRangeNeedsStrongMatch() {
+		assertTrue(TAG.strongEquals(EntityTag.parse("\"abc123\"")));
+		assertFalse(TAG.strongEquals(EntityTag.parse("W/\"abc123\"")));
+		assertFalse(EntityTag.weak("abc123").strongEquals(TAG));
+		assertFalse(TAG.strongEquals(null));
+	}
+
+}
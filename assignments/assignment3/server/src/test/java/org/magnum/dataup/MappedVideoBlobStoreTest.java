@@ -0,0 +1,154 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the MappedVideoBlobStore serves the blobs that are read again
+ * and again from its MappedRegionCache, without opening their files, and
+ * that the cache stays within its capacity.
+ */
+public class MappedVideoBlobStoreTest {
+
+	private static final int BLOB_SIZE = 100;
+
+	private Path dir;
+
+	private MappedRegionCache cache;
+
+	private int opens;
+
+	private MappedVideoBlobStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("blobs");
+		cache = new MappedRegionCache(2 * BLOB_SIZE + BLOB_SIZE / 2);
+		store = new MappedVideoBlobStore(dir, cache) {
+			@Override
+			protected FileChannel open(String key) throws IOException {
+				opens++;
+				return super.open(key);
+			}
+		};
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(dir.toFile());
+	}
+
+	@Test
+	public void testHotBlobIsOnlyOpenedOnce() throws Exception {
+		put("aa01");
+		for (int i = 0; i < 10; i++) {
+			assertArrayEquals(blob("aa01"), read("aa01", 0, Long.MAX_VALUE));
+			assertArrayEquals(Arrays.copyOfRange(blob("aa01"), 10, 20), read("aa01", 10, 10));
+		}
+
+		assertEquals(1, opens);
+		assertEquals(19, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0.95, cache.getHitRatio(), 0.0001);
+		assertEquals(BLOB_SIZE, cache.getResidentBytes());
+	}
+
+	@Test
+	public void testLeastRecentlyReadRegionIsDropped() throws Exception {
+		put("aa01");
+		put("aa02");
+		put("aa03");
+		read("aa01", 0, Long.MAX_VALUE);
+		read("aa02", 0, Long.MAX_VALUE);
+		read("aa01", 0, Long.MAX_VALUE);
+		read("aa03", 0, Long.MAX_VALUE);
+		assertEquals(3, opens);
+		assertEquals(2 * BLOB_SIZE, cache.getResidentBytes());
+
+		// aa02 was read least recently, so it was dropped for aa03
+		read("aa01", 0, Long.MAX_VALUE);
+		read("aa03", 0, Long.MAX_VALUE);
+		assertEquals(3, opens);
+		assertArrayEquals(blob("aa02"), read("aa02", 0, Long.MAX_VALUE));
+		assertEquals(4, opens);
+		assertEquals(2 * BLOB_SIZE, cache.getResidentBytes());
+	}
+
+	@Test
+	public void testReplacedBlobIsReadAgain() throws Exception {
+		put("aa01");
+		read("aa01", 0, Long.MAX_VALUE);
+
+		Path file = Files.createTempFile(dir, "upload", ".tmp");
+		Files.write(file, "replaced".getBytes());
+		store.put("aa01", file);
+		assertArrayEquals("replaced".getBytes(), read("aa01", 0, Long.MAX_VALUE));
+		assertEquals(2, opens);
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testDeletedBlobIsNotServedFromTheCache() throws Exception {
+		put("aa01");
+		read("aa01", 0, Long.MAX_VALUE);
+
+		store.delete("aa01");
+		assertEquals(0, cache.getResidentBytes());
+		read("aa01", 0, Long.MAX_VALUE);
+	}
+
+	private void put(String key) throws IOException {
+		Path file = Files.createTempFile(dir, "upload", ".tmp");
+		try {
+			Files.write(file, blob(key));
+			store.put(key, file);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private byte[] read(String key, long offset, long length) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		store.read(key, offset, length, out);
+		return out.toByteArray();
+	}
+
+	// The content of the blob with the given key
+	private static byte[] blob(String key) {
+		byte[] data = new byte[BLOB_SIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (key.hashCode() + i);
+		}
+		return data;
+	}
+
+}
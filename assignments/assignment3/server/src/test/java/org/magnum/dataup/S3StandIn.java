@@ -0,0 +1,205 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
+
+/**
+ * An in-memory stand-in for a single S3 bucket that speaks just enough of
+ * the S3 protocol for the S3VideoBlobStore: PUT, ranged GET and DELETE of
+ * objects, and listing the objects in the bucket. It runs in an embedded
+ * Tomcat on a local port, so the S3VideoBlobStore can be tested with the
+ * real Amazon S3 client and without an AWS account.
+ */
+public class S3StandIn extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String BUCKET = "videos";
+
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+	private final Map<String, byte[]> objects = new ConcurrentSkipListMap<String, byte[]>();
+
+	// How many object GET requests have been served
+	private final AtomicInteger gets = new AtomicInteger();
+
+	private final Path baseDir;
+
+	private final Tomcat tomcat;
+
+	public S3StandIn() throws IOException {
+		baseDir = Files.createTempDirectory("s3");
+		tomcat = new Tomcat();
+		tomcat.setPort(0);
+		tomcat.setBaseDir(baseDir.toString());
+		Context context = tomcat.addContext("", baseDir.toString());
+		Tomcat.addServlet(context, "s3", this);
+		context.addServletMapping("/*", "s3");
+		try {
+			tomcat.start();
+		} catch (LifecycleException e) {
+			throw new IOException(e);
+		}
+	}
+
+	// A client for the stand-in, which addresses the bucket in the path
+	public AmazonS3Client client() {
+		AmazonS3Client s3 = new AmazonS3Client(new BasicAWSCredentials("test", "test"));
+		s3.setEndpoint("http://localhost:" + tomcat.getConnector().getLocalPort());
+		s3.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
+		return s3;
+	}
+
+	public Map<String, byte[]> getObjects() {
+		return objects;
+	}
+
+	public int getGetCount() {
+		return gets.get();
+	}
+
+	public void stop() throws IOException {
+		try {
+			tomcat.stop();
+			tomcat.destroy();
+		} catch (LifecycleException e) {
+			throw new IOException(e);
+		} finally {
+			FileUtils.deleteDirectory(baseDir.toFile());
+		}
+	}
+
+	@Override
+	protected void doPut(HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		byte[] data = IOUtils.toByteArray(request.getInputStream());
+		objects.put(key(request), data);
+		response.setHeader("ETag", etag(data));
+	}
+
+	@Override
+	protected void doDelete(HttpServletRequest request, HttpServletResponse response) {
+		objects.remove(key(request));
+		response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		String key = key(request);
+		if (key == null) {
+			list(request, response);
+			return;
+		}
+
+		gets.incrementAndGet();
+		byte[] data = objects.get(key);
+		if (data == null) {
+			send(response, HttpServletResponse.SC_NOT_FOUND, "<Error><Code>NoSuchKey</Code>"
+					+ "<Message>The specified key does not exist.</Message></Error>");
+			return;
+		}
+
+		int start = 0;
+		int end = data.length - 1;
+		String range = request.getHeader("Range");
+		if (range != null) {
+			Matcher m = RANGE.matcher(range);
+			if (!m.matches()) {
+				throw new IllegalArgumentException("Unexpected range: " + range);
+			}
+			if (Long.parseLong(m.group(1)) >= data.length) {
+				send(response, HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE,
+						"<Error><Code>InvalidRange</Code>"
+						+ "<Message>The requested range is not satisfiable</Message></Error>");
+				return;
+			}
+			start = Integer.parseInt(m.group(1));
+			end = (int) Math.min(Long.parseLong(m.group(2)), data.length - 1);
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+		}
+		response.setHeader("ETag", etag(data));
+		response.setContentLength(end - start + 1);
+		response.getOutputStream().write(data, start, end - start + 1);
+	}
+
+	private void list(HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		String prefix = request.getParameter("prefix") != null ? request.getParameter("prefix") : "";
+		StringBuilder xml = new StringBuilder("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">"
+				+ "<Name>" + BUCKET + "</Name><Prefix>" + prefix + "</Prefix>"
+				+ "<MaxKeys>1000</MaxKeys><IsTruncated>false</IsTruncated>");
+		for (Map.Entry<String, byte[]> object : objects.entrySet()) {
+			if (object.getKey().startsWith(prefix)) {
+				xml.append("<Contents><Key>").append(object.getKey()).append("</Key>")
+						.append("<LastModified>2014-01-01T00:00:00.000Z</LastModified>")
+						.append("<ETag>").append(etag(object.getValue())).append("</ETag>")
+						.append("<Size>").append(object.getValue().length).append("</Size>")
+						.append("<StorageClass>STANDARD</StorageClass></Contents>");
+			}
+		}
+		send(response, HttpServletResponse.SC_OK, xml.append("</ListBucketResult>").toString());
+	}
+
+	// The key of the object in the request's path, or null for the bucket
+	private static String key(HttpServletRequest request) {
+		String path = request.getPathInfo();
+		return path.length() > BUCKET.length() + 2 ? path.substring(BUCKET.length() + 2) : null;
+	}
+
+	private static void send(HttpServletResponse response, int status, String xml)
+			throws IOException {
+		response.setStatus(status);
+		response.setContentType("application/xml");
+		response.getOutputStream().write(xml.getBytes("UTF-8"));
+	}
+
+	private static String etag(byte[] data) {
+		try {
+			return "\"" + Hex.encodeHexString(MessageDigest.getInstance("MD5").digest(data)) + "\"";
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
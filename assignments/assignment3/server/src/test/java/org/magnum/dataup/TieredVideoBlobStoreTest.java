@@ -0,0 +1,265 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the TieredVideoBlobStore serves the recently read blobs from
+ * its hot store and moves the others to its cold store, which is an
+ * S3VideoBlobStore on an S3StandIn. Blobs are moved to the cold store on
+ * the calling thread, so the tests can check the stores right away.
+ */
+public class TieredVideoBlobStoreTest {
+
+	private static final int BLOB_SIZE = 100;
+
+	private Path dir;
+
+	private S3StandIn s3;
+
+	private MappedVideoBlobStore hot;
+
+	private TieredVideoBlobStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("videos");
+		s3 = new S3StandIn();
+		hot = new MappedVideoBlobStore(dir.resolve("blobs"));
+		store = newStore(2 * BLOB_SIZE + BLOB_SIZE / 2);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		s3.stop();
+		FileUtils.deleteDirectory(dir.toFile());
+	}
+
+	@Test
+	public void testHotBlobsAreNotReadFromTheColdStore() throws Exception {
+		put("aa01");
+		put("aa02");
+		for (int i = 0; i < 10; i++) {
+			assertArrayEquals(blob("aa01"), read("aa01"));
+			assertArrayEquals(blob("aa02"), read("aa02"));
+		}
+
+		assertEquals(0, s3.getGetCount());
+		assertTrue(s3.getObjects().isEmpty());
+		assertEquals(2 * BLOB_SIZE, store.getHotBytes());
+	}
+
+	@Test
+	public void testLeastRecentlyReadBlobIsDemotedAndPromotedAgain() throws Exception {
+		put("aa01");
+		put("aa02");
+		read("aa01");
+		put("aa03");
+
+		// aa02 was used least recently
+		assertEquals(1, store.getDemotionCount());
+		assertFalse(hot.list().containsKey("aa02"));
+		assertArrayEquals(blob("aa02"), s3.getObjects().get("blobs/aa02"));
+		assertEquals(2 * BLOB_SIZE, store.getHotBytes());
+		assertEquals(3, store.list().size());
+
+		// Reading it copies it back, which pushes out aa01 instead
+		assertArrayEquals(blob("aa02"), read("aa02"));
+		assertArrayEquals(blob("aa02"), read("aa02"));
+		assertEquals(1, s3.getGetCount());
+		assertEquals(1, store.getPromotionCount());
+		assertTrue(hot.list().containsKey("aa02"));
+		assertFalse(hot.list().containsKey("aa01"));
+		assertArrayEquals(blob("aa01"), read("aa01"));
+		assertEquals(2, s3.getGetCount());
+	}
+
+	@Test
+	public void testRestartKeepsBothTiers() throws Exception {
+		put("aa01");
+		put("aa02");
+		put("aa03");
+
+		TieredVideoBlobStore restarted = newStore(2 * BLOB_SIZE + BLOB_SIZE / 2);
+		assertEquals(3, restarted.list().size());
+		assertEquals(2 * BLOB_SIZE, restarted.getHotBytes());
+		for (String key : Arrays.asList("aa01", "aa02", "aa03")) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			restarted.read(key, 0, Long.MAX_VALUE, out);
+			assertArrayEquals(blob(key), out.toByteArray());
+		}
+	}
+
+	@Test
+	public void testBlobDemotedDuringAReadIsSentOnce() throws Exception {
+		// A blob of two mapped regions, of which only the first is cached
+		final byte[] large = new byte[(int) MappedVideoBlobStore.MAP_REGION_SIZE + BLOB_SIZE];
+		new Random(42).nextBytes(large);
+		store = newStore(large.length + BLOB_SIZE / 2);
+		put("bb01", large);
+		store.read("bb01", 0, BLOB_SIZE, new ByteArrayOutputStream());
+
+		// Storing another blob while the first region is being sent pushes
+		// bb01, the least recently used blob, out of the hot store
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] b, int off, int len) {
+				if (size() == 0) {
+					try {
+						put("aa01");
+					} catch (IOException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+				super.write(b, off, len);
+			}
+		};
+		assertEquals(large.length, store.read("bb01", 0, Long.MAX_VALUE, out));
+
+		assertEquals(1, store.getDemotionCount());
+		assertFalse(hot.list().containsKey("bb01"));
+		assertArrayEquals(large, out.toByteArray());
+	}
+
+	@Test
+	public void testDeleteRemovesTheBlobFromBothTiers() throws Exception {
+		put("aa01");
+		put("aa02");
+		put("aa03");
+		read("aa01");
+
+		store.delete("aa01");
+		assertFalse(store.list().containsKey("aa01"));
+		assertFalse(hot.list().containsKey("aa01"));
+		assertFalse(s3.getObjects().containsKey("blobs/aa01"));
+	}
+
+	@Test
+	public void testBlobDeletedDuringAPromotionIsNotKept() throws Exception {
+		store = newStore(BLOB_SIZE, new S3VideoBlobStore(s3.client(), S3StandIn.BUCKET, "blobs/") {
+			@Override
+			public long read(String key, long offset, long length,
+					OutputStream out) throws IOException {
+				long read = super.read(key, offset, length, out);
+				// The last video that used the blob is replaced while the
+				// blob is copied to the hot store
+				store.delete(key);
+				return read;
+			}
+		});
+		put("aa01");
+		put("aa02");
+		assertFalse(hot.list().containsKey("aa01"));
+
+		try {
+			read("aa01");
+			fail("A deleted blob was read");
+		} catch (FileNotFoundException e) {
+			// expected
+		}
+		assertFalse(store.list().containsKey("aa01"));
+		assertFalse(hot.list().containsKey("aa01"));
+		assertEquals(BLOB_SIZE, store.getHotBytes());
+	}
+
+	@Test(timeout = 10000)
+	public void testColdStoreThatIsDownIsNotRetriedRightAway() throws Exception {
+		final AtomicInteger attempts = new AtomicInteger();
+		store = newStore(BLOB_SIZE, new S3VideoBlobStore(s3.client(), S3StandIn.BUCKET, "blobs/") {
+			@Override
+			public void put(String key, Path file) throws IOException {
+				attempts.incrementAndGet();
+				throw new IOException("The cold store is down");
+			}
+		});
+		put("aa01");
+		put("aa02");
+		put("aa03");
+
+		// The hot store keeps every blob until the cold store is back
+		assertEquals(1, attempts.get());
+		assertEquals(0, store.getDemotionCount());
+		assertEquals(3 * BLOB_SIZE, store.getHotBytes());
+		assertArrayEquals(blob("aa01"), read("aa01"));
+	}
+
+	private TieredVideoBlobStore newStore(long hotCapacity) throws IOException {
+		return newStore(hotCapacity,
+				new S3VideoBlobStore(s3.client(), S3StandIn.BUCKET, "blobs/"));
+	}
+
+	private TieredVideoBlobStore newStore(long hotCapacity, VideoBlobStore cold)
+			throws IOException {
+		return new TieredVideoBlobStore(hot, cold,
+				hotCapacity, dir.resolve("uploads"), new Executor() {
+					@Override
+					public void execute(Runnable command) {
+						command.run();
+					}
+				});
+	}
+
+	private void put(String key) throws IOException {
+		put(key, blob(key));
+	}
+
+	private void put(String key, byte[] data) throws IOException {
+		Path file = Files.createTempFile(dir, "upload", ".tmp");
+		try {
+			Files.write(file, data);
+			store.put(key, file);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private byte[] read(String key) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		store.read(key, 0, Long.MAX_VALUE, out);
+		return out.toByteArray();
+	}
+
+	// The content of the blob with the given key
+	private static byte[] blob(String key) {
+		byte[] data = new byte[BLOB_SIZE];
+		Arrays.fill(data, (byte) key.hashCode());
+		return data;
+	}
+
+}
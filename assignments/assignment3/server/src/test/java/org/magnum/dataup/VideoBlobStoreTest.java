@@ -0,0 +1,152 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Tests that every VideoBlobStore keeps the same contract, so that the
+ * VideoFileManager can use any of them. The S3VideoBlobStore is run against
+ * an S3StandIn.
+ */
+@RunWith(Parameterized.class)
+public class VideoBlobStoreTest {
+
+	private static final String KEY = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+	private static final String OTHER_KEY = "60303ae22b998861bce3b28f33eec1be758a213c86c93c076dbe9f558c11c752";
+
+	private static final byte[] DATA = "the data of a video, stored as a blob".getBytes();
+
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> stores() {
+		return Arrays.asList(new Object[][] { { "local" }, { "mapped" }, { "s3" } });
+	}
+
+	private final String type;
+
+	private Path dir;
+
+	private S3StandIn s3;
+
+	private VideoBlobStore store;
+
+	public VideoBlobStoreTest(String type) {
+		this.type = type;
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("blobs");
+		if ("local".equals(type)) {
+			store = new LocalVideoBlobStore(dir);
+		} else if ("mapped".equals(type)) {
+			store = new MappedVideoBlobStore(dir);
+		} else {
+			s3 = new S3StandIn();
+			store = new S3VideoBlobStore(s3.client(), S3StandIn.BUCKET, "videos/");
+		}
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (s3 != null) {
+			s3.stop();
+		}
+		FileUtils.deleteDirectory(dir.toFile());
+	}
+
+	@Test
+	public void testPutThenRead() throws Exception {
+		put(KEY, DATA);
+		assertArrayEquals(DATA, read(KEY, 0, Long.MAX_VALUE));
+
+		// Putting the same key again replaces the blob
+		byte[] replaced = "replaced".getBytes();
+		put(KEY, replaced);
+		assertArrayEquals(replaced, read(KEY, 0, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testRangedReads() throws Exception {
+		put(KEY, DATA);
+		assertArrayEquals(Arrays.copyOfRange(DATA, 4, 12), read(KEY, 4, 8));
+		assertArrayEquals(Arrays.copyOfRange(DATA, 10, DATA.length), read(KEY, 10, Long.MAX_VALUE));
+		assertArrayEquals(Arrays.copyOfRange(DATA, 10, DATA.length), read(KEY, 10, 1000));
+		assertEquals(0, read(KEY, DATA.length, 10).length);
+		assertEquals(0, read(KEY, 4, 0).length);
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testReadingAMissingBlobFails() throws Exception {
+		read(KEY, 0, Long.MAX_VALUE);
+	}
+
+	@Test
+	public void testListAndDelete() throws Exception {
+		put(KEY, DATA);
+		put(OTHER_KEY, "other".getBytes());
+
+		Map<String, Long> blobs = store.list();
+		assertEquals(2, blobs.size());
+		assertEquals(DATA.length, (long) blobs.get(KEY));
+		assertEquals(5, (long) blobs.get(OTHER_KEY));
+
+		store.delete(KEY);
+		store.delete(KEY);
+		assertTrue(!store.list().containsKey(KEY));
+		assertArrayEquals("other".getBytes(), read(OTHER_KEY, 0, Long.MAX_VALUE));
+	}
+
+	private void put(String key, byte[] data) throws IOException {
+		Path file = Files.createTempFile(dir, "upload", ".tmp");
+		try {
+			Files.write(file, data);
+			store.put(key, file);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private byte[] read(String key, long offset, long length) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long read = store.read(key, offset, length, out);
+		assertEquals(out.size(), read);
+		return out.toByteArray();
+	}
+
+}
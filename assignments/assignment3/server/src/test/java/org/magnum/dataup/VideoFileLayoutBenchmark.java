@@ -0,0 +1,117 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+/**
+ * A stand-alone benchmark that compares the flat VideoFileLayout with the
+ * one and two level sharded ones. For each store size it creates that many
+ * (empty) video files in a scratch folder, measuring the average latency
+ * of a create, and then measures the average latency of looking up the
+ * attributes of randomly chosen files, which is what the file system has
+ * to do to open a video.
+ * 
+ * Run it with the store sizes as arguments and, optionally, the scratch
+ * folder as a system property (it should be on the same file system as the
+ * real "videos" folder):
+ * 
+ * java -Dbenchmark.dir=/data/bench org.magnum.dataup.VideoFileLayoutBenchmark 10000 100000 1000000
+ */
+public class VideoFileLayoutBenchmark {
+
+	private static final int LOOKUPS = 20000;
+
+	public static void main(String[] args) throws IOException {
+		int[] sizes = args.length > 0 ? new int[args.length] : new int[] {
+				10000, 100000, 1000000 };
+		for (int i = 0; i < args.length; i++) {
+			sizes[i] = Integer.parseInt(args[i]);
+		}
+		Path root = Paths.get(System.getProperty("benchmark.dir",
+				System.getProperty("java.io.tmpdir")));
+
+		System.out.println(String.format("%10s %8s %14s %14s", "files",
+				"depth", "create (us)", "lookup (us)"));
+		for (int size : sizes) {
+			for (int depth : new int[] { 0, 1, 2 }) {
+				Path dir = Files.createTempDirectory(root, "layout-bench");
+				try {
+					run(dir, new VideoFileLayout(depth), size);
+				} finally {
+					deleteRecursively(dir);
+				}
+			}
+		}
+	}
+
+	private static void run(Path dir, VideoFileLayout layout, int size)
+			throws IOException {
+		long start = System.nanoTime();
+		for (long id = 1; id <= size; id++) {
+			Path file = layout.resolve(dir, id);
+			try {
+				Files.createFile(file);
+			} catch (NoSuchFileException e) {
+				// The first file in a shard folder creates the folder
+				Files.createDirectories(file.getParent());
+				Files.createFile(file);
+			}
+		}
+		double createMicros = (System.nanoTime() - start) / 1000.0 / size;
+
+		Random random = new Random(42);
+		start = System.nanoTime();
+		for (int i = 0; i < LOOKUPS; i++) {
+			long id = 1 + random.nextInt(size);
+			Files.readAttributes(layout.resolve(dir, id),
+					BasicFileAttributes.class);
+		}
+		double lookupMicros = (System.nanoTime() - start) / 1000.0 / LOOKUPS;
+
+		System.out.println(String.format("%10d %8d %14.2f %14.2f", size,
+				layout.getDepth(), createMicros, lookupMicros));
+	}
+
+	private static void deleteRecursively(Path dir) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file,
+					BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path d, IOException e)
+					throws IOException {
+				Files.delete(d);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+}
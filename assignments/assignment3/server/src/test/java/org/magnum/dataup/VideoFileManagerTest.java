@@ -0,0 +1,333 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.dataup.model.Video;
+
+/**
+ * Tests for the content-addressed mode of the VideoFileManager. These tests
+ * run directly against a scratch "videos" folder and do not need the server
+ * to be running.
+ */
+public class VideoFileManagerTest {
+
+	private static final byte[] CLIP = "the same clip, uploaded twice".getBytes();
+
+	private static final byte[] OTHER_CLIP = "a different clip".getBytes();
+
+	private Path dir;
+
+	private VideoFileManager manager;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("videos");
+		manager = VideoFileManager.get(dir, 1, true);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(dir.toFile());
+	}
+
+	@Test
+	public void testDuplicateUploadsShareOneBlob() throws Exception {
+		manager.saveVideoData(video(1), new ByteArrayInputStream(CLIP));
+		manager.saveVideoData(video(2), new ByteArrayInputStream(CLIP));
+
+		assertEquals(1, countBlobs());
+		assertTrue(manager.hasVideoData(video(1)));
+		assertTrue(manager.hasVideoData(video(2)));
+		assertArrayEquals(CLIP, read(video(1)));
+		assertArrayEquals(CLIP, read(video(2)));
+		assertEquals(manager.getVideoDataChecksum(video(1)),
+				manager.getVideoDataChecksum(video(2)));
+	}
+
+	@Test
+	public void testBlobIsDeletedWithItsLastReference() throws Exception {
+		manager.saveVideoData(video(1), new ByteArrayInputStream(CLIP));
+		manager.saveVideoData(video(2), new ByteArrayInputStream(CLIP));
+
+		manager.saveVideoData(video(1), new ByteArrayInputStream(OTHER_CLIP));
+		assertEquals(2, countBlobs());
+		assertArrayEquals(OTHER_CLIP, read(video(1)));
+		assertArrayEquals(CLIP, read(video(2)));
+
+		manager.saveVideoData(video(2), new ByteArrayInputStream(OTHER_CLIP));
+		assertEquals(1, countBlobs());
+		assertArrayEquals(OTHER_CLIP, read(video(2)));
+	}
+
+	@Test
+	public void testResumableUploadIsDeduplicated() throws Exception {
+		manager.saveVideoData(video(1), new ByteArrayInputStream(CLIP));
+
+		String uploadId = manager.startUpload(video(2));
+		manager.writeUploadChunk(video(2), uploadId, 0, new ByteArrayInputStream(CLIP, 0, 10));
+		manager.writeUploadChunk(video(2), uploadId, 10, new ByteArrayInputStream(CLIP, 10, CLIP.length - 10));
+		manager.completeUpload(video(2), uploadId);
+
+		assertEquals(1, countBlobs());
+		assertFalse(manager.hasUpload(video(2), uploadId));
+		assertArrayEquals(CLIP, read(video(2)));
+	}
+
+	@Test
+	public void testRetriedChunkIsHashedAgain() throws Exception {
+		manager.saveVideoData(video(1), new ByteArrayInputStream(CLIP));
+
+		// The first attempt at the chunk was garbled and is sent again
+		String uploadId = manager.startUpload(video(2));
+		manager.writeUploadChunk(video(2), uploadId, 0, new ByteArrayInputStream(OTHER_CLIP, 0, 10));
+		manager.writeUploadChunk(video(2), uploadId, 0, new ByteArrayInputStream(CLIP));
+		manager.completeUpload(video(2), uploadId);
+
+		assertEquals(manager.getVideoDataChecksum(video(1)),
+				manager.getVideoDataChecksum(video(2)));
+		assertEquals(1, countBlobs());
+		assertArrayEquals(CLIP, read(video(2)));
+	}
+
+	@Test
+	public void testAbandonedUploadsExpire() throws Exception {
+		String abandoned = manager.startUpload(video(1));
+		manager.writeUploadChunk(video(1), abandoned, 0, new ByteArrayInputStream(CLIP, 0, 10));
+		String active = manager.startUpload(video(2));
+		Path part;
+		try (DirectoryStream<Path> parts = Files.newDirectoryStream(dir.resolve("uploads"),
+				"*" + abandoned + ".part")) {
+			part = parts.iterator().next();
+		}
+		Files.setLastModifiedTime(part, FileTime.fromMillis(
+				System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+
+		assertEquals(1, manager.expireUploads(TimeUnit.HOURS.toMillis(1)));
+		assertFalse(manager.hasUpload(video(1), abandoned));
+		assertTrue(manager.hasUpload(video(2), active));
+		try {
+			manager.writeUploadChunk(video(1), abandoned, 10, new ByteArrayInputStream(CLIP, 10, 10));
+			fail("An expired upload was resumed");
+		} catch (FileNotFoundException e) {
+			// expected
+		}
+
+		manager.writeUploadChunk(video(2), active, 0, new ByteArrayInputStream(CLIP));
+		manager.completeUpload(video(2), active);
+		assertArrayEquals(CLIP, read(video(2)));
+	}
+
+	@Test
+	public void testMappingSurvivesARestart() throws Exception {
+		manager.saveVideoData(video(1), new ByteArrayInputStream(CLIP));
+		manager.saveVideoData(video(2), new ByteArrayInputStream(CLIP));
+		manager.saveVideoData(video(3), new ByteArrayInputStream(OTHER_CLIP));
+		manager.saveVideoData(video(3), new ByteArrayInputStream(CLIP));
+		manager.close();
+
+		VideoFileManager restarted = VideoFileManager.get(dir, 1, true);
+		assertEquals(1, countBlobs());
+		for (long id = 1; id <= 3; id++) {
+			assertTrue(restarted.hasVideoData(video(id)));
+			assertEquals(CLIP.length, restarted.getVideoDataSize(video(id)));
+		}
+
+		// The reference counts were restored, so the blob outlives two of
+		// its three videos
+		restarted.saveVideoData(video(1), new ByteArrayInputStream(OTHER_CLIP));
+		restarted.saveVideoData(video(2), new ByteArrayInputStream(OTHER_CLIP));
+		assertEquals(2, countBlobs());
+	}
+
+	@Test
+	public void testPlainFilesAreReplacedByBlobs() throws Exception {
+		VideoFileManager plain = VideoFileManager.get(dir, 1, false);
+		plain.saveVideoData(video(1), new ByteArrayInputStream(OTHER_CLIP));
+
+		VideoFileManager deduplicating = VideoFileManager.get(dir, 1, true);
+		assertArrayEquals(OTHER_CLIP, read(deduplicating, video(1)));
+		deduplicating.saveVideoData(video(1), new ByteArrayInputStream(CLIP));
+
+		assertFalse(Files.exists(new VideoFileLayout(1).resolve(dir, 1)));
+		assertEquals(1, countBlobs());
+		assertArrayEquals(CLIP, read(deduplicating, video(1)));
+	}
+
+	@Test
+	public void testBlobsCanBeKeptInS3() throws Exception {
+		S3StandIn s3 = new S3StandIn();
+		try {
+			VideoBlobStore objects = new S3VideoBlobStore(s3.client(), S3StandIn.BUCKET, "videos/");
+			VideoFileManager remote = VideoFileManager.get(dir, 1, true, objects);
+			remote.saveVideoData(video(1), new ByteArrayInputStream(CLIP));
+			remote.saveVideoData(video(2), new ByteArrayInputStream(CLIP));
+			remote.saveVideoData(video(3), new ByteArrayInputStream(OTHER_CLIP));
+			remote.saveVideoData(video(3), new ByteArrayInputStream(CLIP));
+
+			assertEquals(0, countBlobs());
+			assertEquals(1, s3.getObjects().size());
+			assertTrue(s3.getObjects().containsKey("videos/" + remote.getVideoDataChecksum(video(1))));
+
+			VideoFileManager restarted = VideoFileManager.get(dir, 1, true, objects);
+			for (long id = 1; id <= 3; id++) {
+				assertArrayEquals(CLIP, read(restarted, video(id)));
+			}
+			ByteArrayOutputStream range = new ByteArrayOutputStream();
+			restarted.streamVideoData(video(1), 4, 5, range);
+			assertArrayEquals("same ".getBytes(), range.toByteArray());
+		} finally {
+			s3.stop();
+		}
+	}
+
+	@Test
+	public void testOtherObjectsInTheBucketAreKept() throws Exception {
+		S3StandIn s3 = new S3StandIn();
+		try {
+			byte[] notes = "not a video".getBytes();
+			s3.getObjects().put("notes.txt", notes);
+			s3.getObjects().put("videos/notes.txt", notes);
+			s3.getObjects().put("videos/abcd/ef01", notes);
+			VideoBlobStore objects = new S3VideoBlobStore(s3.client(), S3StandIn.BUCKET, "videos/");
+			VideoFileManager remote = VideoFileManager.get(dir, 1, true, objects);
+			remote.saveVideoData(video(1), new ByteArrayInputStream(CLIP));
+			String key = "videos/" + remote.getVideoDataChecksum(video(1));
+			remote.close();
+
+			// A listing that lags behind the write doesn't show the blob yet
+			byte[] blob = s3.getObjects().remove(key);
+			VideoFileManager restarted = VideoFileManager.get(dir, 1, true, objects);
+			assertTrue(restarted.hasVideoData(video(1)));
+			s3.getObjects().put(key, blob);
+			assertArrayEquals(CLIP, read(restarted, video(1)));
+
+			assertArrayEquals(notes, s3.getObjects().get("notes.txt"));
+			assertArrayEquals(notes, s3.getObjects().get("videos/notes.txt"));
+			assertArrayEquals(notes, s3.getObjects().get("videos/abcd/ef01"));
+		} finally {
+			s3.stop();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testSlowBlobStoreDoesNotHoldUpOtherVideos() throws Exception {
+		final CountDownLatch putStarted = new CountDownLatch(1);
+		final CountDownLatch finishPut = new CountDownLatch(1);
+		VideoBlobStore slow = new LocalVideoBlobStore(dir.resolve("blobs")) {
+			@Override
+			public void put(String key, Path file) throws IOException {
+				if (putStarted.getCount() > 0) {
+					putStarted.countDown();
+					try {
+						finishPut.await();
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+				}
+				super.put(key, file);
+			}
+		};
+		final VideoFileManager slowManager = VideoFileManager.get(dir, 1, true, slow);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Void> first = executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					slowManager.saveVideoData(video(1), new ByteArrayInputStream(CLIP));
+					return null;
+				}
+			});
+			putStarted.await();
+
+			// Video 65 is guarded by the same lock as video 1
+			slowManager.saveVideoData(video(65), new ByteArrayInputStream(OTHER_CLIP));
+			assertArrayEquals(OTHER_CLIP, read(slowManager, video(65)));
+
+			finishPut.countDown();
+			first.get();
+			assertArrayEquals(CLIP, read(slowManager, video(1)));
+		} finally {
+			finishPut.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	private byte[] read(Video v) throws IOException {
+		return read(manager, v);
+	}
+
+	private static byte[] read(VideoFileManager manager, Video v) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		manager.copyVideoData(v, out);
+		return out.toByteArray();
+	}
+
+	private int countBlobs() throws IOException {
+		final AtomicInteger count = new AtomicInteger();
+		final Path blobs = dir.resolve("blobs");
+		Files.walkFileTree(blobs, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (!file.getParent().equals(blobs)) {
+					count.incrementAndGet();
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return count.get();
+	}
+
+	private static Video video(long id) {
+		Video v = new Video();
+		v.setId(id);
+		v.setTitle("Video " + id);
+		return v;
+	}
+
+}
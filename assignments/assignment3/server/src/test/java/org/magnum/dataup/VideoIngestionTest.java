@@ -0,0 +1,150 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.magnum.dataup.model.Video;
+import org.magnum.dataup.model.VideoStatus;
+import org.magnum.dataup.model.VideoStatus.VideoState;
+
+import retrofit.RestAdapter;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+import retrofit.mime.TypedFile;
+
+/**
+ * Tests for the asynchronous ingestion of video data sent to AddVideoData
+ * and for the status endpoint. Like the AutoGradingTest, these tests need
+ * the server to be running on localhost:8080.
+ */
+public class VideoIngestionTest {
+
+	private static final String SERVER = "http://localhost:8080";
+
+	private static final int CONCURRENT_UPLOADS = 8;
+
+	private static final long STATUS_TIMEOUT = 30000;
+
+	private File testVideoData = new File("src/test/resources/test.mp4");
+
+	private VideoSvcApi videoSvc = new RestAdapter.Builder()
+			.setEndpoint(SERVER).build().create(VideoSvcApi.class);
+
+	@Test
+	public void testStatusIsReadyOnceDataIsStored() throws Exception {
+		Video received = videoSvc.addVideo(video());
+		VideoStatus status = videoSvc.setVideoData(received.getId(),
+				new TypedFile("video/mp4", testVideoData));
+
+		awaitReady(received, status);
+		assertEquals(VideoState.READY,
+				videoSvc.getVideoStatus(received.getId()).getState());
+		assertArrayEquals(readTestVideo(), download(received));
+	}
+
+	@Test
+	public void testStatusOfVideoWithoutDataIsNotFound() throws Exception {
+		Video received = videoSvc.addVideo(video());
+		try {
+			videoSvc.getVideoStatus(received.getId());
+			fail("The server reported a status for a video without data");
+		} catch (RetrofitError e) {
+			assertEquals(404, e.getResponse().getStatus());
+		}
+	}
+
+	@Test
+	public void testConcurrentUploadsAreAllStored() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_UPLOADS);
+		try {
+			List<Future<Video>> uploads = new ArrayList<Future<Video>>();
+			for (int i = 0; i < CONCURRENT_UPLOADS; i++) {
+				uploads.add(executor.submit(new Callable<Video>() {
+					@Override
+					public Video call() throws Exception {
+						Video received = videoSvc.addVideo(video());
+						awaitReady(received, videoSvc.setVideoData(received.getId(),
+								new TypedFile("video/mp4", testVideoData)));
+						return received;
+					}
+				}));
+			}
+
+			byte[] data = readTestVideo();
+			for (Future<Video> upload : uploads) {
+				assertArrayEquals(data, download(upload.get()));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// Polls the status of the video's data until it is no longer PROCESSING
+	private void awaitReady(Video v, VideoStatus status) throws Exception {
+		long deadline = System.currentTimeMillis() + STATUS_TIMEOUT;
+		while (status.getState() == VideoState.PROCESSING
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(100);
+			status = videoSvc.getVideoStatus(v.getId());
+		}
+		assertEquals(VideoState.READY, status.getState());
+	}
+
+	private static Video video() {
+		return Video.create().withContentType("video/mp4").withDuration(123)
+				.withSubject(UUID.randomUUID().toString())
+				.withTitle(UUID.randomUUID().toString()).build();
+	}
+
+	private byte[] readTestVideo() throws Exception {
+		InputStream in = new FileInputStream(testVideoData);
+		try {
+			return IOUtils.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private byte[] download(Video v) throws Exception {
+		Response response = videoSvc.getData(v.getId());
+		assertEquals(200, response.getStatus());
+		InputStream in = response.getBody().in();
+		try {
+			return IOUtils.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.magnum.dataup.model.VideoRatingTotal;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * A stand-alone benchmark that has many threads rate the same hot video at
+ * once and persists the ratings to the embedded H2 database in two ways.
+ * The "per-vote" way runs a read-modify-write transaction on the video's
+ * totals for every vote. The "write-behind" way goes through the
+ * VideoRatingWriter, which journals each vote and writes all of them with a
+ * single UPDATE when it is flushed. The write-behind time includes that
+ * final flush.
+ * 
+ * Run it with the numbers of rater threads as arguments (each thread casts
+ * 2000 votes):
+ * 
+ * java org.magnum.dataup.VideoRatingWriterBenchmark 1 4 16 64
+ */
+public class VideoRatingWriterBenchmark {
+
+	private static final int VOTES_PER_THREAD = 2000;
+
+	private static final long VIDEO_ID = 1;
+
+	@Configuration
+	@EnableAutoConfiguration
+	static class DatabaseConfig {
+	}
+
+	private interface Voter {
+		public void vote(String user, int scaledRating);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] threadCounts = args.length > 0 ? new int[args.length]
+				: new int[] { 1, 4, 16, 64 };
+		for (int i = 0; i < args.length; i++) {
+			threadCounts[i] = Integer.parseInt(args[i]);
+		}
+
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(
+				DatabaseConfig.class).web(false).showBanner(false).run();
+		final VideoRatingTotalRepository totals = context
+				.getBean(VideoRatingTotalRepository.class);
+		VideoUserRatingRepository userRatings = context
+				.getBean(VideoUserRatingRepository.class);
+		PlatformTransactionManager transactionManager = context
+				.getBean(PlatformTransactionManager.class);
+		final TransactionTemplate transactions = new TransactionTemplate(
+				transactionManager);
+
+		Voter perVote = new Voter() {
+			@Override
+			public void vote(final String user, final int scaledRating) {
+				transactions.execute(new TransactionCallbackWithoutResult() {
+					@Override
+					protected void doInTransactionWithoutResult(
+							TransactionStatus status) {
+						VideoRatingTotal total = totals.findOne(VIDEO_ID);
+						total.setRatingSum(total.getRatingSum() + scaledRating);
+						total.setRatingCount(total.getRatingCount() + 1);
+						totals.save(total);
+					}
+				});
+			}
+		};
+
+		StringBuilder results = new StringBuilder(String.format(
+				"%8s %14s %14s %14s%n", "threads", "votes",
+				"per-vote/s", "write-behind/s"));
+		try {
+			for (int threads : threadCounts) {
+				totals.deleteAll();
+				totals.save(new VideoRatingTotal(VIDEO_ID, 0, 0, 0));
+				double perVoteRate = run(perVote, threads);
+
+				totals.deleteAll();
+				userRatings.deleteAll();
+				Path dir = Files.createTempDirectory("rating-bench");
+				final VideoRatingWriter writer = new VideoRatingWriter(totals,
+						userRatings, transactionManager, new VideoRatingJournal(dir),
+						1000, 1000);
+				writer.open();
+				final VideoRatings ratings = new VideoRatings(writer);
+				long start = System.nanoTime();
+				run(new Voter() {
+					@Override
+					public void vote(String user, int scaledRating) {
+						ratings.rate(VIDEO_ID, user, scaledRating / 100f);
+					}
+				}, threads);
+				writer.close();
+				double writeBehindRate = (long) threads * VOTES_PER_THREAD
+						/ ((System.nanoTime() - start) / 1e9);
+				FileUtils.deleteDirectory(dir.toFile());
+
+				results.append(String.format("%8d %14d %14.0f %14.0f%n",
+						threads, (long) threads * VOTES_PER_THREAD,
+						perVoteRate, writeBehindRate));
+			}
+		} finally {
+			context.close();
+		}
+		System.out.print(results);
+	}
+
+	// Returns the number of votes per second
+	private static double run(final Voter voter, int threads)
+			throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicInteger failures = new AtomicInteger();
+		for (int t = 0; t < threads; t++) {
+			final String prefix = "user-" + t + "-";
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < VOTES_PER_THREAD; i++) {
+							try {
+								voter.vote(prefix + i, 100 * (1 + i % 5));
+							} catch (RuntimeException e) {
+								// e.g., a lock timeout on the hot row
+								failures.incrementAndGet();
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		double seconds = (System.nanoTime() - begin) / 1e9;
+		if (failures.get() > 0) {
+			System.out.println(failures.get() + " of "
+					+ (threads * VOTES_PER_THREAD) + " votes failed");
+		}
+		return threads * VOTES_PER_THREAD / seconds;
+	}
+
+}
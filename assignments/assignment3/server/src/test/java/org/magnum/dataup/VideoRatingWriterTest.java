@@ -0,0 +1,219 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.dataup.model.AverageVideoRating;
+import org.magnum.dataup.model.VideoRatingTotal;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Tests the write-behind of ratings against an H2 database file in a
+ * scratch folder. These tests start a small Spring context of their own and
+ * do not need the server to be running.
+ */
+public class VideoRatingWriterTest {
+
+	// Just the database, JPA and the repositories in this package
+	@Configuration
+	@EnableAutoConfiguration
+	static class DatabaseConfig {
+	}
+
+	private ConfigurableApplicationContext context;
+
+	private VideoRatingTotalRepository totals;
+
+	private Path dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("rating-journal");
+		start();
+	}
+
+	// Starts the database, which keeps its file in the same scratch folder
+	// as the journal
+	private void start() {
+		context = new SpringApplicationBuilder(DatabaseConfig.class).web(false)
+				.showBanner(false).run("--videos.ratings.journalDir=" + dir);
+		totals = context.getBean(VideoRatingTotalRepository.class);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		context.close();
+		FileUtils.deleteDirectory(dir.toFile());
+	}
+
+	private VideoRatingWriter writer() {
+		return new VideoRatingWriter(totals,
+				context.getBean(VideoUserRatingRepository.class),
+				context.getBean(PlatformTransactionManager.class),
+				journal(), 60000, 1000000);
+	}
+
+	private VideoRatingJournal journal() {
+		try {
+			return new VideoRatingJournal(dir);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Test
+	public void testVotesAreWrittenInBatches() throws Exception {
+		VideoRatingWriter writer = writer();
+		writer.open();
+		VideoRatings ratings = new VideoRatings(writer);
+
+		ratings.rate(1, "alice", 5);
+		ratings.rate(1, "bob", 3);
+		ratings.rate(1, "alice", 4);
+		ratings.rate(2, "alice", 1);
+		assertEquals(0, totals.count());
+
+		writer.flush();
+		VideoRatingTotal first = totals.findOne(1L);
+		assertEquals(2, first.getRatingCount());
+		assertEquals(700, first.getRatingSum());
+		assertEquals(1, totals.findOne(2L).getRatingCount());
+
+		// The flushed generation's journal is gone and the next one is empty
+		ratings.rate(1, "carol", 2);
+		writer.close();
+		assertEquals(3, totals.findOne(1L).getRatingCount());
+		assertEquals(900, totals.findOne(1L).getRatingSum());
+		assertTrue(new VideoRatingJournal(dir).read(
+				new VideoRatingJournal(dir).getGenerations().get(0)).isEmpty());
+
+		// A restarted server picks up the totals
+		VideoRatings restarted = new VideoRatings();
+		writer().restore(restarted);
+		assertEquals(3, restarted.get(1).getTotalRatings());
+		assertEquals(3.0, restarted.get(1).getRating(), 1e-9);
+	}
+
+	@Test
+	public void testJournalIsReplayedOnlyOnce() throws Exception {
+		// Generation 1 was written to the database, but the server crashed
+		// before deleting its journal; generation 2 never reached the database
+		totals.save(new VideoRatingTotal(1, 500, 1, 1));
+		VideoRatingJournal journal = journal();
+		journal.start(1);
+		journal.append(1, 1, 500);
+		journal.start(2);
+		journal.append(1, 1, 300);
+		journal.append(1, 0, -100);
+		journal.close();
+
+		VideoRatingWriter writer = writer();
+		writer.open();
+		writer.close();
+
+		VideoRatingTotal total = totals.findOne(1L);
+		assertEquals(2, total.getRatingCount());
+		assertEquals(700, total.getRatingSum());
+		assertEquals(2, total.getFlushedGeneration());
+	}
+
+	@Test(timeout = 5000)
+	public void testRatingAfterCloseFails() throws Exception {
+		VideoRatingWriter writer = writer();
+		writer.open();
+		VideoRatings ratings = new VideoRatings(writer);
+		ratings.rate(1, "alice", 5);
+		writer.close();
+
+		try {
+			ratings.rate(1, "bob", 3);
+			fail("A rating was accepted after the writer was closed");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(1, totals.findOne(1L).getRatingCount());
+	}
+
+	@Test
+	public void testTotalsSurviveARestart() throws Exception {
+		VideoRatingWriter writer = writer();
+		writer.open();
+		VideoRatings ratings = new VideoRatings(writer);
+		ratings.rate(1, "alice", 5);
+		ratings.rate(1, "bob", 3);
+		writer.flush();
+
+		// This vote is only in the journal when the server stops
+		ratings.rate(1, "carol", 1);
+		context.close();
+
+		start();
+		VideoRatingWriter restartedWriter = writer();
+		restartedWriter.open();
+		VideoRatings restarted = new VideoRatings(restartedWriter);
+		restartedWriter.restore(restarted);
+		assertEquals(3, restarted.get(1).getTotalRatings());
+		assertEquals(3.0, restarted.get(1).getRating(), 1e-9);
+		assertEquals(3, totals.findOne(1L).getRatingCount());
+		restartedWriter.close();
+	}
+
+	@Test
+	public void testUsersKeepOneRatingAcrossARestart() throws Exception {
+		VideoRatingWriter writer = writer();
+		writer.open();
+		VideoRatings ratings = new VideoRatings(writer);
+		ratings.rate(1, "alice", 5);
+		ratings.rate(1, "bob", 3);
+		writer.flush();
+
+		// This vote is only in the journal when the server stops
+		ratings.rate(1, "carol", 1);
+		context.close();
+
+		start();
+		VideoRatingWriter restartedWriter = writer();
+		restartedWriter.open();
+		VideoRatings restarted = new VideoRatings(restartedWriter);
+		restartedWriter.restore(restarted);
+
+		// Both the flushed and the replayed ratings are replaced
+		restarted.rate(1, "alice", 1);
+		AverageVideoRating average = restarted.rate(1, "carol", 2);
+		assertEquals(3, average.getTotalRatings());
+		assertEquals(2.0, average.getRating(), 1e-9);
+		restartedWriter.close();
+		assertEquals(3, totals.findOne(1L).getRatingCount());
+		assertEquals(600, totals.findOne(1L).getRatingSum());
+	}
+
+}
@@ -0,0 +1,164 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-alone benchmark that has many threads rate the same hot video at
+ * once. It compares the lock-free VideoRatings with a baseline that keeps
+ * the same per-user ratings, sum and count under a single lock, which is
+ * what updating the rating fields of the stored Video amounts to. While the
+ * raters run, one more thread keeps reading the average so that the cost of
+ * reads under contention shows up too.
+ * 
+ * Run it with the numbers of rater threads as arguments (each thread makes
+ * 20000 ratings, spread over 1000 users of its own so that most of them
+ * replace an earlier rating):
+ * 
+ * java org.magnum.dataup.VideoRatingsBenchmark 1 16 256 4096
+ */
+public class VideoRatingsBenchmark {
+
+	private static final int RATINGS_PER_THREAD = 20000;
+
+	private static final int USERS_PER_THREAD = 1000;
+
+	private static final long VIDEO_ID = 1;
+
+	private interface Ratings {
+		public void rate(String user, float rating);
+
+		public double average();
+	}
+
+	private static class LockedRatings implements Ratings {
+		private final Map<String, Integer> byUser = new HashMap<String, Integer>();
+		private long sum;
+		private long count;
+
+		@Override
+		public synchronized void rate(String user, float rating) {
+			int scaled = Math.round(rating * 100);
+			Integer previous = byUser.put(user, scaled);
+			if (previous == null) {
+				count++;
+				sum += scaled;
+			} else {
+				sum += scaled - previous;
+			}
+		}
+
+		@Override
+		public synchronized double average() {
+			return count == 0 ? 0 : (double) sum / 100 / count;
+		}
+	}
+
+	private static class LockFreeRatings implements Ratings {
+		private final VideoRatings ratings = new VideoRatings();
+
+		@Override
+		public void rate(String user, float rating) {
+			ratings.rate(VIDEO_ID, user, rating);
+		}
+
+		@Override
+		public double average() {
+			return ratings.get(VIDEO_ID).getRating();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] threadCounts = args.length > 0 ? new int[args.length]
+				: new int[] { 1, 16, 256, 4096 };
+		for (int i = 0; i < args.length; i++) {
+			threadCounts[i] = Integer.parseInt(args[i]);
+		}
+
+		System.out.println(String.format("%8s %10s %16s %16s", "threads",
+				"ratings", "ratings/ms", "reads/ms"));
+		for (int threads : threadCounts) {
+			// Warm up both implementations before measuring
+			run(new LockedRatings(), Math.min(threads, 16), false);
+			run(new LockFreeRatings(), Math.min(threads, 16), false);
+
+			System.out.println("locked");
+			run(new LockedRatings(), threads, true);
+			System.out.println("lock-free");
+			run(new LockFreeRatings(), threads, true);
+		}
+	}
+
+	private static void run(final Ratings ratings, int threads, boolean print)
+			throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		Thread[] raters = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final String prefix = "user-" + t + "-";
+			raters[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < RATINGS_PER_THREAD; i++) {
+							ratings.rate(prefix + (i % USERS_PER_THREAD),
+									1 + (i % 5));
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			});
+			raters[t].start();
+		}
+
+		final AtomicLong reads = new AtomicLong();
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				long n = 0;
+				while (done.getCount() > 0) {
+					ratings.average();
+					n++;
+				}
+				reads.set(n);
+			}
+		});
+
+		long begin = System.nanoTime();
+		start.countDown();
+		reader.start();
+		done.await();
+		double millis = (System.nanoTime() - begin) / 1e6;
+		reader.join();
+
+		if (print) {
+			long total = (long) threads * RATINGS_PER_THREAD;
+			System.out.println(String.format("%8d %10d %16.1f %16.1f",
+					threads, total, total / millis, reads.get() / millis));
+		}
+	}
+
+}
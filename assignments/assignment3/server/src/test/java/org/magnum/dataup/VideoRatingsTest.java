@@ -0,0 +1,181 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.dataup.model.AverageVideoRating;
+
+/**
+ * Tests for the lock-free VideoRatings aggregate. These tests run directly
+ * against it and do not need the server to be running.
+ */
+public class VideoRatingsTest {
+
+	private static final int THREADS = 16;
+
+	private static final double DELTA = 1e-9;
+
+	private ExecutorService executor;
+
+	private VideoRatings ratings;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(THREADS);
+		ratings = new VideoRatings();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testRatingsAreAveraged() {
+		assertEquals(0, ratings.get(1).getTotalRatings());
+
+		ratings.rate(1, "alice", 5);
+		ratings.rate(1, "bob", 2);
+		AverageVideoRating average = ratings.rate(1, "carol", 3.5f);
+
+		assertEquals(3.5, average.getRating(), DELTA);
+		assertEquals(3, average.getTotalRatings());
+		assertEquals(1, average.getVideoId());
+		assertEquals(3.5, ratings.get(1).getRating(), DELTA);
+
+		// Other videos are unaffected
+		assertEquals(0, ratings.get(2).getTotalRatings());
+	}
+
+	@Test
+	public void testRatingAgainReplacesTheUsersRating() {
+		ratings.rate(1, "alice", 1);
+		ratings.rate(1, "bob", 3);
+		AverageVideoRating average = ratings.rate(1, "alice", 5);
+
+		assertEquals(4, average.getRating(), DELTA);
+		assertEquals(2, average.getTotalRatings());
+	}
+
+	@Test
+	public void testOutOfRangeRatingsAreRejected() {
+		for (float rating : new float[] { 0, 5.5f, -1, Float.NaN }) {
+			try {
+				ratings.rate(1, "alice", rating);
+				fail("A rating of " + rating + " should be rejected");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		assertEquals(0, ratings.get(1).getTotalRatings());
+	}
+
+	@Test
+	public void testRatingThatIsNotPersistedIsTakenBack() {
+		final boolean[] failing = { false };
+		ratings = new VideoRatings(new VideoRatings.RatingListener() {
+			@Override
+			public void ratingChanged(long videoId, String user, int rating,
+					long count, long sum) {
+				if (failing[0]) {
+					throw new IllegalStateException("The journal is down");
+				}
+			}
+		});
+		ratings.rate(1, "alice", 2);
+
+		failing[0] = true;
+		for (String user : new String[] { "alice", "bob" }) {
+			try {
+				ratings.rate(1, user, 5);
+				fail("A rating that wasn't persisted was accepted");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+		}
+		assertEquals(1, ratings.get(1).getTotalRatings());
+		assertEquals(2, ratings.get(1).getRating(), DELTA);
+
+		// Bob's first rating still counts as new, and Alice's replaces 2 stars
+		failing[0] = false;
+		ratings.rate(1, "bob", 5);
+		AverageVideoRating average = ratings.rate(1, "alice", 4);
+		assertEquals(2, average.getTotalRatings());
+		assertEquals(4.5, average.getRating(), DELTA);
+	}
+
+	@Test
+	public void testPackedStateSurvivesANegativeSum() {
+		// Two re-ratings by the same user can apply their differences out of
+		// order and briefly leave the sum below zero
+		long state = (3L << 37) - 250;
+		assertEquals(3, VideoRatings.count(state));
+		assertEquals(-250, VideoRatings.sum(state));
+
+		state = (VideoRatings.MAX_COUNT << 37) + VideoRatings.MAX_COUNT * 500;
+		assertEquals(VideoRatings.MAX_COUNT, VideoRatings.count(state));
+		assertEquals(VideoRatings.MAX_COUNT * 500, VideoRatings.sum(state));
+	}
+
+	@Test
+	public void testConcurrentRatingsOfOneVideoAreNotLost() throws Exception {
+		final int usersPerThread = 5000;
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			results.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					for (int i = 0; i < usersPerThread; i++) {
+						String user = "user-" + thread + "-" + i;
+						// Each user changes their mind once, from 1 to 4 stars
+						ratings.rate(7, user, 1);
+						ratings.rate(7, user, 4);
+					}
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<?> f : results) {
+			f.get();
+		}
+
+		AverageVideoRating average = ratings.get(7);
+		assertEquals(THREADS * usersPerThread, average.getTotalRatings());
+		assertEquals(4, average.getRating(), DELTA);
+	}
+
+}
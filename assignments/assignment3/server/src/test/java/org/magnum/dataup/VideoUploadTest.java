@@ -0,0 +1,157 @@
+/*
+ * 
+ * Copyright 2014 Jules White
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package org.magnum.dataup;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.magnum.dataup.model.Video;
+import org.magnum.dataup.model.VideoStatus;
+import org.magnum.dataup.model.VideoStatus.VideoState;
+import org.magnum.dataup.model.VideoUpload;
+
+import retrofit.RestAdapter;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
+/**
+ * Tests for the resumable, chunked upload API. Like the AutoGradingTest,
+ * these tests need the server to be running on localhost:8080.
+ */
+public class VideoUploadTest {
+
+	private static final String SERVER = "http://localhost:8080";
+
+	private static final String OCTET_STREAM = "application/octet-stream";
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private File testVideoData = new File("src/test/resources/test.mp4");
+
+	private Video video = Video.create().withContentType("video/mp4")
+			.withDuration(123).withSubject(UUID.randomUUID().toString())
+			.withTitle(UUID.randomUUID().toString()).build();
+
+	private VideoSvcApi videoSvc = new RestAdapter.Builder()
+			.setEndpoint(SERVER).build().create(VideoSvcApi.class);
+
+	@Test
+	public void testChunkedUpload() throws Exception {
+		byte[] data = readTestVideo();
+		Video received = videoSvc.addVideo(video);
+
+		VideoUpload upload = videoSvc.startVideoUpload(received.getId());
+		assertEquals(0, upload.getOffset());
+
+		long offset = 0;
+		while (offset < data.length) {
+			upload = putChunk(received, upload, data, (int) offset);
+			offset = upload.getOffset();
+		}
+		assertEquals(data.length, videoSvc.getVideoUpload(received.getId(),
+				upload.getUploadId()).getOffset());
+
+		VideoStatus status = videoSvc.completeVideoUpload(received.getId(),
+				upload.getUploadId());
+		assertEquals(VideoState.READY, status.getState());
+		assertArrayEquals(data, download(received));
+	}
+
+	@Test
+	public void testResumeAfterRetriedAndRejectedChunks() throws Exception {
+		byte[] data = readTestVideo();
+		Video received = videoSvc.addVideo(video);
+		VideoUpload upload = videoSvc.startVideoUpload(received.getId());
+
+		upload = putChunk(received, upload, data, 0);
+		// A retried chunk overwrites what was already committed
+		upload = putChunk(received, upload, data, 0);
+		assertEquals(CHUNK_SIZE, upload.getOffset());
+
+		// A chunk that would leave a gap is rejected
+		try {
+			putChunk(received, upload, data, 3 * CHUNK_SIZE);
+			fail("The server accepted a chunk past the committed offset");
+		} catch (RetrofitError e) {
+			assertEquals(409, e.getResponse().getStatus());
+		}
+
+		// Resume from the offset that the server reports
+		long offset = videoSvc.getVideoUpload(received.getId(),
+				upload.getUploadId()).getOffset();
+		while (offset < data.length) {
+			upload = putChunk(received, upload, data, (int) offset);
+			offset = upload.getOffset();
+		}
+		videoSvc.completeVideoUpload(received.getId(), upload.getUploadId());
+		assertArrayEquals(data, download(received));
+	}
+
+	@Test
+	public void testCancelledUploadIsGone() throws Exception {
+		Video received = videoSvc.addVideo(video);
+		VideoUpload upload = videoSvc.startVideoUpload(received.getId());
+		videoSvc.cancelVideoUpload(received.getId(), upload.getUploadId());
+
+		try {
+			videoSvc.getVideoUpload(received.getId(), upload.getUploadId());
+			fail("The server returned a cancelled upload");
+		} catch (RetrofitError e) {
+			assertEquals(404, e.getResponse().getStatus());
+		}
+	}
+
+	private VideoUpload putChunk(Video v, VideoUpload upload, byte[] data,
+			int offset) {
+		byte[] chunk = Arrays.copyOfRange(data, offset,
+				Math.min(data.length, offset + CHUNK_SIZE));
+		return videoSvc.putVideoChunk(v.getId(), upload.getUploadId(), offset,
+				new TypedByteArray(OCTET_STREAM, chunk));
+	}
+
+	private byte[] readTestVideo() throws Exception {
+		InputStream in = new FileInputStream(testVideoData);
+		try {
+			return IOUtils.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private byte[] download(Video v) throws Exception {
+		Response response = videoSvc.getData(v.getId());
+		assertEquals(200, response.getStatus());
+		InputStream in = response.getBody().in();
+		try {
+			return IOUtils.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+
+}
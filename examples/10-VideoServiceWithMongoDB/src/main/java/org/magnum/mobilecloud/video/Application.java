@@ -1,10 +1,14 @@
 package org.magnum.mobilecloud.video;
 
 import org.magnum.mobilecloud.video.json.ResourcesMapper;
+import org.magnum.mobilecloud.video.repository.VideoIdListener;
+import org.magnum.mobilecloud.video.repository.VideoIdSequence;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 import org.springframework.data.rest.webmvc.config.RepositoryRestMvcConfiguration;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
@@ -47,4 +51,17 @@ public class Application extends RepositoryRestMvcConfiguration {
 		return new ResourcesMapper();
 	}
 
+	// The counter in MongoDB that new videos get their ids from
+	@Bean
+	public VideoIdSequence videoIdSequence(MongoOperations mongo) {
+		return new VideoIdSequence(mongo);
+	}
+
+	// Gives each video that is added through the VideoRepository an id
+	// from the VideoIdSequence before it is saved
+	@Bean
+	public VideoIdListener videoIdListener(VideoIdSequence ids) {
+		return new VideoIdListener(ids);
+	}
+
 }
@@ -1,6 +1,7 @@
 package org.magnum.mobilecloud.video.client;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.magnum.mobilecloud.video.repository.Video;
 
@@ -25,6 +26,20 @@ public interface VideoSvcApi {
 	
 	public static final String DURATION_PARAMETER = "duration";
 
+	public static final String MIN_DURATION_PARAMETER = "min";
+
+	public static final String MAX_DURATION_PARAMETER = "max";
+
+	// The paging parameters that Spring Data Rest understands on
+	// the /video collection, since MongoRepository supports paging
+	public static final String PAGE_PARAMETER = "page";
+
+	public static final String SIZE_PARAMETER = "size";
+
+	public static final String SORT_PARAMETER = "sort";
+
+	public static final String FIELDS_PARAMETER = "fields";
+
 	// The path where we expect the VideoSvc to live
 	public static final String VIDEO_SVC_PATH = "/video";
 
@@ -34,16 +49,48 @@ public interface VideoSvcApi {
 	// The path to search videos by title
 	public static final String VIDEO_DURATION_SEARCH_PATH = VIDEO_SVC_PATH + "/search/findByDurationLessThan";
 
+	public static final String VIDEO_DURATION_GREATER_THAN_PATH = VIDEO_SVC_PATH + "/search/findByDurationGreaterThan";
+
+	public static final String VIDEO_DURATION_BETWEEN_PATH = VIDEO_SVC_PATH + "/search/findByDurationBetween";
+
+	// The path to add a whole list of videos at once
+	public static final String VIDEO_BATCH_PATH = VIDEO_SVC_PATH + "/batch";
+
+	// The path to download every video as one JSON array, which is
+	// written out as the videos are read from the database. A "fields"
+	// parameter (e.g., ?fields=name,duration) limits each video to the
+	// listed properties.
+	public static final String VIDEO_EXPORT_PATH = VIDEO_SVC_PATH + "/export";
+
 	@GET(VIDEO_SVC_PATH)
 	public Collection<Video> getVideoList();
+
+	// Returns one page of videos (the first page is 0). The sort is a
+	// Video property, optionally followed by ",desc" (e.g., "duration,desc").
+	// MongoDB sorts the videos and skips to the page, so only the videos on
+	// the page are sent back from the database.
+	@GET(VIDEO_SVC_PATH)
+	public Collection<Video> getVideoPage(@Query(PAGE_PARAMETER) int page,
+			@Query(SIZE_PARAMETER) int size, @Query(SORT_PARAMETER) String sort);
 	
 	@POST(VIDEO_SVC_PATH)
 	public Void addVideo(@Body Video v);
+
+	@POST(VIDEO_BATCH_PATH)
+	public boolean addVideos(@Body List<Video> v);
 	
 	@GET(VIDEO_TITLE_SEARCH_PATH)
 	public Collection<Video> findByTitle(@Query(TITLE_PARAMETER) String title);
 	
 	@GET(VIDEO_DURATION_SEARCH_PATH)
 	public Collection<Video> findByDurationLessThan(@Query(DURATION_PARAMETER) String title);
+
+	@GET(VIDEO_DURATION_GREATER_THAN_PATH)
+	public Collection<Video> findByDurationGreaterThan(@Query(DURATION_PARAMETER) long duration);
+
+	// Returns the videos with a duration from min to max, inclusive
+	@GET(VIDEO_DURATION_BETWEEN_PATH)
+	public Collection<Video> findByDurationBetween(@Query(MIN_DURATION_PARAMETER) long min,
+			@Query(MAX_DURATION_PARAMETER) long max);
 	
 }
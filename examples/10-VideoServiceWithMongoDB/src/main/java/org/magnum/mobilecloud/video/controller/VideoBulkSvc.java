@@ -0,0 +1,140 @@
+package org.magnum.mobilecloud.video.controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.magnum.mobilecloud.video.repository.VideoRepositoryCustom.VideoHandler;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Spring Data Rest handles all of the requests for single videos and
+ * searches. This Controller adds the two requests that move a large
+ * number of videos in or out of the service at once, which Spring Data
+ * Rest can only do by loading or saving one Video object at a time.
+ *
+ * Spring looks at the mappings in our own Controllers before the ones
+ * that Spring Data Rest creates, so /video/batch and /video/export are
+ * sent here rather than being treated as the ids of videos.
+ *
+ * @author jules
+ *
+ */
+@Controller
+public class VideoBulkSvc {
+
+	@Autowired
+	private VideoRepository videos;
+
+	@Autowired
+	private MongoOperations mongo;
+
+	// Writes the videos for exportVideos() as JSON. By default, Jackson
+	// flushes the response after each video, which would send every
+	// video in a tiny packet of its own.
+	private static final ObjectMapper objectMapper = new ObjectMapper()
+			.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+	// Receives POST requests to /video/batch with a JSON array of videos
+	// and adds all of them as new videos, which are sent to MongoDB in
+	// batches (see VideoRepositoryImpl) rather than one at a time.
+	@RequestMapping(value=VideoSvcApi.VIDEO_BATCH_PATH, method=RequestMethod.POST)
+	public @ResponseBody boolean addVideos(@RequestBody List<Video> v){
+		videos.saveAll(v);
+		return true;
+	}
+
+	// Receives GET requests to /video/export and sends back every video
+	// as one JSON array, writing each video to the response as soon as
+	// it is read from MongoDB, so that the memory that it takes doesn't
+	// depend on how many videos there are. With a "fields" parameter
+	// (e.g., /video/export?fields=name,duration), MongoDB only sends
+	// back those fields, and each video is written as an object that
+	// only has those properties.
+	//
+	// Once the first videos have been sent, the status can't be changed
+	// to an error anymore. If reading a video fails part way through,
+	// the response ends without the closing "]" so that a client can't
+	// mistake it for the complete list.
+	@RequestMapping(value=VideoSvcApi.VIDEO_EXPORT_PATH, method=RequestMethod.GET)
+	public void exportVideos(
+			@RequestParam(value=VideoSvcApi.FIELDS_PARAMETER, required=false) String fields,
+			HttpServletResponse response) throws IOException {
+		final String[] names = fieldNames(fields);
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		final JsonGenerator json = objectMapper.getFactory()
+				.createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+		json.writeStartArray();
+		videos.forEachVideo(new VideoHandler() {
+			@Override
+			public void handle(Video video) throws IOException {
+				if (names.length == 0) {
+					objectMapper.writeValue(json, video);
+				} else {
+					BeanWrapper wrapper = new BeanWrapperImpl(video);
+					json.writeStartObject();
+					for (String name : names) {
+						json.writeObjectField(name, wrapper.getPropertyValue(name));
+					}
+					json.writeEndObject();
+				}
+			}
+		}, names);
+		json.writeEndArray();
+		json.close();
+	}
+
+	// Splits the "fields" parameter into the names of Video properties,
+	// checking each one against the same mapping that the VideoRepository
+	// builds its projection from, before anything has been sent
+	private String[] fieldNames(String fields) {
+		List<String> names = new ArrayList<String>();
+		if (fields != null) {
+			MongoPersistentEntity<?> entity = mongo.getConverter()
+					.getMappingContext().getPersistentEntity(Video.class);
+			for (String field : fields.split(",")) {
+				String name = field.trim();
+				if (name.isEmpty()) {
+					continue;
+				}
+				if (entity.getPersistentProperty(name) == null) {
+					throw new BadRequestException("Videos don't have a property named " + name);
+				}
+				names.add(name);
+			}
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	// A client that asks for a field that a Video doesn't have gets a 400
+	// (Bad Request) rather than a server error. Any other exception is still
+	// a server error, since it isn't the client's fault.
+	@ExceptionHandler(BadRequestException.class)
+	public void badRequest(BadRequestException e,
+			HttpServletResponse response) throws IOException {
+		response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+	}
+
+}
@@ -1,6 +1,8 @@
 package org.magnum.mobilecloud.video.json;
 
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.hateoas.Resources;
 
@@ -70,11 +72,25 @@ import com.fasterxml.jackson.databind.module.SimpleModule;
  * This alternate format allows us to directly unmarshall the HTTP response bodies from the VideoRepository
  * into a list of Video objects.
  * 
+ * Every list of Videos that the VideoRepository returns goes through this class, so it tries to
+ * do as little work per response as it can. Rather than asking Jackson to look up a serializer for
+ * the list (and then for each of the Videos in it) every time that a response is written, it
+ * remembers the serializer that Jackson found for each class and writes the JSON array for the
+ * list itself.
+ * 
  * @author jules
  *
  */
 public class ResourcesMapper extends ObjectMapper {
 
+	// The serializers that Jackson has found for each class of object that we
+	// have written so far. Looking a serializer up means going through Jackson's
+	// own caches (and, the first time, inspecting the class), so we keep our own
+	// copy of the answer for the classes that we see over and over again, such
+	// as the wrappers that Spring Data Rest puts around each Video.
+	private final ConcurrentMap<Class<?>, JsonSerializer<Object>> serializers =
+			new ConcurrentHashMap<Class<?>, JsonSerializer<Object>>();
+
 	// This anonymous inner class will handle conversion of the Spring Data Rest
 	// Resources objects into JSON. Resources are objects that Spring Data Rest
 	// creates with the Videos it obtains from your VideoRepository
@@ -97,9 +113,12 @@ public class ResourcesMapper extends ObjectMapper {
 			Object content = value.getContent();
 			// Instead of all of the Resources member variables, etc.
 			// Just mashall the actual content (Videos) into the JSON
-			JsonSerializer<Object> s = provider.findValueSerializer(
-					content.getClass(), null);
-			s.serialize(content, jgen, provider);
+			if (content instanceof Iterable) {
+				writeArray((Iterable<?>) content, jgen, provider);
+			} else {
+				serializerFor(content.getClass(), provider).serialize(content,
+						jgen, provider);
+			}
 		}
 	};
 	
@@ -111,4 +130,31 @@ public class ResourcesMapper extends ObjectMapper {
 		registerModule(module);
 	}
 
+	// Write each object in the content straight into a JSON array. This
+	// produces the same JSON that Jackson would for the collection, without
+	// going through a collection serializer and its lookups for every Video.
+	private void writeArray(Iterable<?> content, JsonGenerator jgen,
+			SerializerProvider provider) throws IOException {
+		jgen.writeStartArray();
+		for (Object item : content) {
+			if (item == null) {
+				provider.defaultSerializeNull(jgen);
+			} else {
+				serializerFor(item.getClass(), provider).serialize(item, jgen,
+						provider);
+			}
+		}
+		jgen.writeEndArray();
+	}
+
+	private JsonSerializer<Object> serializerFor(Class<?> type,
+			SerializerProvider provider) throws IOException {
+		JsonSerializer<Object> s = serializers.get(type);
+		if (s == null) {
+			s = provider.findValueSerializer(type, null);
+			serializers.putIfAbsent(type, s);
+		}
+		return s;
+	}
+
 }
@@ -2,6 +2,9 @@ package org.magnum.mobilecloud.video.repository;
 
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 
 import com.google.common.base.Objects;
 
@@ -11,6 +14,16 @@ import com.google.common.base.Objects;
  * @author jules
  * 
  */
+// An index on the name, followed by the duration, lets MongoDB answer
+// findByName (and anything else that looks videos up by name) from the
+// index. When a query asks for only the name and duration of each video
+// (see VideoRepositoryCustom), MongoDB can send the results back straight
+// from the index without reading the videos themselves. (This version of
+// Spring Data MongoDB only looks for a @CompoundIndex inside of a
+// @CompoundIndexes.)
+@CompoundIndexes({
+	@CompoundIndex(name = "name_duration", def = "{'name' : 1, 'duration' : 1}")
+})
 public class Video {
 
 	@Id
@@ -18,6 +31,9 @@ public class Video {
 
 	private String name;
 	private String url;
+	// An index on the duration lets MongoDB answer the findByDuration
+	// searches by walking the range of durations instead of every video
+	@Indexed
 	private long duration;
 
 	public Video() {
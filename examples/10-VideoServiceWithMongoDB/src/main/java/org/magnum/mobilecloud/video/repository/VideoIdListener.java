@@ -0,0 +1,30 @@
+package org.magnum.mobilecloud.video.repository;
+
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+
+/**
+ * Spring Data MongoDB tells this listener about each Video just before
+ * it is turned into a document to save, which is our chance to give a
+ * new video (one whose id is still 0) an id from the VideoIdSequence.
+ * This covers the videos that are added one at a time through the
+ * VideoRepository (e.g., with a POST to /video).
+ *
+ * @author jules
+ *
+ */
+public class VideoIdListener extends AbstractMongoEventListener<Video> {
+
+	private final VideoIdSequence ids;
+
+	public VideoIdListener(VideoIdSequence ids) {
+		this.ids = ids;
+	}
+
+	@Override
+	public void onBeforeConvert(Video video) {
+		if (video.getId() == 0) {
+			video.setId(ids.next());
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.magnum.mobilecloud.video.repository;
+
+import org.springframework.data.mongodb.core.MongoOperations;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * Hands out the ids for new videos from a counter that is stored in
+ * MongoDB, so that every instance of the application that shares the
+ * database gets different ids.
+ *
+ * MongoDB only generates ids of its own (ObjectIds) for documents that
+ * don't have one, and a Video always has a long id, which is 0 until it
+ * is given one. Without a sequence, every new video would be saved with
+ * an id of 0 and replace the video that was added before it.
+ *
+ * Each call to reserve() is a single atomic findAndModify() on the
+ * counter, however many ids it asks for, so adding a large batch of
+ * videos costs one extra round trip to the database rather than one
+ * per video.
+ *
+ * @author jules
+ *
+ */
+public class VideoIdSequence {
+
+	// The collection that holds the counter, which is a single document
+	public static final String COLLECTION = "video_ids";
+
+	private static final String COUNTER_ID = "video";
+
+	private static final String NEXT_FIELD = "next";
+
+	private final MongoOperations mongo;
+
+	public VideoIdSequence(MongoOperations mongo) {
+		this.mongo = mongo;
+	}
+
+	/**
+	 * Returns a new id.
+	 */
+	public long next() {
+		return reserve(1);
+	}
+
+	/**
+	 * Reserves count ids in a row and returns the first of them. The
+	 * counter is created the first time that it is used, so the first
+	 * id is 1.
+	 */
+	public long reserve(int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("At least one id has to be reserved");
+		}
+		DBObject counter = mongo.getCollection(COLLECTION).findAndModify(
+				new BasicDBObject("_id", COUNTER_ID),
+				null, // all of the fields
+				null, // no sort
+				false, // don't remove it
+				new BasicDBObject("$inc", new BasicDBObject(NEXT_FIELD, count)),
+				true, // return the counter after it has been incremented
+				true); // create it if it isn't there yet
+		long last = ((Number) counter.get(NEXT_FIELD)).longValue();
+		return last - count + 1;
+	}
+
+}
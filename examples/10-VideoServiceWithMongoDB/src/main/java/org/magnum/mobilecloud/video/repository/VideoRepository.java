@@ -4,6 +4,7 @@ import java.util.Collection;
 
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
@@ -25,8 +26,11 @@ import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 // 4. Send search requests to our findByXYZ methods to /video/search/findByXYZ
 //    (e.g., /video/search/findByName?title=Foo)
 //
+// The methods of VideoRepositoryCustom (e.g., saveAll()) are implemented
+// by hand in VideoRepositoryImpl.
+//
 @RepositoryRestResource(path = VideoSvcApi.VIDEO_SVC_PATH)
-public interface VideoRepository extends MongoRepository<Video, Long>{
+public interface VideoRepository extends MongoRepository<Video, Long>, VideoRepositoryCustom {
 
 	// Find all videos with a matching title (e.g., Video.name)
 	public Collection<Video> findByName(
@@ -41,6 +45,18 @@ public interface VideoRepository extends MongoRepository<Video, Long>{
 			// parameter it should use to fill in the "duration" variable used to
 			// search for Videos
 			@Param(VideoSvcApi.DURATION_PARAMETER) long maxduration);
+
+	// Find all videos that are longer than a specified duration
+	public Collection<Video> findByDurationGreaterThan(
+			@Param(VideoSvcApi.DURATION_PARAMETER) long minduration);
+
+	// Find all videos with a duration from min to max, inclusive. Spring
+	// Data MongoDB turns a derived "Between" into an exclusive $gt/$lt, so
+	// the query is spelled out to match the other versions of the service.
+	@Query("{ 'duration' : { $gte : ?0, $lte : ?1 } }")
+	public Collection<Video> findByDurationBetween(
+			@Param(VideoSvcApi.MIN_DURATION_PARAMETER) long min,
+			@Param(VideoSvcApi.MAX_DURATION_PARAMETER) long max);
 	
 	/*
 	 * See: http://docs.spring.io/spring-data/jpa/docs/1.3.0.RELEASE/reference/html/jpa.repositories.html 
@@ -0,0 +1,64 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The methods of the VideoRepository that Spring Data can't generate
+ * for us, which are implemented by hand in VideoRepositoryImpl.
+ *
+ * The methods that take a list of fields only send those fields of each
+ * video back from MongoDB (e.g., "name" and "duration"), and leave the
+ * other properties of the Videos that they return unset. With no fields,
+ * they send back the whole video. Asking for a property that a Video
+ * doesn't have throws an IllegalArgumentException.
+ *
+ * Spring Data Rest doesn't publish these methods under /video/search,
+ * since it only looks at the query methods that Spring Data generates.
+ *
+ * @author jules
+ *
+ */
+public interface VideoRepositoryCustom {
+
+	/**
+	 * Adds all of the videos as new videos, sending them to MongoDB in
+	 * batches rather than one at a time. Any ids that the videos already
+	 * had are ignored, and each video is given a new id.
+	 */
+	public void saveAll(Collection<Video> videos);
+
+	/**
+	 * Finds all videos with a matching title (e.g., Video.name), like
+	 * findByName(), but only sends back the given fields of each one.
+	 */
+	public List<Video> findFieldsByName(String title, String... fields);
+
+	/**
+	 * Finds all videos that are shorter than a specified duration, like
+	 * findByDurationLessThan(), but only sends back the given fields of
+	 * each one.
+	 */
+	public List<Video> findFieldsByDurationLessThan(long maxduration, String... fields);
+
+	/**
+	 * Hands every video to the handler, one at a time and in order of
+	 * their ids. The videos are read through a database cursor that
+	 * fetches a batch of them at a time, and are let go of once they
+	 * have been handled, so the memory that this takes doesn't grow with
+	 * the number of videos the way that findAll() does.
+	 */
+	public void forEachVideo(VideoHandler handler, String... fields) throws IOException;
+
+	/**
+	 * Something that is given each of the videos by forEachVideo()
+	 * (e.g., something that writes them out).
+	 */
+	public interface VideoHandler {
+
+		public void handle(Video video) throws IOException;
+
+	}
+
+}
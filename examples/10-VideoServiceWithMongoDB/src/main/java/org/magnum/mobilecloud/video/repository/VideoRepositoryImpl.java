@@ -0,0 +1,158 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.CollectionCallback;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+
+/**
+ * Spring Data finds this class by its name (the name of the repository
+ * interface followed by "Impl") and sends calls to the methods of
+ * VideoRepositoryCustom to it. It talks to MongoDB through the same
+ * MongoTemplate that the rest of the VideoRepository uses.
+ *
+ * saveAll() turns the videos into documents itself and inserts them
+ * BATCH_SIZE at a time, with one request to MongoDB per batch rather
+ * than one per video. The inserts are unordered: if one of them fails
+ * (e.g., because of a duplicate id), MongoDB still inserts the rest of
+ * the batch and then reports the failure. The ids for the whole import
+ * are reserved from the VideoIdSequence up front.
+ *
+ * The finders only ask MongoDB for the fields that the caller wants.
+ * A query on the name that only wants the name and duration can be
+ * answered from the name_duration index (see Video) without reading
+ * the videos at all.
+ *
+ * forEachVideo() reads the videos through a cursor that MongoDB fills
+ * FETCH_SIZE videos at a time, rather than loading all of them into a
+ * List the way that findAll() does.
+ *
+ * @author jules
+ *
+ */
+public class VideoRepositoryImpl implements VideoRepositoryCustom {
+
+	// How many videos saveAll() sends to MongoDB in each request
+	public static final int BATCH_SIZE = 1000;
+
+	// How many videos forEachVideo() asks MongoDB for at a time
+	public static final int FETCH_SIZE = 500;
+
+	// Wait for MongoDB to acknowledge each batch, so that failures are
+	// reported, but let it carry on past a failed insert in the batch
+	private static final WriteConcern INSERT_CONCERN = WriteConcern.ACKNOWLEDGED
+			.continueOnErrorForInsert(true);
+
+	@Autowired
+	private MongoOperations mongo;
+
+	@Autowired
+	private VideoIdSequence ids;
+
+	@Override
+	public void saveAll(Collection<Video> videos) {
+		if (videos.isEmpty()) {
+			return;
+		}
+		long id = ids.reserve(videos.size());
+		MongoConverter converter = mongo.getConverter();
+		List<DBObject> batch = new ArrayList<DBObject>(Math.min(videos.size(), BATCH_SIZE));
+		for (Video video : videos) {
+			video.setId(id++);
+			DBObject document = new BasicDBObject();
+			converter.write(video, document);
+			batch.add(document);
+			if (batch.size() == BATCH_SIZE) {
+				insert(batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			insert(batch);
+		}
+	}
+
+	// Going through execute() turns any MongoException into one of
+	// Spring's DataAccessExceptions, like the rest of the repository
+	private void insert(final List<DBObject> batch) {
+		mongo.execute(Video.class, new CollectionCallback<Void>() {
+			@Override
+			public Void doInCollection(DBCollection collection)
+					throws MongoException, DataAccessException {
+				collection.insert(batch, INSERT_CONCERN);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public List<Video> findFieldsByName(String title, String... fields) {
+		return mongo.find(new BasicQuery(
+				new BasicDBObject("name", title),
+				projection(fields)), Video.class);
+	}
+
+	@Override
+	public List<Video> findFieldsByDurationLessThan(long maxduration, String... fields) {
+		return mongo.find(new BasicQuery(
+				new BasicDBObject("duration", new BasicDBObject("$lt", maxduration)),
+				projection(fields)), Video.class);
+	}
+
+	@Override
+	public void forEachVideo(VideoHandler handler, String... fields) throws IOException {
+		MongoConverter converter = mongo.getConverter();
+		DBCursor cursor = mongo.getCollection(mongo.getCollectionName(Video.class))
+				.find(new BasicDBObject(), projection(fields))
+				.sort(new BasicDBObject("_id", 1))
+				.batchSize(FETCH_SIZE);
+		try {
+			while (cursor.hasNext()) {
+				handler.handle(converter.read(Video.class, cursor.next()));
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	// Turns the names of Video properties into the fields that MongoDB
+	// should send back, or null (everything) if there aren't any
+	private DBObject projection(String... fields) {
+		if (fields.length == 0) {
+			return null;
+		}
+		MongoPersistentEntity<?> entity = mongo.getConverter()
+				.getMappingContext().getPersistentEntity(Video.class);
+		BasicDBObject projection = new BasicDBObject();
+		for (String field : fields) {
+			MongoPersistentProperty property = entity.getPersistentProperty(field);
+			if (property == null) {
+				throw new IllegalArgumentException("Videos don't have a property named " + field);
+			}
+			projection.put(property.getFieldName(), 1);
+		}
+		// MongoDB sends the _id back unless it is told not to, which would
+		// keep it from answering a query from an index that doesn't hold it
+		if (!projection.containsField("_id")) {
+			projection.put("_id", 0);
+		}
+		return projection;
+	}
+
+}
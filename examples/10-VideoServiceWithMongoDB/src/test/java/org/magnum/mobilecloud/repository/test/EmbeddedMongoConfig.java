@@ -0,0 +1,59 @@
+package org.magnum.mobilecloud.repository.test;
+
+import java.net.UnknownHostException;
+
+import org.magnum.mobilecloud.video.repository.VideoIdListener;
+import org.magnum.mobilecloud.video.repository.VideoIdSequence;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
+
+import com.github.fakemongo.Fongo;
+import com.mongodb.Mongo;
+import com.mongodb.MongoClient;
+
+/**
+ * A configuration that creates the VideoRepository on its own, without
+ * the rest of the Application, so that it can be tested without having
+ * to install and launch MongoDB.
+ *
+ * By default, the videos are stored in Fongo, which pretends to be
+ * MongoDB and keeps everything in memory. Setting the "mongo.host"
+ * system property (e.g., -Dmongo.host=localhost) connects to a real
+ * MongoDB instead, where the videos are stored in the "videos-test"
+ * database.
+ *
+ * @author jules
+ *
+ */
+@Configuration
+@EnableMongoRepositories(basePackageClasses = VideoRepository.class)
+public class EmbeddedMongoConfig {
+
+	public static final String DATABASE = "videos-test";
+
+	@Bean
+	public Mongo mongo() throws UnknownHostException {
+		String host = System.getProperty("mongo.host");
+		return (host != null) ? new MongoClient(host) : new Fongo(DATABASE).getMongo();
+	}
+
+	@Bean
+	public MongoTemplate mongoTemplate(Mongo mongo) {
+		return new MongoTemplate(mongo, DATABASE);
+	}
+
+	@Bean
+	public VideoIdSequence videoIdSequence(MongoOperations mongo) {
+		return new VideoIdSequence(mongo);
+	}
+
+	@Bean
+	public VideoIdListener videoIdListener(VideoIdSequence ids) {
+		return new VideoIdListener(ids);
+	}
+
+}
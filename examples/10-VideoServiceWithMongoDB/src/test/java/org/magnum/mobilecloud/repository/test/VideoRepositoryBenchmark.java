@@ -0,0 +1,133 @@
+package org.magnum.mobilecloud.repository.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.magnum.mobilecloud.video.repository.VideoRepositoryCustom.VideoHandler;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * A stand-alone benchmark that compares the methods that Spring Data
+ * generates for the VideoRepository with the ones in VideoRepositoryImpl:
+ *
+ * 1. Adding the videos one at a time with save() vs. all at once with saveAll()
+ * 2. Looking videos up by name with findByName() vs. findFieldsByName()
+ *    for just the name and duration
+ * 3. Reading every video with findAll() vs. forEachVideo() for just the
+ *    name and duration
+ *
+ * It reports how many videos (or lookups) per second each one manages.
+ * By default, it runs against Fongo (see EmbeddedMongoConfig), which says
+ * more about the work done in the application than about MongoDB itself.
+ * Point it at a real MongoDB for numbers that include the round trips to
+ * the database:
+ *
+ * java -Dmongo.host=localhost org.magnum.mobilecloud.repository.test.VideoRepositoryBenchmark 1000 10000 100000
+ *
+ * @author jules
+ *
+ */
+public class VideoRepositoryBenchmark {
+
+	private static final int LOOKUPS = 1000;
+
+	public static void main(String[] args) throws IOException {
+		int[] sizes = args.length > 0 ? new int[args.length] : new int[] { 1000, 10000, 100000 };
+		for (int i = 0; i < args.length; i++) {
+			sizes[i] = Integer.parseInt(args[i]);
+		}
+
+		AnnotationConfigApplicationContext context =
+				new AnnotationConfigApplicationContext(EmbeddedMongoConfig.class);
+		try {
+			VideoRepository videos = context.getBean(VideoRepository.class);
+			MongoOperations mongo = context.getBean(MongoOperations.class);
+
+			System.out.println(String.format("%10s %-8s %-20s %14s", "videos",
+					"", "method", "per second"));
+			// The first size is run twice, and the first run only warms up the JIT
+			run(videos, mongo, sizes[0], false);
+			for (int size : sizes) {
+				run(videos, mongo, size, true);
+			}
+		} finally {
+			context.close();
+		}
+	}
+
+	private static void run(VideoRepository videos, MongoOperations mongo,
+			int size, boolean print) throws IOException {
+		List<Video> batch = randomVideos(size);
+
+		mongo.remove(new Query(), Video.class);
+		long start = System.nanoTime();
+		for (Video video : batch) {
+			videos.save(video);
+		}
+		report(print, size, "insert", "save()", size, start);
+
+		mongo.remove(new Query(), Video.class);
+		start = System.nanoTime();
+		videos.saveAll(batch);
+		report(print, size, "insert", "saveAll()", size, start);
+
+		Random random = new Random(42);
+		long found = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < LOOKUPS; i++) {
+			found += videos.findByName(batch.get(random.nextInt(size)).getName()).size();
+		}
+		report(print, size, "lookup", "findByName()", LOOKUPS, start);
+
+		start = System.nanoTime();
+		for (int i = 0; i < LOOKUPS; i++) {
+			found += videos.findFieldsByName(batch.get(random.nextInt(size)).getName(),
+					"name", "duration").size();
+		}
+		report(print, size, "lookup", "findFieldsByName()", LOOKUPS, start);
+
+		start = System.nanoTime();
+		found += videos.findAll().size();
+		report(print, size, "read all", "findAll()", size, start);
+
+		final long[] read = new long[1];
+		start = System.nanoTime();
+		videos.forEachVideo(new VideoHandler() {
+			@Override
+			public void handle(Video video) {
+				read[0]++;
+			}
+		}, "name", "duration");
+		report(print, size, "read all", "forEachVideo()", size, start);
+
+		if (found + read[0] < 2 * LOOKUPS + 2 * size) {
+			throw new IllegalStateException("Some of the videos weren't found");
+		}
+	}
+
+	private static void report(boolean print, int size, String operation,
+			String method, int count, long start) {
+		double seconds = (System.nanoTime() - start) / 1000000000.0;
+		if (print) {
+			System.out.println(String.format("%10d %-8s %-20s %14.0f", size,
+					operation, method, count / seconds));
+		}
+	}
+
+	private static List<Video> randomVideos(int size) {
+		Random random = new Random(42);
+		List<Video> batch = new ArrayList<Video>(size);
+		for (int i = 0; i < size; i++) {
+			batch.add(new Video("Video " + i, "http://coursera.org/" + i,
+					60000L * random.nextInt(60)));
+		}
+		return batch;
+	}
+
+}
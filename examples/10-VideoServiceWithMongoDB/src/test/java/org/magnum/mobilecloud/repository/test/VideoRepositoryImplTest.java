@@ -0,0 +1,157 @@
+package org.magnum.mobilecloud.repository.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.magnum.mobilecloud.video.repository.VideoRepositoryCustom.VideoHandler;
+import org.magnum.mobilecloud.video.repository.VideoRepositoryImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.mongodb.DBObject;
+
+/**
+ *
+ * This test runs the VideoRepository against the stand-in for MongoDB in
+ * EmbeddedMongoConfig and checks the methods that VideoRepositoryImpl adds
+ * to it: adding videos in batches, finding only some of the fields of
+ * each video, and going through all of the videos with a cursor. It also
+ * checks that the indexes declared on the Video are created.
+ *
+ * @author jules
+ *
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = EmbeddedMongoConfig.class)
+public class VideoRepositoryImplTest {
+
+	@Autowired
+	private VideoRepository videos;
+
+	@Autowired
+	private MongoOperations mongo;
+
+	@Before
+	public void setUp() {
+		// Removing the videos, rather than dropping the collection, keeps
+		// the indexes that were created when the repository started
+		mongo.remove(new Query(), Video.class);
+	}
+
+	@Test
+	public void testSaveGivesEachVideoItsOwnId() throws Exception {
+		Video first = videos.save(TestData.randomVideo());
+		Video second = videos.save(TestData.randomVideo());
+
+		assertTrue(first.getId() > 0);
+		assertTrue(first.getId() != second.getId());
+		assertEquals(2, videos.count());
+	}
+
+	@Test
+	public void testSaveAllAddsEveryVideo() throws Exception {
+		Video existing = videos.save(TestData.randomVideo());
+
+		List<Video> batch = new ArrayList<Video>();
+		for (int i = 0; i < 2 * VideoRepositoryImpl.BATCH_SIZE + 1; i++) {
+			batch.add(TestData.randomVideo());
+		}
+		// An id from the client doesn't replace an existing video
+		batch.get(0).setId(existing.getId());
+		videos.saveAll(batch);
+
+		assertEquals(batch.size() + 1, videos.count());
+		Set<Long> ids = new HashSet<Long>();
+		ids.add(existing.getId());
+		for (Video video : batch) {
+			ids.add(video.getId());
+			assertEquals(video, videos.findOne(video.getId()));
+		}
+		assertEquals(batch.size() + 1, ids.size());
+		assertEquals(existing, videos.findOne(existing.getId()));
+	}
+
+	@Test
+	public void testFindFieldsOnlyReturnsTheFields() throws Exception {
+		Video video = videos.save(TestData.randomVideo());
+		videos.save(TestData.randomVideo());
+
+		List<Video> found = videos.findFieldsByName(video.getName(), "name", "duration");
+		assertEquals(1, found.size());
+		assertEquals(video.getName(), found.get(0).getName());
+		assertEquals(video.getDuration(), found.get(0).getDuration());
+		assertNull(found.get(0).getUrl());
+		assertEquals(0, found.get(0).getId());
+
+		// Without any fields, the whole video comes back
+		found = videos.findFieldsByName(video.getName());
+		assertEquals(1, found.size());
+		assertEquals(video, found.get(0));
+		assertEquals(video.getId(), found.get(0).getId());
+
+		found = videos.findFieldsByDurationLessThan(video.getDuration() + 1, "id");
+		assertEquals(videos.findByDurationLessThan(video.getDuration() + 1).size(),
+				found.size());
+		for (Video shorter : found) {
+			assertTrue(shorter.getId() > 0);
+			assertNull(shorter.getName());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownFieldsAreRejected() throws Exception {
+		videos.findFieldsByName("Foo", "name", "rating");
+	}
+
+	@Test
+	public void testForEachVideoVisitsEveryVideoInOrder() throws Exception {
+		List<Video> batch = new ArrayList<Video>();
+		for (int i = 0; i < 3 * VideoRepositoryImpl.FETCH_SIZE + 1; i++) {
+			batch.add(TestData.randomVideo());
+		}
+		videos.saveAll(batch);
+
+		final List<Video> visited = new ArrayList<Video>();
+		videos.forEachVideo(new VideoHandler() {
+			@Override
+			public void handle(Video video) throws IOException {
+				visited.add(video);
+			}
+		}, "id", "name");
+
+		assertEquals(batch.size(), visited.size());
+		for (int i = 0; i < batch.size(); i++) {
+			assertEquals(batch.get(i).getId(), visited.get(i).getId());
+			assertEquals(batch.get(i).getName(), visited.get(i).getName());
+			assertNull(visited.get(i).getUrl());
+		}
+	}
+
+	@Test
+	public void testIndexesAreCreated() throws Exception {
+		Set<String> indexes = new HashSet<String>();
+		for (DBObject index : mongo.getCollection(mongo.getCollectionName(Video.class))
+				.getIndexInfo()) {
+			indexes.add((String) index.get("name"));
+		}
+		assertTrue(indexes.contains("name_duration"));
+		assertTrue(indexes.contains("duration"));
+	}
+
+}
@@ -1,6 +1,7 @@
 package org.magnum.mobilecloud.video.client;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.magnum.mobilecloud.video.repository.Video;
 
@@ -25,6 +26,12 @@ public interface VideoSvcApi {
 	
 	public static final String DURATION_PARAMETER = "duration";
 
+	public static final String MIN_DURATION_PARAMETER = "min";
+
+	public static final String MAX_DURATION_PARAMETER = "max";
+
+	public static final String ID_PARAMETER = "id";
+
 	// The path where we expect the VideoSvc to live
 	public static final String VIDEO_SVC_PATH = "/video";
 
@@ -34,16 +41,44 @@ public interface VideoSvcApi {
 	// The path to search videos by title
 	public static final String VIDEO_DURATION_SEARCH_PATH = VIDEO_SVC_PATH + "/search/findByDurationLessThan";
 
+	public static final String VIDEO_DURATION_GREATER_THAN_PATH = VIDEO_SVC_PATH + "/search/findByDurationGreaterThan";
+
+	public static final String VIDEO_DURATION_BETWEEN_PATH = VIDEO_SVC_PATH + "/search/findByDurationBetween";
+
+	// The path to add or fetch many videos at once
+	public static final String VIDEO_BATCH_PATH = VIDEO_SVC_PATH + "/batch";
+
+	// The path to download every video at once
+	public static final String VIDEO_EXPORT_PATH = VIDEO_SVC_PATH + "/export";
+
 	@GET(VIDEO_SVC_PATH)
 	public Collection<Video> getVideoList();
 	
 	@POST(VIDEO_SVC_PATH)
 	public Void addVideo(@Body Video v);
 	
+	// Adds all of the videos, as new videos, with one request
+	@POST(VIDEO_BATCH_PATH)
+	public boolean addVideos(@Body List<Video> v);
+
+	// Returns the videos with the given ids, in the same order as the ids.
+	// Ids that don't belong to a video are skipped.
+	@GET(VIDEO_BATCH_PATH)
+	public List<Video> getVideos(@Query(ID_PARAMETER) List<String> ids);
+
+	
 	@GET(VIDEO_TITLE_SEARCH_PATH)
 	public Collection<Video> findByTitle(@Query(TITLE_PARAMETER) String title);
 	
 	@GET(VIDEO_DURATION_SEARCH_PATH)
 	public Collection<Video> findByDurationLessThan(@Query(DURATION_PARAMETER) String title);
+
+	@GET(VIDEO_DURATION_GREATER_THAN_PATH)
+	public Collection<Video> findByDurationGreaterThan(@Query(DURATION_PARAMETER) long duration);
+
+	// Returns the videos with a duration from min to max, inclusive
+	@GET(VIDEO_DURATION_BETWEEN_PATH)
+	public Collection<Video> findByDurationBetween(@Query(MIN_DURATION_PARAMETER) long min,
+			@Query(MAX_DURATION_PARAMETER) long max);
 	
 }
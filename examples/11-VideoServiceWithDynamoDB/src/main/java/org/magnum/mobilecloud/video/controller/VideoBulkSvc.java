@@ -0,0 +1,93 @@
+package org.magnum.mobilecloud.video.controller;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoTable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Spring Data Rest handles all of the requests for single videos. This
+ * Controller adds the requests that move a large number of videos in or
+ * out of the service at once, which Spring Data Rest can only do with
+ * one request to DynamoDB per video.
+ *
+ * Spring looks at the mappings in our own Controllers before the ones
+ * that Spring Data Rest creates, so /video/batch and /video/export are
+ * sent here rather than being treated as the ids of videos.
+ *
+ * @author jules
+ *
+ */
+@Controller
+public class VideoBulkSvc {
+
+	@Autowired
+	private VideoTable videos;
+
+	// Writes the videos for exportVideos() as JSON. By default, Jackson
+	// flushes the response after each video, which would send every
+	// video in a tiny packet of its own.
+	private static final ObjectMapper objectMapper = new ObjectMapper()
+			.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+	// Receives POST requests to /video/batch with a JSON array of videos
+	// and adds all of them as new videos, with a BatchWriteItem request
+	// per 25 videos rather than a PutItem request per video.
+	@RequestMapping(value=VideoSvcApi.VIDEO_BATCH_PATH, method=RequestMethod.POST)
+	public @ResponseBody boolean addVideos(@RequestBody List<Video> v){
+		videos.saveAll(v);
+		return true;
+	}
+
+	// Receives GET requests to /video/batch with the ids of the videos
+	// (e.g., /video/batch?id=1234&id=5678) and sends back those videos,
+	// which are read with a BatchGetItem request per 100 videos rather
+	// than a GetItem request per video.
+	@RequestMapping(value=VideoSvcApi.VIDEO_BATCH_PATH, method=RequestMethod.GET)
+	public @ResponseBody List<Video> getVideos(
+			@RequestParam(VideoSvcApi.ID_PARAMETER) List<String> ids){
+		return videos.findAll(ids);
+	}
+
+	// Receives GET requests to /video/export and sends back every video
+	// as one JSON array, writing each video to the response as soon as
+	// it is read from DynamoDB, so that the memory that it takes doesn't
+	// depend on how many videos there are. The table is read with a
+	// parallel scan (see VideoTable.scanAll()), so the videos aren't in
+	// any particular order.
+	//
+	// Once the first videos have been sent, the status can't be changed
+	// to an error anymore. If reading a video fails part way through,
+	// the response ends without the closing "]" so that a client can't
+	// mistake it for the complete list.
+	@RequestMapping(value=VideoSvcApi.VIDEO_EXPORT_PATH, method=RequestMethod.GET)
+	public void exportVideos(HttpServletResponse response) throws IOException {
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		JsonGenerator json = objectMapper.getFactory()
+				.createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+		json.writeStartArray();
+		for (Video video : videos.scanAll()) {
+			objectMapper.writeValue(json, video);
+		}
+		json.writeEndArray();
+		json.close();
+	}
+
+}
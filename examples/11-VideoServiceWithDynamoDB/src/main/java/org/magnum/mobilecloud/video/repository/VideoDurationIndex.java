@@ -0,0 +1,84 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+
+/**
+ * Searches for videos by duration with queries on the duration index of
+ * the Videos table rather than with a scan.
+ * 
+ * A scan reads every item in the table (and is billed for every one of
+ * them), and then throws away the ones that don't match. A query on the
+ * index only reads the items whose duration is in the range, because the
+ * index keeps the videos in each bucket sorted by their duration. See
+ * Video.DURATION_INDEX and Video.DURATION_BUCKETS.
+ * 
+ * @author jules
+ *
+ */
+@Component
+public class VideoDurationIndex {
+
+	private final DynamoDBMapper mapper;
+
+	@Autowired
+	public VideoDurationIndex(AmazonDynamoDB amazonDynamoDB) {
+		mapper = new DynamoDBMapper(amazonDynamoDB);
+	}
+
+	// Videos with a duration from min to max, inclusive
+	public List<Video> findByDurationBetween(long min, long max) {
+		if (min > max) {
+			return new ArrayList<Video>();
+		}
+		return query(new Condition()
+				.withComparisonOperator(ComparisonOperator.BETWEEN)
+				.withAttributeValueList(number(min), number(max)));
+	}
+
+	public List<Video> findByDurationLessThan(long duration) {
+		return query(new Condition()
+				.withComparisonOperator(ComparisonOperator.LT)
+				.withAttributeValueList(number(duration)));
+	}
+
+	public List<Video> findByDurationGreaterThan(long duration) {
+		return query(new Condition()
+				.withComparisonOperator(ComparisonOperator.GT)
+				.withAttributeValueList(number(duration)));
+	}
+
+	// Runs the same range query in every bucket of the index and puts
+	// the results together
+	private List<Video> query(Condition range) {
+		List<Video> matches = new ArrayList<Video>();
+		for (int bucket = 0; bucket < Video.DURATION_BUCKETS; bucket++) {
+			Video key = new Video();
+			key.setDurationBucket(bucket);
+			DynamoDBQueryExpression<Video> query = new DynamoDBQueryExpression<Video>()
+					.withIndexName(Video.DURATION_INDEX)
+					.withHashKeyValues(key)
+					.withRangeKeyCondition("duration", range)
+					// Global secondary indexes don't support consistent reads
+					.withConsistentRead(false);
+			// The mapper fetches the pages of results as the list is read
+			matches.addAll(mapper.query(Video.class, query));
+		}
+		return matches;
+	}
+
+	private static AttributeValue number(long value) {
+		return new AttributeValue().withN(Long.toString(value));
+	}
+
+}
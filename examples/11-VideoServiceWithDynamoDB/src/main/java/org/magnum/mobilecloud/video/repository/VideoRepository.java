@@ -1,11 +1,8 @@
 package org.magnum.mobilecloud.video.repository;
 
-import java.util.Collection;
-
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
 import org.socialsignin.spring.data.dynamodb.repository.EnableScan;
 import org.springframework.data.repository.CrudRepository;
-import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
 /**
@@ -23,26 +20,21 @@ import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 // 2. Add a video by sending a POST request to /video with the JSON for a video
 // 3. Get a specific video by sending a GET request to /video/{videoId}
 //    (e.g., /video/1 would return the JSON for the video with id=1)
-// 4. Send search requests to our findByXYZ methods to /video/search/findByXYZ
-//    (e.g., /video/search/findByName?title=Foo)
+// 4. Send search requests to /video/search/findByXYZ (e.g.,
+//    /video/search/findByName?title=Foo), which are answered by our own
+//    NameSearchController and DurationSearchController rather than by
+//    query methods declared here
 //
 @EnableScan
 @RepositoryRestResource(path = VideoSvcApi.VIDEO_SVC_PATH)
 public interface VideoRepository extends CrudRepository<Video, Long>{
 
-	// Find all videos with a matching title (e.g., Video.name)
-	public Collection<Video> findByName(
-			// The @Param annotation tells Spring Data Rest which HTTP request
-			// parameter it should use to fill in the "title" variable used to
-			// search for Videos
-			@Param(VideoSvcApi.TITLE_PARAMETER) String title);
-	
-	// Find all videos that are shorter than a specified duration
-	public Collection<Video> findByDurationLessThan(
-			// The @Param annotation tells tells Spring Data Rest which HTTP request
-			// parameter it should use to fill in the "duration" variable used to
-			// search for Videos
-			@Param(VideoSvcApi.DURATION_PARAMETER) long maxduration);
+	// The searches by title and by duration aren't declared here, because
+	// derived findByName() and findByDurationLessThan() methods would scan
+	// the whole table (see @EnableScan, which is only still needed for the
+	// list of all of the videos). The NameSearchController and the
+	// DurationSearchController answer them with queries on the name and
+	// duration indexes instead (see VideoTable and VideoDurationIndex).
 	
 	/*
 	 * See: http://docs.spring.io/spring-data/jpa/docs/1.3.0.RELEASE/reference/html/jpa.repositories.html 
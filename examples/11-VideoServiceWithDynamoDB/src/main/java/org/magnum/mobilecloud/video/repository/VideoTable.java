@@ -0,0 +1,135 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.PaginationLoadingStrategy;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+
+/**
+ * The ways of reading and writing videos that Spring Data DynamoDB doesn't
+ * give the VideoRepository, which talk to the Videos table directly.
+ *
+ * findByName() queries the name index of the table (see Video.NAME_INDEX),
+ * which only reads the videos with that name, where a derived findByName()
+ * on the VideoRepository would scan every video in the table.
+ *
+ * scanAll() is for the times when every video really is needed. It splits
+ * the table into SCAN_SEGMENTS segments and scans all of them at once, each
+ * with its own thread, rather than reading the whole table one page after
+ * another.
+ *
+ * saveAll() and findAll() add or fetch many videos with a BatchWriteItem or
+ * BatchGetItem request per 25 or 100 videos (the most that DynamoDB takes in
+ * one request), rather than one request per video.
+ *
+ * @author jules
+ *
+ */
+@Component
+public class VideoTable {
+
+	// How many segments scanAll() splits the table into
+	public static final int SCAN_SEGMENTS = 4;
+
+	// The most keys that DynamoDB accepts in one BatchGetItem request
+	public static final int BATCH_GET_SIZE = 100;
+
+	// scanAll() hands out each page of videos once and then lets go of it,
+	// rather than keeping every page that it has read in the list
+	private static final DynamoDBMapperConfig SCAN_CONFIG = new DynamoDBMapperConfig(
+			PaginationLoadingStrategy.ITERATION_ONLY);
+
+	private final DynamoDBMapper mapper;
+
+	@Autowired
+	public VideoTable(AmazonDynamoDB amazonDynamoDB) {
+		mapper = new DynamoDBMapper(amazonDynamoDB);
+	}
+
+	// Find all videos with a matching title (e.g., Video.name)
+	public List<Video> findByName(String title) {
+		Video key = new Video();
+		key.setName(title);
+		DynamoDBQueryExpression<Video> query = new DynamoDBQueryExpression<Video>()
+				.withIndexName(Video.NAME_INDEX)
+				.withHashKeyValues(key)
+				// Global secondary indexes don't support consistent reads
+				.withConsistentRead(false);
+		return new ArrayList<Video>(mapper.query(Video.class, query));
+	}
+
+	// Every video in the table, which are read as the result is iterated
+	// over. The result can only be iterated over once.
+	public Iterable<Video> scanAll() {
+		return mapper.parallelScan(Video.class, new DynamoDBScanExpression(),
+				SCAN_SEGMENTS, SCAN_CONFIG);
+	}
+
+	// Adds all of the videos as new videos. Any ids that the videos already
+	// had are ignored, and each video is given a new id. The mapper sends
+	// any videos that DynamoDB didn't get to (e.g., because the table's
+	// write capacity ran out) again until they are all written.
+	public void saveAll(List<Video> videos) {
+		for (Video video : videos) {
+			video.setId(null);
+		}
+		List<FailedBatch> failed = mapper.batchSave(videos);
+		if (!failed.isEmpty()) {
+			throw new AmazonClientException(failed.size()
+					+ " batches of videos could not be saved",
+					failed.get(0).getException());
+		}
+	}
+
+	// The videos with the given ids, in the same order as the ids. Ids that
+	// don't belong to a video are skipped.
+	public List<Video> findAll(Collection<String> ids) {
+		Map<String, Video> found = new HashMap<String, Video>();
+		List<Object> keys = new ArrayList<Object>(Math.min(ids.size(), BATCH_GET_SIZE));
+		for (String id : ids) {
+			Video key = new Video();
+			key.setId(id);
+			keys.add(key);
+			if (keys.size() == BATCH_GET_SIZE) {
+				load(keys, found);
+				keys.clear();
+			}
+		}
+		if (!keys.isEmpty()) {
+			load(keys, found);
+		}
+
+		List<Video> videos = new ArrayList<Video>(found.size());
+		for (String id : ids) {
+			Video video = found.get(id);
+			if (video != null) {
+				videos.add(video);
+			}
+		}
+		return videos;
+	}
+
+	// The mapper sends the keys that DynamoDB didn't get to again until
+	// all of them have been read
+	private void load(List<Object> keys, Map<String, Video> found) {
+		for (List<Object> videos : mapper.batchLoad(keys).values()) {
+			for (Object video : videos) {
+				found.put(((Video) video).getId(), (Video) video);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+package org.magnum.mobilecloud.repository.test;
+
+import org.magnum.mobilecloud.video.repository.Video;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+
+/**
+ * Connects the tests to DynamoDB Local, the version of DynamoDB that
+ * Amazon provides for testing, which has to be running first:
+ *
+ * http://docs.aws.amazon.com/amazondynamodb/latest/developerguide/Tools.DynamoDBLocal.html
+ *
+ * e.g., java -Djava.library.path=./DynamoDBLocal_lib -jar DynamoDBLocal.jar -inMemory
+ *
+ * By default, the tests expect it on port 8000 of this machine. Set the
+ * "dynamodb.endpoint" system property to use another one.
+ *
+ * @author jules
+ *
+ */
+public class DynamoDBLocal {
+
+	public static final String ENDPOINT = System.getProperty(
+			"dynamodb.endpoint", "http://localhost:8000");
+
+	public static AmazonDynamoDBClient client() {
+		// DynamoDB Local accepts any credentials
+		AmazonDynamoDBClient client = new AmazonDynamoDBClient(
+				new BasicAWSCredentials("local", "local"));
+		client.setEndpoint(ENDPOINT);
+		return client;
+	}
+
+	/**
+	 * Creates an empty table for the videos, with the same indexes as
+	 * the one described in the README.md, replacing the table if it is
+	 * already there.
+	 */
+	public static void createVideoTable(AmazonDynamoDB dynamo) {
+		String table = Video.class.getAnnotation(DynamoDBTable.class).tableName();
+		try {
+			dynamo.deleteTable(table);
+		} catch (ResourceNotFoundException e) {
+			// There wasn't a table yet
+		}
+
+		ProvisionedThroughput throughput = new ProvisionedThroughput(10L, 10L);
+		Projection all = new Projection().withProjectionType(ProjectionType.ALL);
+		dynamo.createTable(new CreateTableRequest()
+				.withTableName(table)
+				.withAttributeDefinitions(
+						new AttributeDefinition("id", ScalarAttributeType.S),
+						new AttributeDefinition("name", ScalarAttributeType.S),
+						new AttributeDefinition("durationBucket", ScalarAttributeType.N),
+						new AttributeDefinition("duration", ScalarAttributeType.N))
+				.withKeySchema(new KeySchemaElement("id", KeyType.HASH))
+				.withGlobalSecondaryIndexes(
+						new GlobalSecondaryIndex()
+								.withIndexName(Video.NAME_INDEX)
+								.withKeySchema(new KeySchemaElement("name", KeyType.HASH))
+								.withProjection(all)
+								.withProvisionedThroughput(throughput),
+						new GlobalSecondaryIndex()
+								.withIndexName(Video.DURATION_INDEX)
+								.withKeySchema(
+										new KeySchemaElement("durationBucket", KeyType.HASH),
+										new KeySchemaElement("duration", KeyType.RANGE))
+								.withProjection(all)
+								.withProvisionedThroughput(throughput))
+				.withProvisionedThroughput(throughput));
+	}
+
+}
@@ -0,0 +1,165 @@
+package org.magnum.mobilecloud.repository.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoDurationIndex;
+import org.magnum.mobilecloud.video.repository.VideoTable;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+
+/**
+ *
+ * This test runs the VideoTable and the VideoDurationIndex against DynamoDB
+ * Local (see DynamoDBLocal for how to start it) and checks which requests
+ * they send to DynamoDB: searches have to be Query requests on an index
+ * rather than Scans of the table, and adding or fetching many videos has to
+ * use the batch requests.
+ *
+ * @author jules
+ *
+ */
+public class VideoTableTest {
+
+	// The names of the AmazonDynamoDB methods that have been called
+	private List<String> requests = new ArrayList<String>();
+
+	// The segments of the table that Scan requests have asked for
+	private Set<Integer> scannedSegments = new HashSet<Integer>();
+
+	private VideoTable videos;
+
+	private VideoDurationIndex durations;
+
+	@Before
+	public void setUp() {
+		final AmazonDynamoDB dynamo = DynamoDBLocal.client();
+		DynamoDBLocal.createVideoTable(dynamo);
+
+		// Pass every request on to DynamoDB Local, but write down what it was
+		AmazonDynamoDB recorder = (AmazonDynamoDB) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] { AmazonDynamoDB.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args)
+							throws Throwable {
+						synchronized (requests) {
+							requests.add(method.getName());
+							if (args != null && args[0] instanceof ScanRequest) {
+								scannedSegments.add(((ScanRequest) args[0]).getSegment());
+							}
+						}
+						try {
+							return method.invoke(dynamo, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+		videos = new VideoTable(recorder);
+		durations = new VideoDurationIndex(recorder);
+	}
+
+	@Test
+	public void testFindByNameQueriesTheNameIndex() throws Exception {
+		List<Video> added = randomVideos(10);
+		Video sameName = new Video(added.get(0).getName(), "http://coursera.org/other", 1000);
+		added.add(sameName);
+		videos.saveAll(added);
+
+		requests.clear();
+		List<Video> found = videos.findByName(sameName.getName());
+		assertEquals(2, found.size());
+		assertTrue(found.contains(added.get(0)));
+		assertTrue(found.contains(sameName));
+		assertEquals(0, videos.findByName("Not a video").size());
+
+		assertTrue(requests.contains("query"));
+		assertFalse(requests.contains("scan"));
+	}
+
+	@Test
+	public void testDurationSearchesQueryTheDurationIndex() throws Exception {
+		List<Video> added = randomVideos(20);
+		videos.saveAll(added);
+
+		requests.clear();
+		List<Video> found = durations.findByDurationLessThan(30 * 60 * 1000);
+		for (Video video : added) {
+			assertEquals(video.getDuration() < 30 * 60 * 1000, found.contains(video));
+		}
+		assertFalse(requests.contains("scan"));
+	}
+
+	@Test
+	public void testScanAllReadsEverySegment() throws Exception {
+		List<Video> added = randomVideos(100);
+		videos.saveAll(added);
+
+		requests.clear();
+		List<Video> scanned = new ArrayList<Video>();
+		for (Video video : videos.scanAll()) {
+			scanned.add(video);
+		}
+		assertEquals(added.size(), scanned.size());
+		assertTrue(scanned.containsAll(added));
+		assertEquals(VideoTable.SCAN_SEGMENTS, scannedSegments.size());
+	}
+
+	@Test
+	public void testSaveAllAndFindAllSendBatches() throws Exception {
+		List<Video> added = randomVideos(2 * VideoTable.BATCH_GET_SIZE + 1);
+		// An id from the client doesn't replace an existing video
+		added.get(0).setId("some-id");
+
+		requests.clear();
+		videos.saveAll(added);
+		assertFalse(requests.contains("putItem"));
+		// DynamoDB takes up to 25 writes per BatchWriteItem request
+		assertTrue(requests.contains("batchWriteItem"));
+		assertTrue(requests.size() <= added.size() / 25 + 1);
+
+		List<String> ids = new ArrayList<String>();
+		for (Video video : added) {
+			assertNotNull(video.getId());
+			ids.add(video.getId());
+		}
+		assertEquals(added.size(), new HashSet<String>(ids).size());
+		assertFalse(ids.contains("some-id"));
+		ids.add(1, "not-an-id");
+
+		requests.clear();
+		List<Video> found = videos.findAll(ids);
+		assertEquals(added, found);
+		for (int i = 0; i < added.size(); i++) {
+			assertEquals(added.get(i).getId(), found.get(i).getId());
+		}
+		assertFalse(requests.contains("getItem"));
+		assertEquals(3, requests.size());
+	}
+
+	private List<Video> randomVideos(int count) {
+		List<Video> added = new ArrayList<Video>();
+		for (int i = 0; i < count; i++) {
+			added.add(TestData.randomVideo());
+		}
+		return added;
+	}
+
+}
@@ -0,0 +1,53 @@
+package org.magnum.mobilecloud.video.controller;
+
+import java.util.Collection;
+
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoDurationIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Answers the searches by duration on the same paths that Spring Data
+ * Rest uses for the other searches (e.g., /video/search/findByDurationLessThan),
+ * so clients can't tell that these ones are handled differently.
+ * 
+ * Spring Data Rest can only export the query methods that Spring Data
+ * DynamoDB derives from the names of the VideoRepository's methods, and a
+ * derived range search is a scan of the whole table. This controller uses
+ * the VideoDurationIndex to query the duration index instead.
+ * 
+ * @author jules
+ *
+ */
+@Controller
+public class DurationSearchController {
+
+	@Autowired
+	private VideoDurationIndex durations;
+
+	@RequestMapping(value = VideoSvcApi.VIDEO_DURATION_BETWEEN_PATH, method = RequestMethod.GET)
+	public @ResponseBody Collection<Video> findByDurationBetween(
+			@RequestParam(VideoSvcApi.MIN_DURATION_PARAMETER) long min,
+			@RequestParam(VideoSvcApi.MAX_DURATION_PARAMETER) long max) {
+		return durations.findByDurationBetween(min, max);
+	}
+
+	@RequestMapping(value = VideoSvcApi.VIDEO_DURATION_SEARCH_PATH, method = RequestMethod.GET)
+	public @ResponseBody Collection<Video> findByDurationLessThan(
+			@RequestParam(VideoSvcApi.DURATION_PARAMETER) long duration) {
+		return durations.findByDurationLessThan(duration);
+	}
+
+	@RequestMapping(value = VideoSvcApi.VIDEO_DURATION_GREATER_THAN_PATH, method = RequestMethod.GET)
+	public @ResponseBody Collection<Video> findByDurationGreaterThan(
+			@RequestParam(VideoSvcApi.DURATION_PARAMETER) long duration) {
+		return durations.findByDurationGreaterThan(duration);
+	}
+
+}
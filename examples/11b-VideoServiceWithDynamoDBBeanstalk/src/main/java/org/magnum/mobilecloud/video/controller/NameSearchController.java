@@ -0,0 +1,39 @@
+package org.magnum.mobilecloud.video.controller;
+
+import java.util.Collection;
+
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoTable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Answers the searches by title on the path that Spring Data Rest would
+ * use for them (/video/search/findByName), so clients can't tell that
+ * they are handled differently.
+ * 
+ * A findByName() derived by Spring Data DynamoDB would scan the whole
+ * table. This controller uses the VideoTable to query the name index
+ * instead.
+ * 
+ * @author jules
+ *
+ */
+@Controller
+public class NameSearchController {
+
+	@Autowired
+	private VideoTable videos;
+
+	@RequestMapping(value = VideoSvcApi.VIDEO_TITLE_SEARCH_PATH, method = RequestMethod.GET)
+	public @ResponseBody Collection<Video> findByName(
+			@RequestParam(VideoSvcApi.TITLE_PARAMETER) String title) {
+		return videos.findByName(title);
+	}
+
+}
@@ -3,7 +3,10 @@ package org.magnum.mobilecloud.video.repository;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAutoGeneratedKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.common.base.Objects;
 
 /**
@@ -15,10 +18,28 @@ import com.google.common.base.Objects;
 @DynamoDBTable(tableName = "Video")
 public class Video {
 
+	// The name of the global secondary index that finds the videos by
+	// name (see VideoTable.findByName()). The index has to be added to
+	// the table along with the table itself (see the README.md).
+	public static final String NAME_INDEX = "name-index";
+
+	// The name of the global secondary index that sorts the videos by
+	// duration. The index has to be added to the table along with the
+	// table itself (see the README.md).
+	public static final String DURATION_INDEX = "duration-index";
+
+	// The number of partitions that the duration index is spread over.
+	// A query on a global secondary index has to name one hash key, so
+	// putting every video under the same one would send all of the writes
+	// to the index to a single partition. Instead, each video goes into
+	// one of a few buckets and a range search queries every bucket.
+	public static final int DURATION_BUCKETS = 4;
+
 	private String id;
 	private String name;
 	private String url;
 	private long duration;
+	private Integer durationBucket;
 
 	public Video() {
 	}
@@ -40,7 +61,8 @@ public class Video {
 		this.id = id;
 	}
 	
-	@DynamoDBAttribute
+	// The name is the hash key of the name index
+	@DynamoDBIndexHashKey(globalSecondaryIndexName = NAME_INDEX)
 	public String getName() {
 		return name;
 	}
@@ -58,7 +80,9 @@ public class Video {
 		this.url = url;
 	}
 
-	@DynamoDBAttribute
+	// The duration is the range key of the duration index, which keeps
+	// the videos in each bucket sorted by it
+	@DynamoDBIndexRangeKey(globalSecondaryIndexName = DURATION_INDEX)
 	public long getDuration() {
 		return duration;
 	}
@@ -67,6 +91,21 @@ public class Video {
 		this.duration = duration;
 	}
 
+	// A new video is put into a bucket by its name and url, so the
+	// bucket doesn't have to be set by hand. The bucket is only set
+	// when a video is loaded from the table or used as the key of a
+	// query on the duration index.
+	@JsonIgnore
+	@DynamoDBIndexHashKey(globalSecondaryIndexName = DURATION_INDEX)
+	public Integer getDurationBucket() {
+		return (durationBucket != null) ? durationBucket
+				: Math.abs(Objects.hashCode(name, url) % DURATION_BUCKETS);
+	}
+
+	public void setDurationBucket(Integer durationBucket) {
+		this.durationBucket = durationBucket;
+	}
+
 	/**
 	 * Two Videos will generate the same hashcode if they have exactly the same
 	 * values for their name, url, and duration.
@@ -1,12 +1,17 @@
 package org.magnum.mobilecloud.video.controller;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
 import org.magnum.mobilecloud.video.repository.Video;
 import org.magnum.mobilecloud.video.repository.VideoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -70,6 +75,56 @@ public class VideoSvc implements VideoSvcApi {
 	public @ResponseBody Collection<Video> getVideoList(){
 		return Lists.newArrayList(videos.findAll());
 	}
+
+	// Receives GET requests to /video that ask for a page (e.g.,
+	// /video?page=2&size=10&sort=name,desc) and returns just the videos
+	// on that page. Clients that list a large number of videos should
+	// page through them rather than asking for all of them at once.
+	//
+	// The params attribute tells Spring to only route requests here
+	// if they have a "page" parameter and no "fields" parameter.
+	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.GET,
+			params={PAGE_PARAMETER, "!" + FIELDS_PARAMETER})
+	public @ResponseBody Collection<Video> getVideoPage(
+			@RequestParam(PAGE_PARAMETER) int page,
+			@RequestParam(value=SIZE_PARAMETER, defaultValue="" + DEFAULT_PAGE_SIZE) int size,
+			@RequestParam(value=SORT_PARAMETER, required=false) String sort
+	){
+		return findPage(new VideoListQuery(page, size, sort, null));
+	}
+
+	// Receives GET requests to /video that ask for a page with only
+	// some of the fields of each video (e.g., /video?page=0&fields=name).
+	// Leaving out the fields that a client doesn't show makes the
+	// response smaller and faster to send to a mobile device.
+	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.GET,
+			params={PAGE_PARAMETER, FIELDS_PARAMETER})
+	public @ResponseBody Collection<Map<String, Object>> getVideoFields(
+			@RequestParam(PAGE_PARAMETER) int page,
+			@RequestParam(value=SIZE_PARAMETER, defaultValue="" + DEFAULT_PAGE_SIZE) int size,
+			@RequestParam(value=SORT_PARAMETER, required=false) String sort,
+			@RequestParam(FIELDS_PARAMETER) String fields
+	){
+		VideoListQuery query = new VideoListQuery(page, size, sort, fields);
+		return query.project(findPage(query));
+	}
+
+	// Asks the datastore for one page of videos, ordered by id when
+	// the client doesn't ask for an order so that the pages are stable
+	private Collection<Video> findPage(VideoListQuery query){
+		String ordering = ((query.getSortProperty() != null) ? query.getSortProperty() : "id")
+				+ (query.isAscending() ? " ascending" : " descending");
+		return videos.findAll(query.getOffset(), query.getOffset() + query.getSize(), ordering);
+	}
+
+	// VideoListQuery throws a BadRequestException when a client
+	// asks for a page, sort, or field that doesn't make sense, which
+	// we send back as a 400 (Bad Request) rather than a server error
+	@ExceptionHandler(BadRequestException.class)
+	public void badListRequest(BadRequestException e,
+			HttpServletResponse response) throws IOException {
+		response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+	}
 	
 	// Receives GET requests to /video/find and returns all Videos
 	// that have a title (e.g., Video.name) matching the "title" request
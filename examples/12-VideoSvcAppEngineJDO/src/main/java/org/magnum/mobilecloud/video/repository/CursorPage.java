@@ -0,0 +1,44 @@
+/* 
+**
+** Copyright 2014, Jules White
+**
+** 
+*/
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.List;
+
+/**
+ * One page of the entities returned by JDOCrudRepository.findAll(cursor, ...),
+ * along with the cursor that continues the query where this page ended.
+ * 
+ * @author jules
+ *
+ * @param <T> - The type of Object on the page
+ */
+public class CursorPage<T> {
+
+	private final List<T> content;
+	private final String cursor;
+
+	public CursorPage(List<T> content, String cursor) {
+		this.content = content;
+		this.cursor = cursor;
+	}
+
+	/**
+	 * @return the entities on this page
+	 */
+	public List<T> getContent() {
+		return content;
+	}
+
+	/**
+	 * @return the web-safe cursor to pass to findAll() for the next page, or
+	 *         null if this is the last page
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+}
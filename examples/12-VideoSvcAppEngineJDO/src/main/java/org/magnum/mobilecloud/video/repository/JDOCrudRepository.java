@@ -9,10 +9,16 @@ package org.magnum.mobilecloud.video.repository;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
+import javax.jdo.JDOObjectNotFoundException;
+import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
 
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.datanucleus.query.JDOCursorHelper;
+
 /**
  * This class provides a minimal interface to mimic a subset
  * of the functionality in the Spring Data Repository. This
@@ -22,6 +28,10 @@ import javax.jdo.Query;
  * which will provide an identical environment to previous
  * examples.  
  * 
+ * All of the methods use the PersistenceManager that is open for the
+ * current request (see PMF.current() and PersistenceManagerFilter), so
+ * the objects that they return can be used until the request ends.
+ * 
  * @author jules
  *
  * @param <T> - The type of Object stored by the repository
@@ -29,11 +39,25 @@ import javax.jdo.Query;
  */
 public class JDOCrudRepository<T,ID extends Serializable> {
 
+	// The most entities that the datastore accepts in one batch put, which
+	// is how many entities save(Iterable) hands to JDO at a time
+	public static final int BATCH_SIZE = 500;
+
+	// How many entities findAll() reads with each query
+	public static final int FETCH_SIZE = 500;
+
 	private Class<T> type_;
 	
 	public JDOCrudRepository(Class<T> type){
 		type_ = type;
 	}
+
+	/**
+	 * @return the PersistenceManager that is open for the current request
+	 */
+	protected PersistenceManager getPersistenceManager(){
+		return PMF.current();
+	}
 	
 	/**
 	 * Saves a given entity. Use the returned instance for further operations as the save operation might have changed the
@@ -43,19 +67,29 @@ public class JDOCrudRepository<T,ID extends Serializable> {
 	 * @return the saved entity
 	 */
 	public <S extends T> S save(S entity){
-		return PMF.get().getPersistenceManager().makePersistent(entity);
+		return getPersistenceManager().makePersistent(entity);
 	}
 
 	/**
-	 * Saves all given entities.
+	 * Saves all given entities. The entities are handed to JDO BATCH_SIZE
+	 * at a time, and each batch is written with one batch put to the
+	 * datastore rather than one put per entity.
 	 * 
 	 * @param entities
 	 * @return the saved entities
 	 */
 	public <S extends T> Iterable<S> save(Iterable<S> entities){
 		List<S> saved = new ArrayList<S>();
+		List<S> batch = new ArrayList<S>(BATCH_SIZE);
 		for(S entity : entities){
-			saved.add(save(entity));
+			batch.add(entity);
+			if(batch.size() == BATCH_SIZE){
+				saved.addAll(getPersistenceManager().makePersistentAll(batch));
+				batch.clear();
+			}
+		}
+		if(!batch.isEmpty()){
+			saved.addAll(getPersistenceManager().makePersistentAll(batch));
 		}
 		return saved;
 	}
@@ -66,9 +100,12 @@ public class JDOCrudRepository<T,ID extends Serializable> {
 	 * @param id must not be {@literal null}.
 	 * @return the entity with the given id or {@literal null} if none found
 	 */
-	@SuppressWarnings("unchecked")
 	public T findOne(ID id){
-		return (T)PMF.get().getPersistenceManager().getObjectById(type_, id);
+		try{
+			return getPersistenceManager().getObjectById(type_, id);
+		}catch(JDOObjectNotFoundException e){
+			return null;
+		}
 	}
 
 	/**
@@ -82,15 +119,76 @@ public class JDOCrudRepository<T,ID extends Serializable> {
 	}
 
 	/**
-	 * Returns all instances of the type.
+	 * Returns all instances of the type. They are read FETCH_SIZE at a
+	 * time, with each query starting at the cursor where the one before
+	 * it ended, so the datastore never has to skip over the entities that
+	 * have already been read.
 	 * 
 	 * @return all entities
 	 */
-	@SuppressWarnings("unchecked")
 	public Iterable<T> findAll(){
-		Query query = PMF.get().getPersistenceManager().newQuery(Video.class);
-		Object rslt = query.execute();
-		return (Collection<T>)rslt;
+		List<T> all = new ArrayList<T>();
+		String cursor = null;
+		do{
+			CursorPage<T> page = findAll(cursor, FETCH_SIZE, null);
+			all.addAll(page.getContent());
+			cursor = page.getCursor();
+		}while(cursor != null);
+		return all;
+	}
+
+	/**
+	 * Returns one page of instances of the type, starting where the page
+	 * with the given cursor ended. Unlike findAll(fromIncl, toExcl, ordering),
+	 * the datastore doesn't read (and charge for) the entities on the pages
+	 * before this one, so the cost of a page doesn't grow with how far
+	 * into the results it is.
+	 * 
+	 * @param cursor the cursor of the previous page, or null for the first page
+	 * @param limit the most entities to return
+	 * @param ordering a JDOQL ordering (e.g., "name descending"), which must
+	 *        be the same for every page, or null to order the entities by key
+	 * @return the entities on the page, along with the cursor for the next page
+	 * @throws IllegalArgumentException if the cursor isn't a valid cursor
+	 */
+	@SuppressWarnings("unchecked")
+	public CursorPage<T> findAll(String cursor, int limit, String ordering){
+		Query query = getPersistenceManager().newQuery(type_);
+		if(ordering != null){
+			query.setOrdering(ordering);
+		}
+		if(cursor != null){
+			query.setExtensions(Collections.singletonMap(
+					JDOCursorHelper.CURSOR_EXTENSION, Cursor.fromWebSafeString(cursor)));
+		}
+		query.setRange(0, limit);
+		List<T> results = (List<T>)query.execute();
+		List<T> content = new ArrayList<T>(results);
+		
+		// A page with fewer entities than the limit is the last one
+		Cursor next = JDOCursorHelper.getCursor(results);
+		return new CursorPage<T>(content,
+				(content.size() == limit && next != null) ? next.toWebSafeString() : null);
+	}
+
+	/**
+	 * Returns one page of instances of the type. The datastore sorts
+	 * the entities and only sends back the ones in the range, so the
+	 * cost of a request depends on the size of the page rather than
+	 * on the number of stored entities (apart from the entities that
+	 * the datastore has to skip over to reach the start of the range).
+	 * 
+	 * @param fromIncl the index of the first entity to return
+	 * @param toExcl one past the index of the last entity to return
+	 * @param ordering a JDOQL ordering (e.g., "name descending")
+	 * @return the entities in the range
+	 */
+	@SuppressWarnings("unchecked")
+	public Collection<T> findAll(long fromIncl, long toExcl, String ordering){
+		Query query = getPersistenceManager().newQuery(type_);
+		query.setOrdering(ordering);
+		query.setRange(fromIncl, toExcl);
+		return (Collection<T>)query.execute();
 	}
 
 	/**
@@ -101,7 +199,7 @@ public class JDOCrudRepository<T,ID extends Serializable> {
 	public void delete(ID id){
 		T obj = findOne(id);
 		if(obj != null){
-			PMF.get().getPersistenceManager().deletePersistent(obj);
+			getPersistenceManager().deletePersistent(obj);
 		}
 	}
 
@@ -111,7 +209,7 @@ public class JDOCrudRepository<T,ID extends Serializable> {
 	 * @param entity
 	 */
 	public void delete(T entity){
-		PMF.get().getPersistenceManager().deletePersistent(entity);
+		getPersistenceManager().deletePersistent(entity);
 	}
 
 }
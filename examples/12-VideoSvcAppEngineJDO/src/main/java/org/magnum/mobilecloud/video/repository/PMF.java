@@ -14,13 +14,21 @@ package org.magnum.mobilecloud.video.repository;
 **************************************************************************/
 
 import javax.jdo.JDOHelper;
+import javax.jdo.PersistenceManager;
 import javax.jdo.PersistenceManagerFactory;
+import javax.jdo.Transaction;
 
 /**
  * Standard code for JDO on AppEngine. See:
  * https://developers.google.com/appengine/docs/java/datastore/jdo/overview-dn2
  * 
- * 
+ * Besides the factory itself, this class keeps track of the one
+ * PersistenceManager that each thread is working with. The
+ * PersistenceManagerFilter opens it at the start of each request and
+ * closes it at the end, and the repositories get it from current(), so
+ * that all of the work for a request shares one PersistenceManager
+ * (and its cache of the objects that have already been loaded) rather
+ * than opening a new one for every call that is never closed.
  * 
  * @author jules
  *
@@ -29,10 +37,61 @@ public final class PMF {
 	private static final PersistenceManagerFactory pmfInstance = JDOHelper
 			.getPersistenceManagerFactory("transactions-optional");
 
+	private static final ThreadLocal<PersistenceManager> current = new ThreadLocal<PersistenceManager>();
+
 	private PMF() {
 	}
 
 	public static PersistenceManagerFactory get() {
 		return pmfInstance;
 	}
+
+	/**
+	 * Opens a PersistenceManager for the current thread, which is returned
+	 * by current() until close() is called.
+	 * 
+	 * @return the new PersistenceManager
+	 */
+	public static PersistenceManager open() {
+		if (current.get() != null) {
+			throw new IllegalStateException(
+					"A PersistenceManager is already open on this thread");
+		}
+		PersistenceManager pm = pmfInstance.getPersistenceManager();
+		current.set(pm);
+		return pm;
+	}
+
+	/**
+	 * @return the PersistenceManager that open() opened for the current thread
+	 */
+	public static PersistenceManager current() {
+		PersistenceManager pm = current.get();
+		if (pm == null) {
+			throw new IllegalStateException("No PersistenceManager is open on this "
+					+ "thread (see PersistenceManagerFilter)");
+		}
+		return pm;
+	}
+
+	/**
+	 * Closes the current thread's PersistenceManager, rolling back any
+	 * transaction that was left open (e.g., because a request failed
+	 * part way through). Does nothing if there isn't one.
+	 */
+	public static void close() {
+		PersistenceManager pm = current.get();
+		if (pm == null) {
+			return;
+		}
+		current.remove();
+		try {
+			Transaction tx = pm.currentTransaction();
+			if (tx.isActive()) {
+				tx.rollback();
+			}
+		} finally {
+			pm.close();
+		}
+	}
 }
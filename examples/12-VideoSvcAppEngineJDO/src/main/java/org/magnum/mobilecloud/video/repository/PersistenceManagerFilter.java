@@ -0,0 +1,47 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * Opens a PersistenceManager at the start of each request and closes
+ * it once the response has been written (see PMF.open() and PMF.close()).
+ * 
+ * The response is written inside of the filter, so the lazily loaded
+ * results of the repositories' queries can still be read while Spring
+ * turns them into JSON.
+ * 
+ * This filter is set up in src/main/webapp/WEB-INF/web.xml so that it
+ * wraps the DispatcherServlet.
+ * 
+ * @author jules
+ *
+ */
+public class PersistenceManagerFilter implements Filter {
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response,
+			FilterChain chain) throws IOException, ServletException {
+		PMF.open();
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			PMF.close();
+		}
+	}
+
+	@Override
+	public void destroy() {
+	}
+
+}
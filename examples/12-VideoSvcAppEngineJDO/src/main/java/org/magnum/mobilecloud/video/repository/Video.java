@@ -10,12 +10,23 @@ import javax.jdo.annotations.IdGeneratorStrategy;
 import javax.jdo.annotations.PersistenceCapable;
 import javax.jdo.annotations.Persistent;
 import javax.jdo.annotations.PrimaryKey;
+import javax.jdo.annotations.Queries;
+import javax.jdo.annotations.Query;
 
 import com.google.common.base.Objects;
 
+// The JDOQL for the searches that the VideoRepository runs on every
+// request is declared here once, as named queries, rather than being
+// put together by the repository each time (see VideoRepository.findByName())
 @PersistenceCapable
+@Queries({
+	@Query(name = Video.FIND_BY_NAME,
+			value = "SELECT FROM org.magnum.mobilecloud.video.repository.Video WHERE name == n PARAMETERS String n")
+})
 public class Video {
 
+	public static final String FIND_BY_NAME = "findByName";
+
 	@PrimaryKey
 	@Persistent(valueStrategy = IdGeneratorStrategy.IDENTITY)
 	private Long id;
@@ -14,11 +14,13 @@ public class VideoRepository extends JDOCrudRepository<Video, Long>{
 		super(Video.class);
 	}
 	
+	// The query is the named query declared on the Video. DataNucleus
+	// keeps the compiled form of each query that it runs (see the
+	// datanucleus.cache.queryCompilation.type property in jdoconfig.xml),
+	// so only the first search has to parse and compile the JDOQL.
 	@SuppressWarnings("unchecked")
 	public Collection<Video> findByName(String name){
-		Query query = PMF.get().getPersistenceManager().newQuery(Video.class);
-		query.setFilter("name == n");
-		query.declareParameters("String n");
+		Query query = getPersistenceManager().newNamedQuery(Video.class, Video.FIND_BY_NAME);
 		return (List<Video>)query.execute(name);
 	}
 
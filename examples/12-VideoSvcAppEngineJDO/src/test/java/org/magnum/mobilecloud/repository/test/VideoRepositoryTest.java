@@ -0,0 +1,215 @@
+package org.magnum.mobilecloud.repository.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.datanucleus.api.jdo.JDOPersistenceManagerFactory;
+import org.datanucleus.query.cache.QueryCompilationCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.repository.CursorPage;
+import org.magnum.mobilecloud.video.repository.JDOCrudRepository;
+import org.magnum.mobilecloud.video.repository.PMF;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+
+/**
+ *
+ * This test runs the VideoRepository against the local datastore stub
+ * from the AppEngine SDK, with a PersistenceManager opened and closed
+ * around each test the same way that the PersistenceManagerFilter does
+ * around each request. It checks which calls reach the datastore: videos
+ * have to be saved with batch puts, and findAll() has to page through
+ * the videos with cursors.
+ *
+ * @author jules
+ *
+ */
+public class VideoRepositoryTest {
+
+	private final LocalServiceTestHelper helper = new LocalServiceTestHelper(
+			new LocalDatastoreServiceTestConfig());
+
+	// The datastore calls (e.g., "Put" or "RunQuery") that have been made
+	private final List<String> calls = new ArrayList<String>();
+
+	private VideoRepository videos = new VideoRepository();
+
+	@Before
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void setUp() {
+		helper.setUp();
+
+		// Pass every call on to the stub, but write down the datastore calls
+		final ApiProxy.Delegate stub = ApiProxy.getDelegate();
+		ApiProxy.setDelegate((ApiProxy.Delegate) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] { ApiProxy.Delegate.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args)
+							throws Throwable {
+						if (method.getName().startsWith("make")
+								&& "datastore_v3".equals(args[1])) {
+							calls.add((String) args[2]);
+						}
+						try {
+							return method.invoke(stub, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				}));
+
+		PMF.open();
+	}
+
+	@After
+	public void tearDown() {
+		PMF.close();
+		helper.tearDown();
+	}
+
+	@Test
+	public void testSaveAllUsesBatchPuts() throws Exception {
+		List<Video> batch = randomVideos(2 * JDOCrudRepository.BATCH_SIZE + 1);
+
+		calls.clear();
+		videos.save(batch);
+		// Each batch put is sent in calls of up to 10 entity groups (and each
+		// video is in an entity group of its own), rather than a call per video
+		assertEquals(2 * (JDOCrudRepository.BATCH_SIZE / 10) + 1, count("Put"));
+
+		Set<Long> ids = new HashSet<Long>();
+		for (Video video : batch) {
+			assertNotNull(video.getId());
+			ids.add(video.getId());
+		}
+		assertEquals(batch.size(), ids.size());
+		assertEquals(batch.get(0), videos.findOne(batch.get(0).getId()));
+	}
+
+	@Test
+	public void testFindOneReturnsNullForUnknownIds() throws Exception {
+		Video video = videos.save(TestData.randomVideo());
+
+		assertTrue(videos.exists(video.getId()));
+		assertNull(videos.findOne(video.getId() + 1));
+		assertTrue(!videos.exists(video.getId() + 1));
+	}
+
+	@Test
+	public void testFindAllPagesWithCursors() throws Exception {
+		List<Video> batch = randomVideos(2 * JDOCrudRepository.FETCH_SIZE + 1);
+		videos.save(batch);
+
+		calls.clear();
+		List<Video> all = new ArrayList<Video>();
+		for (Video video : videos.findAll()) {
+			all.add(video);
+		}
+		assertEquals(batch.size(), all.size());
+		assertTrue(all.containsAll(batch));
+		assertEquals(3, count("RunQuery"));
+
+		// Paging by hand visits each video once
+		Set<Long> ids = new HashSet<Long>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			CursorPage<Video> page = videos.findAll(cursor, 100, "duration ascending");
+			for (Video video : page.getContent()) {
+				assertTrue(ids.add(video.getId()));
+			}
+			cursor = page.getCursor();
+			pages++;
+		} while (cursor != null);
+		assertEquals(batch.size(), ids.size());
+		assertEquals(11, pages);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadCursorsAreRejected() throws Exception {
+		videos.findAll("not a cursor", 10, null);
+	}
+
+	@Test
+	public void testFindByNameReusesTheCompiledQuery() throws Exception {
+		List<Video> batch = randomVideos(10);
+		Video sameName = new Video(batch.get(0).getName(), "http://coursera.org/other", 1000);
+		batch.add(sameName);
+		videos.save(batch);
+
+		QueryCompilationCache compilations = ((JDOPersistenceManagerFactory) PMF.get())
+				.getQueryGenericCompilationCache();
+		compilations.clear();
+
+		assertEquals(2, videos.findByName(sameName.getName()).size());
+		int compiled = compilations.size();
+		assertTrue(compiled > 0);
+
+		// Searching for other names doesn't compile the query again
+		for (Video video : batch) {
+			assertTrue(new ArrayList<Video>(videos.findByName(video.getName())).contains(video));
+		}
+		assertEquals(0, videos.findByName("Not a video").size());
+		assertEquals(compiled, compilations.size());
+	}
+
+	@Test
+	public void testEachThreadHasOnePersistenceManager() throws Exception {
+		assertSame(PMF.current(), PMF.current());
+		try {
+			PMF.open();
+			fail("A second PersistenceManager was opened on the same thread");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+
+		PMF.close();
+		try {
+			PMF.current();
+			fail("The closed PersistenceManager was still current");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		PMF.open();
+	}
+
+	private int count(String call) {
+		int count = 0;
+		for (String c : calls) {
+			if (c.equals(call)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private List<Video> randomVideos(int count) {
+		List<Video> added = new ArrayList<Video>();
+		for (int i = 0; i < count; i++) {
+			added.add(TestData.randomVideo());
+		}
+		return added;
+	}
+
+}
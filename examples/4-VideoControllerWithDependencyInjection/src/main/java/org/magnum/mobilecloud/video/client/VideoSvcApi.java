@@ -1,6 +1,8 @@
 package org.magnum.mobilecloud.video.client;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 import org.magnum.mobilecloud.video.controller.Video;
 
@@ -23,19 +25,91 @@ public interface VideoSvcApi {
 	
 	public static final String TITLE_PARAMETER = "title";
 
+	public static final String PAGE_PARAMETER = "page";
+
+	public static final String SIZE_PARAMETER = "size";
+
+	public static final String SORT_PARAMETER = "sort";
+
+	public static final String FIELDS_PARAMETER = "fields";
+
+	public static final String PREFIX_PARAMETER = "prefix";
+
+	public static final String LIMIT_PARAMETER = "limit";
+
+	public static final String DURATION_PARAMETER = "duration";
+
+	public static final String MIN_DURATION_PARAMETER = "min";
+
+	public static final String MAX_DURATION_PARAMETER = "max";
+
+	// The number of videos on a page when the client doesn't ask for
+	// a size, and the most videos that a single page will ever hold
+	public static final int DEFAULT_PAGE_SIZE = 20;
+
+	public static final int MAX_PAGE_SIZE = 100;
+
+	// The number of title suggestions when the client doesn't ask for
+	// a limit, and the most suggestions that the service will return
+	public static final int DEFAULT_SUGGESTIONS = 5;
+
+	public static final int MAX_SUGGESTIONS = 10;
+
 	// The path where we expect the VideoSvc to live
 	public static final String VIDEO_SVC_PATH = "/video";
 
 	// The path to search videos by title
 	public static final String VIDEO_TITLE_SEARCH_PATH = VIDEO_SVC_PATH + "/find";
 
+	// The path to suggest titles for what has been typed into a search box
+	public static final String VIDEO_SUGGEST_PATH = VIDEO_SVC_PATH + "/search/suggest";
+
+	// The paths to search videos by duration, which are the same paths
+	// that the Spring Data Rest versions of the service use
+	public static final String VIDEO_DURATION_BETWEEN_PATH = VIDEO_SVC_PATH + "/search/findByDurationBetween";
+
+	public static final String VIDEO_DURATION_LESS_THAN_PATH = VIDEO_SVC_PATH + "/search/findByDurationLessThan";
+
+	public static final String VIDEO_DURATION_GREATER_THAN_PATH = VIDEO_SVC_PATH + "/search/findByDurationGreaterThan";
+
 	@GET(VIDEO_SVC_PATH)
 	public Collection<Video> getVideoList();
+
+	// Returns one page of videos (the first page is 0). The sort is a
+	// Video property, optionally followed by ",desc" (e.g., "duration,desc"),
+	// or null to keep the order that the videos were stored in.
+	@GET(VIDEO_SVC_PATH)
+	public Collection<Video> getVideoPage(@Query(PAGE_PARAMETER) int page,
+			@Query(SIZE_PARAMETER) int size, @Query(SORT_PARAMETER) String sort);
+
+	// Returns the same page as getVideoPage(), but with only the
+	// comma-separated list of fields (e.g., "name,duration") in each video
+	@GET(VIDEO_SVC_PATH)
+	public Collection<Map<String, Object>> getVideoFields(@Query(PAGE_PARAMETER) int page,
+			@Query(SIZE_PARAMETER) int size, @Query(SORT_PARAMETER) String sort,
+			@Query(FIELDS_PARAMETER) String fields);
 	
 	@POST(VIDEO_SVC_PATH)
 	public boolean addVideo(@Body Video v);
 	
 	@GET(VIDEO_TITLE_SEARCH_PATH)
 	public Collection<Video> findByTitle(@Query(TITLE_PARAMETER) String title);
+
+	// Returns up to limit titles that start with the prefix, ignoring
+	// case, with the titles shared by the most videos first
+	@GET(VIDEO_SUGGEST_PATH)
+	public List<String> suggestTitles(@Query(PREFIX_PARAMETER) String prefix,
+			@Query(LIMIT_PARAMETER) int limit);
 	
+	// Returns the videos with a duration from min to max, inclusive
+	@GET(VIDEO_DURATION_BETWEEN_PATH)
+	public Collection<Video> findByDurationBetween(@Query(MIN_DURATION_PARAMETER) long min,
+			@Query(MAX_DURATION_PARAMETER) long max);
+
+	@GET(VIDEO_DURATION_LESS_THAN_PATH)
+	public Collection<Video> findByDurationLessThan(@Query(DURATION_PARAMETER) long duration);
+
+	@GET(VIDEO_DURATION_GREATER_THAN_PATH)
+	public Collection<Video> findByDurationGreaterThan(@Query(DURATION_PARAMETER) long duration);
+
 }
@@ -0,0 +1,20 @@
+package org.magnum.mobilecloud.video.controller;
+
+/**
+ * Thrown when a client asks for something that doesn't make sense, such
+ * as a negative page or a sort on a property that videos don't have. The
+ * VideoSvc sends it back as a 400 (Bad Request) with its message, while any
+ * other exception is still a server error.
+ * 
+ * @author jules
+ *
+ */
+public class BadRequestException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public BadRequestException(String message) {
+		super(message);
+	}
+
+}
@@ -1,11 +1,17 @@
 package org.magnum.mobilecloud.video.controller;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
 import org.magnum.mobilecloud.video.repository.VideoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -75,6 +81,49 @@ public class VideoSvc implements VideoSvcApi {
 	public @ResponseBody Collection<Video> getVideoList(){
 		return videos.getVideos();
 	}
+
+	// Receives GET requests to /video that ask for a page (e.g.,
+	// /video?page=2&size=10&sort=name,desc) and returns just the videos
+	// on that page. Clients that list a large number of videos should
+	// page through them rather than asking for all of them at once.
+	//
+	// The params attribute tells Spring to only route requests here
+	// if they have a "page" parameter and no "fields" parameter.
+	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.GET,
+			params={PAGE_PARAMETER, "!" + FIELDS_PARAMETER})
+	public @ResponseBody Collection<Video> getVideoPage(
+			@RequestParam(PAGE_PARAMETER) int page,
+			@RequestParam(value=SIZE_PARAMETER, defaultValue="" + DEFAULT_PAGE_SIZE) int size,
+			@RequestParam(value=SORT_PARAMETER, required=false) String sort
+	){
+		return new VideoListQuery(page, size, sort, null).page(videos.getVideos());
+	}
+
+	// Receives GET requests to /video that ask for a page with only
+	// some of the fields of each video (e.g., /video?page=0&fields=name).
+	// Leaving out the fields that a client doesn't show makes the
+	// response smaller and faster to send to a mobile device.
+	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.GET,
+			params={PAGE_PARAMETER, FIELDS_PARAMETER})
+	public @ResponseBody Collection<Map<String, Object>> getVideoFields(
+			@RequestParam(PAGE_PARAMETER) int page,
+			@RequestParam(value=SIZE_PARAMETER, defaultValue="" + DEFAULT_PAGE_SIZE) int size,
+			@RequestParam(value=SORT_PARAMETER, required=false) String sort,
+			@RequestParam(FIELDS_PARAMETER) String fields
+	){
+		VideoListQuery query = new VideoListQuery(page, size, sort, fields);
+		return query.project(query.page(videos.getVideos()));
+	}
+
+	// VideoListQuery and suggestTitles() throw a BadRequestException
+	// when a client asks for a page, sort, field, or limit that doesn't make
+	// sense, which we send back as a 400 (Bad Request) rather than a server
+	// error
+	@ExceptionHandler(BadRequestException.class)
+	public void badListRequest(BadRequestException e,
+			HttpServletResponse response) throws IOException {
+		response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+	}
 	
 	// Receives GET requests to /video/find and returns all Videos
 	// that have a title (e.g., Video.name) matching the "title" request
@@ -88,4 +137,50 @@ public class VideoSvc implements VideoSvcApi {
 		return videos.findByTitle(title);
 	}
 
+	// Receives GET requests to /video/search/suggest and returns the titles
+	// that start with the "prefix" request parameter (e.g., "cat v" suggests
+	// "Cat Videos"), with the titles shared by the most videos first. A search
+	// box sends one of these requests for each key that a user presses, so
+	// the IndexedVideoRepository answers them from a trie rather than by
+	// looking at every video.
+	@RequestMapping(value=VideoSvcApi.VIDEO_SUGGEST_PATH, method=RequestMethod.GET)
+	public @ResponseBody List<String> suggestTitles(
+			@RequestParam(PREFIX_PARAMETER) String prefix,
+			@RequestParam(value=LIMIT_PARAMETER, defaultValue="" + DEFAULT_SUGGESTIONS) int limit
+	){
+		if (limit < 1) {
+			throw new BadRequestException("The limit must be at least 1");
+		}
+		return videos.suggestTitles(prefix, Math.min(limit, MAX_SUGGESTIONS));
+	}
+
+	// Receives GET requests to /video/search/findByDurationBetween and
+	// returns the videos with a duration from the "min" to the "max" request
+	// parameter, inclusive
+	@RequestMapping(value=VideoSvcApi.VIDEO_DURATION_BETWEEN_PATH, method=RequestMethod.GET)
+	public @ResponseBody Collection<Video> findByDurationBetween(
+			@RequestParam(MIN_DURATION_PARAMETER) long min,
+			@RequestParam(MAX_DURATION_PARAMETER) long max
+	){
+		return videos.findByDurationBetween(min, max);
+	}
+
+	// Receives GET requests to /video/search/findByDurationLessThan and
+	// returns the videos that are shorter than the "duration" request parameter
+	@RequestMapping(value=VideoSvcApi.VIDEO_DURATION_LESS_THAN_PATH, method=RequestMethod.GET)
+	public @ResponseBody Collection<Video> findByDurationLessThan(
+			@RequestParam(DURATION_PARAMETER) long duration
+	){
+		return videos.findByDurationLessThan(duration);
+	}
+
+	// Receives GET requests to /video/search/findByDurationGreaterThan and
+	// returns the videos that are longer than the "duration" request parameter
+	@RequestMapping(value=VideoSvcApi.VIDEO_DURATION_GREATER_THAN_PATH, method=RequestMethod.GET)
+	public @ResponseBody Collection<Video> findByDurationGreaterThan(
+			@RequestParam(DURATION_PARAMETER) long duration
+	){
+		return videos.findByDurationGreaterThan(duration);
+	}
+
 }
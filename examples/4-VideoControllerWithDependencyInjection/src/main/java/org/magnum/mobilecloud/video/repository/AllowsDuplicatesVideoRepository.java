@@ -52,4 +52,84 @@ public class AllowsDuplicatesVideoRepository implements VideoRepository {
 		return matches;
 	}
 
+	// Search the list of videos for ones with a title
+	// that contains the word.
+	@Override
+	public Collection<Video> findByTitleWord(String word) {
+		String key = TitleWords.normalize(word);
+		Set<Video> matches = new HashSet<>();
+		for(Video video : videoList){
+			if(TitleWords.of(video.getName()).contains(key)){
+				matches.add(video);
+			}
+		}
+		return matches;
+	}
+
+	// Search the list of videos for ones with a title
+	// that contains a word starting with the prefix.
+	@Override
+	public Collection<Video> findByTitleWordPrefix(String prefix) {
+		String key = TitleWords.normalize(prefix);
+		Set<Video> matches = new HashSet<>();
+		for(Video video : videoList){
+			for(String word : TitleWords.of(video.getName())){
+				if(word.startsWith(key)){
+					matches.add(video);
+					break;
+				}
+			}
+		}
+		return matches;
+	}
+
+	// Build a trie of the titles that start with the prefix
+	// and ask it for the most common ones.
+	@Override
+	public List<String> suggestTitles(String prefix, int limit) {
+		String key = TitleWords.normalizePrefix(prefix);
+		TitleTrie matches = new TitleTrie(limit);
+		for(Video video : videoList){
+			if(TitleWords.normalize(video.getName()).startsWith(key)){
+				matches.add(video.getName());
+			}
+		}
+		return matches.suggest(key, limit);
+	}
+
+	// Search the list of videos for ones with a duration
+	// from min to max.
+	@Override
+	public Collection<Video> findByDurationBetween(long min, long max) {
+		List<Video> matches = new ArrayList<>();
+		for(Video video : videoList){
+			if(video.getDuration() >= min && video.getDuration() <= max){
+				matches.add(video);
+			}
+		}
+		return matches;
+	}
+
+	@Override
+	public Collection<Video> findByDurationLessThan(long duration) {
+		List<Video> matches = new ArrayList<>();
+		for(Video video : videoList){
+			if(video.getDuration() < duration){
+				matches.add(video);
+			}
+		}
+		return matches;
+	}
+
+	@Override
+	public Collection<Video> findByDurationGreaterThan(long duration) {
+		List<Video> matches = new ArrayList<>();
+		for(Video video : videoList){
+			if(video.getDuration() > duration){
+				matches.add(video);
+			}
+		}
+		return matches;
+	}
+
 }
@@ -0,0 +1,170 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.controller.Video;
+
+/**
+ * An implementation of the VideoRepository that does not allow duplicate
+ * Videos and keeps indexes of their titles, so that searching by title
+ * doesn't have to look at every video.
+ * 
+ * The other repositories compare the title of every video that they hold
+ * with each search, which gets slower as more videos are added. This one
+ * keeps four indexes that addVideo() updates:
+ * 
+ * 1. A hash map from each exact title to the videos that have it, which
+ *    answers findByTitle() with a single lookup.
+ * 
+ * 2. An inverted index from each word of a title to the videos whose titles
+ *    contain it. The words are kept sorted in a skip list, so the words that
+ *    start with a prefix sit next to each other and findByTitleWordPrefix()
+ *    only visits those words.
+ * 
+ * 3. A TitleTrie of the titles, which remembers the most common titles
+ *    below each of its nodes so that suggestTitles() doesn't have to count
+ *    the videos that match a prefix.
+ * 
+ * 4. A skip list from each duration to the videos that have it. Since the
+ *    durations are sorted, a range search only visits the durations in the
+ *    range rather than every video.
+ * 
+ * The maps are concurrent maps of concurrent sets and the trie doesn't
+ * lock its readers, so searches never wait for an addVideo() (or for each
+ * other). A search that runs at the same time as the addVideo() of a
+ * matching video may or may not find it.
+ * 
+ * @author jules
+ *
+ */
+public class IndexedVideoRepository implements VideoRepository {
+
+	private Set<Video> videoSet = newConcurrentSet();
+
+	// Exact title -> videos with that title
+	private ConcurrentMap<String, Set<Video>> byTitle =
+			new ConcurrentHashMap<String, Set<Video>>();
+
+	// Lower case word -> videos with that word in their title
+	private ConcurrentNavigableMap<String, Set<Video>> byWord =
+			new ConcurrentSkipListMap<String, Set<Video>>();
+
+	// Titles -> number of videos with each title, for suggestions
+	private TitleTrie suggestions = new TitleTrie(VideoSvcApi.MAX_SUGGESTIONS);
+
+	// Duration -> videos with that duration
+	private ConcurrentNavigableMap<Long, Set<Video>> byDuration =
+			new ConcurrentSkipListMap<Long, Set<Video>>();
+
+	@Override
+	public boolean addVideo(Video v) {
+		// Only the thread that actually added the video indexes it
+		if (!videoSet.add(v)) {
+			return false;
+		}
+		if (v.getName() != null) {
+			entryFor(byTitle, v.getName()).add(v);
+		}
+		for (String word : TitleWords.of(v.getName())) {
+			entryFor(byWord, word).add(v);
+		}
+		suggestions.add(v.getName());
+		entryFor(byDuration, v.getDuration()).add(v);
+		return true;
+	}
+
+	@Override
+	public Collection<Video> getVideos() {
+		return videoSet;
+	}
+
+	@Override
+	public Collection<Video> findByTitle(String title) {
+		Set<Video> matches = (title != null) ? byTitle.get(title) : null;
+		return (matches != null) ? Collections.unmodifiableSet(matches)
+				: Collections.<Video> emptySet();
+	}
+
+	@Override
+	public Collection<Video> findByTitleWord(String word) {
+		Set<Video> matches = byWord.get(TitleWords.normalize(word));
+		return (matches != null) ? Collections.unmodifiableSet(matches)
+				: Collections.<Video> emptySet();
+	}
+
+	@Override
+	public Collection<Video> findByTitleWordPrefix(String prefix) {
+		String key = TitleWords.normalize(prefix);
+		if (key.isEmpty()) {
+			return Collections.unmodifiableSet(videoSet);
+		}
+		// Every word that starts with the prefix sorts between the prefix
+		// itself and the prefix followed by the largest possible character
+		Set<Video> matches = new HashSet<>();
+		for (Set<Video> videos : byWord.subMap(key, true,
+				key + Character.MAX_VALUE, true).values()) {
+			matches.addAll(videos);
+		}
+		return matches;
+	}
+
+	@Override
+	public List<String> suggestTitles(String prefix, int limit) {
+		return suggestions.suggest(prefix, limit);
+	}
+
+	@Override
+	public Collection<Video> findByDurationBetween(long min, long max) {
+		return (min <= max) ? union(byDuration.subMap(min, true, max, true))
+				: Collections.<Video> emptySet();
+	}
+
+	@Override
+	public Collection<Video> findByDurationLessThan(long duration) {
+		return union(byDuration.headMap(duration, false));
+	}
+
+	@Override
+	public Collection<Video> findByDurationGreaterThan(long duration) {
+		return union(byDuration.tailMap(duration, false));
+	}
+
+	// The sets of a range of durations never share a video, so they can
+	// simply be copied into one list
+	private static Collection<Video> union(Map<Long, Set<Video>> range) {
+		List<Video> matches = new ArrayList<>();
+		for (Set<Video> videos : range.values()) {
+			matches.addAll(videos);
+		}
+		return matches;
+	}
+
+	private static <K> Set<Video> entryFor(ConcurrentMap<K, Set<Video>> index,
+			K key) {
+		Set<Video> videos = index.get(key);
+		if (videos == null) {
+			Set<Video> created = newConcurrentSet();
+			videos = index.putIfAbsent(key, created);
+			if (videos == null) {
+				videos = created;
+			}
+		}
+		return videos;
+	}
+
+	private static Set<Video> newConcurrentSet() {
+		return Collections.newSetFromMap(new ConcurrentHashMap<Video, Boolean>());
+	}
+
+}
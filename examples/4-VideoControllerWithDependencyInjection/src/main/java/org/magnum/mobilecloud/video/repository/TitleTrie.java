@@ -0,0 +1,256 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A trie of video titles that suggests the most popular titles starting
+ * with whatever a user has typed into a search box so far.
+ *
+ * Titles are compared in lower case (see TitleWords.normalize()), and the
+ * popularity of a title is the number of times that it has been added.
+ * Every node of the trie remembers the top titles below it, so answering
+ * a suggestion only means walking down the characters of the prefix and
+ * copying the list that the node already holds. It never has to look at
+ * the rest of the titles below the node, however many there are.
+ *
+ * To keep the trie small, a chain of nodes that each have a single child
+ * is stored as one node with a multi-character label (i.e., it is a radix
+ * tree), and the children of a node are kept in an array sorted by their
+ * first character rather than in a map.
+ *
+ * Adding a title only updates the nodes on its path, and adds are done
+ * one at a time while holding the lock on the trie. Suggestions don't
+ * lock anything: an add never modifies an array that a reader might be
+ * looking at, but instead builds a new array and publishes it through a
+ * volatile field. A suggestion that runs at the same time as an add sees
+ * the trie either before or after the add.
+ *
+ * Since a title's count only ever goes up, a title that drops out of a
+ * node's top list can never need to come back into it, which is what makes
+ * keeping only the top titles in each node exact rather than approximate.
+ *
+ * @author jules
+ *
+ */
+public class TitleTrie {
+
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static final Suggestion[] NO_SUGGESTIONS = new Suggestion[0];
+
+	// Most popular first, and alphabetically when two titles are tied
+	private static final Comparator<Suggestion> RANKING = new Comparator<Suggestion>() {
+		@Override
+		public int compare(Suggestion a, Suggestion b) {
+			if (a.count != b.count) {
+				return (a.count > b.count) ? -1 : 1;
+			}
+			return a.title.compareTo(b.title);
+		}
+	};
+
+	private final int top;
+
+	private final Node root = new Node(new char[0], NO_CHILDREN, NO_SUGGESTIONS);
+
+	// The top is the largest number of suggestions that a lookup can
+	// return, since it is the number that each node remembers
+	public TitleTrie(int top) {
+		if (top < 1) {
+			throw new IllegalArgumentException("The trie must keep at least 1 suggestion");
+		}
+		this.top = top;
+	}
+
+	/**
+	 * Adds one to the popularity of a title. Titles that only differ in
+	 * case count as the same title, and the suggestion shows whichever
+	 * spelling of it sorts first.
+	 */
+	public synchronized void add(String title) {
+		String key = TitleWords.normalize(title);
+		if (key.isEmpty()) {
+			return;
+		}
+
+		// Find the node where the title ends, creating it if this is a new
+		// title, and remember every node on the way down to it
+		List<Node> path = new ArrayList<>();
+		Node node = root;
+		path.add(node);
+		int i = 0;
+		while (i < key.length()) {
+			Node[] children = node.children;
+			int c = find(children, key.charAt(i));
+			if (c < 0) {
+				// Nothing below this node starts with the rest of the title yet
+				Node leaf = new Node(key.substring(i).toCharArray(), NO_CHILDREN,
+						NO_SUGGESTIONS);
+				node.children = insert(children, -c - 1, leaf);
+				path.add(leaf);
+				node = leaf;
+				break;
+			}
+			Node child = children[c];
+			int common = commonLength(child.label, key, i);
+			if (common < child.label.length) {
+				// The title leaves the child's label part way through, so
+				// split the child into the shared part and the remainder.
+				// The child itself is left as it was for any reader that
+				// is still looking at it.
+				Node rest = new Node(copy(child.label, common, child.label.length),
+						child.children, child.top);
+				rest.title = child.title;
+				Node shared = new Node(copy(child.label, 0, common),
+						new Node[] { rest }, child.top);
+				children = children.clone();
+				children[c] = shared;
+				node.children = children;
+				child = shared;
+			}
+			path.add(child);
+			node = child;
+			i += common;
+		}
+
+		Suggestion old = node.title;
+		Suggestion updated = (old == null) ? new Suggestion(title, 1)
+				: new Suggestion((title.compareTo(old.title) < 0) ? title : old.title,
+						old.count + 1);
+		node.title = updated;
+		for (Node below : path) {
+			rank(below, old, updated);
+		}
+	}
+
+	/**
+	 * Returns up to limit titles that start with the prefix (ignoring case),
+	 * most popular first. An empty prefix suggests the most popular titles
+	 * overall.
+	 */
+	public List<String> suggest(String prefix, int limit) {
+		String key = TitleWords.normalizePrefix(prefix);
+		Node node = root;
+		int i = 0;
+		while (i < key.length()) {
+			Node[] children = node.children;
+			int c = find(children, key.charAt(i));
+			if (c < 0) {
+				return Collections.emptyList();
+			}
+			node = children[c];
+			// The prefix may end part way through the node's label
+			int length = Math.min(node.label.length, key.length() - i);
+			if (commonLength(node.label, key, i) < length) {
+				return Collections.emptyList();
+			}
+			i += length;
+		}
+		Suggestion[] best = node.top;
+		List<String> titles = new ArrayList<>(Math.min(limit, best.length));
+		for (int s = 0; s < best.length && s < limit; s++) {
+			titles.add(best[s].title);
+		}
+		return titles;
+	}
+
+	// Puts the new suggestion for a title into the node's top list,
+	// replacing the old suggestion for the same title if it was there
+	private void rank(Node node, Suggestion old, Suggestion suggestion) {
+		Suggestion[] current = node.top;
+		List<Suggestion> ranked = new ArrayList<>(current.length + 1);
+		for (Suggestion other : current) {
+			if (other != old) {
+				ranked.add(other);
+			}
+		}
+		int position = Collections.binarySearch(ranked, suggestion, RANKING);
+		ranked.add(-position - 1, suggestion);
+		if (ranked.size() > top) {
+			ranked = ranked.subList(0, top);
+		}
+		node.top = ranked.toArray(new Suggestion[ranked.size()]);
+	}
+
+	// Binary search for the child whose label starts with the character,
+	// returning -(insertion point) - 1 like Arrays.binarySearch() if there
+	// isn't one
+	private static int find(Node[] children, char first) {
+		int low = 0;
+		int high = children.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			char c = children[middle].label[0];
+			if (c < first) {
+				low = middle + 1;
+			} else if (c > first) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private static Node[] insert(Node[] children, int index, Node child) {
+		Node[] copy = new Node[children.length + 1];
+		System.arraycopy(children, 0, copy, 0, index);
+		copy[index] = child;
+		System.arraycopy(children, index, copy, index + 1, children.length - index);
+		return copy;
+	}
+
+	// How many characters of the label match the key starting at offset
+	private static int commonLength(char[] label, String key, int offset) {
+		int length = 0;
+		while (length < label.length && offset + length < key.length()
+				&& label[length] == key.charAt(offset + length)) {
+			length++;
+		}
+		return length;
+	}
+
+	private static char[] copy(char[] label, int from, int to) {
+		char[] copy = new char[to - from];
+		System.arraycopy(label, from, copy, 0, copy.length);
+		return copy;
+	}
+
+	private static class Node {
+
+		private final char[] label;
+
+		private volatile Node[] children;
+
+		private volatile Suggestion[] top;
+
+		// The suggestion for the title that ends at this node, if any,
+		// which is only used by add() while it holds the lock
+		private Suggestion title;
+
+		private Node(char[] label, Node[] children, Suggestion[] top) {
+			this.label = label;
+			this.children = children;
+			this.top = top;
+		}
+	}
+
+	// Suggestions are never modified once they are created, so that the
+	// same one can be shared by every node on a title's path, and replacing
+	// a title's suggestion means finding the old one by identity
+	private static class Suggestion {
+
+		private final String title;
+
+		private final long count;
+
+		private Suggestion(String title, long count) {
+			this.title = title;
+			this.count = count;
+		}
+	}
+
+}
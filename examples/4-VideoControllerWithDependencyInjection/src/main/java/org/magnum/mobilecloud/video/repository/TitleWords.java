@@ -0,0 +1,54 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits video titles into the words that title searches match against.
+ * A word is a run of letters and digits, and words are compared in lower
+ * case, so "The Cat's Video!" has the words "the", "cat", "s", and "video".
+ * 
+ * @author jules
+ *
+ */
+public final class TitleWords {
+
+	private TitleWords() {
+	}
+
+	// Returns the distinct words of the title in the order that they appear
+	public static Set<String> of(String title) {
+		if (title == null) {
+			return Collections.emptySet();
+		}
+		Set<String> words = new LinkedHashSet<>();
+		int start = -1;
+		for (int i = 0; i <= title.length(); i++) {
+			boolean inWord = i < title.length()
+					&& Character.isLetterOrDigit(title.charAt(i));
+			if (inWord && start < 0) {
+				start = i;
+			} else if (!inWord && start >= 0) {
+				words.add(normalize(title.substring(start, i)));
+				start = -1;
+			}
+		}
+		return words;
+	}
+
+	// Puts a word that a client searches for into the same form as the
+	// words of a title
+	public static String normalize(String word) {
+		return (word == null) ? "" : word.trim().toLowerCase(Locale.ROOT);
+	}
+
+	// Puts what a user has typed into a search box so far into the same
+	// form as a title. Unlike a word, a trailing space is kept, because
+	// "cat " shouldn't suggest "Catalog".
+	public static String normalizePrefix(String prefix) {
+		return (prefix == null) ? "" : prefix.toLowerCase(Locale.ROOT);
+	}
+
+}
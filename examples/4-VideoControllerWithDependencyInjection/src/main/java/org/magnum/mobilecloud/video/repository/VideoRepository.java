@@ -1,6 +1,7 @@
 package org.magnum.mobilecloud.video.repository;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.magnum.mobilecloud.video.controller.Video;
 
@@ -21,5 +22,26 @@ public interface VideoRepository {
 	
 	// Find all videos with a matching title (e.g., Video.name)
 	public Collection<Video> findByTitle(String title);
+
+	// Find all videos with a title that contains the word, ignoring case
+	// (e.g., "cat" matches "The Cat Video" but not "Catalog")
+	public Collection<Video> findByTitleWord(String word);
+
+	// Find all videos with a title that contains a word starting with the
+	// prefix, ignoring case (e.g., "cat" matches "Catalog")
+	public Collection<Video> findByTitleWordPrefix(String prefix);
+
+	// Suggest up to limit titles that start with the prefix, ignoring
+	// case, with the titles of the most videos first
+	public List<String> suggestTitles(String prefix, int limit);
+
+	// Find all videos with a duration from min to max, inclusive
+	public Collection<Video> findByDurationBetween(long min, long max);
+
+	// Find all videos that are shorter than a specified duration
+	public Collection<Video> findByDurationLessThan(long duration);
+
+	// Find all videos that are longer than a specified duration
+	public Collection<Video> findByDurationGreaterThan(long duration);
 	
 }
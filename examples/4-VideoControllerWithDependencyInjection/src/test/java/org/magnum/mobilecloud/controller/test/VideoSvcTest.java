@@ -1,15 +1,20 @@
 package org.magnum.mobilecloud.controller.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.controller.BadRequestException;
 import org.magnum.mobilecloud.video.controller.Video;
 import org.magnum.mobilecloud.video.controller.VideoSvc;
 import org.magnum.mobilecloud.video.repository.VideoRepository;
@@ -83,4 +88,45 @@ public class VideoSvcTest {
 		assertTrue(videos.contains(video));
 	}
 
+	// Add a few videos with known durations and check that
+	// asking for a sorted page returns the right slice of them
+	@Test
+	public void testVideoPageAndFields() throws Exception {
+		Video short1 = new Video("short", "http://coursera.org/short", 1000);
+		Video medium = new Video("medium", "http://coursera.org/medium", 2000);
+		Video long1 = new Video("long", "http://coursera.org/long", 3000);
+		when(videoRepository.getVideos()).thenReturn(Arrays.asList(medium, long1, short1));
+
+		Collection<Video> page = videoService.getVideoPage(0, 2, "duration,desc");
+		assertEquals(Arrays.asList(long1, medium), page);
+
+		page = videoService.getVideoPage(1, 2, "duration,desc");
+		assertEquals(Arrays.asList(short1), page);
+
+		Collection<Map<String, Object>> fields = videoService.getVideoFields(0, 1, "name", "name,duration");
+		assertEquals(1, fields.size());
+		Map<String, Object> first = fields.iterator().next();
+		Iterator<String> names = first.keySet().iterator();
+		assertEquals("name", names.next());
+		assertEquals("duration", names.next());
+		assertTrue(!names.hasNext());
+		assertEquals("long", first.get("name"));
+		assertEquals(3000L, first.get("duration"));
+	}
+
+	// Make sure that the service never asks the repository for more
+	// suggestions than the API allows
+	@Test
+	public void testSuggestTitlesLimit() throws Exception {
+		when(videoRepository.suggestTitles("cat", 10)).thenReturn(Arrays.asList("Cats"));
+
+		assertEquals(Arrays.asList("Cats"), videoService.suggestTitles("cat", 1000));
+		verify(videoRepository).suggestTitles("cat", 10);
+	}
+
+	@Test(expected = BadRequestException.class)
+	public void testSuggestTitlesRejectsZeroLimit() throws Exception {
+		videoService.suggestTitles("cat", 0);
+	}
+
 }
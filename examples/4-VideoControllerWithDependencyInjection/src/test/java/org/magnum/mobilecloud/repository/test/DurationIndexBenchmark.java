@@ -0,0 +1,76 @@
+package org.magnum.mobilecloud.repository.test;
+
+import java.util.Random;
+
+import org.magnum.mobilecloud.video.controller.Video;
+import org.magnum.mobilecloud.video.repository.IndexedVideoRepository;
+import org.magnum.mobilecloud.video.repository.NoDuplicatesVideoRepository;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+
+/**
+ * A stand-alone benchmark that fills the NoDuplicatesVideoRepository and
+ * the IndexedVideoRepository with the same videos, whose durations are
+ * spread over ten hours, and measures the average time of a range search
+ * that matches about 0.1% of them and of a "shorter than" search that
+ * matches about 1% of them.
+ * 
+ * Run it with the numbers of videos as arguments (give the JVM enough
+ * heap for the largest one, e.g., -Xmx2g for a million videos):
+ * 
+ * java org.magnum.mobilecloud.repository.test.DurationIndexBenchmark 10000 100000 1000000
+ * 
+ * @author jules
+ *
+ */
+public class DurationIndexBenchmark {
+
+	// Ten hours, in milliseconds
+	private static final long MAX_DURATION = 10 * 60 * 60 * 1000L;
+
+	private static final int SEARCHES = 100;
+
+	public static void main(String[] args) {
+		int[] sizes = args.length > 0 ? new int[args.length] : new int[] { 10000, 100000, 1000000 };
+		for (int i = 0; i < args.length; i++) {
+			sizes[i] = Integer.parseInt(args[i]);
+		}
+
+		System.out.println(String.format("%10s %12s %14s %14s", "videos",
+				"repository", "between (us)", "less (us)"));
+		for (int size : sizes) {
+			run(new NoDuplicatesVideoRepository(), "scan", size);
+			run(new IndexedVideoRepository(), "indexed", size);
+		}
+	}
+
+	private static void run(VideoRepository repository, String name, int size) {
+		Random random = new Random(42);
+		for (int i = 0; i < size; i++) {
+			long duration = (long) (random.nextDouble() * MAX_DURATION);
+			repository.addVideo(new Video("Video " + i, "http://coursera.org/" + i, duration));
+		}
+
+		// The first round warms up the JIT and only the second is timed
+		long found = 0;
+		double betweenMicros = 0;
+		double lessMicros = 0;
+		for (int round = 0; round < 2; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < SEARCHES; i++) {
+				long min = (long) (random.nextDouble() * MAX_DURATION);
+				found += repository.findByDurationBetween(min, min + MAX_DURATION / 1000).size();
+			}
+			betweenMicros = (System.nanoTime() - start) / 1000.0 / SEARCHES;
+
+			start = System.nanoTime();
+			for (int i = 0; i < SEARCHES; i++) {
+				found += repository.findByDurationLessThan(MAX_DURATION / 100).size();
+			}
+			lessMicros = (System.nanoTime() - start) / 1000.0 / SEARCHES;
+		}
+
+		System.out.println(String.format("%10d %12s %14.2f %14.2f", size, name,
+				betweenMicros, lessMicros) + (found < 0 ? "" : ""));
+	}
+
+}
@@ -0,0 +1,83 @@
+package org.magnum.mobilecloud.repository.test;
+
+import java.util.Random;
+
+import org.magnum.mobilecloud.video.controller.Video;
+import org.magnum.mobilecloud.video.repository.IndexedVideoRepository;
+import org.magnum.mobilecloud.video.repository.NoDuplicatesVideoRepository;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+
+/**
+ * A stand-alone benchmark that fills the NoDuplicatesVideoRepository and
+ * the IndexedVideoRepository with the same randomly titled videos and
+ * measures the average time of an exact title search, a word search, and
+ * a prefix search on each of them.
+ * 
+ * Run it with the numbers of videos as arguments (give the JVM enough
+ * heap for the largest one, e.g., -Xmx2g for a million videos):
+ * 
+ * java org.magnum.mobilecloud.repository.test.IndexedVideoRepositoryBenchmark 10000 100000 1000000
+ * 
+ * @author jules
+ *
+ */
+public class IndexedVideoRepositoryBenchmark {
+
+	// Enough distinct words that a word search matches only a few videos
+	private static final int VOCABULARY = 50000;
+
+	private static final int SEARCHES = 200;
+
+	public static void main(String[] args) {
+		int[] sizes = args.length > 0 ? new int[args.length] : new int[] { 10000, 100000, 1000000 };
+		for (int i = 0; i < args.length; i++) {
+			sizes[i] = Integer.parseInt(args[i]);
+		}
+
+		System.out.println(String.format("%10s %12s %14s %14s %14s", "videos",
+				"repository", "title (us)", "word (us)", "prefix (us)"));
+		for (int size : sizes) {
+			run(new NoDuplicatesVideoRepository(), "scan", size);
+			run(new IndexedVideoRepository(), "indexed", size);
+		}
+	}
+
+	private static void run(VideoRepository repository, String name, int size) {
+		Random random = new Random(42);
+		for (int i = 0; i < size; i++) {
+			repository.addVideo(new Video(title(random), "http://coursera.org/" + i, i));
+		}
+
+		// Search for titles and words that exist, using the same random
+		// sequence that generated them
+		random = new Random(42);
+		long start = System.nanoTime();
+		long found = 0;
+		for (int i = 0; i < SEARCHES; i++) {
+			found += repository.findByTitle(title(random)).size();
+		}
+		double titleMicros = (System.nanoTime() - start) / 1000.0 / SEARCHES;
+
+		start = System.nanoTime();
+		for (int i = 0; i < SEARCHES; i++) {
+			found += repository.findByTitleWord("w" + random.nextInt(VOCABULARY)).size();
+		}
+		double wordMicros = (System.nanoTime() - start) / 1000.0 / SEARCHES;
+
+		// A four character prefix matches around a dozen words
+		start = System.nanoTime();
+		for (int i = 0; i < SEARCHES; i++) {
+			found += repository.findByTitleWordPrefix("w" + random.nextInt(VOCABULARY / 10) + "0").size();
+		}
+		double prefixMicros = (System.nanoTime() - start) / 1000.0 / SEARCHES;
+
+		System.out.println(String.format("%10d %12s %14.2f %14.2f %14.2f", size, name,
+				titleMicros, wordMicros, prefixMicros) + (found < 0 ? "" : ""));
+	}
+
+	private static String title(Random random) {
+		return "w" + random.nextInt(VOCABULARY) + " w" + random.nextInt(VOCABULARY)
+				+ " w" + random.nextInt(VOCABULARY);
+	}
+
+}
@@ -0,0 +1,91 @@
+package org.magnum.mobilecloud.repository.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+import org.magnum.mobilecloud.video.controller.Video;
+import org.magnum.mobilecloud.video.repository.IndexedVideoRepository;
+import org.magnum.mobilecloud.video.repository.NoDuplicatesVideoRepository;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+
+/**
+ * 
+ * This test checks that the title indexes of the IndexedVideoRepository
+ * find exactly the same videos as the NoDuplicatesVideoRepository, which
+ * simply compares the title of every video that it holds.
+ * 
+ * To run this test, right-click on it in Eclipse and select
+ * "Run As"->"JUnit Test"
+ * 
+ * @author jules
+ *
+ */
+public class IndexedVideoRepositoryTest {
+
+	private static final String[] WORDS = { "cat", "catalog", "dog", "Dogs",
+			"intro", "Introduction", "java", "spring", "android", "the" };
+
+	private VideoRepository indexed = new IndexedVideoRepository();
+
+	private VideoRepository scanned = new NoDuplicatesVideoRepository();
+
+	@Test
+	public void testSearchesMatchAFullScan() throws Exception {
+		Random random = new Random(1);
+		for (int i = 0; i < 2000; i++) {
+			StringBuilder title = new StringBuilder();
+			int words = 1 + random.nextInt(4);
+			for (int w = 0; w < words; w++) {
+				title.append(WORDS[random.nextInt(WORDS.length)]).append(w % 2 == 0 ? " " : "-");
+			}
+			Video video = new Video(title.toString().trim(), "http://coursera.org/" + i, i);
+			assertEquals(scanned.addVideo(video), indexed.addVideo(video));
+		}
+		assertEquals(scanned.getVideos().size(), indexed.getVideos().size());
+
+		for (Video video : scanned.getVideos()) {
+			assertEquals(new HashSet<>(scanned.findByTitle(video.getName())),
+					new HashSet<>(indexed.findByTitle(video.getName())));
+		}
+		for (String query : Arrays.asList("cat", "CAT", "dog", "dogs", "intro", "missing", "")) {
+			assertEquals(new HashSet<>(scanned.findByTitleWord(query)),
+					new HashSet<>(indexed.findByTitleWord(query)));
+		}
+		for (String query : Arrays.asList("c", "cat", "Catal", "do", "INTRO", "z", "")) {
+			assertEquals(new HashSet<>(scanned.findByTitleWordPrefix(query)),
+					new HashSet<>(indexed.findByTitleWordPrefix(query)));
+		}
+		for (String query : Arrays.asList("c", "Cat ", "dog-", "intro", "z", "")) {
+			assertEquals(scanned.suggestTitles(query, 10), indexed.suggestTitles(query, 10));
+		}		for (long duration : Arrays.asList(Long.MIN_VALUE, -1L, 0L, 10L, 999L, 1999L, 2000L, Long.MAX_VALUE)) {
+			assertEquals(new HashSet<>(scanned.findByDurationLessThan(duration)),
+					new HashSet<>(indexed.findByDurationLessThan(duration)));
+			assertEquals(new HashSet<>(scanned.findByDurationGreaterThan(duration)),
+					new HashSet<>(indexed.findByDurationGreaterThan(duration)));
+			assertEquals(new HashSet<>(scanned.findByDurationBetween(duration, duration + 500)),
+					new HashSet<>(indexed.findByDurationBetween(duration, duration + 500)));
+		}
+		assertEquals(1, indexed.findByDurationBetween(10, 10).size());
+		assertEquals(0, indexed.findByDurationBetween(20, 10).size());
+	}
+
+	@Test
+	public void testDuplicatesAreNotIndexedTwice() throws Exception {
+		Video video = new Video("The Cat Video", "http://coursera.org/cat", 60);
+		assertTrue(indexed.addVideo(video));
+		assertFalse(indexed.addVideo(new Video("The Cat Video", "http://coursera.org/cat", 60)));
+
+		assertEquals(1, indexed.findByTitle("The Cat Video").size());
+		assertEquals(1, indexed.findByTitleWord("cat").size());
+		assertEquals(1, indexed.findByTitleWordPrefix("vid").size());
+		assertTrue(indexed.findByTitleWord("ca").isEmpty());
+		assertTrue(indexed.findByTitle("the cat video").isEmpty());
+	}
+
+}
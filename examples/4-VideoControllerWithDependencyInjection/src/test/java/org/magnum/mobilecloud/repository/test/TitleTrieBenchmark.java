@@ -0,0 +1,113 @@
+package org.magnum.mobilecloud.repository.test;
+
+import java.util.List;
+import java.util.Random;
+
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.controller.Video;
+import org.magnum.mobilecloud.video.repository.NoDuplicatesVideoRepository;
+import org.magnum.mobilecloud.video.repository.TitleTrie;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+
+/**
+ * A stand-alone benchmark that measures how much memory a TitleTrie
+ * needs for every 100,000 titles that it holds, and how long it takes
+ * to suggest titles for prefixes of one to four characters, which is
+ * what a search box asks for as a user starts typing. The suggestions
+ * of the NoDuplicatesVideoRepository, which has to look at every video,
+ * are timed for comparison.
+ * 
+ * Run it with the numbers of titles as arguments:
+ * 
+ * java org.magnum.mobilecloud.repository.test.TitleTrieBenchmark 100000 1000000
+ * 
+ * @author jules
+ *
+ */
+public class TitleTrieBenchmark {
+
+	private static final String[] WORDS = { "intro", "introduction", "java",
+			"spring", "android", "mobile", "cloud", "video", "service", "lecture",
+			"part", "week", "security", "data", "rest", "http" };
+
+	private static final int SEARCHES = 10000;
+
+	private static final int SCANS = 20;
+
+	public static void main(String[] args) {
+		int[] sizes = args.length > 0 ? new int[args.length] : new int[] { 100000, 1000000 };
+		for (int i = 0; i < args.length; i++) {
+			sizes[i] = Integer.parseInt(args[i]);
+		}
+
+		// The number of suggestions found is printed so that the JIT can't
+		// drop the lookups that are timed
+		System.out.println(String.format("%10s %16s %14s %14s %12s", "titles",
+				"MB per 100k", "trie (us)", "scan (us)", "found"));
+		for (int size : sizes) {
+			Random random = new Random(42);
+			String[] titles = new String[size];
+			for (int i = 0; i < size; i++) {
+				titles[i] = title(random, i);
+			}
+
+			long before = usedMemory();
+			TitleTrie trie = new TitleTrie(VideoSvcApi.MAX_SUGGESTIONS);
+			for (String title : titles) {
+				trie.add(title);
+			}
+			double megabytes = (usedMemory() - before) / (1024.0 * 1024.0) * 100000 / size;
+
+			// Warm up, then time the lookups
+			String[] prefixes = new String[SEARCHES];
+			for (int i = 0; i < SEARCHES; i++) {
+				String title = titles[random.nextInt(size)];
+				prefixes[i] = title.substring(0, 1 + random.nextInt(4));
+			}
+			long found = 0;
+			for (String prefix : prefixes) {
+				found += trie.suggest(prefix, VideoSvcApi.DEFAULT_SUGGESTIONS).size();
+			}
+			long start = System.nanoTime();
+			for (String prefix : prefixes) {
+				found += trie.suggest(prefix, VideoSvcApi.DEFAULT_SUGGESTIONS).size();
+			}
+			double trieMicros = (System.nanoTime() - start) / 1000.0 / SEARCHES;
+
+			VideoRepository scanned = new NoDuplicatesVideoRepository();
+			for (int i = 0; i < size; i++) {
+				scanned.addVideo(new Video(titles[i], "http://coursera.org/" + i, i));
+			}
+			start = System.nanoTime();
+			for (int i = 0; i < SCANS; i++) {
+				List<String> suggestions = scanned.suggestTitles(prefixes[i],
+						VideoSvcApi.DEFAULT_SUGGESTIONS);
+				found += suggestions.size();
+			}
+			double scanMicros = (System.nanoTime() - start) / 1000.0 / SCANS;
+
+			System.out.println(String.format("%10d %16.1f %14.2f %14.2f %12d", size,
+					megabytes, trieMicros, scanMicros, found));
+		}
+	}
+
+	// Titles like "Android Cloud Part 1234", where the popular titles
+	// are the ones that more videos share
+	private static String title(Random random, int i) {
+		StringBuilder title = new StringBuilder();
+		for (int w = 0; w < 3; w++) {
+			String word = WORDS[random.nextInt(WORDS.length)];
+			title.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1)).append(' ');
+		}
+		return title.append("Part ").append(random.nextInt(1 + i / 4)).toString();
+	}
+
+	private static long usedMemory() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
@@ -0,0 +1,102 @@
+package org.magnum.mobilecloud.repository.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.magnum.mobilecloud.video.repository.TitleTrie;
+
+/**
+ * 
+ * This test checks the suggestions of a TitleTrie against suggestions
+ * that are worked out by counting every title that has been added and
+ * sorting the ones that start with each prefix.
+ * 
+ * To run this test, right-click on it in Eclipse and select
+ * "Run As"->"JUnit Test"
+ * 
+ * @author jules
+ *
+ */
+public class TitleTrieTest {
+
+	private static final int TOP = 5;
+
+	private TitleTrie trie = new TitleTrie(TOP);
+
+	private Map<String, Integer> counts = new HashMap<>();
+
+	@Test
+	public void testSuggestionsMatchCountingEveryTitle() throws Exception {
+		// A small alphabet makes titles share long prefixes, which
+		// exercises splitting the labels of the trie's nodes
+		Random random = new Random(7);
+		List<String> prefixes = new ArrayList<>(Arrays.asList("", "a", "b", "ab", "ba", "zz"));
+		for (int i = 0; i < 5000; i++) {
+			StringBuilder title = new StringBuilder();
+			int length = 1 + random.nextInt(6);
+			for (int c = 0; c < length; c++) {
+				title.append("ab ".charAt(random.nextInt(3)));
+			}
+			String added = title.toString().trim();
+			add(added);
+			if (i % 100 == 0 && !added.isEmpty()) {
+				prefixes.add(added.substring(0, 1 + random.nextInt(added.length())));
+				for (String prefix : prefixes) {
+					assertEquals(prefix, expected(prefix), trie.suggest(prefix, TOP));
+				}
+			}
+		}
+		assertEquals(expected("a").subList(0, 2), trie.suggest("A", 2));
+	}
+
+	@Test
+	public void testCaseAndPopularity() throws Exception {
+		trie.add("Cat Videos");
+		trie.add("cat videos");
+		trie.add("Catalog");
+		trie.add("Cats");
+		trie.add("Cats");
+		trie.add("Cats");
+
+		assertEquals(Arrays.asList("Cats", "Cat Videos", "Catalog"), trie.suggest("cat", TOP));
+		assertEquals(Arrays.asList("Cat Videos"), trie.suggest("CAT V", TOP));
+		assertEquals(Arrays.asList("Cats"), trie.suggest("c", 1));
+		assertEquals(Collections.<String> emptyList(), trie.suggest("dog", TOP));
+		assertEquals(Collections.<String> emptyList(), trie.suggest("cat videos!", TOP));
+	}
+
+	private void add(String title) {
+		trie.add(title);
+		if (!title.isEmpty()) {
+			Integer count = counts.get(title);
+			counts.put(title, (count == null) ? 1 : count + 1);
+		}
+	}
+
+	private List<String> expected(String prefix) {
+		List<String> matches = new ArrayList<>();
+		for (String title : counts.keySet()) {
+			if (title.startsWith(prefix)) {
+				matches.add(title);
+			}
+		}
+		Collections.sort(matches, new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				int result = counts.get(b).compareTo(counts.get(a));
+				return (result != 0) ? result : a.compareTo(b);
+			}
+		});
+		return matches.subList(0, Math.min(TOP, matches.size()));
+	}
+
+}
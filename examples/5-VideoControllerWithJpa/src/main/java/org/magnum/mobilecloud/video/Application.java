@@ -1,8 +1,15 @@
 package org.magnum.mobilecloud.video;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.magnum.mobilecloud.video.repository.HibernateCacheMetrics;
 import org.magnum.mobilecloud.video.repository.VideoRepository;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.endpoint.VanillaPublicMetrics;
+import org.springframework.boot.actuate.metrics.reader.MetricReader;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
@@ -31,5 +38,17 @@ public class Application {
 	public static void main(String[] args) {
 		SpringApplication.run(Application.class, args);
 	}
+
+	// Tell the actuator to report how well Hibernate's caches are doing
+	// in /metrics, along with the metrics that it reports by default
+	// (see HibernateCacheMetrics). The caches are off unless the
+	// application is started with the "cache" profile, e.g., with
+	// --spring.profiles.active=cache on the command line.
+	@Bean
+	public PublicMetrics publicMetrics(MetricReader metricReader,
+			EntityManagerFactory entityManagerFactory) {
+		return new HibernateCacheMetrics(new VanillaPublicMetrics(metricReader),
+				entityManagerFactory);
+	}
 	
 }
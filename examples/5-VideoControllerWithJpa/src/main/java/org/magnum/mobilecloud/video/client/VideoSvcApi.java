@@ -1,6 +1,8 @@
 package org.magnum.mobilecloud.video.client;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 import org.magnum.mobilecloud.video.repository.Video;
 
@@ -23,17 +25,57 @@ public interface VideoSvcApi {
 	
 	public static final String TITLE_PARAMETER = "title";
 
+	public static final String PAGE_PARAMETER = "page";
+
+	public static final String SIZE_PARAMETER = "size";
+
+	public static final String SORT_PARAMETER = "sort";
+
+	public static final String FIELDS_PARAMETER = "fields";
+
+	// The number of videos on a page when the client doesn't ask for
+	// a size, and the most videos that a single page will ever hold
+	public static final int DEFAULT_PAGE_SIZE = 20;
+
+	public static final int MAX_PAGE_SIZE = 100;
+
 	// The path where we expect the VideoSvc to live
 	public static final String VIDEO_SVC_PATH = "/video";
 
 	// The path to search videos by title
 	public static final String VIDEO_TITLE_SEARCH_PATH = VIDEO_SVC_PATH + "/find";
 
+	// The path to add a whole list of videos at once
+	public static final String VIDEO_BATCH_PATH = VIDEO_SVC_PATH + "/batch";
+
+	// The path to download every video as one JSON array, which is
+	// written out as the videos are read from the database (the
+	// response is the same JSON as getVideoList()'s, so a client can
+	// read it with a @GET(VIDEO_EXPORT_PATH) Collection<Video> method)
+	public static final String VIDEO_EXPORT_PATH = VIDEO_SVC_PATH + "/export";
+
 	@GET(VIDEO_SVC_PATH)
 	public Collection<Video> getVideoList();
+
+	// Returns one page of videos (the first page is 0). The sort is a
+	// Video property, optionally followed by ",desc" (e.g., "duration,desc"),
+	// or null to order the videos by id.
+	@GET(VIDEO_SVC_PATH)
+	public Collection<Video> getVideoPage(@Query(PAGE_PARAMETER) int page,
+			@Query(SIZE_PARAMETER) int size, @Query(SORT_PARAMETER) String sort);
+
+	// Returns the same page as getVideoPage(), but with only the
+	// comma-separated list of fields (e.g., "name,duration") in each video
+	@GET(VIDEO_SVC_PATH)
+	public Collection<Map<String, Object>> getVideoFields(@Query(PAGE_PARAMETER) int page,
+			@Query(SIZE_PARAMETER) int size, @Query(SORT_PARAMETER) String sort,
+			@Query(FIELDS_PARAMETER) String fields);
 	
 	@POST(VIDEO_SVC_PATH)
 	public boolean addVideo(@Body Video v);
+
+	@POST(VIDEO_BATCH_PATH)
+	public boolean addVideos(@Body List<Video> v);
 	
 	@GET(VIDEO_TITLE_SEARCH_PATH)
 	public Collection<Video> findByTitle(@Query(TITLE_PARAMETER) String title);
@@ -0,0 +1,135 @@
+package org.magnum.mobilecloud.video.controller;
+
+import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+
+/**
+ * The paging, sorting, and field selection parameters that a client
+ * can add to a GET request for the list of videos.
+ *
+ * The sort is the name of a Video property that can optionally be
+ * followed by ",asc" or ",desc" (e.g., "duration,desc"). The fields
+ * are a comma-separated list of Video properties (e.g., "name,duration")
+ * that should be sent back instead of the whole Video. Asking for a
+ * property that a Video doesn't have throws a BadRequestException
+ * so that a typo in a client doesn't silently return everything.
+ *
+ * @author jules
+ *
+ */
+public class VideoListQuery {
+
+	private final int page;
+	private final int size;
+	private final String sortProperty;
+	private final boolean ascending;
+	private final List<String> fields;
+
+	public VideoListQuery(int page, int size, String sort, String fields) {
+		if (page < 0) {
+			throw new BadRequestException("The page must not be negative");
+		}
+		if (size < 1) {
+			throw new BadRequestException("The page size must be at least 1");
+		}
+		this.page = page;
+		// Clients can't ask for more than a bounded amount of work per request
+		this.size = Math.min(size, VideoSvcApi.MAX_PAGE_SIZE);
+
+		if (sort != null && !sort.trim().isEmpty()) {
+			String[] parts = sort.split(",");
+			if (parts.length > 2) {
+				throw new BadRequestException("Unsupported sort: " + sort);
+			}
+			sortProperty = checkProperty(parts[0].trim());
+			String direction = (parts.length > 1) ? parts[1].trim() : "asc";
+			if (!direction.equalsIgnoreCase("asc") && !direction.equalsIgnoreCase("desc")) {
+				throw new BadRequestException("Unsupported sort direction: " + direction);
+			}
+			ascending = direction.equalsIgnoreCase("asc");
+		} else {
+			sortProperty = null;
+			ascending = true;
+		}
+
+		if (fields != null) {
+			List<String> names = new ArrayList<String>();
+			for (String field : fields.split(",")) {
+				if (!field.trim().isEmpty()) {
+					names.add(checkProperty(field.trim()));
+				}
+			}
+			this.fields = Collections.unmodifiableList(names);
+		} else {
+			this.fields = null;
+		}
+	}
+
+	private static String checkProperty(String name) {
+		PropertyDescriptor property = BeanUtils.getPropertyDescriptor(Video.class, name);
+		if (property == null || property.getReadMethod() == null || name.equals("class")) {
+			throw new BadRequestException("Videos don't have a property named " + name);
+		}
+		return name;
+	}
+
+	public int getPage() {
+		return page;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	// The index of the first video on the page, which is a long
+	// because a large enough page number times the size overflows an int
+	public long getOffset() {
+		return (long) page * size;
+	}
+
+	// The property to sort by, or null if the client didn't ask
+	// for a particular order
+	public String getSortProperty() {
+		return sortProperty;
+	}
+
+	public boolean isAscending() {
+		return ascending;
+	}
+
+	// The properties to send back, or null to send the whole Video
+	public List<String> getFields() {
+		return fields;
+	}
+
+	/**
+	 * Copies the requested fields of each video into a map, preserving
+	 * the order that the fields were asked for in. Jackson turns each
+	 * map into a JSON object with just those properties.
+	 */
+	public List<Map<String, Object>> project(Collection<?> videos) {
+		List<String> names = (fields != null) ? fields : Collections.<String> emptyList();
+		List<Map<String, Object>> projected = new ArrayList<Map<String, Object>>(videos.size());
+		for (Object video : videos) {
+			BeanWrapper wrapper = new BeanWrapperImpl(video);
+			Map<String, Object> values = new LinkedHashMap<String, Object>();
+			for (String name : names) {
+				values.put(name, wrapper.getPropertyValue(name));
+			}
+			projected.add(values);
+		}
+		return projected;
+	}
+
+}
@@ -1,19 +1,32 @@
 package org.magnum.mobilecloud.video.controller;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
 import org.magnum.mobilecloud.video.repository.Video;
 import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.magnum.mobilecloud.video.repository.VideoRepositoryCustom.VideoHandler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import com.google.common.collect.Lists;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 /**
  * This simple VideoSvc allows clients to send HTTP POST requests with
@@ -50,6 +63,12 @@ public class VideoSvc implements VideoSvcApi {
 	@Autowired
 	private VideoRepository videos;
 
+	// Writes the videos for exportVideos() as JSON. By default, Jackson
+	// flushes the response after each video, which would send every
+	// video in a tiny packet of its own.
+	private static final ObjectMapper objectMapper = new ObjectMapper()
+			.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
 	// Receives POST requests to /video and converts the HTTP
 	// request body, which should contain json, into a Video
 	// object before adding it to the list. The @RequestBody
@@ -70,6 +89,17 @@ public class VideoSvc implements VideoSvcApi {
 		 videos.save(v);
 		 return true;
 	}
+
+	// Receives POST requests to /video/batch with a JSON array of videos
+	// and adds all of them as new videos. Importing a large number of
+	// videos this way sends the inserts to the database in batches (see
+	// VideoRepositoryImpl), rather than as one request, transaction, and
+	// insert per video with addVideo().
+	@RequestMapping(value=VideoSvcApi.VIDEO_BATCH_PATH, method=RequestMethod.POST)
+	public @ResponseBody boolean addVideos(@RequestBody List<Video> v){
+		 videos.saveAll(v);
+		 return true;
+	}
 	
 	// Receives GET requests to /video and returns the current
 	// list of videos in memory. Spring automatically converts
@@ -77,7 +107,88 @@ public class VideoSvc implements VideoSvcApi {
 	// annotation.
 	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.GET)
 	public @ResponseBody Collection<Video> getVideoList(){
-		return Lists.newArrayList(videos.findAll());
+		return videos.findAllCacheable();
+	}
+
+	// Receives GET requests to /video/export and sends back the same
+	// JSON array of videos as getVideoList(). Returning a Collection
+	// means loading every video into memory, and then having Spring
+	// turn all of them into JSON, before the first byte goes out. This
+	// writes each video to the response as soon as it is read from the
+	// database instead (see VideoRepository.forEachVideo()), so the
+	// memory that it takes doesn't depend on how many videos there are.
+	//
+	// Once the first videos have been sent, the status can't be changed
+	// to an error anymore. If reading a video fails part way through,
+	// the response ends without the closing "]" so that a client can't
+	// mistake it for the complete list.
+	@RequestMapping(value=VideoSvcApi.VIDEO_EXPORT_PATH, method=RequestMethod.GET)
+	public void exportVideos(HttpServletResponse response) throws IOException {
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		final JsonGenerator json = objectMapper.getFactory()
+				.createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+		json.writeStartArray();
+		videos.forEachVideo(new VideoHandler() {
+			@Override
+			public void handle(Video video) throws IOException {
+				objectMapper.writeValue(json, video);
+			}
+		});
+		json.writeEndArray();
+		json.close();
+	}
+
+	// Receives GET requests to /video that ask for a page (e.g.,
+	// /video?page=2&size=10&sort=name,desc) and returns just the videos
+	// on that page. Clients that list a large number of videos should
+	// page through them rather than asking for all of them at once.
+	//
+	// The params attribute tells Spring to only route requests here
+	// if they have a "page" parameter and no "fields" parameter.
+	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.GET,
+			params={PAGE_PARAMETER, "!" + FIELDS_PARAMETER})
+	public @ResponseBody Collection<Video> getVideoPage(
+			@RequestParam(PAGE_PARAMETER) int page,
+			@RequestParam(value=SIZE_PARAMETER, defaultValue="" + DEFAULT_PAGE_SIZE) int size,
+			@RequestParam(value=SORT_PARAMETER, required=false) String sort
+	){
+		return findPage(new VideoListQuery(page, size, sort, null));
+	}
+
+	// Receives GET requests to /video that ask for a page with only
+	// some of the fields of each video (e.g., /video?page=0&fields=name).
+	// Leaving out the fields that a client doesn't show makes the
+	// response smaller and faster to send to a mobile device.
+	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.GET,
+			params={PAGE_PARAMETER, FIELDS_PARAMETER})
+	public @ResponseBody Collection<Map<String, Object>> getVideoFields(
+			@RequestParam(PAGE_PARAMETER) int page,
+			@RequestParam(value=SIZE_PARAMETER, defaultValue="" + DEFAULT_PAGE_SIZE) int size,
+			@RequestParam(value=SORT_PARAMETER, required=false) String sort,
+			@RequestParam(FIELDS_PARAMETER) String fields
+	){
+		VideoListQuery query = new VideoListQuery(page, size, sort, fields);
+		return query.project(findPage(query));
+	}
+
+	// Asks the database for one page of videos. Sorting by id when the
+	// client doesn't ask for an order keeps the pages stable, so that
+	// a video doesn't show up on two pages or on none of them.
+	private List<Video> findPage(VideoListQuery query){
+		Sort sort = (query.getSortProperty() != null)
+				? new Sort(query.isAscending() ? Direction.ASC : Direction.DESC, query.getSortProperty())
+				: new Sort("id");
+		return videos.findPage(new PageRequest(query.getPage(), query.getSize(), sort));
+	}
+
+	// VideoListQuery throws a BadRequestException when a client
+	// asks for a page, sort, or field that doesn't make sense, which
+	// we send back as a 400 (Bad Request) rather than a server error
+	@ExceptionHandler(BadRequestException.class)
+	public void badListRequest(BadRequestException e,
+			HttpServletResponse response) throws IOException {
+		response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
 	}
 	
 	// Receives GET requests to /video/find and returns all Videos
@@ -0,0 +1,63 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Adds the hit, miss, and put counts of Hibernate's second-level cache
+ * and query cache to the metrics that the actuator sends back from
+ * /metrics, next to the memory, uptime, and request metrics that it
+ * already reports. The second-level cache is also broken down by region
+ * (e.g., "hibernate.cache.region.org.magnum.mobilecloud.video.repository.Video.hits"),
+ * so that you can see which entities are actually being served from it.
+ * 
+ * Hibernate only counts these when hibernate.generate_statistics is
+ * turned on, and they stay at zero unless the caches are turned on
+ * too (see application-cache.properties).
+ * 
+ * @author jules
+ *
+ */
+public class HibernateCacheMetrics implements PublicMetrics {
+
+	private final PublicMetrics defaults;
+
+	private final Statistics statistics;
+
+	public HibernateCacheMetrics(PublicMetrics defaults, EntityManagerFactory entityManagerFactory) {
+		this.defaults = defaults;
+		this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>(defaults.metrics());
+		add(metrics, "hibernate.cache.hits", statistics.getSecondLevelCacheHitCount());
+		add(metrics, "hibernate.cache.misses", statistics.getSecondLevelCacheMissCount());
+		add(metrics, "hibernate.cache.puts", statistics.getSecondLevelCachePutCount());
+		add(metrics, "hibernate.query_cache.hits", statistics.getQueryCacheHitCount());
+		add(metrics, "hibernate.query_cache.misses", statistics.getQueryCacheMissCount());
+		add(metrics, "hibernate.query_cache.puts", statistics.getQueryCachePutCount());
+		for (String region : statistics.getSecondLevelCacheRegionNames()) {
+			SecondLevelCacheStatistics cache = statistics.getSecondLevelCacheStatistics(region);
+			add(metrics, "hibernate.cache.region." + region + ".hits", cache.getHitCount());
+			add(metrics, "hibernate.cache.region." + region + ".misses", cache.getMissCount());
+			add(metrics, "hibernate.cache.region." + region + ".puts", cache.getPutCount());
+		}
+		return metrics;
+	}
+
+	private static void add(List<Metric<?>> metrics, String name, long value) {
+		metrics.add(new Metric<Long>(name, value));
+	}
+
+}
@@ -4,6 +4,7 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
 
 import com.google.common.base.Objects;
 
@@ -16,8 +17,21 @@ import com.google.common.base.Objects;
 @Entity
 public class Video {
 
+	public static final int ID_ALLOCATION_SIZE = 1000;
+
+	// The ids come from a database sequence rather than an identity
+	// column. Hibernate has to run an insert right away to find out the
+	// id that an identity column gives a video, so it can't send a
+	// batch of inserts together (see VideoRepositoryImpl.saveAll()).
+	// Each call to the sequence reserves the next ID_ALLOCATION_SIZE ids,
+	// which Hibernate then hands out without going back to the database.
+	// How many ids are reserved at a time has nothing to do with how many
+	// inserts are sent in a batch; the only cost of reserving more is a
+	// gap in the ids when the server stops before using them all.
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "video_ids")
+	@SequenceGenerator(name = "video_ids", sequenceName = "video_ids",
+			allocationSize = Video.ID_ALLOCATION_SIZE)
 	private long id;
 
 	private String name;
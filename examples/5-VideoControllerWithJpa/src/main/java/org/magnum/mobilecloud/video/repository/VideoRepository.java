@@ -1,21 +1,59 @@
 package org.magnum.mobilecloud.video.repository;
 
 import java.util.Collection;
+import java.util.List;
 
-import org.springframework.data.repository.CrudRepository;
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
 /**
  * An interface for a repository that can store Video
  * objects and allow them to be searched by title.
  * 
+ * Extending PagingAndSortingRepository, rather than CrudRepository,
+ * adds a findAll(Pageable) method that has the database do the
+ * sorting and only return the rows on one page (e.g., with an
+ * ORDER BY and a LIMIT/OFFSET). findAll(Pageable) also counts every
+ * video so that it can say how many pages there are, which findPage()
+ * below avoids.
+ * 
+ * Extending VideoRepositoryCustom adds a saveAll() method that adds
+ * a large number of videos with batched inserts (see
+ * VideoRepositoryImpl).
+ * 
+ * The methods marked as cacheable have their results kept in Hibernate's
+ * query cache when it is turned on (see application-cache.properties).
+ * Hibernate throws the cached results of every query on the video table
+ * away as soon as a video is saved or deleted, so they are never stale.
+ * 
  * @author jules
  *
  */
 @Repository
-public interface VideoRepository extends CrudRepository<Video, Long>{
+public interface VideoRepository extends PagingAndSortingRepository<Video, Long>,
+		VideoRepositoryCustom {
 
 	// Find all videos with a matching title (e.g., Video.name)
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	public Collection<Video> findByName(String title);
+
+	// The same as findAll(), which can't be cached because Spring Data
+	// doesn't apply query hints to the methods that it inherits from
+	// CrudRepository
+	@Query("select v from Video v")
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+	public List<Video> findAllCacheable();
+
+	// Find one page of videos. Returning a List, rather than a Page,
+	// tells Spring Data that it doesn't need to run a second query
+	// to count all of the videos.
+	@Query("select v from Video v")
+	public List<Video> findPage(Pageable pageable);
 	
 }
@@ -0,0 +1,41 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * The methods of the VideoRepository that Spring Data can't generate
+ * for us, which are implemented by hand in VideoRepositoryImpl.
+ * 
+ * @author jules
+ *
+ */
+public interface VideoRepositoryCustom {
+
+	/**
+	 * Adds all of the videos as new videos in a single transaction,
+	 * sending the inserts to the database in batches rather than one
+	 * at a time. Any ids that the videos already had are ignored, and
+	 * each video is given a new id.
+	 */
+	public void saveAll(Collection<Video> videos);
+
+	/**
+	 * Hands every video to the handler, one at a time and in order of
+	 * their ids. The videos are read through a forward-only database
+	 * cursor and let go of once they have been handled, so the memory
+	 * that this takes doesn't grow with the number of videos.
+	 */
+	public void forEachVideo(VideoHandler handler) throws IOException;
+
+	/**
+	 * Something that is given each of the videos by forEachVideo()
+	 * (e.g., something that writes them out).
+	 */
+	public interface VideoHandler {
+
+		public void handle(Video video) throws IOException;
+
+	}
+
+}
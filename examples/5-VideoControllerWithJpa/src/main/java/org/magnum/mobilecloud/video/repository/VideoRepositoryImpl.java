@@ -0,0 +1,96 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Spring Data finds this class by its name (the name of the repository
+ * interface followed by "Impl") and sends calls to the methods of
+ * VideoRepositoryCustom to it.
+ * 
+ * saveAll() relies on the JDBC batching that is turned on in
+ * application.properties. Hibernate queues up the inserts for the
+ * videos that are persisted and, when the persistence context is
+ * flushed, sends them BATCH_SIZE at a time. The persistence context is
+ * also cleared after every batch, so that Hibernate doesn't keep every
+ * video that has been added in memory (and check each of them for
+ * changes on every flush) until the end of a large import.
+ * 
+ * Adding 100,000 videos takes 200 batches plus 100 calls to the id
+ * sequence (see Video.id), rather than 100,000 separate inserts.
+ * 
+ * forEachVideo() goes the other way. JPA can only hand back the result
+ * of a query as a List, which means loading every video before the first
+ * one can be used, so it asks Hibernate for ScrollableResults instead.
+ * The JDBC driver then fetches FETCH_SIZE rows from the database at a
+ * time as the cursor moves forward.
+ * 
+ * @author jules
+ *
+ */
+public class VideoRepositoryImpl implements VideoRepositoryCustom {
+
+	// How many videos are flushed at a time. Each flush sends one full
+	// JDBC batch as long as this is a multiple of hibernate.jdbc.batch_size
+	// in application.properties.
+	public static final int BATCH_SIZE = 500;
+
+	// How many rows forEachVideo() asks the database for at a time
+	public static final int FETCH_SIZE = 500;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	@Transactional
+	public void saveAll(Collection<Video> videos) {
+		int added = 0;
+		for (Video video : videos) {
+			// persist() rather than merge() always inserts a new row, and
+			// it only accepts videos that don't have an id yet
+			video.setId(0);
+			entityManager.persist(video);
+			if (++added % BATCH_SIZE == 0) {
+				entityManager.flush();
+				entityManager.clear();
+			}
+		}
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public void forEachVideo(VideoHandler handler) throws IOException {
+		Session session = entityManager.unwrap(Session.class);
+		ScrollableResults results = session
+				.createQuery("select v from Video v order by v.id")
+				// Nothing is going to change the videos, so Hibernate
+				// doesn't need to keep a copy of each one to check for
+				// changes, or to put them in the second-level cache
+				.setReadOnly(true)
+				.setCacheMode(CacheMode.IGNORE)
+				.setFetchSize(FETCH_SIZE)
+				.scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			int handled = 0;
+			while (results.next()) {
+				handler.handle((Video) results.get(0));
+				// Let go of the videos that have already been handled
+				if (++handled % FETCH_SIZE == 0) {
+					session.clear();
+				}
+			}
+		} finally {
+			results.close();
+		}
+	}
+
+}
@@ -57,8 +57,8 @@ public class VideoSvcTest {
 		MockitoAnnotations.initMocks(this);
 
 		// Tell the mock VideoRepository to always return the random Video
-		// object that we create above when its getVideos() method is called
-		when(videoRepository.findAll()).thenReturn(Arrays.asList(video));
+		// object that we create above when its findAllCacheable() method is called
+		when(videoRepository.findAllCacheable()).thenReturn(Arrays.asList(video));
 	}
 	
 	
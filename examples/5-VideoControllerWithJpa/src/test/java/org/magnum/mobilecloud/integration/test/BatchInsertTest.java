@@ -0,0 +1,112 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.magnum.mobilecloud.video.repository.VideoRepositoryImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+/**
+ *
+ * This test adds a large batch of videos through the VideoSvc and uses
+ * the statistics that Hibernate keeps to check that the inserts were
+ * sent to the database in batches. Hibernate prepares one statement for
+ * each batch of inserts and one for each call to the id sequence, rather
+ * than one statement per video.
+ *
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+public class BatchInsertTest {
+
+	private static final int VIDEOS = 10000;
+
+	@Autowired
+	private VideoSvc videoService;
+
+	@Autowired
+	private VideoRepository videos;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+
+	@Before
+	public void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+	}
+
+	@Test
+	public void testVideosAreInsertedInBatches() throws Exception {
+		List<Video> batch = new ArrayList<Video>(VIDEOS);
+		for (int i = 0; i < VIDEOS; i++) {
+			batch.add(TestData.randomVideo());
+		}
+		long before = videos.count();
+
+		statistics.clear();
+		assertTrue(videoService.addVideos(batch));
+		long batches = VIDEOS / VideoRepositoryImpl.BATCH_SIZE;
+		long allocations = VIDEOS / Video.ID_ALLOCATION_SIZE;
+		// One statement per batch of inserts and one per call to the
+		// sequence, with a little room for the sequence call that the
+		// previous test's ids might have left behind
+		assertTrue(statistics.getPrepareStatementCount() <= batches + allocations + 2);
+		assertEquals(VIDEOS, statistics.getEntityInsertCount());
+
+		assertEquals(before + VIDEOS, videos.count());
+		Set<Long> ids = new HashSet<Long>();
+		for (Video video : batch) {
+			assertTrue(video.getId() > 0);
+			ids.add(video.getId());
+		}
+		assertEquals(VIDEOS, ids.size());
+	}
+
+	@Test
+	public void testIdsFromTheClientAreIgnored() throws Exception {
+		Video existing = videos.save(TestData.randomVideo());
+
+		Video video = TestData.randomVideo();
+		video.setId(existing.getId());
+		List<Video> batch = new ArrayList<Video>();
+		batch.add(video);
+		videoService.addVideos(batch);
+
+		// The batch adds a new video rather than replacing the existing one
+		assertTrue(video.getId() != existing.getId());
+		assertEquals(existing.getName(), videos.findOne(existing.getId()).getName());
+		assertEquals(video.getName(), videos.findOne(video.getId()).getName());
+	}
+
+}
@@ -0,0 +1,147 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+/**
+ *
+ * This test runs the Application with the "cache" profile, which turns on
+ * Hibernate's second-level cache and query cache, and uses the statistics
+ * that Hibernate keeps to check which lookups are answered from the caches
+ * without sending a statement to the database. It also checks that saving
+ * and deleting videos never leaves a stale result in either cache.
+ *
+ * Each call to the VideoRepository runs in its own transaction with its
+ * own EntityManager, so a repeated lookup can only avoid the database by
+ * going to the second-level cache.
+ *
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+@ActiveProfiles("cache")
+public class SecondLevelCacheTest {
+
+	@Autowired
+	private VideoRepository videos;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private PublicMetrics publicMetrics;
+
+	private Statistics statistics;
+
+	@Before
+	public void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	}
+
+	@Test
+	public void testFindOneIsServedFromTheCache() throws Exception {
+		Video video = videos.save(TestData.randomVideo());
+		// The first lookup of a video that has just been inserted can still
+		// go to the database, since the READ_WRITE strategy won't hand an
+		// entry to a session that may have started before it was cached
+		videos.findOne(video.getId());
+
+		statistics.clear();
+		Video found = videos.findOne(video.getId());
+		assertEquals(video, found);
+		assertEquals(0, statistics.getPrepareStatementCount());
+		assertEquals(1, statistics.getSecondLevelCacheHitCount());
+	}
+
+	@Test
+	public void testFindOneSeesUpdatesAndDeletes() throws Exception {
+		Video video = videos.save(TestData.randomVideo());
+		videos.findOne(video.getId());
+
+		video.setDuration(video.getDuration() + 1);
+		videos.save(video);
+		assertEquals(video.getDuration(), videos.findOne(video.getId()).getDuration());
+
+		videos.delete(video.getId());
+		assertNull(videos.findOne(video.getId()));
+	}
+
+	@Test
+	public void testFindByNameIsServedFromTheQueryCache() throws Exception {
+		Video video = videos.save(TestData.randomVideo());
+		videos.findByName(video.getName());
+
+		statistics.clear();
+		Collection<Video> found = videos.findByName(video.getName());
+		assertEquals(1, found.size());
+		assertTrue(found.contains(video));
+		assertEquals(0, statistics.getPrepareStatementCount());
+		assertEquals(1, statistics.getQueryCacheHitCount());
+	}
+
+	@Test
+	public void testSavingAndDeletingInvalidatesTheQueryCache() throws Exception {
+		Video video = videos.save(TestData.randomVideo());
+		assertEquals(1, videos.findByName(video.getName()).size());
+		int listed = videos.findAllCacheable().size();
+
+		// Another video with the same title has to show up in the
+		// results of every query, rather than the cached ones
+		Video sameName = new Video(video.getName(), video.getUrl() + "-2", 1);
+		videos.save(sameName);
+		assertEquals(2, videos.findByName(video.getName()).size());
+		assertEquals(listed + 1, videos.findAllCacheable().size());
+
+		videos.delete(sameName);
+		assertEquals(1, videos.findByName(video.getName()).size());
+		assertEquals(listed, videos.findAllCacheable().size());
+	}
+
+	@Test
+	public void testMetricsReportCacheHits() throws Exception {
+		Video video = videos.save(TestData.randomVideo());
+		videos.findOne(video.getId());
+		videos.findOne(video.getId());
+
+		Map<String, Number> metrics = new HashMap<String, Number>();
+		for (Metric<?> metric : publicMetrics.metrics()) {
+			metrics.put(metric.getName(), metric.getValue());
+		}
+		assertTrue(metrics.get("hibernate.cache.hits").longValue() > 0);
+		assertTrue(metrics.containsKey("hibernate.query_cache.misses"));
+		assertTrue(metrics.containsKey("hibernate.cache.region." + Video.class.getName() + ".hits"));
+		// The metrics that the actuator reports by default are still there
+		assertTrue(metrics.containsKey("mem"));
+	}
+
+}
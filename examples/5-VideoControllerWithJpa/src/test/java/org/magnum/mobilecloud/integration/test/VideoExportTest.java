@@ -0,0 +1,91 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.magnum.mobilecloud.video.repository.VideoRepositoryImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ *
+ * This test sends a GET request to /video/export and checks that the
+ * streamed JSON is the same list of videos that the VideoRepository
+ * holds, in order of their ids. There are several times more videos than
+ * the export reads from the database at a time, so that the cursor has to
+ * move past the first few fetches.
+ *
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+public class VideoExportTest {
+
+	private static final int VIDEOS = 5 * VideoRepositoryImpl.FETCH_SIZE + 1;
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Autowired
+	private VideoSvc videoService;
+
+	@Autowired
+	private VideoRepository videos;
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setUp() {
+		mockMvc = MockMvcBuilders.standaloneSetup(videoService).build();
+	}
+
+	@Test
+	public void testExportMatchesTheRepository() throws Exception {
+		List<Video> added = new ArrayList<Video>(VIDEOS);
+		for (int i = 0; i < VIDEOS; i++) {
+			added.add(TestData.randomVideo());
+		}
+		videos.saveAll(added);
+
+		MvcResult result = mockMvc.perform(get(VideoSvcApi.VIDEO_EXPORT_PATH))
+				.andExpect(status().isOk())
+				.andReturn();
+		List<Video> exported = objectMapper.readValue(
+				result.getResponse().getContentAsByteArray(),
+				new TypeReference<List<Video>>() {});
+
+		assertEquals(videos.count(), exported.size());
+		assertTrue(exported.containsAll(added));
+		for (int i = 1; i < exported.size(); i++) {
+			assertTrue(exported.get(i - 1).getId() < exported.get(i).getId());
+		}
+	}
+
+}
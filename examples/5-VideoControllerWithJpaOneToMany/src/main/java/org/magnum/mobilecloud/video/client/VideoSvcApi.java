@@ -3,6 +3,7 @@ package org.magnum.mobilecloud.video.client;
 import java.util.Collection;
 
 import org.magnum.mobilecloud.video.repository.Category;
+import org.magnum.mobilecloud.video.repository.CategoryWithVideos;
 import org.magnum.mobilecloud.video.repository.Video;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -53,5 +54,10 @@ public interface VideoSvcApi {
 	
 	@POST(CATEGORY_SVC_PATH)
 	public boolean addCategory(@Body Category c);
+
+	// Returns the category along with the id, name, url, and duration
+	// of each of its videos
+	@GET(CATEGORY_SVC_PATH+"/{category}")
+	public CategoryWithVideos getCategory(@Path("category") String categoryName);
 	
 }
@@ -6,9 +6,11 @@ import java.util.Collection;
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
 import org.magnum.mobilecloud.video.repository.Category;
 import org.magnum.mobilecloud.video.repository.CategoryRepository;
+import org.magnum.mobilecloud.video.repository.CategoryWithVideos;
 import org.magnum.mobilecloud.video.repository.Video;
 import org.magnum.mobilecloud.video.repository.VideoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -16,6 +18,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
 
 import com.google.common.collect.Lists;
 
@@ -114,18 +117,40 @@ public class VideoSvc implements VideoSvcApi {
 	// list of videos. Spring automatically converts
 	// the list of videos to JSON because of the @ResponseBody
 	// annotation.
+	//
+	// The videos are loaded along with their categories in one query
+	// (see VideoRepository.findAllWithCategory()).
 	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH, method=RequestMethod.GET)
 	public @ResponseBody Collection<Video> getVideoList(){
-		return Lists.newArrayList(videos.findAll());
+		return videos.findAllWithCategory();
 	}
 	
 	// Receives GET requests to /video/{category} and returns the current
 	// list of videos that are part of the specified category.
+	//
+	// The category and its videos are loaded with one query (see
+	// CategoryRepository.findOneWithVideos()) rather than one query for
+	// the category and another when getVideos() is first called.
 	@RequestMapping(value=VideoSvcApi.VIDEO_SVC_PATH+"/{category}", method=RequestMethod.GET)
 	public @ResponseBody Collection<Video> getVideoListForCategory(@PathVariable("category") String categoryName){
-		Category c = categories.findOne(categoryName);
+		Category c = categories.findOneWithVideos(categoryName);
 		return (c != null) ? Lists.newArrayList(c.getVideos()) : new ArrayList<Video>();
 	}
+
+	// Receives GET requests to /category/{category} and returns the
+	// category along with a summary of each of its videos, or a 404 if
+	// there isn't a category with that name.
+	//
+	// Only the columns that the response needs are selected, with a
+	// single query, and none of the videos are loaded as entities.
+	@RequestMapping(value=VideoSvcApi.CATEGORY_SVC_PATH+"/{category}", method=RequestMethod.GET)
+	public @ResponseBody CategoryWithVideos getCategory(@PathVariable("category") String categoryName){
+		CategoryWithVideos c = CategoryWithVideos.fromRows(categories.findVideoColumns(categoryName));
+		if (c == null) {
+			throw new CategoryNotFoundException(categoryName);
+		}
+		return c;
+	}
 	
 	
 	// Receives GET requests to /video/find and returns all Videos
@@ -140,4 +165,16 @@ public class VideoSvc implements VideoSvcApi {
 		return videos.findByName(title);
 	}
 
+	// Spring sends a 404 (Not Found) back to the client when a
+	// request throws this exception
+	@ResponseStatus(HttpStatus.NOT_FOUND)
+	public static class CategoryNotFoundException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public CategoryNotFoundException(String categoryName) {
+			super("Unknown category:" + categoryName);
+		}
+	}
+
 }
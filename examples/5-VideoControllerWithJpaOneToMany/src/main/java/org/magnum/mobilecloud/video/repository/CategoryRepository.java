@@ -1,17 +1,45 @@
 package org.magnum.mobilecloud.video.repository;
 
+import java.util.List;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /**
  * An interface for a repository that can store Category
  * objects.
  * 
+ * findOneWithVideos() isn't cacheable, since the query cache only keeps
+ * the categories that a query returned and not the videos that it fetched
+ * along with them, which would then be loaded with a second query.
+ * 
  * @author jules
  *
  */
 @Repository
 public interface CategoryRepository extends CrudRepository<Category, String>{
 
+	// Find a category and load its videos with the same query. Calling
+	// getVideos() on a Category from findOne() sends a second query to
+	// load them the first time.
+	@Query("select distinct c from Category c left join fetch c.videos where c.name = :name")
+	public Category findOneWithVideos(@Param("name") String name);
+
+	// Find just the columns of a category and its videos that a
+	// CategoryWithVideos needs, as one row per video (see
+	// CategoryWithVideos.fromRows()). Since nothing is loaded as an
+	// entity, Hibernate doesn't have to track thousands of Videos in
+	// the persistence context to send them back as JSON. The query
+	// cache keeps the rows themselves, and throws them away as soon as
+	// a category or a video is saved or deleted.
+	@Query("select c.name, v.id, v.name, v.url, v.duration from Category c"
+			+ " left join c.videos v where c.name = :name order by v.id")
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+	public List<Object[]> findVideoColumns(@Param("name") String name);
 	
 }
@@ -0,0 +1,72 @@
+package org.magnum.mobilecloud.video.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Category and the videos in it, in the form that the VideoSvc sends it
+ * back to clients.
+ * 
+ * Sending a Category entity as JSON doesn't work well for this, because its
+ * videos would each refer back to the category (which is why
+ * Category.getVideos() is ignored by Jackson). This class is a plain data
+ * transfer object that holds only the properties that a client needs, and
+ * it is filled in from the columns that CategoryRepository.findVideoColumns()
+ * selects in a single query.
+ * 
+ * @author jules
+ *
+ */
+public class CategoryWithVideos {
+
+	private String name;
+
+	private List<VideoSummary> videos;
+
+	public CategoryWithVideos() {
+	}
+
+	public CategoryWithVideos(String name, List<VideoSummary> videos) {
+		this.name = name;
+		this.videos = videos;
+	}
+
+	/**
+	 * Builds a CategoryWithVideos from the rows of
+	 * CategoryRepository.findVideoColumns(), which are a category name
+	 * followed by a video's id, name, url, and duration. A category without
+	 * any videos has a single row whose video columns are null, and a
+	 * category that doesn't exist has no rows at all, in which case this
+	 * method returns null.
+	 */
+	public static CategoryWithVideos fromRows(List<Object[]> rows) {
+		if (rows.isEmpty()) {
+			return null;
+		}
+		List<VideoSummary> videos = new ArrayList<VideoSummary>(rows.size());
+		for (Object[] row : rows) {
+			if (row[1] != null) {
+				videos.add(new VideoSummary((Long) row[1], (String) row[2],
+						(String) row[3], (Long) row[4]));
+			}
+		}
+		return new CategoryWithVideos((String) rows.get(0)[0], videos);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public List<VideoSummary> getVideos() {
+		return videos;
+	}
+
+	public void setVideos(List<VideoSummary> videos) {
+		this.videos = videos;
+	}
+
+}
@@ -1,7 +1,12 @@
 package org.magnum.mobilecloud.video.repository;
 
 import java.util.Collection;
+import java.util.List;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
@@ -9,6 +14,11 @@ import org.springframework.stereotype.Repository;
  * An interface for a repository that can store Video
  * objects and allow them to be searched by title.
  * 
+ * The methods marked as cacheable have their results kept in Hibernate's
+ * query cache when it is turned on (see application-cache.properties).
+ * Hibernate throws the cached results of every query on the video table
+ * away as soon as a video is saved or deleted, so they are never stale.
+ * 
  * @author jules
  *
  */
@@ -16,6 +26,18 @@ import org.springframework.stereotype.Repository;
 public interface VideoRepository extends CrudRepository<Video, Long>{
 
 	// Find all videos with a matching title (e.g., Video.name)
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	public Collection<Video> findByName(String title);
+
+	// Find all videos along with their categories. Since the Category of a
+	// Video is loaded eagerly, findAll() sends one query for the videos and
+	// then another query for each different category that they are in (the
+	// "N+1 selects" problem). The "join fetch" loads the videos and their
+	// categories with a single query instead. When the result comes from
+	// the query cache, the videos and categories come from the
+	// second-level cache.
+	@Query("select v from Video v left join fetch v.category")
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+	public List<Video> findAllWithCategory();
 	
 }
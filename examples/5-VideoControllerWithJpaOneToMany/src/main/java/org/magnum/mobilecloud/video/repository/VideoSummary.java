@@ -0,0 +1,60 @@
+package org.magnum.mobilecloud.video.repository;
+
+/**
+ * The properties of a Video that are sent back as part of a
+ * CategoryWithVideos. It leaves out the Video's category, since
+ * every video in a CategoryWithVideos has the same one.
+ * 
+ * @author jules
+ *
+ */
+public class VideoSummary {
+
+	private long id;
+	private String name;
+	private String url;
+	private long duration;
+
+	public VideoSummary() {
+	}
+
+	public VideoSummary(long id, String name, String url, long duration) {
+		this.id = id;
+		this.name = name;
+		this.url = url;
+		this.duration = duration;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public void setUrl(String url) {
+		this.url = url;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+}
@@ -0,0 +1,116 @@
+package org.magnum.mobilecloud.integration.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.magnum.mobilecloud.video.Application;
+import org.magnum.mobilecloud.video.controller.VideoSvc;
+import org.magnum.mobilecloud.video.repository.Category;
+import org.magnum.mobilecloud.video.repository.CategoryRepository;
+import org.magnum.mobilecloud.video.repository.CategoryWithVideos;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.magnum.mobilecloud.video.repository.VideoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+/**
+ * 
+ * This test counts the SQL statements that the VideoSvc sends to the
+ * database to list the videos in a large category, using the statistics
+ * that Hibernate keeps. Each listing should take exactly one statement no
+ * matter how many videos there are, rather than one statement per category
+ * or a second statement to load the category's videos.
+ * 
+ * @author jules
+ *
+ */
+@WebAppConfiguration
+@RunWith(SpringJUnit4ClassRunner.class)
+@TestExecutionListeners({ DependencyInjectionTestExecutionListener.class })
+@ContextConfiguration(classes = Application.class, loader = SpringApplicationContextLoader.class)
+public class CategoryQueryCountTest {
+
+	private static final String CATEGORY = "CategoryQueryCountTest";
+
+	private static final int VIDEOS = 10000;
+
+	@Autowired
+	private VideoSvc videoService;
+
+	@Autowired
+	private VideoRepository videos;
+
+	@Autowired
+	private CategoryRepository categories;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+
+	@Before
+	public void setUp() {
+		if (categories.findOne(CATEGORY) == null) {
+			Category category = new Category();
+			category.setName(CATEGORY);
+			categories.save(category);
+
+			List<Video> added = new ArrayList<Video>(VIDEOS);
+			for (int i = 0; i < VIDEOS; i++) {
+				Video video = new Video("Video-" + i, "http://coursera.org/some/video-" + i, i);
+				video.setCategory(category);
+				added.add(video);
+			}
+			videos.save(added);
+		}
+
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+	}
+
+	@Test
+	public void testVideoListForCategoryIsOneStatement() throws Exception {
+		Collection<Video> list = videoService.getVideoListForCategory(CATEGORY);
+		assertEquals(VIDEOS, list.size());
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	public void testCategoryWithVideosIsOneStatement() throws Exception {
+		CategoryWithVideos category = videoService.getCategory(CATEGORY);
+		assertEquals(CATEGORY, category.getName());
+		assertEquals(VIDEOS, category.getVideos().size());
+		assertEquals("Video-0", category.getVideos().get(0).getName());
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	public void testVideoListIsOneStatement() throws Exception {
+		Collection<Video> list = videoService.getVideoList();
+		assertEquals(videos.count(), list.size());
+		// The count() above is a statement of its own
+		assertEquals(2, statistics.getPrepareStatementCount());
+	}
+
+	@Test(expected = VideoSvc.CategoryNotFoundException.class)
+	public void testUnknownCategory() throws Exception {
+		videoService.getCategory("No such category");
+	}
+
+}
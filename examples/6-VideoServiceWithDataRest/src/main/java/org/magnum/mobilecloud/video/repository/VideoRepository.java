@@ -2,7 +2,10 @@ package org.magnum.mobilecloud.video.repository;
 
 import java.util.Collection;
 
+import javax.persistence.QueryHint;
+
 import org.magnum.mobilecloud.video.client.VideoSvcApi;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
@@ -11,6 +14,12 @@ import org.springframework.data.rest.core.annotation.RepositoryRestResource;
  * An interface for a repository that can store Video
  * objects and allow them to be searched by title.
  * 
+ * The searches are marked as cacheable, so their results are kept in
+ * Hibernate's query cache when it is turned on (see
+ * application-cache.properties). Hibernate throws the cached results of
+ * every query on the video table away as soon as a video is saved or
+ * deleted, so they are never stale.
+ * 
  * @author jules
  *
  */
@@ -29,6 +38,7 @@ import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 public interface VideoRepository extends CrudRepository<Video, Long>{
 
 	// Find all videos with a matching title (e.g., Video.name)
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	public Collection<Video> findByName(
 			// The @Param annotation tells Spring Data Rest which HTTP request
 			// parameter it should use to fill in the "title" variable used to
@@ -36,11 +46,23 @@ public interface VideoRepository extends CrudRepository<Video, Long>{
 			@Param(VideoSvcApi.TITLE_PARAMETER) String title);
 	
 	// Find all videos that are shorter than a specified duration
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	public Collection<Video> findByDurationLessThan(
 			// The @Param annotation tells tells Spring Data Rest which HTTP request
 			// parameter it should use to fill in the "duration" variable used to
 			// search for Videos
 			@Param(VideoSvcApi.DURATION_PARAMETER) long maxduration);
+
+	// Find all videos that are longer than a specified duration
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+	public Collection<Video> findByDurationGreaterThan(
+			@Param(VideoSvcApi.DURATION_PARAMETER) long minduration);
+
+	// Find all videos with a duration from min to max, inclusive
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+	public Collection<Video> findByDurationBetween(
+			@Param(VideoSvcApi.MIN_DURATION_PARAMETER) long min,
+			@Param(VideoSvcApi.MAX_DURATION_PARAMETER) long max);
 	
 	/*
 	 * See: http://docs.spring.io/spring-data/jpa/docs/1.3.0.RELEASE/reference/html/jpa.repositories.html 
@@ -0,0 +1,136 @@
+package org.magnum.mobilecloud.json.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.magnum.mobilecloud.video.json.ResourcesMapper;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.springframework.data.rest.webmvc.PersistentEntityResource;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * A stand-alone benchmark that writes the same Resources, holding a list
+ * of videos the way that Spring Data Rest hands them to the ObjectMapper,
+ * with the ResourcesMapper and with the mapper that it replaced, which
+ * looked up a serializer for the whole list every time. It reports the
+ * average time to write the list and the size of the JSON, which is the
+ * same for both.
+ *
+ * Run it with the numbers of videos as arguments:
+ *
+ * java org.magnum.mobilecloud.json.test.ResourcesMapperBenchmark 1000 10000 100000
+ *
+ * @author jules
+ *
+ */
+public class ResourcesMapperBenchmark {
+
+	private static final int WARMUP_WRITES = 20;
+
+	private static final int WRITES = 20;
+
+	public static void main(String[] args) throws IOException {
+		int[] sizes = args.length > 0 ? new int[args.length] : new int[] { 1000, 10000, 100000 };
+		for (int i = 0; i < args.length; i++) {
+			sizes[i] = Integer.parseInt(args[i]);
+		}
+
+		System.out.println(String.format("%10s %12s %12s %12s", "videos",
+				"mapper", "write (ms)", "bytes"));
+		for (int size : sizes) {
+			Resources<Resource<Object>> resources = videoResources(size);
+			run(new LookupPerWriteMapper(), "lookup", resources, size);
+			run(new ResourcesMapper(), "cached", resources, size);
+		}
+	}
+
+	private static void run(ObjectMapper mapper, String name,
+			Resources<Resource<Object>> resources, int size) throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		for (int i = 0; i < WARMUP_WRITES; i++) {
+			mapper.writeValue(out, resources);
+		}
+
+		out.count = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < WRITES; i++) {
+			mapper.writeValue(out, resources);
+		}
+		double millis = (System.nanoTime() - start) / 1000000.0 / WRITES;
+
+		System.out.println(String.format("%10d %12s %12.2f %12d", size, name,
+				millis, out.count / WRITES));
+	}
+
+	private static Resources<Resource<Object>> videoResources(int count) {
+		List<Resource<Object>> content = new ArrayList<Resource<Object>>(count);
+		for (int i = 0; i < count; i++) {
+			Video video = new Video("Video " + i, "http://coursera.org/" + i, 60000L * (i % 60));
+			video.setId(i + 1);
+			content.add(new PersistentEntityResource<Object>(null, video,
+					new Link("http://localhost:8080/video/" + video.getId())));
+		}
+		return new Resources<Resource<Object>>(content, new Link("http://localhost:8080/video"));
+	}
+
+	// The ResourcesMapper as it was before it remembered its serializers
+	@SuppressWarnings("serial")
+	private static class LookupPerWriteMapper extends ObjectMapper {
+
+		@SuppressWarnings("rawtypes")
+		private JsonSerializer<Resources> serializer = new JsonSerializer<Resources>() {
+
+			@Override
+			public Class<Resources> handledType() {
+				return Resources.class;
+			}
+
+			@Override
+			public void serialize(Resources value, JsonGenerator jgen,
+					SerializerProvider provider) throws IOException {
+				Object content = value.getContent();
+				JsonSerializer<Object> s = provider.findValueSerializer(
+						content.getClass(), null);
+				s.serialize(content, jgen, provider);
+			}
+		};
+
+		public LookupPerWriteMapper() {
+			SimpleModule module = new SimpleModule();
+			module.addSerializer(serializer);
+			registerModule(module);
+		}
+	}
+
+	// Throws the JSON away, so that only the time to write it is measured
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+		// Keep the mapper from closing the stream after each write
+		@Override
+		public void close() {
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.magnum.mobilecloud.json.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.magnum.mobilecloud.video.TestData;
+import org.magnum.mobilecloud.video.json.ResourcesMapper;
+import org.magnum.mobilecloud.video.repository.Video;
+import org.springframework.data.rest.webmvc.PersistentEntityResource;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+
+/**
+ *
+ * This test checks that the ResourcesMapper writes a Resources object as
+ * exactly the same JSON that Jackson would write for the content of the
+ * Resources on its own, which is what the Retrofit client expects to get
+ * back from the VideoRepository.
+ *
+ * @author jules
+ *
+ */
+public class ResourcesMapperTest {
+
+	private ResourcesMapper mapper = new ResourcesMapper();
+
+	@Test
+	public void testResourcesAreWrittenAsTheirContent() throws Exception {
+		List<Resource<Object>> content = videoResources(100);
+		Resources<Resource<Object>> resources = new Resources<Resource<Object>>(
+				content, new Link("http://localhost:8080/video"));
+
+		String expected = mapper.writeValueAsString(content);
+		assertEquals(expected, mapper.writeValueAsString(resources));
+		// The second time around, the mapper uses the serializers that it
+		// remembered from the first time
+		assertEquals(expected, mapper.writeValueAsString(resources));
+	}
+
+	@Test
+	public void testEmptyAndNullContent() throws Exception {
+		Resources<Object> empty = new Resources<Object>(Collections.emptyList());
+		assertEquals("[]", mapper.writeValueAsString(empty));
+
+		List<Object> content = new ArrayList<Object>();
+		content.add(TestData.randomVideo());
+		content.add(null);
+		Resources<Object> resources = new Resources<Object>(content);
+		assertEquals(mapper.writeValueAsString(content),
+				mapper.writeValueAsString(resources));
+	}
+
+	private List<Resource<Object>> videoResources(int count) {
+		List<Resource<Object>> content = new ArrayList<Resource<Object>>(count);
+		for (int i = 0; i < count; i++) {
+			Video video = TestData.randomVideo();
+			video.setId(i + 1);
+			content.add(new PersistentEntityResource<Object>(null, video,
+					new Link("http://localhost:8080/video/" + video.getId())));
+		}
+		return content;
+	}
+
+}
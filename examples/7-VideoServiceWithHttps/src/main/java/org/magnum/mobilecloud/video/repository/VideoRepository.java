@@ -41,6 +41,15 @@ public interface VideoRepository extends CrudRepository<Video, Long>{
 			// parameter it should use to fill in the "duration" variable used to
 			// search for Videos
 			@Param(VideoSvcApi.DURATION_PARAMETER) long maxduration);
+
+	// Find all videos that are longer than a specified duration
+	public Collection<Video> findByDurationGreaterThan(
+			@Param(VideoSvcApi.DURATION_PARAMETER) long minduration);
+
+	// Find all videos with a duration from min to max, inclusive
+	public Collection<Video> findByDurationBetween(
+			@Param(VideoSvcApi.MIN_DURATION_PARAMETER) long min,
+			@Param(VideoSvcApi.MAX_DURATION_PARAMETER) long max);
 	
 	/*
 	 * See: http://docs.spring.io/spring-data/jpa/docs/1.3.0.RELEASE/reference/html/jpa.repositories.html 
@@ -31,6 +31,10 @@ public interface VideoSvcApi {
 	
 	public static final String DURATION_PARAMETER = "duration";
 
+	public static final String MIN_DURATION_PARAMETER = "min";
+
+	public static final String MAX_DURATION_PARAMETER = "max";
+
 	public static final String LOGIN_PATH = "/login";
 	
 	public static final String LOGOUT_PATH = "/logout";
@@ -44,6 +48,10 @@ public interface VideoSvcApi {
 	// The path to search videos by title
 	public static final String VIDEO_DURATION_SEARCH_PATH = VIDEO_SVC_PATH + "/search/findByDurationLessThan";
 
+	public static final String VIDEO_DURATION_GREATER_THAN_PATH = VIDEO_SVC_PATH + "/search/findByDurationGreaterThan";
+
+	public static final String VIDEO_DURATION_BETWEEN_PATH = VIDEO_SVC_PATH + "/search/findByDurationBetween";
+
 	@FormUrlEncoded
 	@POST(LOGIN_PATH)
 	public Void login(@Field(USERNAME_PARAMETER) String username, @Field(PASSWORD_PARAMETER) String pass);
@@ -62,5 +70,13 @@ public interface VideoSvcApi {
 	
 	@GET(VIDEO_DURATION_SEARCH_PATH)
 	public Collection<Video> findByDurationLessThan(@Query(DURATION_PARAMETER) String title);
+
+	@GET(VIDEO_DURATION_GREATER_THAN_PATH)
+	public Collection<Video> findByDurationGreaterThan(@Query(DURATION_PARAMETER) long duration);
+
+	// Returns the videos with a duration from min to max, inclusive
+	@GET(VIDEO_DURATION_BETWEEN_PATH)
+	public Collection<Video> findByDurationBetween(@Query(MIN_DURATION_PARAMETER) long min,
+			@Query(MAX_DURATION_PARAMETER) long max);
 	
 }